@@ -0,0 +1,102 @@
+package picasso.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import picasso.parser.CompiledExpression;
+import picasso.parser.ExpressionFile;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.RandomExpressionGenerator;
+import picasso.parser.language.BuiltinFunctionsReader;
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Reads the expressions the benchmarks run from the expressions directory and
+ * prepares them the way the application does before rendering.
+ */
+final class BenchmarkExpressions {
+
+	static final Path DIRECTORY = Path.of("expressions");
+
+	private BenchmarkExpressions() {
+	}
+
+	/**
+	 * Returns the expressions in the given file of the expressions directory
+	 */
+	static List<String> read(String fileName) {
+		try {
+			return ExpressionFile.readExpressions(DIRECTORY.resolve(fileName));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Run the benchmarks from the root of the project", e);
+		}
+	}
+
+	/**
+	 * Returns the expressions in every file of the expressions directory, file by
+	 * file in order of name
+	 */
+	static List<String> readAll() {
+		List<String> expressions = new ArrayList<String>();
+		try (Stream<Path> files = Files.list(DIRECTORY)) {
+			files.map(file -> file.getFileName().toString()).filter(name -> name.endsWith(".exp")).sorted()
+					.forEach(name -> expressions.addAll(read(name)));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Run the benchmarks from the root of the project", e);
+		}
+		return expressions;
+	}
+
+	/**
+	 * Returns expressions like those the Random button makes, which are much
+	 * longer than the ones in the expressions directory. The same seed gives the
+	 * same expressions.
+	 */
+	static List<String> random(int count, long seed) {
+		RandomExpressionGenerator generator = new RandomExpressionGenerator(new Random(seed),
+				BuiltinFunctionsReader.getFunctionsList(), List.of("images/Mirror.png", "images/Oil.png"));
+		List<String> expressions = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			expressions.add(generator.generate());
+		}
+		return expressions;
+	}
+
+	/**
+	 * Returns the expressions that parse and evaluate, dropping the rest (e.g.,
+	 * those naming images that do not exist). Starts with no variables defined, so
+	 * that assignments earlier in the list are visible to later expressions.
+	 */
+	static List<String> usable(List<String> expressions) {
+		ExpressionTreeGenerator generator = new ExpressionTreeGenerator();
+		List<String> usable = new ArrayList<String>();
+		for (String expression : expressions) {
+			try {
+				generator.makeExpression(expression).evaluate(0, 0);
+				usable.add(expression);
+			} catch (RuntimeException e) {
+				// not part of the benchmark
+			}
+		}
+		return usable;
+	}
+
+	/**
+	 * Parses each expression and prepares it as the Evaluator does: optimized,
+	 * with shared subexpressions, compiled, and vectorized
+	 */
+	static List<ExpressionTreeNode> prepare(List<String> expressions) {
+		ExpressionTreeGenerator generator = new ExpressionTreeGenerator();
+		List<ExpressionTreeNode> prepared = new ArrayList<ExpressionTreeNode>();
+		for (String expression : expressions) {
+			prepared.add(CompiledExpression.of(generator.makeExpression(expression)).getCompiled());
+		}
+		return prepared;
+	}
+}
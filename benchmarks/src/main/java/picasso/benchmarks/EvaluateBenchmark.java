@@ -0,0 +1,120 @@
+package picasso.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import picasso.model.TileRenderer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.compiler.ExpressionCompiler;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.vector.VectorBackend;
+
+/**
+ * Measures how fast a single kind of node evaluates every point of a size by
+ * size frame, on one thread, with each of the ways an expression can be
+ * evaluated:
+ * <ul>
+ * <li>point: evaluate(x, y), creating an RGBColor per node per point</li>
+ * <li>buffered: evaluate(x, y, out, offset), allocating nothing</li>
+ * <li>rows: the interpreter's batch evaluation, one call per row</li>
+ * <li>compiled: the compiled expression, a point at a time</li>
+ * <li>vector: the Vector API, one call per row</li>
+ * </ul>
+ * One operation is one frame. Use JMH's -t option to evaluate frames on
+ * several threads at once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true" })
+@State(Scope.Thread)
+public class EvaluateBenchmark {
+
+	@Param({ "x + y", "x - y", "x * y", "x / y", "x % y", "x ^ y", "!x", "sin(x)", "cos(x)", "tan(x)", "atan(x)",
+			"exp(x)", "log(x)", "abs(x)", "floor(x)", "ceil(x)", "clamp(x)", "wrap(x)", "rgbToYCrCb(x)",
+			"yCrCbToRGB(x)", "perlinBW(x, y)", "perlinColor(x, y)", "fbm(x, y)", "turbulence(x, y)", "mandelbrot(x, y)",
+			"imageClip(\"images/vortex.jpg\", x, y)", "imageWrap(\"images/vortex.jpg\", x, y)",
+			"imageClip(\"images/vortex.jpg\", x, y, \"bilinear\")", "imageClip(\"images/vortex.jpg\", x, y, \"bicubic\")" })
+	public String expression;
+
+	@Param({ "256", "1024" })
+	public int size;
+
+	@Param({ "point", "buffered", "rows", "compiled", "vector" })
+	public String backend;
+
+	private ExpressionTreeNode expr;
+	private double[] domain;
+	private double[] ys;
+	private double[] out;
+	private double[][] planes;
+
+	@Setup
+	public void setUp() {
+		ExpressionTreeNode parsed = new ExpressionTreeGenerator().makeExpression(expression);
+		switch (backend) {
+		case "compiled":
+			expr = new ExpressionCompiler().compileProgram(parsed);
+			break;
+		case "vector":
+			if (!VectorBackend.isAvailable()) {
+				throw new IllegalStateException("Run with --add-modules jdk.incubator.vector");
+			}
+			expr = new VectorBackend().vectorize(parsed, parsed);
+			break;
+		default:
+			expr = parsed;
+		}
+
+		domain = new double[size];
+		for (int i = 0; i < size; i++) {
+			domain[i] = TileRenderer.imageToDomainScale(i, size);
+		}
+		ys = new double[size];
+		out = new double[expr.getScratchSize()];
+		planes = new double[expr.getScratchSize()][size];
+	}
+
+	@Benchmark
+	public double evaluate() {
+		double sum = 0;
+		switch (backend) {
+		case "point":
+			for (double y : domain) {
+				for (double x : domain) {
+					sum += expr.evaluate(x, y).getRed();
+				}
+			}
+			break;
+		case "buffered":
+		case "compiled":
+			for (double y : domain) {
+				for (double x : domain) {
+					expr.evaluate(x, y, out, 0);
+					sum += out[0];
+				}
+			}
+			break;
+		default:
+			for (double y : domain) {
+				Arrays.fill(ys, y);
+				expr.evaluate(domain, ys, size, planes, 0);
+				sum += planes[0][size - 1];
+			}
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,112 @@
+package picasso.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import picasso.model.ImprovedNoise;
+import picasso.model.NoiseEngine;
+import picasso.model.TileRenderer;
+
+/**
+ * Measures how fast Perlin noise is evaluated at every point of a size by size
+ * frame, on one thread:
+ * <ul>
+ * <li>reference: ImprovedNoise, the reference implementation, in the plane z =
+ * 0</li>
+ * <li>plane: the noise engine's path for the plane</li>
+ * <li>space: the noise engine in space, at z = 0</li>
+ * <li>rows: the noise engine in the plane, one call per row</li>
+ * <li>fbm and turbulence: five octaves, one call per row</li>
+ * </ul>
+ * One operation is one frame. y is the same along a row, so the JIT may hoist
+ * its part of the work out of the loops over points, which it cannot do for
+ * the calls per row.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true" })
+@State(Scope.Thread)
+public class NoiseBenchmark {
+
+	private static final int OCTAVES = 5;
+
+	@Param({ "reference", "plane", "space", "rows", "fbm", "turbulence" })
+	public String method;
+
+	@Param({ "256", "1024" })
+	public int size;
+
+	private final NoiseEngine engine = NoiseEngine.REFERENCE;
+	private double[] domain;
+	private double[] ys;
+	private double[] out;
+
+	@Setup
+	public void setUp() {
+		domain = new double[size];
+		for (int i = 0; i < size; i++) {
+			// a few lattice cells across the frame, as perlinColor(x / 0.25, ...) has
+			domain[i] = TileRenderer.imageToDomainScale(i, size) * 4;
+		}
+		ys = new double[size];
+		out = new double[size];
+	}
+
+	@Benchmark
+	public double evaluate() {
+		double sum = 0;
+		switch (method) {
+		case "reference":
+			for (double y : domain) {
+				for (double x : domain) {
+					sum += ImprovedNoise.noise(x, y, 0);
+				}
+			}
+			break;
+		case "plane":
+			for (double y : domain) {
+				for (double x : domain) {
+					sum += engine.noise(x, y);
+				}
+			}
+			break;
+		case "space":
+			for (double y : domain) {
+				for (double x : domain) {
+					sum += engine.noise(x, y, 0);
+				}
+			}
+			break;
+		default:
+			for (double y : domain) {
+				Arrays.fill(ys, y);
+				switch (method) {
+				case "rows":
+					engine.noise(domain, ys, out, size);
+					break;
+				case "fbm":
+					engine.fbm(domain, ys, out, size, OCTAVES);
+					break;
+				default:
+					engine.turbulence(domain, ys, out, size, OCTAVES);
+				}
+				sum += out[size - 1];
+			}
+		}
+		return sum;
+	}
+}
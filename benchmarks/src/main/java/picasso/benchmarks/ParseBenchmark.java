@@ -0,0 +1,88 @@
+package picasso.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.ParseSession;
+import picasso.parser.Tokenizer;
+
+/**
+ * Measures tokenizing and parsing every expression in the expressions
+ * directory. One operation handles all of them, in file order, so variables
+ * are assigned before they are used. The random benchmarks parse a fixed set of
+ * long expressions like those the Random button makes.
+ *
+ * The FromPostfix benchmarks parse the old way, through tokens and a postfix
+ * stack, for comparison with the one-pass parser.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true" })
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+	private List<String> expressions;
+	private List<String> randomExpressions;
+	private Tokenizer tokenizer;
+	private ExpressionTreeGenerator generator;
+
+	@Setup
+	public void setUp() {
+		expressions = BenchmarkExpressions.usable(BenchmarkExpressions.readAll());
+		randomExpressions = BenchmarkExpressions.usable(BenchmarkExpressions.random(200, 42));
+		tokenizer = new Tokenizer();
+		generator = new ExpressionTreeGenerator();
+	}
+
+	@Benchmark
+	public void parseTokens(Blackhole blackhole) {
+		for (String expression : expressions) {
+			blackhole.consume(tokenizer.parseTokens(expression));
+		}
+	}
+
+	@Benchmark
+	public void makeExpression(Blackhole blackhole) {
+		for (String expression : expressions) {
+			blackhole.consume(generator.makeExpression(expression));
+		}
+	}
+
+	@Benchmark
+	public void makeExpressionFromPostfix(Blackhole blackhole) {
+		ParseSession session = generator.getSession();
+		for (String expression : expressions) {
+			blackhole.consume(generator.makeExpressionFromPostfix(expression, session));
+		}
+	}
+
+	@Benchmark
+	public void makeRandomExpression(Blackhole blackhole) {
+		for (String expression : randomExpressions) {
+			blackhole.consume(generator.makeExpression(expression));
+		}
+	}
+
+	@Benchmark
+	public void makeRandomExpressionFromPostfix(Blackhole blackhole) {
+		ParseSession session = generator.getSession();
+		for (String expression : randomExpressions) {
+			blackhole.consume(generator.makeExpressionFromPostfix(expression, session));
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package picasso.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import picasso.model.Pixmap;
+import picasso.model.TileRenderer;
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Measures rendering the expressions of an expression file into a size by size
+ * pixmap with the tile renderer, as the application draws them. One operation
+ * renders every expression in the file once. Expressions that cannot be
+ * evaluated (e.g., those naming images that do not exist) are left out.
+ *
+ * threads is the number of threads the renderer uses; "all" is one per
+ * available processor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true" })
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+	// AnimatedGrid.exp is left out: the image it uses is not in the project
+	@Param({ "AmoebaMorris.exp", "BlackStripeNock.exp", "BlackWhiteTomlinson.exp", "BrightThompson.exp",
+			"ColorsNock.exp", "DiscoMorris.exp", "Mirror.exp", "Oil.exp", "PinkSmoke.exp", "Psych.exp",
+			"ReflectionMcLaughin.exp", "SmallReflectMcLaughlin.exp", "Smear.exp", "VeryCoolImage.exp", "Waves.exp",
+			"samples.exp" })
+	public String file;
+
+	@Param({ "256", "1024" })
+	public int size;
+
+	@Param({ "1", "4", "all" })
+	public String threads;
+
+	private ForkJoinPool pool;
+	private TileRenderer renderer;
+	private List<ExpressionTreeNode> expressions;
+	private Pixmap pixmap;
+
+	@Setup
+	public void setUp() {
+		int parallelism = threads.equals("all") ? Runtime.getRuntime().availableProcessors()
+				: Integer.parseInt(threads);
+		pool = new ForkJoinPool(parallelism);
+		renderer = new TileRenderer(pool, TileRenderer.DEFAULT_TILE_SIZE);
+		expressions = BenchmarkExpressions.prepare(BenchmarkExpressions.usable(BenchmarkExpressions.read(file)));
+		pixmap = new Pixmap(size, size);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public Pixmap render() {
+		for (ExpressionTreeNode expr : expressions) {
+			renderer.render(expr, pixmap);
+		}
+		return pixmap;
+	}
+}
@@ -0,0 +1,248 @@
+package picasso;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import picasso.model.AnimationRenderer;
+import picasso.model.FrameEncoder;
+import picasso.model.GifEncoder;
+import picasso.model.Pixmap;
+import picasso.model.PngSequenceEncoder;
+import picasso.model.TileRenderer;
+import picasso.parser.CompiledExpression;
+import picasso.parser.ExpressionCache;
+import picasso.parser.ExpressionFile;
+import picasso.parser.ParseException;
+import picasso.parser.ParseSession;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.util.CancellationToken;
+
+/**
+ * Starting point for rendering expression files without a display. Each
+ * expression in each file is rendered on all cores and written as a PNG, and
+ * the time each one took is reported.
+ *
+ * Usage: java picasso.Render [--size WIDTHxHEIGHT] [--output DIRECTORY]
+ * [--frames COUNT] [--fps RATE] [--animation gif|png] FILE.exp...
+ *
+ * An expression file with one expression is written to FILE.png; one with
+ * several to FILE-1.png, FILE-2.png, and so on. Expressions that use t are
+ * animated instead: their frames are rendered in parallel and written to
+ * FILE.gif, or with --animation png to FILE-0001.png, FILE-0002.png, and so
+ * on. Variables defined in a file are only visible in that file.
+ */
+public class Render {
+
+	public static final int DEFAULT_WIDTH = 600;
+	public static final int DEFAULT_HEIGHT = 600;
+
+	private static final String USAGE = "Usage: java picasso.Render [--size WIDTHxHEIGHT] [--output DIRECTORY]"
+			+ " [--frames COUNT] [--fps RATE] [--animation gif|png] FILE.exp...";
+
+	private final TileRenderer renderer = new TileRenderer();
+	private final AnimationRenderer animator = new AnimationRenderer();
+
+	private final PrintStream out;
+	private final PrintStream err;
+	private int width = DEFAULT_WIDTH;
+	private int height = DEFAULT_HEIGHT;
+	private Path outputDirectory;
+	private int frameCount = AnimationRenderer.DEFAULT_FRAME_COUNT;
+	private double framesPerSecond = AnimationRenderer.DEFAULT_FRAMES_PER_SECOND;
+	private boolean animateAsPng;
+
+	private int rendered;
+	private int failed;
+	private long renderedPixels;
+	private long totalNanos;
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		System.exit(new Render(System.out, System.err).run(args));
+	}
+
+	/**
+	 * Create a renderer that reports progress to out and errors to err
+	 */
+	public Render(PrintStream out, PrintStream err) {
+		this.out = out;
+		this.err = err;
+	}
+
+	/**
+	 * Render the expression files named in the arguments
+	 *
+	 * @param args the command line arguments
+	 * @return the exit status: 0 if every expression was written, 1 if any could
+	 *         not be, and 2 if the arguments are invalid
+	 */
+	public int run(String[] args) {
+		List<Path> files = new ArrayList<Path>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("--size") || args[i].equals("-s")) {
+					parseSize(argument(args, ++i));
+				} else if (args[i].equals("--output") || args[i].equals("-o")) {
+					outputDirectory = Path.of(argument(args, ++i));
+				} else if (args[i].equals("--frames")) {
+					frameCount = (int) parsePositive(args[i], argument(args, ++i));
+				} else if (args[i].equals("--fps")) {
+					framesPerSecond = parsePositive(args[i], argument(args, ++i));
+				} else if (args[i].equals("--animation")) {
+					parseAnimationFormat(argument(args, ++i));
+				} else if (args[i].startsWith("-")) {
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+				} else {
+					files.add(Path.of(args[i]));
+				}
+			}
+			if (files.isEmpty()) {
+				throw new IllegalArgumentException("No expression files given");
+			}
+		} catch (IllegalArgumentException e) {
+			err.println(e.getMessage());
+			err.println(USAGE);
+			return 2;
+		}
+
+		for (Path file : files) {
+			renderFile(file);
+		}
+
+		double seconds = totalNanos / 1e9;
+		out.printf("Rendered %d expressions (%d pixels) in %.1f ms: %.2f Mpixels/s%n", rendered, renderedPixels,
+				totalNanos / 1e6, seconds > 0 ? renderedPixels / seconds / 1e6 : 0);
+		if (failed > 0) {
+			out.printf("%d expressions failed%n", failed);
+			return 1;
+		}
+		return 0;
+	}
+
+	private static String argument(String[] args, int i) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException(args[i - 1] + " needs a value");
+		}
+		return args[i];
+	}
+
+	private static double parsePositive(String option, String value) {
+		try {
+			double number = Double.parseDouble(value);
+			if (number > 0 && (!option.equals("--frames") || number == Math.rint(number))) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("Invalid value " + value + " for " + option);
+	}
+
+	private void parseAnimationFormat(String format) {
+		if (format.equals("png")) {
+			animateAsPng = true;
+		} else if (format.equals("gif")) {
+			animateAsPng = false;
+		} else {
+			throw new IllegalArgumentException("Invalid animation format " + format + "; expected gif or png");
+		}
+	}
+
+	private void parseSize(String size) {
+		String[] parts = size.toLowerCase().split("x");
+		try {
+			if (parts.length == 2) {
+				width = Integer.parseInt(parts[0]);
+				height = Integer.parseInt(parts[1]);
+				if (width > 0 && height > 0) {
+					return;
+				}
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("Invalid size " + size + "; expected WIDTHxHEIGHT");
+	}
+
+	/**
+	 * Render every expression in the file
+	 */
+	private void renderFile(Path file) {
+		List<String> expressions;
+		try {
+			expressions = ExpressionFile.readExpressions(file);
+		} catch (IOException e) {
+			err.println(file + ": " + e.getMessage());
+			failed++;
+			return;
+		}
+
+		// each file starts with no variables defined
+		ParseSession session = new ParseSession();
+		String name = file.getFileName().toString();
+		String base = name.endsWith(".exp") ? name.substring(0, name.length() - 4) : name;
+		Path directory = outputDirectory != null ? outputDirectory : file.toAbsolutePath().getParent();
+		for (int i = 0; i < expressions.size(); i++) {
+			String stem = expressions.size() == 1 ? base : base + "-" + (i + 1);
+			renderExpression(session, name + ":" + (i + 1), expressions.get(i), directory, stem);
+		}
+	}
+
+	/**
+	 * Render one expression to a PNG file, or an animation if it uses t, and
+	 * report how long it took
+	 */
+	private void renderExpression(ParseSession session, String label, String expression, Path directory,
+			String stem) {
+		try {
+			long start = System.nanoTime();
+			CompiledExpression compiled = ExpressionCache.getInstance().get(expression, session);
+			if (compiled == null) {
+				throw new ParseException("Empty expression");
+			}
+			ExpressionTreeNode expr = compiled.getCompiled();
+			Path target;
+			long pixels;
+			long nanos;
+			if (compiled.isAnimated()) {
+				FrameEncoder encoder;
+				if (animateAsPng) {
+					target = directory.resolve(stem + "-0001.png");
+					encoder = new PngSequenceEncoder(directory, stem);
+				} else {
+					target = directory.resolve(stem + ".gif");
+					encoder = new GifEncoder(target);
+				}
+				// the frames are encoded while later ones render, so this includes writing
+				animator.render(expr, width, height, frameCount, framesPerSecond, encoder, CancellationToken.NONE);
+				nanos = System.nanoTime() - start;
+				pixels = (long) width * height * frameCount;
+			} else {
+				Pixmap pixmap = new Pixmap(width, height);
+				renderer.render(expr, pixmap);
+				nanos = System.nanoTime() - start;
+				target = directory.resolve(stem + ".png");
+				Files.createDirectories(target.toAbsolutePath().getParent());
+				pixmap.write(target.toString(), "png");
+				pixels = (long) width * height;
+			}
+
+			rendered++;
+			renderedPixels += pixels;
+			totalNanos += nanos;
+			out.printf("%s -> %s: %.1f ms, %.2f Mpixels/s%n", label, target, nanos / 1e6,
+					pixels / (nanos / 1e9) / 1e6);
+		} catch (IOException | RuntimeException e) {
+			err.println(label + ": " + e.getMessage());
+			failed++;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			err.println(label + ": interrupted");
+			failed++;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package picasso.model;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import picasso.parser.language.EvaluationContext;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.util.CancellationToken;
+
+/**
+ * Renders the frames of an animated expression (one that uses t) and feeds
+ * them, in order, to a FrameEncoder.
+ *
+ * Frames are rendered concurrently, each on its own thread in its own
+ * EvaluationContext, so the time to render an animation shrinks with the
+ * number of cores rather than growing with each frame drawn in turn. Frame i of
+ * n is drawn in EvaluationContext.forFrame(i, n), at t = i / n. At most
+ * queueCapacity frames are rendered ahead of the encoder, which bounds the
+ * memory frames take while the encoder writes the earliest ones.
+ */
+public class AnimationRenderer {
+
+	public static final int DEFAULT_FRAME_COUNT = 50;
+	public static final double DEFAULT_FRAMES_PER_SECOND = 25;
+
+	private final int threads;
+	private final int queueCapacity;
+	private final TileRenderer tiles = new TileRenderer();
+
+	/**
+	 * Create a renderer that draws a frame on each available processor
+	 */
+	public AnimationRenderer() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a renderer that draws the given number of frames at once and keeps
+	 * up to twice as many waiting for the encoder.
+	 *
+	 * @param threads the number of frames to draw at once
+	 */
+	public AnimationRenderer(int threads) {
+		this(threads, 2 * threads);
+	}
+
+	/**
+	 * Create a renderer that draws the given number of frames at once.
+	 *
+	 * @param threads       the number of frames to draw at once
+	 * @param queueCapacity the most frames rendered or being rendered that the
+	 *                      encoder has not taken yet
+	 */
+	public AnimationRenderer(int threads, int queueCapacity) {
+		if (threads <= 0 || queueCapacity < threads) {
+			throw new IllegalArgumentException("Need at least one thread and room in the queue for each");
+		}
+		this.threads = threads;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Returns the value of t for a frame of an animation
+	 *
+	 * @param index      the number of the frame, starting at 0
+	 * @param frameCount the number of frames in the animation
+	 * @return the time the frame is drawn at
+	 */
+	public static double frameTime(int index, int frameCount) {
+		return EvaluationContext.forFrame(index, frameCount).getTime();
+	}
+
+	/**
+	 * Render every frame of the animation and encode them in order. The encoder
+	 * is finished even if the animation is cancelled or fails; if finishing also
+	 * fails, that failure is suppressed in the one that stopped the animation.
+	 *
+	 * @param expr            the expression to animate
+	 * @param width           the width of each frame
+	 * @param height          the height of each frame
+	 * @param frameCount      the number of frames
+	 * @param framesPerSecond the rate the animation is played at
+	 * @param encoder         receives the frames
+	 * @param token           tells the render to stop early
+	 * @return true if every frame was encoded, false if the render was cancelled
+	 * @throws IOException          if the encoder fails
+	 * @throws InterruptedException if the calling thread is interrupted
+	 */
+	public boolean render(ExpressionTreeNode expr, int width, int height, int frameCount, double framesPerSecond,
+			FrameEncoder encoder, CancellationToken token) throws IOException, InterruptedException {
+		if (frameCount <= 0 || framesPerSecond <= 0) {
+			throw new IllegalArgumentException("Frame count and rate must be positive");
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads, work -> {
+			Thread worker = new Thread(work, "Animation frames");
+			worker.setDaemon(true);
+			return worker;
+		});
+		boolean complete;
+		try {
+			complete = encodeFrames(expr, width, height, frameCount, framesPerSecond, encoder, token, executor);
+		} catch (Throwable failure) {
+			executor.shutdownNow();
+			try {
+				encoder.finish();
+			} catch (IOException | RuntimeException e) {
+				failure.addSuppressed(e);
+			}
+			throw failure;
+		}
+		executor.shutdownNow();
+		encoder.finish();
+		return complete;
+	}
+
+	/**
+	 * Start the encoder and give it every frame, keeping a bounded number of
+	 * frames rendering ahead of the one being encoded
+	 */
+	private boolean encodeFrames(ExpressionTreeNode expr, int width, int height, int frameCount,
+			double framesPerSecond, FrameEncoder encoder, CancellationToken token, ExecutorService executor)
+			throws IOException, InterruptedException {
+		Queue<Future<Pixmap>> queue = new ArrayDeque<Future<Pixmap>>(queueCapacity);
+		try {
+			encoder.begin(width, height, framesPerSecond);
+			int submitted = 0;
+			for (int encoded = 0; encoded < frameCount; encoded++) {
+				while (submitted < frameCount && queue.size() < queueCapacity) {
+					EvaluationContext context = EvaluationContext.forFrame(submitted++, frameCount);
+					queue.add(executor.submit(() -> renderFrame(expr, width, height, context, token)));
+				}
+				Pixmap frame = queue.remove().get();
+				if (token.isCancelled()) {
+					return false;
+				}
+				encoder.encode(encoded, frame);
+			}
+			return true;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Render one frame on the current thread in the given context
+	 */
+	private Pixmap renderFrame(ExpressionTreeNode expr, int width, int height, EvaluationContext context,
+			CancellationToken token) {
+		Pixmap frame = new Pixmap(width, height);
+		tiles.renderOnCurrentThread(expr, frame, context, token);
+		return frame;
+	}
+}
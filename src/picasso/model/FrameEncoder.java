@@ -0,0 +1,37 @@
+package picasso.model;
+
+import java.io.IOException;
+
+/**
+ * Receives the frames of an animation, in order, and writes them somewhere
+ * (e.g., to an animated GIF or a sequence of PNG files).
+ */
+public interface FrameEncoder {
+
+	/**
+	 * Called once, before the first frame
+	 *
+	 * @param width           the width of every frame
+	 * @param height          the height of every frame
+	 * @param framesPerSecond the rate the animation is played at
+	 * @throws IOException if the output cannot be started
+	 */
+	public void begin(int width, int height, double framesPerSecond) throws IOException;
+
+	/**
+	 * Called with each frame, in order
+	 *
+	 * @param index the number of the frame, starting at 0
+	 * @param frame the rendered frame
+	 * @throws IOException if the frame cannot be written
+	 */
+	public void encode(int index, Pixmap frame) throws IOException;
+
+	/**
+	 * Called once after the last frame, or after an animation is cancelled or
+	 * fails, to finish and close the output
+	 *
+	 * @throws IOException if the output cannot be finished
+	 */
+	public void finish() throws IOException;
+}
@@ -0,0 +1,107 @@
+package picasso.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Writes the frames of an animation to an animated GIF that loops forever.
+ * Each frame gets its own palette of the colors it uses.
+ */
+public class GifEncoder implements FrameEncoder {
+
+	private static final String METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+
+	private final Path file;
+	private ImageWriter writer;
+	private ImageOutputStream output;
+	private int delay;
+
+	/**
+	 * Create an encoder that writes the given file
+	 *
+	 * @param file the GIF file to write
+	 */
+	public GifEncoder(Path file) {
+		this.file = file;
+	}
+
+	@Override
+	public void begin(int width, int height, double framesPerSecond) throws IOException {
+		writer = ImageIO.getImageWritersByFormatName("gif").next();
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Files.deleteIfExists(file);
+		output = ImageIO.createImageOutputStream(new File(file.toString()));
+		writer.setOutput(output);
+		writer.prepareWriteSequence(null);
+		// GIF delays are in hundredths of a second
+		delay = Math.max(1, (int) Math.round(100 / framesPerSecond));
+	}
+
+	@Override
+	public void encode(int index, Pixmap frame) throws IOException {
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		IIOMetadata metadata = writer
+				.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(frame.getImage()), param);
+		IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(METADATA_FORMAT);
+
+		IIOMetadataNode control = child(root, "GraphicControlExtension");
+		control.setAttribute("disposalMethod", "none");
+		control.setAttribute("userInputFlag", "FALSE");
+		control.setAttribute("transparentColorFlag", "FALSE");
+		control.setAttribute("delayTime", Integer.toString(delay));
+		control.setAttribute("transparentColorIndex", "0");
+
+		if (index == 0) {
+			IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+			loop.setAttribute("applicationID", "NETSCAPE");
+			loop.setAttribute("authenticationCode", "2.0");
+			// sub-block 1, then the number of loops (0: forever) as a little-endian short
+			loop.setUserObject(new byte[] { 1, 0, 0 });
+			child(root, "ApplicationExtensions").appendChild(loop);
+		}
+		metadata.setFromTree(METADATA_FORMAT, root);
+
+		writer.writeToSequence(new IIOImage(frame.getImage(), null, metadata), param);
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.endWriteSequence();
+		} finally {
+			writer.dispose();
+			output.close();
+			writer = null;
+		}
+	}
+
+	/**
+	 * Returns the child of the metadata node with the given name, adding it if
+	 * there is none
+	 */
+	private static IIOMetadataNode child(IIOMetadataNode node, String name) {
+		for (int i = 0; i < node.getLength(); i++) {
+			if (node.item(i).getNodeName().equalsIgnoreCase(name)) {
+				return (IIOMetadataNode) node.item(i);
+			}
+		}
+		IIOMetadataNode child = new IIOMetadataNode(name);
+		node.appendChild(child);
+		return child;
+	}
+}
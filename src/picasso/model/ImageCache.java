@@ -0,0 +1,431 @@
+package picasso.model;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A process-wide cache of decoded images, so that an image used by several
+ * imageClip, imageWrap, or string expressions (or parsed again from the
+ * history) is read from disk once.
+ *
+ * Images are identified by their canonical path and are read again if the file
+ * has been modified since. Expressions read images through their samples (see
+ * SampledImage), which are made the first time they are asked for and kept
+ * with the image. The cache holds images up to a budget of bytes (four per
+ * pixel, and three more once sampled; a mip pyramid, if built, adds a third
+ * of that and is not counted) and evicts the least recently used images to
+ * stay within it. The budget is 256 MB unless the
+ * picasso.imageCache.bytes system property sets it.
+ *
+ * Images with more pixels than the cache's mapping threshold (16 million,
+ * unless the picasso.imageCache.mapPixels system property sets it) are never
+ * decoded whole. Their samples are converted once, a strip at a time, into a
+ * file in the cache's directory (picasso.imageCache.dir, or picasso-images in
+ * the temporary directory), which is memory-mapped and reused by later runs, so
+ * they take next to none of the heap and none of the budget.
+ *
+ * An image is read, and later sampled or converted, by the first thread to ask
+ * for it, without holding the cache's lock: threads asking for the same image
+ * wait for that thread, while images that are already cached are returned to
+ * others in the meantime.
+ *
+ * The cached pixmaps are shared, so they must not be modified.
+ */
+public class ImageCache {
+
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+	public static final long DEFAULT_MAP_PIXELS = 4096L * 4096;
+
+	private static ImageCache ourInstance;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long maxBytes;
+	private final long mapPixels;
+	private final Path directory;
+	private long currentBytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * The reading of an image, the making of its samples once asked for, and the
+	 * modification time of the file it was read from. The image of a file that is
+	 * mapped is null. An entry takes no bytes of the budget until its image has
+	 * been read, and its samples count once they are made.
+	 */
+	private static class Entry {
+		final String path;
+		final FutureTask<Pixmap> image;
+		final long lastModified;
+		FutureTask<SampledImage> samples;
+		long bytes;
+
+		Entry(String path, FutureTask<Pixmap> image, long lastModified) {
+			this.path = path;
+			this.image = image;
+			this.lastModified = lastModified;
+		}
+
+		Pixmap getImage() {
+			return await(image);
+		}
+	}
+
+	/**
+	 * Create a cache that holds images up to the given number of bytes
+	 *
+	 * @param maxBytes the budget of the cache
+	 */
+	public ImageCache(long maxBytes) {
+		this(maxBytes, DEFAULT_MAP_PIXELS, defaultDirectory());
+	}
+
+	/**
+	 * Create a cache that holds images up to the given number of bytes and maps
+	 * images larger than the given number of pixels from files in the given
+	 * directory
+	 *
+	 * @param maxBytes  the budget of the cache
+	 * @param mapPixels the most pixels an image decoded onto the heap may have
+	 * @param directory where the samples of larger images are kept
+	 */
+	public ImageCache(long maxBytes, long mapPixels, Path directory) {
+		this.maxBytes = maxBytes;
+		this.mapPixels = mapPixels;
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the cache shared by the whole application
+	 *
+	 * @return the image cache
+	 */
+	public static synchronized ImageCache getInstance() {
+		if (ourInstance == null) {
+			String directory = System.getProperty("picasso.imageCache.dir");
+			ourInstance = new ImageCache(Long.getLong("picasso.imageCache.bytes", DEFAULT_MAX_BYTES),
+					Long.getLong("picasso.imageCache.mapPixels", DEFAULT_MAP_PIXELS),
+					directory == null ? defaultDirectory() : Path.of(directory));
+		}
+		return ourInstance;
+	}
+
+	/**
+	 * Returns the decoded image in the given file, reading it only if it is not
+	 * cached or the file has changed. Files that cannot be read are not cached;
+	 * for those this returns a new Pixmap(fileName), as reading them directly
+	 * would. Images too large to decode onto the heap are never decoded; their
+	 * samples are read with getSamples instead.
+	 *
+	 * @param fileName the name of the image file
+	 * @return the image
+	 * @throws IllegalStateException if the image is too large to decode
+	 */
+	public Pixmap get(String fileName) {
+		Pixmap image = load(fileName).getImage();
+		if (image == null) {
+			throw new IllegalStateException(fileName + " is too large to decode; read its samples instead");
+		}
+		return image;
+	}
+
+	/**
+	 * Returns the samples of the image in the given file, reading the image only
+	 * if it is not cached or the file has changed, and sampling it only once
+	 * while it is cached. The samples of an image with more pixels than the
+	 * mapping threshold are mapped from a file, which is written the first time.
+	 *
+	 * @param fileName the name of the image file
+	 * @return the samples of the image
+	 * @throws UncheckedIOException if a large image cannot be converted
+	 */
+	public SampledImage getSamples(String fileName) {
+		Entry entry = load(fileName);
+		Pixmap image = entry.getImage();
+		FutureTask<SampledImage> samples;
+		boolean first = false;
+		synchronized (this) {
+			if (entry.samples == null) {
+				// the first thread to ask makes the samples, once the lock is released
+				entry.samples = new FutureTask<>(() -> sample(entry, image));
+				first = true;
+			}
+			samples = entry.samples;
+		}
+		if (first) {
+			makeSamples(entry, samples);
+		}
+		return await(samples);
+	}
+
+	/**
+	 * Makes the samples of an entry, then counts them against the budget if the
+	 * entry is still cached. If they cannot be made, the next request tries again.
+	 */
+	private void makeSamples(Entry entry, FutureTask<SampledImage> samples) {
+		samples.run();
+		SampledImage made;
+		try {
+			made = await(samples);
+		} catch (RuntimeException | Error e) {
+			synchronized (this) {
+				if (entry.samples == samples) {
+					entry.samples = null;
+				}
+			}
+			return;
+		}
+		synchronized (this) {
+			if (entry.path != null && entries.get(entry.path) == entry) {
+				entry.bytes += made.getBytes();
+				currentBytes += made.getBytes();
+				evict();
+			}
+		}
+	}
+
+	/**
+	 * Samples an image, or converts the file of one too large to decode and maps
+	 * its samples
+	 */
+	private SampledImage sample(Entry entry, Pixmap image) throws IOException {
+		if (image == null) {
+			return new SampledImage(TiledSamples.convert(new File(entry.path), mappedFile(entry)));
+		}
+		return new SampledImage(image);
+	}
+
+	/**
+	 * Returns the cache entry of the given file, reading the image into a new one
+	 * if it is not cached or the file has changed. Only the lookup holds the
+	 * lock; the image is read after it is released. Files that cannot be read get
+	 * an entry that is not cached.
+	 */
+	private Entry load(String fileName) {
+		File file = new File(fileName);
+		String path;
+		try {
+			path = file.getCanonicalPath();
+		} catch (IOException e) {
+			synchronized (this) {
+				misses++;
+			}
+			return read(new Entry(null, new FutureTask<>(() -> new Pixmap(fileName)), 0));
+		}
+		long lastModified = file.lastModified();
+
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(path);
+			if (entry != null && entry.lastModified == lastModified) {
+				hits++;
+				return entry;
+			}
+			misses++;
+			if (entry != null) {
+				remove(path, entry);
+			}
+			entry = new Entry(path, new FutureTask<>(() -> decode(file, fileName, lastModified)), lastModified);
+			if (lastModified != 0) {
+				// others asking for the image while it is read wait for this entry
+				entries.put(path, entry);
+			}
+		}
+		return read(entry);
+	}
+
+	/**
+	 * Reads the image of a new entry, then counts it against the budget if it is
+	 * still cached, or stops caching it if it could not be read or is over the
+	 * budget on its own
+	 */
+	private Entry read(Entry entry) {
+		entry.image.run();
+		Pixmap image;
+		try {
+			image = entry.getImage();
+		} catch (RuntimeException | Error e) {
+			synchronized (this) {
+				if (entry.path != null && entries.get(entry.path) == entry) {
+					remove(entry.path, entry);
+				}
+			}
+			throw e;
+		}
+		synchronized (this) {
+			if (entry.path == null || entries.get(entry.path) != entry || image == null) {
+				// not cached, or mapped, which takes none of the budget
+				return entry;
+			}
+			long bytes = sizeOf(image);
+			if (!image.isLoaded() || bytes > maxBytes) {
+				// the file could not be decoded, or is too large to cache
+				remove(entry.path, entry);
+			} else {
+				// its samples may have been counted already, by a thread that waited
+				entry.bytes += bytes;
+				currentBytes += bytes;
+				evict();
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Decodes the image in a file, or returns null if it is too large to decode
+	 * and its samples are to be mapped when asked for
+	 */
+	private Pixmap decode(File file, String fileName, long lastModified) {
+		Dimension size = lastModified == 0 ? null : TiledSamples.readSize(file);
+		if (size != null && (long) size.width * size.height > mapPixels) {
+			return null;
+		}
+		return new Pixmap(fileName);
+	}
+
+	/**
+	 * Changes the budget of the cache, evicting images if it is now over it
+	 *
+	 * @param maxBytes the new budget, in bytes
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	/**
+	 * Removes every image from the cache and resets its counters
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		currentBytes = 0;
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Returns the number of bytes the cached images take
+	 *
+	 * @return the size of the cached images
+	 */
+	public synchronized long getCurrentBytes() {
+		return currentBytes;
+	}
+
+	/**
+	 * Returns the number of images in the cache
+	 *
+	 * @return the number of cached images
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of requests answered from the cache
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests that read the image from disk
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of images removed to stay within the budget
+	 *
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Removes least recently used images until the cache is within its budget
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (currentBytes > maxBytes && iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			iterator.remove();
+			currentBytes -= entry.bytes;
+			evictions++;
+		}
+	}
+
+	private void remove(String path, Entry entry) {
+		entries.remove(path);
+		currentBytes -= entry.bytes;
+	}
+
+	/**
+	 * Returns the file the samples of a mapped image are kept in, named for the
+	 * image's path and modification time, so a changed image is converted again
+	 */
+	private Path mappedFile(Entry entry) {
+		byte[] name = (entry.path + "@" + entry.lastModified).getBytes(StandardCharsets.UTF_8);
+		return directory.resolve(UUID.nameUUIDFromBytes(name) + ".samples");
+	}
+
+	/**
+	 * Returns the result of a task, waiting for the thread running it if need be,
+	 * and rethrowing what it failed with; an IOException as an
+	 * UncheckedIOException
+	 */
+	private static <V> V await(FutureTask<V> task) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException io) {
+						throw new UncheckedIOException(io);
+					}
+					if (cause instanceof RuntimeException runtime) {
+						throw runtime;
+					}
+					throw (Error) cause;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static Path defaultDirectory() {
+		return Path.of(System.getProperty("java.io.tmpdir"), "picasso-images");
+	}
+
+	private static long sizeOf(Pixmap image) {
+		return 4L * image.getWidth() * image.getHeight();
+	}
+}
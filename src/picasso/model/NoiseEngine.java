@@ -0,0 +1,303 @@
+package picasso.model;
+
+import java.util.Random;
+
+/**
+ * Perlin's improved noise (see ImprovedNoise, the reference implementation),
+ * made to be evaluated for every pixel of every frame:
+ * <ul>
+ * <li>the lattice cell of a point is found by truncating to an int and
+ * correcting for negative coordinates, instead of calling Math.floor, for
+ * coordinates within the range of an int (past it, and for NaN, they are
+ * reduced with Math.floor, as ImprovedNoise reduces them)</li>
+ * <li>the twelve gradient directions are looked up in tables rather than
+ * chosen by branches on the hash</li>
+ * <li>noise in the plane has its own path, which blends the four corners of a
+ * square instead of the eight of a cube whose far face is never reached</li>
+ * <li>rows of points can be evaluated in one call, into arrays</li>
+ * </ul>
+ * and fractal sums of octaves of noise (fBm and turbulence) are built on it.
+ *
+ * Each engine has its own permutation of the lattice, chosen by a seed.
+ * REFERENCE has Perlin's, and gives the same values as ImprovedNoise (up to
+ * the sign of zero). Engines are not changed once made, so they can be shared
+ * between threads.
+ */
+public final class NoiseEngine {
+
+	/** the engine with Perlin's permutation, as perlinBW and perlinColor use */
+	public static final NoiseEngine REFERENCE = new NoiseEngine(ImprovedNoise.permutation);
+
+	// each octave is twice the frequency and half the amplitude of the last
+	private static final double LACUNARITY = 2;
+	private static final double GAIN = 0.5;
+	// coordinates of smaller magnitude have a floor within the range of an int
+	private static final double INT_LIMIT = 0x1p31;
+
+	// the gradient for each of the 16 hashes, as ImprovedNoise.grad chooses it,
+	// with +0.0 for its negative zeros so that the kernels of the vector backend,
+	// which choose each component with masks, give the same sums
+	private static final double[] GRADIENT_X = new double[16];
+	private static final double[] GRADIENT_Y = new double[16];
+	private static final double[] GRADIENT_Z = new double[16];
+
+	static {
+		for (int h = 0; h < 16; h++) {
+			GRADIENT_X[h] = ImprovedNoise.grad(h, 1, 0, 0) + 0.0;
+			GRADIENT_Y[h] = ImprovedNoise.grad(h, 0, 1, 0) + 0.0;
+			GRADIENT_Z[h] = ImprovedNoise.grad(h, 0, 0, 1) + 0.0;
+		}
+	}
+
+	// the permutation, twice over, so p[i + 1] needs no wrapping
+	private final int[] p = new int[512];
+
+	/**
+	 * Create an engine whose lattice is shuffled by the given seed
+	 *
+	 * @param seed the seed; engines with the same seed give the same noise
+	 */
+	public NoiseEngine(long seed) {
+		this(shuffle(seed));
+	}
+
+	private NoiseEngine(int[] permutation) {
+		for (int i = 0; i < 256; i++) {
+			p[i] = permutation[i];
+			p[256 + i] = permutation[i];
+		}
+	}
+
+	private static int[] shuffle(long seed) {
+		int[] permutation = new int[256];
+		for (int i = 0; i < permutation.length; i++) {
+			permutation[i] = i;
+		}
+		Random random = new Random(seed);
+		for (int i = permutation.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = permutation[i];
+			permutation[i] = permutation[j];
+			permutation[j] = swap;
+		}
+		return permutation;
+	}
+
+	/**
+	 * Returns the engine's permutation of the lattice, twice over, so that
+	 * element i + 256 is element i
+	 *
+	 * @return a copy of the permutation, of 512 elements
+	 */
+	public int[] getPermutation() {
+		return p.clone();
+	}
+
+	/**
+	 * Returns the noise at a point in space
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return the noise, in about [-1, 1]
+	 */
+	public double noise(double x, double y, double z) {
+		if (Math.abs(x) < INT_LIMIT && Math.abs(y) < INT_LIMIT && Math.abs(z) < INT_LIMIT) {
+			int xi = floor(x);
+			int yi = floor(y);
+			int zi = floor(z);
+			return noise(xi & 255, yi & 255, zi & 255, x - xi, y - yi, z - zi);
+		}
+		// the cell saturates at the range of an int, as ImprovedNoise's does
+		double xf = Math.floor(x);
+		double yf = Math.floor(y);
+		double zf = Math.floor(z);
+		return noise((int) xf & 255, (int) yf & 255, (int) zf & 255, x - xf, y - yf, z - zf);
+	}
+
+	/**
+	 * Returns the noise at offset (x, y, z) within lattice cell (X, Y, Z)
+	 */
+	private double noise(int X, int Y, int Z, double x, double y, double z) {
+		double u = fade(x);
+		double v = fade(y);
+		double w = fade(z);
+		int A = p[X] + Y, AA = p[A] + Z, AB = p[A + 1] + Z;
+		int B = p[X + 1] + Y, BA = p[B] + Z, BB = p[B + 1] + Z;
+
+		return lerp(w,
+				lerp(v, lerp(u, grad(p[AA], x, y, z), grad(p[BA], x - 1, y, z)),
+						lerp(u, grad(p[AB], x, y - 1, z), grad(p[BB], x - 1, y - 1, z))),
+				lerp(v, lerp(u, grad(p[AA + 1], x, y, z - 1), grad(p[BA + 1], x - 1, y, z - 1)),
+						lerp(u, grad(p[AB + 1], x, y - 1, z - 1), grad(p[BB + 1], x - 1, y - 1, z - 1))));
+	}
+
+	/**
+	 * Returns the noise at a point in the plane z = 0
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the noise, in about [-1, 1]; the same as noise(x, y, 0)
+	 */
+	public double noise(double x, double y) {
+		if (Math.abs(x) < INT_LIMIT && Math.abs(y) < INT_LIMIT) {
+			int xi = floor(x);
+			int yi = floor(y);
+			return noise(xi & 255, yi & 255, x - xi, y - yi);
+		}
+		double xf = Math.floor(x);
+		double yf = Math.floor(y);
+		return noise((int) xf & 255, (int) yf & 255, x - xf, y - yf);
+	}
+
+	/**
+	 * Returns the noise at offset (x, y) within lattice square (X, Y) of the plane
+	 * z = 0
+	 */
+	private double noise(int X, int Y, double x, double y) {
+		double u = fade(x);
+		double v = fade(y);
+		int A = p[X] + Y, B = p[X + 1] + Y;
+
+		return lerp(v, lerp(u, grad(p[p[A]], x, y), grad(p[p[B]], x - 1, y)),
+				lerp(u, grad(p[p[A + 1]], x, y - 1), grad(p[p[B + 1]], x - 1, y - 1)));
+	}
+
+	/**
+	 * Writes the noise at count points of the plane z = 0 into out; out may be
+	 * xs or ys
+	 *
+	 * @param xs    the x coordinates of the points
+	 * @param ys    the y coordinates of the points
+	 * @param out   where to write the noise
+	 * @param count the number of points
+	 */
+	public void noise(double[] xs, double[] ys, double[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			out[i] = noise(xs[i], ys[i]);
+		}
+	}
+
+	/**
+	 * Writes the noise at count points in space into out; out may be one of the
+	 * coordinate arrays
+	 *
+	 * @param xs    the x coordinates of the points
+	 * @param ys    the y coordinates of the points
+	 * @param zs    the z coordinates of the points
+	 * @param out   where to write the noise
+	 * @param count the number of points
+	 */
+	public void noise(double[] xs, double[] ys, double[] zs, double[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			out[i] = noise(xs[i], ys[i], zs[i]);
+		}
+	}
+
+	/**
+	 * Returns fractional Brownian motion at a point of the plane: the sum of
+	 * octaves of noise, each at twice the frequency and half the amplitude of
+	 * the last, divided by the sum of their amplitudes
+	 *
+	 * @param x       the x coordinate
+	 * @param y       the y coordinate
+	 * @param octaves the number of octaves, at least 1
+	 * @return the sum, in about [-1, 1]
+	 */
+	public double fbm(double x, double y, int octaves) {
+		double sum = 0;
+		double amplitude = 1;
+		double total = 0;
+		for (int octave = 0; octave < octaves; octave++) {
+			sum += amplitude * noise(x, y);
+			total += amplitude;
+			x *= LACUNARITY;
+			y *= LACUNARITY;
+			amplitude *= GAIN;
+		}
+		return sum / total;
+	}
+
+	/**
+	 * Returns turbulence at a point of the plane: fbm of the absolute value of
+	 * the noise, which creases where the noise crosses zero, stretched from [0,
+	 * 1] to [-1, 1]
+	 *
+	 * @param x       the x coordinate
+	 * @param y       the y coordinate
+	 * @param octaves the number of octaves, at least 1
+	 * @return the sum, in [-1, 1]
+	 */
+	public double turbulence(double x, double y, int octaves) {
+		double sum = 0;
+		double amplitude = 1;
+		double total = 0;
+		for (int octave = 0; octave < octaves; octave++) {
+			sum += amplitude * Math.abs(noise(x, y));
+			total += amplitude;
+			x *= LACUNARITY;
+			y *= LACUNARITY;
+			amplitude *= GAIN;
+		}
+		return 2 * sum / total - 1;
+	}
+
+	/**
+	 * Writes fbm(xs[i], ys[i], octaves) into out[i] for count points; out may be
+	 * xs or ys
+	 *
+	 * @param xs      the x coordinates of the points
+	 * @param ys      the y coordinates of the points
+	 * @param out     where to write the sums
+	 * @param count   the number of points
+	 * @param octaves the number of octaves, at least 1
+	 */
+	public void fbm(double[] xs, double[] ys, double[] out, int count, int octaves) {
+		for (int i = 0; i < count; i++) {
+			out[i] = fbm(xs[i], ys[i], octaves);
+		}
+	}
+
+	/**
+	 * Writes turbulence(xs[i], ys[i], octaves) into out[i] for count points; out
+	 * may be xs or ys
+	 *
+	 * @param xs      the x coordinates of the points
+	 * @param ys      the y coordinates of the points
+	 * @param out     where to write the sums
+	 * @param count   the number of points
+	 * @param octaves the number of octaves, at least 1
+	 */
+	public void turbulence(double[] xs, double[] ys, double[] out, int count, int octaves) {
+		for (int i = 0; i < count; i++) {
+			out[i] = turbulence(xs[i], ys[i], octaves);
+		}
+	}
+
+	/**
+	 * Returns the largest int not greater than value, for values within the
+	 * range of an int
+	 */
+	private static int floor(double value) {
+		int truncated = (int) value;
+		return value < truncated ? truncated - 1 : truncated;
+	}
+
+	private static double fade(double t) {
+		return t * t * t * (t * (t * 6 - 15) + 10);
+	}
+
+	private static double lerp(double t, double a, double b) {
+		return a + t * (b - a);
+	}
+
+	private static double grad(int hash, double x, double y, double z) {
+		int h = hash & 15;
+		return GRADIENT_X[h] * x + GRADIENT_Y[h] * y + GRADIENT_Z[h] * z;
+	}
+
+	private static double grad(int hash, double x, double y) {
+		int h = hash & 15;
+		return GRADIENT_X[h] * x + GRADIENT_Y[h] * y;
+	}
+}
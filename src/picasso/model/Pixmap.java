@@ -3,6 +3,7 @@ package picasso.model;
 import java.awt.*;
 import java.awt.image.*;
 import java.io.*;
+import java.util.Arrays;
 import javax.imageio.*;
 
 /**
@@ -121,6 +122,31 @@ public class Pixmap {
 		return new Dimension(mySize);
 	}
 
+	/**
+	 * Returns false if this pixmap was created from a file that could not be read
+	 */
+	boolean isLoaded() {
+		return myImage != null;
+	}
+
+	/**
+	 * Returns the width of the image, without copying its size
+	 * 
+	 * @return the width of the image
+	 */
+	public int getWidth() {
+		return mySize.width;
+	}
+
+	/**
+	 * Returns the height of the image, without copying its size
+	 * 
+	 * @return the height of the image
+	 */
+	public int getHeight() {
+		return mySize.height;
+	}
+
 	/**
 	 * Returns the color of the pixel at the given (x,y) coordinate if the
 	 * coordinate is within the bounds of the image; otherwise returns the default
@@ -140,8 +166,83 @@ public class Pixmap {
 	}
 
 	public void setColor(int x, int y, Color value) {
+		setRGB(x, y, value.getRGB());
+	}
+
+	/**
+	 * Returns the color of the pixel at the given (x,y) coordinate packed as an
+	 * ARGB int, or the default color if the coordinate is out of bounds. Unlike
+	 * getColor, this does not create a Color object.
+	 * 
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the packed color of the pixel at the given (x,y) coordinate
+	 */
+	public int getRGB(int x, int y) {
+		if (isInBounds(x, y))
+			return myImage.getRGB(x, y);
+		else
+			return DEFAULT_COLOR.getRGB();
+	}
+
+	/**
+	 * Sets the color of the pixel at the given (x,y) coordinate, if it is within
+	 * the bounds of the image
+	 * 
+	 * @param x     the x coordinate
+	 * @param y     the y coordinate
+	 * @param value the color packed as an ARGB int
+	 */
+	public void setRGB(int x, int y, int value) {
 		if (isInBounds(x, y)) {
-			myImage.setRGB(x, y, value.getRGB());
+			myImage.setRGB(x, y, value);
+		}
+	}
+
+	/**
+	 * Sets the colors of a rectangle of pixels at once. The color of pixel (x + i,
+	 * y + j) is read from argb[offset + j * scanSize + i]. The part of the
+	 * rectangle outside the image is ignored.
+	 * 
+	 * Images created by Pixmap store their pixels in an int array, which the rows
+	 * are copied straight into; other images are written through
+	 * BufferedImage.setRGB.
+	 * 
+	 * @param x        the x coordinate of the upper left pixel
+	 * @param y        the y coordinate of the upper left pixel
+	 * @param width    the width of the rectangle
+	 * @param height   the height of the rectangle
+	 * @param argb     the colors packed as ARGB ints
+	 * @param offset   the index in argb of the upper left pixel's color
+	 * @param scanSize the distance in argb from one row of the rectangle to the
+	 *                 next
+	 */
+	public void setRGB(int x, int y, int width, int height, int[] argb, int offset, int scanSize) {
+		int left = Math.max(x, 0);
+		int top = Math.max(y, 0);
+		int right = Math.min(x + width, mySize.width);
+		int bottom = Math.min(y + height, mySize.height);
+		if (left >= right || top >= bottom) {
+			return;
+		}
+		offset += (top - y) * scanSize + (left - x);
+		int columns = right - left;
+
+		WritableRaster raster = myImage.getRaster();
+		int type = myImage.getType();
+		if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+				&& raster.getDataBuffer() instanceof DataBufferInt buffer
+				&& raster.getSampleModel() instanceof SinglePixelPackedSampleModel model) {
+			// a subimage shares its parent's array, so find the rectangle within it
+			int[] pixels = buffer.getData();
+			int stride = model.getScanlineStride();
+			int start = buffer.getOffset() + model.getOffset(left - raster.getSampleModelTranslateX(),
+					top - raster.getSampleModelTranslateY());
+			for (int row = 0; row < bottom - top; row++) {
+				System.arraycopy(argb, offset + row * scanSize, pixels, start + row * stride, columns);
+			}
+		} else {
+			myImage.setRGB(left, top, columns, bottom - top, argb, offset, scanSize);
 		}
 	}
 
@@ -189,12 +290,32 @@ public class Pixmap {
 	 */
 	public void write(String fileName) {
 		try {
-			ImageIO.write(myImage, "jpg", new File(fileName));
+			write(fileName, "jpg");
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Write the current image to a file in the given format
+	 * 
+	 * @param fileName   the name of the file to write the image to
+	 * @param formatName the informal name of the format, such as "png" or "jpg"
+	 * @throws IOException if the image cannot be written
+	 */
+	public void write(String fileName, String formatName) throws IOException {
+		if (!ImageIO.write(myImage, formatName, new File(fileName))) {
+			throw new IOException("No writer for format " + formatName);
+		}
+	}
+
+	/**
+	 * Returns the image itself, e.g., for an encoder to write
+	 */
+	BufferedImage getImage() {
+		return myImage;
+	}
+
 	public void paint(Graphics pen) {
 		pen.drawImage(myImage, 0, 0, mySize.width, mySize.height, null);
 	}
@@ -203,9 +324,12 @@ public class Pixmap {
 		myFileName = DEFAULT_NAME;
 		myImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
 		mySize = new Dimension(width, height);
-		for( int i=0; i < width; i++ ) {
-			for(int j=0; j<width; j++ ) {
-				setColor(i, j, color);
+		if ((color.getRGB() & 0xFFFFFF) != 0) {
+			// new images are already black
+			int[] row = new int[width];
+			Arrays.fill(row, color.getRGB());
+			for (int j = 0; j < height; j++) {
+				setRGB(0, j, width, 1, row, 0, width);
 			}
 		}
 	}
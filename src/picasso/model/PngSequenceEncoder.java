@@ -0,0 +1,50 @@
+package picasso.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes each frame of an animation to its own numbered PNG file, e.g.,
+ * frame-0001.png, frame-0002.png, and so on.
+ */
+public class PngSequenceEncoder implements FrameEncoder {
+
+	private final Path directory;
+	private final String prefix;
+
+	/**
+	 * Create an encoder that writes directory/prefix-NNNN.png for each frame
+	 *
+	 * @param directory where to write the files
+	 * @param prefix    the start of each file's name
+	 */
+	public PngSequenceEncoder(Path directory, String prefix) {
+		this.directory = directory;
+		this.prefix = prefix;
+	}
+
+	@Override
+	public void begin(int width, int height, double framesPerSecond) throws IOException {
+		Files.createDirectories(directory);
+	}
+
+	@Override
+	public void encode(int index, Pixmap frame) throws IOException {
+		frame.write(getFile(index).toString(), "png");
+	}
+
+	@Override
+	public void finish() {
+	}
+
+	/**
+	 * Returns the file the frame with the given index is written to
+	 *
+	 * @param index the number of the frame, starting at 0
+	 * @return the frame's file
+	 */
+	public Path getFile(int index) {
+		return directory.resolve(String.format("%s-%04d.png", prefix, index + 1));
+	}
+}
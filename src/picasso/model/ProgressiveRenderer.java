@@ -0,0 +1,251 @@
+package picasso.model;
+
+import java.awt.Dimension;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import picasso.parser.language.EvaluationContext;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+import picasso.util.CancellationToken;
+
+/**
+ * Renders an expression coarse to fine so that a preview appears quickly. The
+ * first pass evaluates every 16th pixel in each direction and paints each as a
+ * 16 by 16 block; later passes halve the spacing (to 4, 2, and finally 1) and
+ * only evaluate the pixels that earlier passes did not, so every pixel is
+ * evaluated once. The last pass leaves exactly the image TileRenderer draws.
+ *
+ * Starting a render, or calling cancel, stops the render in progress at the
+ * end of the row it is on, so a new expression never waits for more than a
+ * row of the old one.
+ */
+public class ProgressiveRenderer {
+
+	/** the spacing, in pixels, of the samples evaluated in each pass */
+	public static final int[] STEPS = { 16, 4, 2, 1 };
+
+	private static final int ROWS_PER_TASK = 4;
+
+	private final ForkJoinPool pool;
+	private final IntConsumer listener;
+	private final AtomicLong generation = new AtomicLong();
+
+	/**
+	 * Create a renderer that uses the common fork-join pool.
+	 *
+	 * @param listener called with the step of each pass once it is painted
+	 */
+	public ProgressiveRenderer(IntConsumer listener) {
+		this(ForkJoinPool.commonPool(), listener);
+	}
+
+	/**
+	 * Create a renderer that evaluates rows on the given pool.
+	 *
+	 * @param pool     the pool to run rows on
+	 * @param listener called with the step of each pass once it is painted (e.g.,
+	 *                 to repaint the view)
+	 */
+	public ProgressiveRenderer(ForkJoinPool pool, IntConsumer listener) {
+		this.pool = pool;
+		this.listener = listener;
+	}
+
+	/**
+	 * Stops the render in progress, if any
+	 */
+	public void cancel() {
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * Render the expression into the target, one pass at a time, cancelling any
+	 * render already in progress. Returns once the last pass is painted or the
+	 * render is cancelled.
+	 *
+	 * @param expr   the expression to evaluate
+	 * @param target the pixmap to draw into
+	 * @return true if every pass was painted, false if the render was cancelled
+	 */
+	public boolean render(ExpressionTreeNode expr, Pixmap target) {
+		return render(expr, target, CancellationToken.NONE);
+	}
+
+	/**
+	 * Render the expression into the target, one pass at a time, cancelling any
+	 * render already in progress and stopping early if the token is cancelled.
+	 * The expression is evaluated in the context bound to the calling thread.
+	 *
+	 * @param expr   the expression to evaluate
+	 * @param target the pixmap to draw into
+	 * @param token  tells the render to stop early
+	 * @return true if every pass was painted, false if the render was cancelled
+	 */
+	public boolean render(ExpressionTreeNode expr, Pixmap target, CancellationToken token) {
+		return render(expr, target, token, colors -> {
+		});
+	}
+
+	/**
+	 * Render the expression into the target, one pass at a time, as above, and
+	 * once the last pass is painted hand the finished image to the given
+	 * consumer (e.g., to cache its tiles).
+	 *
+	 * @param expr     the expression to evaluate
+	 * @param target   the pixmap to draw into
+	 * @param token    tells the render to stop early
+	 * @param finished called with the colors of every pixel packed as ARGB ints,
+	 *                 row by row, unless the render is cancelled
+	 * @return true if every pass was painted, false if the render was cancelled
+	 */
+	public boolean render(ExpressionTreeNode expr, Pixmap target, CancellationToken token, Consumer<int[]> finished) {
+		long id = generation.incrementAndGet();
+		Dimension size = target.getSize();
+		if (size.width <= 0 || size.height <= 0) {
+			return true;
+		}
+		// every pass evaluates in the final image's context, so it ends with the same pixels
+		EvaluationContext context = EvaluationContext.current().withImageSize(size.width, size.height);
+		int[] colors = new int[size.width * size.height];
+		double[] domainX = domainCoordinates(size.width);
+		double[] domainY = domainCoordinates(size.height);
+
+		int previous = 0;
+		for (int step : STEPS) {
+			Pass pass = new Pass(id, context, token, expr, target, size, colors, domainX, domainY, step, previous);
+			pool.invoke(new RowTask(pass, 0, (size.height + step - 1) / step));
+			if (pass.isCancelled()) {
+				return false;
+			}
+			listener.accept(step);
+			previous = step;
+		}
+		if (generation.get() != id || token.isCancelled()) {
+			return false;
+		}
+		finished.accept(colors);
+		return true;
+	}
+
+	private static double[] domainCoordinates(int bounds) {
+		double[] coords = new double[bounds];
+		for (int i = 0; i < bounds; i++) {
+			coords[i] = TileRenderer.imageToDomainScale(i, bounds);
+		}
+		return coords;
+	}
+
+	/**
+	 * One pass of a render: evaluates the samples spaced step pixels apart that
+	 * the previous pass did not, and paints a step by step block for every sample.
+	 */
+	private class Pass {
+		final long id;
+		final EvaluationContext context;
+		final CancellationToken token;
+		final ExpressionTreeNode expr;
+		final Pixmap target;
+		final int width;
+		final int height;
+		final int[] colors;
+		final double[] domainX;
+		final double[] domainY;
+		final int step;
+		final int previous;
+
+		Pass(long id, EvaluationContext context, CancellationToken token, ExpressionTreeNode expr, Pixmap target,
+				Dimension size, int[] colors, double[] domainX, double[] domainY, int step, int previous) {
+			this.id = id;
+			this.context = context;
+			this.token = token;
+			this.expr = expr;
+			this.target = target;
+			this.width = size.width;
+			this.height = size.height;
+			this.colors = colors;
+			this.domainX = domainX;
+			this.domainY = domainY;
+			this.step = step;
+			this.previous = previous;
+		}
+
+		boolean isCancelled() {
+			return generation.get() != id || token.isCancelled();
+		}
+
+		/**
+		 * Evaluate and paint the rows of samples from start to end in the render's
+		 * context
+		 */
+		void renderRows(int start, int end) {
+			context.run(() -> renderRowsInContext(start, end));
+		}
+
+		private void renderRowsInContext(int start, int end) {
+			int samplesAcross = (width + step - 1) / step;
+			double[] xs = new double[samplesAcross];
+			double[] ys = new double[samplesAcross];
+			int[] positions = new int[samplesAcross];
+			double[][] planes = new double[expr.getScratchSize()][samplesAcross];
+			int[] pixels = new int[width * step];
+
+			for (int row = start; row < end && !isCancelled(); row++) {
+				int y = row * step;
+				boolean rowSampled = previous != 0 && y % previous == 0;
+				int count = 0;
+				for (int x = 0; x < width; x += step) {
+					if (!rowSampled || x % previous != 0) {
+						xs[count] = domainX[x];
+						positions[count++] = x;
+					}
+				}
+				Arrays.fill(ys, 0, count, domainY[y]);
+				expr.evaluate(xs, ys, count, planes, 0);
+				for (int i = 0; i < count; i++) {
+					colors[y * width + positions[i]] = RGBColor.toRGB(planes[0][i], planes[1][i], planes[2][i]);
+				}
+
+				int blockHeight = Math.min(step, height - y);
+				for (int x = 0; x < width; x += step) {
+					Arrays.fill(pixels, x, Math.min(x + step, width), colors[y * width + x]);
+				}
+				for (int j = 1; j < blockHeight; j++) {
+					System.arraycopy(pixels, 0, pixels, j * width, width);
+				}
+				target.setRGB(0, y, width, blockHeight, pixels, 0, width);
+			}
+		}
+	}
+
+	/**
+	 * Renders a contiguous range of sample rows, splitting the range in half until
+	 * a few rows are left so that idle workers can steal the other half.
+	 */
+	@SuppressWarnings("serial")
+	private static class RowTask extends RecursiveAction {
+		private final Pass pass;
+		private final int start;
+		private final int end;
+
+		RowTask(Pass pass, int start, int end) {
+			this.pass = pass;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= ROWS_PER_TASK) {
+				pass.renderRows(start, end);
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new RowTask(pass, start, middle), new RowTask(pass, middle, end));
+		}
+	}
+}
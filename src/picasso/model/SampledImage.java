@@ -0,0 +1,401 @@
+package picasso.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * An image prepared for expressions to read: its colors copied once into a
+ * contiguous array of bytes, red, green, and blue interleaved row by row, and
+ * read through a table of the 256 samples in [-1, 1] they stand for, so that
+ * reading a color neither copies the image's size, creates a Color, nor divides
+ * by 255. The table holds exactly what Color's components convert to, so the
+ * nearest pixel of the image comes back as the color it has.
+ *
+ * Points are given in the domain [-1, 1], which is stretched over the image so
+ * that -1 and 1 fall on the centers of its first and last pixels. Between
+ * pixels, the color is chosen by a Filter. Sampling allocates nothing, so it
+ * can be done for every pixel of every frame.
+ *
+ * Each image has a mip pyramid: copies of it at half, a quarter, and so on of
+ * its size, down to a single pixel, each pixel the average of the (up to) four
+ * pixels below it, rounded to the nearest byte. An image shrunk on screen reads the level with about one
+ * pixel per screen pixel, which aliases less than skipping pixels of the full
+ * image and keeps the pixels read close together in memory. The pyramid is
+ * built the first time a level is asked for, and takes a third more memory.
+ *
+ * An image too large to keep on the heap (see ImageCache) has its samples in a
+ * memory-mapped file instead (see TiledSamples), in the same bytes, which are
+ * read in as they are sampled; so do the levels of its pyramid that are too
+ * large.
+ *
+ * The samples are not changed once made, so a SampledImage can be shared
+ * between expressions and threads.
+ */
+public final class SampledImage {
+
+	/**
+	 * How to choose the color between the centers of pixels
+	 */
+	public enum Filter {
+		/** the color of the nearest pixel */
+		NEAREST,
+		/** a weighted average of the four nearest pixels */
+		BILINEAR,
+		/**
+		 * a Catmull-Rom spline through the sixteen nearest pixels, which is
+		 * sharper than bilinear when the image is magnified
+		 */
+		BICUBIC;
+
+		/**
+		 * Returns the filter with the given name, ignoring case
+		 *
+		 * @param name the name, e.g., "bilinear"
+		 * @return the filter, or null if there is none with that name
+		 */
+		public static Filter forName(String name) {
+			for (Filter filter : values()) {
+				if (filter.name().equalsIgnoreCase(name)) {
+					return filter;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	private static final int CHANNELS = 3;
+	// the largest level of a mapped image's pyramid that is kept on the heap
+	private static final long MAX_HEAP_PIXELS = 1 << 20;
+
+	// the sample each byte stands for, as the color's component / 255 in [-1, 1]
+	private static final double[] SAMPLES = new double[256];
+
+	static {
+		for (int i = 0; i < SAMPLES.length; i++) {
+			SAMPLES[i] = (i / 255.0) * 2.0 - 1.0;
+		}
+	}
+
+	private final int width;
+	private final int height;
+	// the samples, as bytes, or null if they are mapped from a file
+	private final byte[] samples;
+	// the samples mapped from a file, or null if they are on the heap
+	private final TiledSamples tiles;
+	// this image, then each level of the pyramid; built when first needed
+	private volatile SampledImage[] levels;
+
+	/**
+	 * Create the samples of the given image
+	 *
+	 * @param image the image, which is read once
+	 */
+	public SampledImage(Pixmap image) {
+		this.width = Math.max(1, image.getWidth());
+		this.height = Math.max(1, image.getHeight());
+		this.samples = new byte[CHANNELS * width * height];
+		this.tiles = null;
+		int index = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int pixel = image.getRGB(x, y);
+				samples[index++] = (byte) (pixel >> 16);
+				samples[index++] = (byte) (pixel >> 8);
+				samples[index++] = (byte) pixel;
+			}
+		}
+	}
+
+	/**
+	 * Create the samples of an image mapped from a file
+	 *
+	 * @param tiles the mapped samples
+	 */
+	SampledImage(TiledSamples tiles) {
+		this.width = tiles.getWidth();
+		this.height = tiles.getHeight();
+		this.samples = null;
+		this.tiles = tiles;
+	}
+
+	/**
+	 * Create the next level of a pyramid: half the size of the finer level,
+	 * rounded up, with each pixel the average of the pixels it covers. The level
+	 * is mapped from a file next to the finer level's if that is mapped and this
+	 * is too large for the heap.
+	 */
+	private SampledImage(SampledImage finer) {
+		int width = (finer.width + 1) / 2;
+		int height = (finer.height + 1) / 2;
+		this.width = width;
+		this.height = height;
+		if (finer.tiles != null && (long) width * height > MAX_HEAP_PIXELS) {
+			Path file = finer.tiles.getFile();
+			try {
+				this.tiles = TiledSamples.create(file.resolveSibling(file.getFileName() + ".half"), width, height,
+						(y, rgb) -> {
+							for (int x = 0; x < width; x++) {
+								rgb[x] = finer.average(x, y, 0) << 16 | finer.average(x, y, 1) << 8
+										| finer.average(x, y, 2);
+							}
+						});
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			this.samples = null;
+		} else {
+			this.samples = new byte[CHANNELS * width * height];
+			this.tiles = null;
+			int index = 0;
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					for (int c = 0; c < CHANNELS; c++) {
+						samples[index++] = (byte) finer.average(x, y, c);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the average of a component of the (up to) four pixels of this
+	 * image that pixel (x, y) of the next level covers, as the nearest byte
+	 */
+	private int average(int x, int y, int channel) {
+		int left = 2 * x;
+		int right = Math.min(2 * x + 1, width - 1);
+		int top = 2 * y;
+		int bottom = Math.min(2 * y + 1, height - 1);
+		// rounds halves up, as Math.round does
+		return (byteAt(index(left, top) + channel) + byteAt(index(right, top) + channel)
+				+ byteAt(index(left, bottom) + channel) + byteAt(index(right, bottom) + channel) + 2) / 4;
+	}
+
+	/**
+	 * Returns a level of the image's mip pyramid, building the pyramid if it has
+	 * not been built
+	 *
+	 * @param level the level: 0 for this image, 1 for half its size, and so on;
+	 *              levels past the last give the last, a single pixel
+	 * @return the image at that level
+	 */
+	public SampledImage getLevel(int level) {
+		if (level <= 0) {
+			return this;
+		}
+		SampledImage[] pyramid = levels();
+		return pyramid[Math.min(level, pyramid.length - 1)];
+	}
+
+	/**
+	 * Returns the number of levels in the image's mip pyramid, including the
+	 * image itself
+	 *
+	 * @return the number of levels
+	 */
+	public int getLevelCount() {
+		return levels().length;
+	}
+
+	private SampledImage[] levels() {
+		SampledImage[] pyramid = levels;
+		if (pyramid == null) {
+			synchronized (this) {
+				pyramid = levels;
+				if (pyramid == null) {
+					pyramid = buildLevels();
+					levels = pyramid;
+				}
+			}
+		}
+		return pyramid;
+	}
+
+	private SampledImage[] buildLevels() {
+		int count = 1;
+		for (int size = Math.max(width, height); size > 1; size = (size + 1) / 2) {
+			count++;
+		}
+		SampledImage[] pyramid = new SampledImage[count];
+		pyramid[0] = this;
+		for (int level = 1; level < count; level++) {
+			pyramid[level] = new SampledImage(pyramid[level - 1]);
+		}
+		return pyramid;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the number of bytes of the heap the samples of this level take:
+	 * none, if they are mapped from a file
+	 *
+	 * @return the size of the samples
+	 */
+	public long getBytes() {
+		return samples == null ? 0 : samples.length;
+	}
+
+	/**
+	 * Returns true if the samples of this level are mapped from a file rather
+	 * than kept on the heap
+	 *
+	 * @return whether the samples are mapped
+	 */
+	public boolean isMapped() {
+		return tiles != null;
+	}
+
+	/**
+	 * Writes the color of the image at the given point into out[offset],
+	 * out[offset + 1], and out[offset + 2]. Points outside [-1, 1] are read at
+	 * the nearest edge.
+	 *
+	 * @param x      the x coordinate, in [-1, 1]
+	 * @param y      the y coordinate, in [-1, 1]
+	 * @param filter how to choose the color between pixels
+	 * @param out    where to write the color
+	 * @param offset the index of the red component in out
+	 */
+	public void sample(double x, double y, Filter filter, double[] out, int offset) {
+		sample(x, y, filter, out, offset, out, offset + 1, out, offset + 2);
+	}
+
+	/**
+	 * Writes the color of the image at the given point into red[index],
+	 * green[index], and blue[index], as planes of a batch are laid out
+	 *
+	 * @param x      the x coordinate, in [-1, 1]
+	 * @param y      the y coordinate, in [-1, 1]
+	 * @param filter how to choose the color between pixels
+	 * @param red    where to write the red component
+	 * @param green  where to write the green component
+	 * @param blue   where to write the blue component
+	 * @param index  the index of the point in the planes
+	 */
+	public void sample(double x, double y, Filter filter, double[] red, double[] green, double[] blue,
+			int index) {
+		sample(x, y, filter, red, index, green, index, blue, index);
+	}
+
+	private void sample(double x, double y, Filter filter, double[] red, int redIndex, double[] green,
+			int greenIndex, double[] blue, int blueIndex) {
+		double u = toPixel(x, width);
+		double v = toPixel(y, height);
+		// one small method per filter, so that the common ones are inlined
+		if (filter == Filter.NEAREST) {
+			nearest(u, v, red, redIndex, green, greenIndex, blue, blueIndex);
+		} else if (filter == Filter.BILINEAR) {
+			bilinear(u, v, red, redIndex, green, greenIndex, blue, blueIndex);
+		} else {
+			bicubic(u, v, red, redIndex, green, greenIndex, blue, blueIndex);
+		}
+	}
+
+	private void nearest(double u, double v, double[] red, int redIndex, double[] green, int greenIndex,
+			double[] blue, int blueIndex) {
+		// rounds as Math.round does, since u and v are not negative
+		int i = index((int) (u + 0.5), (int) (v + 0.5));
+		red[redIndex] = component(i);
+		green[greenIndex] = component(i + 1);
+		blue[blueIndex] = component(i + 2);
+	}
+
+	private void bilinear(double u, double v, double[] red, int redIndex, double[] green, int greenIndex,
+			double[] blue, int blueIndex) {
+		int x0 = (int) u;
+		int y0 = (int) v;
+		double fx = u - x0;
+		double fy = v - y0;
+		int x1 = Math.min(x0 + 1, width - 1);
+		int y1 = Math.min(y0 + 1, height - 1);
+		int i00 = index(x0, y0);
+		int i10 = index(x1, y0);
+		int i01 = index(x0, y1);
+		int i11 = index(x1, y1);
+		red[redIndex] = bilinear(i00, i10, i01, i11, fx, fy);
+		green[greenIndex] = bilinear(i00 + 1, i10 + 1, i01 + 1, i11 + 1, fx, fy);
+		blue[blueIndex] = bilinear(i00 + 2, i10 + 2, i01 + 2, i11 + 2, fx, fy);
+	}
+
+	private void bicubic(double u, double v, double[] red, int redIndex, double[] green, int greenIndex,
+			double[] blue, int blueIndex) {
+		int x0 = (int) u;
+		int y0 = (int) v;
+		double fx = u - x0;
+		double fy = v - y0;
+		double wx0 = cubic(fx + 1), wx1 = cubic(fx), wx2 = cubic(1 - fx), wx3 = cubic(2 - fx);
+		double r = 0, g = 0, b = 0;
+		for (int j = -1; j <= 2; j++) {
+			int row = Math.clamp(y0 + j, 0, height - 1);
+			int i0 = index(Math.max(x0 - 1, 0), row);
+			int i1 = index(x0, row);
+			int i2 = index(Math.min(x0 + 1, width - 1), row);
+			int i3 = index(Math.min(x0 + 2, width - 1), row);
+			double wy = cubic(Math.abs(fy - j));
+			r += wy * (wx0 * component(i0) + wx1 * component(i1) + wx2 * component(i2) + wx3 * component(i3));
+			g += wy * (wx0 * component(i0 + 1) + wx1 * component(i1 + 1) + wx2 * component(i2 + 1) + wx3 * component(i3 + 1));
+			b += wy * (wx0 * component(i0 + 2) + wx1 * component(i1 + 2) + wx2 * component(i2 + 2) + wx3 * component(i3 + 2));
+		}
+		// the spline overshoots at sharp edges
+		red[redIndex] = Math.clamp(r, -1.0, 1.0);
+		green[greenIndex] = Math.clamp(g, -1.0, 1.0);
+		blue[blueIndex] = Math.clamp(b, -1.0, 1.0);
+	}
+
+	private double bilinear(int i00, int i10, int i01, int i11, double fx, double fy) {
+		double top = component(i00) + fx * (component(i10) - component(i00));
+		double bottom = component(i01) + fx * (component(i11) - component(i01));
+		return top + fy * (bottom - top);
+	}
+
+	/**
+	 * Returns the index of the red sample of a pixel; its green and blue samples
+	 * follow it
+	 */
+	private int index(int x, int y) {
+		return tiles == null ? CHANNELS * (y * width + x) : tiles.index(x, y);
+	}
+
+	private double component(int index) {
+		return SAMPLES[byteAt(index)];
+	}
+
+	private int byteAt(int index) {
+		return tiles == null ? samples[index] & 0xFF : tiles.get(index);
+	}
+
+	/**
+	 * Returns the Catmull-Rom weight of a pixel at the given distance
+	 */
+	private static double cubic(double distance) {
+		if (distance < 1) {
+			return (1.5 * distance - 2.5) * distance * distance + 1;
+		}
+		return ((-0.5 * distance + 2.5) * distance - 4) * distance + 2;
+	}
+
+	/**
+	 * Maps a coordinate in [-1, 1] to a pixel coordinate in [0, size - 1]; NaN
+	 * maps to 0, as rounding it would
+	 */
+	private static double toPixel(double coordinate, int size) {
+		double pixel = ((coordinate + 1.0) / 2.0) * (size - 1);
+		if (!(pixel >= 0)) {
+			return 0;
+		}
+		return Math.min(pixel, size - 1);
+	}
+}
@@ -0,0 +1,433 @@
+package picasso.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import picasso.parser.language.EvaluationContext;
+
+/**
+ * A process-wide cache of rendered tiles, so that drawing an expression again
+ * at the same size (from the history, or the same frame of an animation) only
+ * computes the tiles that are not already cached.
+ *
+ * A tile is identified by the key of the compiled expression that drew it (see
+ * CompiledExpression.getKey), the rectangle of the domain it covers, its size
+ * in pixels, and the time it was drawn at. Its pixels are kept packed as ARGB
+ * ints. The cache holds tiles up to a budget of bytes (four per pixel) and
+ * evicts the least recently used tiles to stay within it. The budget is 64 MB
+ * unless the picasso.tileCache.bytes system property sets it.
+ *
+ * If the cache has a directory (set by the picasso.tileCache.dir system
+ * property for the shared cache), every tile is also written there, one file
+ * per tile, and tiles evicted from memory are read back from it, even in later
+ * runs. Nothing is removed from the directory except by clear().
+ *
+ * The cached arrays are shared, so they must not be modified.
+ */
+public class TileCache {
+
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	private static final String SUFFIX = ".tile";
+
+	private static TileCache ourInstance;
+
+	private final LinkedHashMap<Key, int[]> tiles = new LinkedHashMap<Key, int[]>(16, 0.75f, true);
+	private final Path directory;
+	private long maxBytes;
+	private long currentBytes;
+	private long hits;
+	private long diskHits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Identifies one rendered tile
+	 */
+	public static final class Key {
+		private final String expression;
+		private final double minX;
+		private final double maxX;
+		private final double minY;
+		private final double maxY;
+		private final int width;
+		private final int height;
+		private final double time;
+
+		/**
+		 * Create the key of a tile
+		 *
+		 * @param expression the key of the compiled expression
+		 * @param minX       the domain x coordinate of the tile's left column
+		 * @param maxX       the domain x coordinate just past its right column
+		 * @param minY       the domain y coordinate of its top row
+		 * @param maxY       the domain y coordinate just past its bottom row
+		 * @param width      the width of the tile, in pixels
+		 * @param height     the height of the tile, in pixels
+		 * @param time       the time the tile is drawn at
+		 */
+		public Key(String expression, double minX, double maxX, double minY, double maxY, int width, int height,
+				double time) {
+			this.expression = expression;
+			this.minX = minX;
+			this.maxX = maxX;
+			this.minY = minY;
+			this.maxY = maxY;
+			this.width = width;
+			this.height = height;
+			this.time = time;
+		}
+
+		/**
+		 * Returns the key of the tile of an image that starts at the given pixel.
+		 * The tile's domain rectangle is found as TileRenderer maps pixels to the
+		 * domain.
+		 *
+		 * @param expression  the key of the compiled expression
+		 * @param imageWidth  the width of the whole image, in pixels
+		 * @param imageHeight the height of the whole image, in pixels
+		 * @param startX      the x coordinate of the tile's upper left pixel
+		 * @param startY      the y coordinate of the tile's upper left pixel
+		 * @param width       the width of the tile, in pixels
+		 * @param height      the height of the tile, in pixels
+		 * @param context     the context the tile is drawn in
+		 * @return the key
+		 */
+		public static Key of(String expression, int imageWidth, int imageHeight, int startX, int startY, int width,
+				int height, EvaluationContext context) {
+			return new Key(expression, TileRenderer.imageToDomainScale(startX, imageWidth),
+					TileRenderer.imageToDomainScale(startX + width, imageWidth),
+					TileRenderer.imageToDomainScale(startY, imageHeight),
+					TileRenderer.imageToDomainScale(startY + height, imageHeight), width, height, context.getTime());
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return expression.equals(other.expression) && Double.compare(minX, other.minX) == 0
+					&& Double.compare(maxX, other.maxX) == 0 && Double.compare(minY, other.minY) == 0
+					&& Double.compare(maxY, other.maxY) == 0 && width == other.width && height == other.height
+					&& Double.compare(time, other.time) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = expression.hashCode();
+			hash = 31 * hash + Double.hashCode(minX);
+			hash = 31 * hash + Double.hashCode(maxX);
+			hash = 31 * hash + Double.hashCode(minY);
+			hash = 31 * hash + Double.hashCode(maxY);
+			hash = 31 * hash + width;
+			hash = 31 * hash + height;
+			return 31 * hash + Double.hashCode(time);
+		}
+
+		@Override
+		public String toString() {
+			return expression + " [" + minX + ", " + maxX + ") x [" + minY + ", " + maxY + ") " + width + "x" + height
+					+ " t=" + time;
+		}
+
+		/**
+		 * Returns the name of the file the tile is kept in on disk
+		 */
+		String fileName() {
+			try {
+				MessageDigest sha = MessageDigest.getInstance("SHA-256");
+				return HexFormat.of().formatHex(sha.digest(toString().getBytes(StandardCharsets.UTF_8))) + SUFFIX;
+			} catch (NoSuchAlgorithmException e) {
+				// every Java platform has SHA-256
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Create a cache that holds tiles up to the given number of bytes in memory
+	 *
+	 * @param maxBytes the budget of the cache
+	 */
+	public TileCache(long maxBytes) {
+		this(maxBytes, null);
+	}
+
+	/**
+	 * Create a cache that holds tiles up to the given number of bytes in memory
+	 * and keeps every tile in the given directory
+	 *
+	 * @param maxBytes  the budget of the cache
+	 * @param directory where tiles are written, or null to keep them only in
+	 *                  memory
+	 */
+	public TileCache(long maxBytes, Path directory) {
+		this.maxBytes = maxBytes;
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the cache shared by the whole application
+	 *
+	 * @return the tile cache
+	 */
+	public static synchronized TileCache getInstance() {
+		if (ourInstance == null) {
+			String directory = System.getProperty("picasso.tileCache.dir");
+			ourInstance = new TileCache(Long.getLong("picasso.tileCache.bytes", DEFAULT_MAX_BYTES),
+					directory == null ? null : Path.of(directory));
+		}
+		return ourInstance;
+	}
+
+	/**
+	 * Returns the pixels of the tile, or null if it is not cached
+	 *
+	 * @param key identifies the tile
+	 * @return the tile's colors packed as ARGB ints, row by row
+	 */
+	public int[] get(Key key) {
+		synchronized (this) {
+			int[] pixels = tiles.get(key);
+			if (pixels != null) {
+				hits++;
+				return pixels;
+			}
+		}
+		int[] pixels = read(key);
+		synchronized (this) {
+			if (pixels == null) {
+				misses++;
+				return null;
+			}
+			diskHits++;
+			store(key, pixels);
+			return pixels;
+		}
+	}
+
+	/**
+	 * Adds a tile to the cache (and to its directory, if it has one)
+	 *
+	 * @param key    identifies the tile
+	 * @param pixels the tile's colors packed as ARGB ints, row by row, which
+	 *               must not be modified afterwards
+	 */
+	public void put(Key key, int[] pixels) {
+		if (pixels.length != key.width * key.height) {
+			throw new IllegalArgumentException("Expected " + key.width * key.height + " pixels, got " + pixels.length);
+		}
+		synchronized (this) {
+			store(key, pixels);
+		}
+		write(key, pixels);
+	}
+
+	/**
+	 * Changes the budget of the cache, evicting tiles from memory if it is now
+	 * over it
+	 *
+	 * @param maxBytes the new budget, in bytes
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	/**
+	 * Removes every tile from the cache and its directory, and resets its
+	 * counters
+	 */
+	public synchronized void clear() {
+		tiles.clear();
+		currentBytes = 0;
+		hits = 0;
+		diskHits = 0;
+		misses = 0;
+		evictions = 0;
+		if (directory != null && Files.isDirectory(directory)) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+				for (Path file : files) {
+					Files.deleteIfExists(file);
+				}
+			} catch (IOException e) {
+				System.err.println("Could not clear tile cache: " + e.getMessage());
+			}
+		}
+	}
+
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Returns the directory the cache keeps its tiles in
+	 *
+	 * @return the directory, or null if tiles are kept only in memory
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the number of bytes the tiles in memory take
+	 *
+	 * @return the size of the cached tiles
+	 */
+	public synchronized long getCurrentBytes() {
+		return currentBytes;
+	}
+
+	/**
+	 * Returns the number of tiles in memory
+	 *
+	 * @return the number of cached tiles
+	 */
+	public synchronized int size() {
+		return tiles.size();
+	}
+
+	/**
+	 * Returns the number of requests answered from memory
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests answered from the cache's directory
+	 *
+	 * @return the number of disk hits
+	 */
+	public synchronized long getDiskHits() {
+		return diskHits;
+	}
+
+	/**
+	 * Returns the number of requests for tiles that were not cached
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of tiles removed from memory to stay within the budget
+	 *
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the fraction of requests answered from memory or disk
+	 *
+	 * @return the hit ratio, or 0 if nothing has been requested
+	 */
+	public synchronized double getHitRatio() {
+		long requests = hits + diskHits + misses;
+		return requests == 0 ? 0 : (double) (hits + diskHits) / requests;
+	}
+
+	private void store(Key key, int[] pixels) {
+		long bytes = 4L * pixels.length;
+		if (bytes > maxBytes) {
+			return;
+		}
+		int[] previous = tiles.put(key, pixels);
+		if (previous != null) {
+			currentBytes -= 4L * previous.length;
+		}
+		currentBytes += bytes;
+		evict();
+	}
+
+	/**
+	 * Removes least recently used tiles until the cache is within its budget
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Key, int[]>> iterator = tiles.entrySet().iterator();
+		while (currentBytes > maxBytes && iterator.hasNext()) {
+			int[] pixels = iterator.next().getValue();
+			iterator.remove();
+			currentBytes -= 4L * pixels.length;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Reads the tile from the cache's directory, or returns null if it is not
+	 * there (or the file is not a tile of the right size)
+	 */
+	private int[] read(Key key) {
+		if (directory == null) {
+			return null;
+		}
+		Path file = directory.resolve(key.fileName());
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try {
+			IntBuffer ints = ByteBuffer.wrap(Files.readAllBytes(file)).asIntBuffer();
+			if (ints.remaining() != 2 + key.width * key.height || ints.get() != key.width
+					|| ints.get() != key.height) {
+				return null;
+			}
+			int[] pixels = new int[key.width * key.height];
+			ints.get(pixels);
+			return pixels;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the tile to the cache's directory: its width, its height, then its
+	 * pixels, as big-endian ints. The file is written under another name and
+	 * then renamed, so no one reads half a tile.
+	 */
+	private void write(Key key, int[] pixels) {
+		if (directory == null) {
+			return;
+		}
+		ByteBuffer bytes = ByteBuffer.allocate(4 * (2 + pixels.length));
+		bytes.asIntBuffer().put(key.width).put(key.height).put(pixels);
+		try {
+			Files.createDirectories(directory);
+			Path temporary = Files.createTempFile(directory, "tile", ".tmp");
+			Files.write(temporary, bytes.array());
+			Files.move(temporary, directory.resolve(key.fileName()), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Could not write tile to " + directory + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,393 @@
+package picasso.model;
+
+import java.awt.Dimension;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import picasso.parser.language.EvaluationContext;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+import picasso.util.CancellationToken;
+
+/**
+ * Renders an expression into a pixmap by splitting the image into square tiles
+ * and evaluating the tiles concurrently on a fork-join pool. Idle workers steal
+ * halves of the remaining tile range, so uneven tiles (e.g., the inside of a
+ * Mandelbrot set) do not leave cores waiting.
+ *
+ * Every pixel is computed exactly as the serial row-by-row loop computes it, so
+ * the rendered image does not depend on the tile size or the number of threads.
+ * Each row of a tile is evaluated with a single call to
+ * {@link ExpressionTreeNode#evaluate(double[], double[], int, double[][], int)},
+ * so every node runs one loop over the row instead of being called once per
+ * pixel. Each tile allocates its scratch planes once and packs its colors into
+ * an int array that is copied into the pixmap in one bulk write.
+ *
+ * A renderer with a TileCache looks up each tile of an expression that has a
+ * key before computing it, and caches the tiles it computes.
+ */
+public class TileRenderer {
+
+	public static final int DEFAULT_TILE_SIZE = 64;
+
+	public static final double DOMAIN_MIN = -1;
+	public static final double DOMAIN_MAX = 1;
+
+	private final ForkJoinPool pool;
+	private final int tileSize;
+	private final TileCache cache;
+
+	/**
+	 * Create a renderer that uses the common fork-join pool and the default tile
+	 * size.
+	 */
+	public TileRenderer() {
+		this(ForkJoinPool.commonPool(), DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Create a renderer with its own pool of the given number of threads.
+	 *
+	 * @param parallelism the number of worker threads
+	 * @param tileSize    the width and height of a tile, in pixels
+	 */
+	public TileRenderer(int parallelism, int tileSize) {
+		this(new ForkJoinPool(parallelism), tileSize);
+	}
+
+	/**
+	 * Create a renderer that runs its tiles on the given pool.
+	 *
+	 * @param pool     the pool to run tiles on
+	 * @param tileSize the width and height of a tile, in pixels
+	 */
+	public TileRenderer(ForkJoinPool pool, int tileSize) {
+		this(pool, tileSize, null);
+	}
+
+	/**
+	 * Create a renderer that runs its tiles on the given pool and keeps the tiles
+	 * it draws in the given cache.
+	 *
+	 * @param pool     the pool to run tiles on
+	 * @param tileSize the width and height of a tile, in pixels
+	 * @param cache    the cache of tiles, or null to compute every tile
+	 */
+	public TileRenderer(ForkJoinPool pool, int tileSize, TileCache cache) {
+		if (tileSize <= 0) {
+			throw new IllegalArgumentException("Tile size must be positive");
+		}
+		this.pool = pool;
+		this.tileSize = tileSize;
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the width and height of the tiles this renderer uses
+	 *
+	 * @return the tile size, in pixels
+	 */
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Evaluate the expression for each pixel of the target. Returns once every
+	 * tile has been written.
+	 *
+	 * @param expr   the expression to evaluate
+	 * @param target the pixmap to draw into
+	 */
+	public void render(ExpressionTreeNode expr, Pixmap target) {
+		render(expr, target, CancellationToken.NONE);
+	}
+
+	/**
+	 * Evaluate the expression for each pixel of the target, checking the token
+	 * before each row. Returns once every tile has been written or, soon after
+	 * the token is cancelled, once the tiles in progress have stopped; tiles that
+	 * were stopped are left as they were.
+	 *
+	 * @param expr   the expression to evaluate
+	 * @param target the pixmap to draw into
+	 * @param token  tells the render to stop early
+	 * @return true if every tile was written, false if the render was cancelled
+	 */
+	public boolean render(ExpressionTreeNode expr, Pixmap target, CancellationToken token) {
+		return render(expr, target, EvaluationContext.current(), token);
+	}
+
+	/**
+	 * Evaluate the expression for each pixel of the target in the given context
+	 * (e.g., at the time of one frame of an animation), checking the token before
+	 * each row. The context is bound on every thread that renders a tile.
+	 *
+	 * @param expr    the expression to evaluate
+	 * @param target  the pixmap to draw into
+	 * @param context the context to evaluate the expression in
+	 * @param token   tells the render to stop early
+	 * @return true if every tile was written, false if the render was cancelled
+	 */
+	public boolean render(ExpressionTreeNode expr, Pixmap target, EvaluationContext context,
+			CancellationToken token) {
+		return render(expr, null, target, context, token);
+	}
+
+	/**
+	 * Evaluate the expression for each pixel of the target in the given context,
+	 * checking the token before each row. Tiles already in this renderer's cache
+	 * under the expression's key are copied from it instead of computed, and the
+	 * tiles computed are added to it.
+	 *
+	 * @param expr    the expression to evaluate
+	 * @param key     the key of the compiled expression (see
+	 *                CompiledExpression.getKey), or null not to use the cache
+	 * @param target  the pixmap to draw into
+	 * @param context the context to evaluate the expression in
+	 * @param token   tells the render to stop early
+	 * @return true if every tile was written, false if the render was cancelled
+	 */
+	public boolean render(ExpressionTreeNode expr, String key, Pixmap target, EvaluationContext context,
+			CancellationToken token) {
+		Dimension size = target.getSize();
+		if (size.width <= 0 || size.height <= 0) {
+			return true;
+		}
+		int tilesAcross = (size.width + tileSize - 1) / tileSize;
+		int tilesDown = (size.height + tileSize - 1) / tileSize;
+
+		TileJob job = new TileJob(expr, key, target, size, tilesAcross, context, token);
+		pool.invoke(new TileTask(job, 0, tilesAcross * tilesDown));
+		return !token.isCancelled();
+	}
+
+	/**
+	 * Draws the expression from this renderer's cache if every one of its tiles
+	 * is there, and otherwise leaves the target as it was (e.g., to draw a view
+	 * seen before at once instead of coarse to fine).
+	 *
+	 * @param key     the key of the compiled expression
+	 * @param target  the pixmap to draw into
+	 * @param context the context the expression is evaluated in
+	 * @return true if the target was drawn from the cache
+	 */
+	public boolean renderFromCache(String key, Pixmap target, EvaluationContext context) {
+		if (cache == null || key == null) {
+			return false;
+		}
+		Dimension size = target.getSize();
+		int tilesAcross = (size.width + tileSize - 1) / tileSize;
+		int tilesDown = (size.height + tileSize - 1) / tileSize;
+		int[][] tiles = new int[tilesAcross * tilesDown][];
+		for (int tile = 0; tile < tiles.length; tile++) {
+			tiles[tile] = cache.get(tileKey(key, size, tile % tilesAcross * tileSize, tile / tilesAcross * tileSize,
+					context));
+			if (tiles[tile] == null) {
+				return false;
+			}
+		}
+		for (int tile = 0; tile < tiles.length; tile++) {
+			int startX = tile % tilesAcross * tileSize;
+			int startY = tile / tilesAcross * tileSize;
+			int count = Math.min(startX + tileSize, size.width) - startX;
+			target.setRGB(startX, startY, count, Math.min(startY + tileSize, size.height) - startY, tiles[tile], 0,
+					count);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the tiles of an image drawn some other way (e.g., coarse to fine) to
+	 * this renderer's cache, as if this renderer had drawn it
+	 *
+	 * @param key     the key of the compiled expression
+	 * @param pixels  the colors of the image packed as ARGB ints, row by row
+	 * @param size    the size of the image
+	 * @param context the context the expression was evaluated in
+	 */
+	public void cacheTiles(String key, int[] pixels, Dimension size, EvaluationContext context) {
+		if (cache == null || key == null) {
+			return;
+		}
+		for (int startY = 0; startY < size.height; startY += tileSize) {
+			for (int startX = 0; startX < size.width; startX += tileSize) {
+				TileCache.Key tileKey = tileKey(key, size, startX, startY, context);
+				int[] tile = new int[tileKey.getWidth() * tileKey.getHeight()];
+				for (int row = 0; row < tileKey.getHeight(); row++) {
+					System.arraycopy(pixels, (startY + row) * size.width + startX, tile, row * tileKey.getWidth(),
+							tileKey.getWidth());
+				}
+				cache.put(tileKey, tile);
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of the tile of an image of the given size whose upper left
+	 * pixel is at (startX, startY)
+	 */
+	private TileCache.Key tileKey(String key, Dimension size, int startX, int startY, EvaluationContext context) {
+		return TileCache.Key.of(key, size.width, size.height, startX, startY,
+				Math.min(startX + tileSize, size.width) - startX, Math.min(startY + tileSize, size.height) - startY,
+				context);
+	}
+
+	/**
+	 * Evaluate the expression for each pixel of the target, one tile after
+	 * another on the calling thread (e.g., when frames of an animation are drawn
+	 * on separate threads at once), checking the token before each row.
+	 *
+	 * @param expr    the expression to evaluate
+	 * @param target  the pixmap to draw into
+	 * @param context the context to evaluate the expression in
+	 * @param token   tells the render to stop early
+	 * @return true if every tile was written, false if the render was cancelled
+	 */
+	public boolean renderOnCurrentThread(ExpressionTreeNode expr, Pixmap target, EvaluationContext context,
+			CancellationToken token) {
+		Dimension size = target.getSize();
+		if (size.width <= 0 || size.height <= 0) {
+			return true;
+		}
+		int tilesAcross = (size.width + tileSize - 1) / tileSize;
+		int tilesDown = (size.height + tileSize - 1) / tileSize;
+
+		TileJob job = new TileJob(expr, null, target, size, tilesAcross, context, token);
+		for (int tile = 0; tile < tilesAcross * tilesDown; tile++) {
+			job.renderTile(tile);
+		}
+		return !token.isCancelled();
+	}
+
+	/**
+	 * Convert from image space to domain space.
+	 *
+	 * @param value  the pixel coordinate
+	 * @param bounds the number of pixels along that axis
+	 * @return the domain coordinate of the pixel
+	 */
+	public static double imageToDomainScale(int value, int bounds) {
+		double range = DOMAIN_MAX - DOMAIN_MIN;
+		return ((double) value / bounds) * range + DOMAIN_MIN;
+	}
+
+	/**
+	 * Returns the domain coordinate of every pixel along an axis
+	 */
+	private static double[] domainCoordinates(int bounds) {
+		double[] coords = new double[bounds];
+		for (int i = 0; i < bounds; i++) {
+			coords[i] = imageToDomainScale(i, bounds);
+		}
+		return coords;
+	}
+
+	/**
+	 * The state shared by all tiles of one render.
+	 */
+	private class TileJob {
+		final ExpressionTreeNode expr;
+		final String key;
+		final Pixmap target;
+		final int width;
+		final int height;
+		final int tilesAcross;
+		final double[] domainX;
+		final double[] domainY;
+		final int scratchSize;
+		final EvaluationContext context;
+		final CancellationToken token;
+
+		TileJob(ExpressionTreeNode expr, String key, Pixmap target, Dimension size, int tilesAcross,
+				EvaluationContext context, CancellationToken token) {
+			this.expr = expr;
+			this.key = cache == null ? null : key;
+			this.target = target;
+			this.width = size.width;
+			this.height = size.height;
+			this.tilesAcross = tilesAcross;
+			this.domainX = domainCoordinates(size.width);
+			this.domainY = domainCoordinates(size.height);
+			this.scratchSize = expr.getScratchSize();
+			// images read in the render choose their mip level by the size of a pixel
+			this.context = context.withImageSize(size.width, size.height);
+			this.token = token;
+		}
+
+		/**
+		 * Evaluate every pixel of the tile with the given index in the render's
+		 * context, unless the render is cancelled first
+		 */
+		void renderTile(int tile) {
+			context.run(() -> renderTileInContext(tile));
+		}
+
+		private void renderTileInContext(int tile) {
+			if (token.isCancelled()) {
+				return;
+			}
+			int startX = (tile % tilesAcross) * tileSize;
+			int startY = (tile / tilesAcross) * tileSize;
+			int endX = Math.min(startX + tileSize, width);
+			int endY = Math.min(startY + tileSize, height);
+			int count = endX - startX;
+			TileCache.Key tileKey = null;
+			if (key != null) {
+				tileKey = TileCache.Key.of(key, width, height, startX, startY, count, endY - startY, context);
+				int[] cached = cache.get(tileKey);
+				if (cached != null) {
+					target.setRGB(startX, startY, count, endY - startY, cached, 0, count);
+					return;
+				}
+			}
+			double[] xs = Arrays.copyOfRange(domainX, startX, endX);
+			double[] ys = new double[count];
+			double[][] planes = new double[scratchSize][count];
+			int[] pixels = new int[count * (endY - startY)];
+
+			for (int imageY = startY; imageY < endY; imageY++) {
+				if (token.isCancelled()) {
+					return;
+				}
+				Arrays.fill(ys, domainY[imageY]);
+				expr.evaluate(xs, ys, count, planes, 0);
+				int row = (imageY - startY) * count;
+				for (int i = 0; i < count; i++) {
+					pixels[row + i] = RGBColor.toRGB(planes[0][i], planes[1][i], planes[2][i]);
+				}
+			}
+			target.setRGB(startX, startY, count, endY - startY, pixels, 0, count);
+			if (tileKey != null) {
+				cache.put(tileKey, pixels);
+			}
+		}
+	}
+
+	/**
+	 * Renders a contiguous range of tiles, splitting the range in half until a
+	 * single tile is left so that idle workers can steal the other half.
+	 */
+	@SuppressWarnings("serial")
+	private static class TileTask extends RecursiveAction {
+		private final TileJob job;
+		private final int start;
+		private final int end;
+
+		TileTask(TileJob job, int start, int end) {
+			this.job = job;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				job.renderTile(start);
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new TileTask(job, start, middle), new TileTask(job, middle, end));
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package picasso.model;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * The samples of an image too large to keep on the heap, in a memory-mapped
+ * file: a header (a magic number, a version, the width, and the height, as
+ * big-endian ints), then the pixels in tiles of TILE x TILE, row of tiles by
+ * row of tiles, each tile's pixels row by row, each pixel its red, green, and
+ * blue bytes. Tiles on the right and bottom edges are padded to full size.
+ *
+ * Since the file is mapped, reading a sample touches only the page it is on,
+ * which the operating system reads in when it is first needed and may drop
+ * again when memory is short; the heap holds none of the image. Tiling keeps
+ * the pixels around a point, which filters read together, on one or two pages.
+ *
+ * A file is written once, under another name, and then renamed, so a file with
+ * a valid header is complete and can be mapped again by later runs.
+ */
+final class TiledSamples {
+
+	/** the width and height of a tile, in pixels */
+	static final int TILE = 64;
+
+	private static final int MAGIC = 0x50494354; // "PICT"
+	private static final int VERSION = 1;
+	private static final int HEADER = 4 * Integer.BYTES;
+	private static final int CHANNELS = 3;
+	private static final int TILE_BYTES = CHANNELS * TILE * TILE;
+	// the most bytes of decoded pixels held at once while converting an image
+	private static final int STRIP_BYTES = 64 * 1024 * 1024;
+
+	/**
+	 * Writes the colors of one row of an image into rgb, as 0xRRGGBB
+	 */
+	@FunctionalInterface
+	interface RowReader {
+		void readRow(int y, int[] rgb) throws IOException;
+	}
+
+	private final Path file;
+	private final int width;
+	private final int height;
+	private final int tilesAcross;
+	private final ByteBuffer bytes;
+
+	private TiledSamples(Path file, int width, int height, ByteBuffer bytes) {
+		this.file = file;
+		this.width = width;
+		this.height = height;
+		this.tilesAcross = (width + TILE - 1) / TILE;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Returns the size of the image in the given file, reading only as much of
+	 * it as that takes
+	 *
+	 * @param image the image file
+	 * @return the size, or null if the file is not an image ImageIO can read
+	 */
+	static Dimension readSize(File image) {
+		try (ImageInputStream input = ImageIO.createImageInputStream(image)) {
+			ImageReader reader = readerFor(input);
+			if (reader == null) {
+				return null;
+			}
+			try {
+				return new Dimension(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the samples of the given image, converting it into the given file
+	 * unless an earlier conversion is already there. The image is decoded a strip
+	 * of rows at a time, so converting it does not take much more of the heap
+	 * than reading it later does.
+	 *
+	 * @param image the image file
+	 * @param file  where to keep the samples
+	 * @return the samples, mapped from the file
+	 * @throws IOException if the image cannot be read or the file written
+	 */
+	static TiledSamples convert(File image, Path file) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(image)) {
+			ImageReader reader = readerFor(input);
+			if (reader == null) {
+				throw new IOException("No reader for " + image);
+			}
+			try {
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				TiledSamples existing = open(file, width, height);
+				if (existing != null) {
+					return existing;
+				}
+				return write(file, width, height, new StripReader(reader, width, height));
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Returns samples of the given size whose rows come from rows, writing them
+	 * into the given file unless they are already there
+	 *
+	 * @param file   where to keep the samples
+	 * @param width  the width of the image
+	 * @param height the height of the image
+	 * @param rows   the colors of the image, read a row at a time, from the top
+	 * @return the samples, mapped from the file
+	 * @throws IOException if the file cannot be written
+	 */
+	static TiledSamples create(Path file, int width, int height, RowReader rows) throws IOException {
+		TiledSamples existing = open(file, width, height);
+		return existing != null ? existing : write(file, width, height, rows);
+	}
+
+	/**
+	 * Maps the samples in the given file, or returns null if it is missing or
+	 * does not hold samples of the given size
+	 */
+	private static TiledSamples open(Path file, int width, int height) throws IOException {
+		if (!Files.isRegularFile(file) || Files.size(file) != fileSize(width, height)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (bytes.getInt(0) != MAGIC || bytes.getInt(4) != VERSION || bytes.getInt(8) != width
+					|| bytes.getInt(12) != height) {
+				return null;
+			}
+			return new TiledSamples(file, width, height, bytes);
+		}
+	}
+
+	private static TiledSamples write(Path file, int width, int height, RowReader rows) throws IOException {
+		long size = fileSize(width, height);
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("A " + width + "x" + height + " image is too large to map");
+		}
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), "samples", ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+				bytes.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, width).putInt(12, height);
+				TiledSamples samples = new TiledSamples(file, width, height, bytes);
+				int[] rgb = new int[width];
+				for (int y = 0; y < height; y++) {
+					rows.readRow(y, rgb);
+					for (int x = 0; x < width; x++) {
+						int index = samples.index(x, y);
+						bytes.put(index, (byte) (rgb[x] >> 16));
+						bytes.put(index + 1, (byte) (rgb[x] >> 8));
+						bytes.put(index + 2, (byte) rgb[x]);
+					}
+				}
+				bytes.force();
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+		TiledSamples samples = open(file, width, height);
+		if (samples == null) {
+			throw new IOException("Could not map " + file);
+		}
+		return samples;
+	}
+
+	private static long fileSize(int width, int height) {
+		long tiles = (long) ((width + TILE - 1) / TILE) * ((height + TILE - 1) / TILE);
+		return HEADER + tiles * TILE_BYTES;
+	}
+
+	private static ImageReader readerFor(ImageInputStream input) {
+		if (input == null) {
+			return null;
+		}
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext()) {
+			return null;
+		}
+		ImageReader reader = readers.next();
+		reader.setInput(input);
+		return reader;
+	}
+
+	/**
+	 * Reads the rows of an image by decoding a strip of them at a time
+	 */
+	private static class StripReader implements RowReader {
+		private final ImageReader reader;
+		private final int width;
+		private final int height;
+		private final int stripHeight;
+		private BufferedImage strip;
+		private int stripTop;
+
+		StripReader(ImageReader reader, int width, int height) {
+			this.reader = reader;
+			this.width = width;
+			this.height = height;
+			// whole rows of tiles, as many as fit in STRIP_BYTES of ARGB pixels
+			int rows = STRIP_BYTES / (4 * Math.max(1, width));
+			this.stripHeight = Math.max(TILE, rows / TILE * TILE);
+		}
+
+		@Override
+		public void readRow(int y, int[] rgb) throws IOException {
+			if (strip == null || y >= stripTop + strip.getHeight()) {
+				ImageReadParam param = reader.getDefaultReadParam();
+				stripTop = y;
+				param.setSourceRegion(new Rectangle(0, y, width, Math.min(stripHeight, height - y)));
+				strip = reader.read(0, param);
+			}
+			strip.getRGB(0, y - stripTop, width, 1, rgb, 0, width);
+		}
+	}
+
+	/**
+	 * Returns the file the samples are mapped from
+	 *
+	 * @return the file
+	 */
+	Path getFile() {
+		return file;
+	}
+
+	int getWidth() {
+		return width;
+	}
+
+	int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the index of the red byte of a pixel; its green and blue bytes
+	 * follow it
+	 *
+	 * @param x the column of the pixel
+	 * @param y the row of the pixel
+	 * @return the index of the pixel's samples
+	 */
+	int index(int x, int y) {
+		int tile = (y / TILE) * tilesAcross + x / TILE;
+		return HEADER + tile * TILE_BYTES + CHANNELS * ((y % TILE) * TILE + x % TILE);
+	}
+
+	/**
+	 * Returns the byte of the sample at the given index
+	 *
+	 * @param index the index of the sample's byte
+	 * @return the byte, in [0, 255]
+	 */
+	int get(int index) {
+		return bytes.get(index) & 0xFF;
+	}
+}
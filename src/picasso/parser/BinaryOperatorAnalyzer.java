@@ -1,11 +1,9 @@
 package picasso.parser;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Stack;
+import java.util.function.BiFunction;
 
 import picasso.parser.language.ExpressionTreeNode;
-import picasso.parser.language.expressions.BinaryOperator;
-import picasso.parser.language.expressions.UnaryFunction;
 import picasso.parser.tokens.Token;
 
 /**
@@ -16,32 +14,25 @@ import picasso.parser.tokens.Token;
  */
 public class BinaryOperatorAnalyzer implements SemanticAnalyzerInterface {
 
+	private final BiFunction<ExpressionTreeNode, ExpressionTreeNode, ExpressionTreeNode> constructor;
+
+	/**
+	 * Create an analyzer for one operator
+	 * 
+	 * @param constructor makes the operator's node from its left and right
+	 *                    operands
+	 */
+	public BinaryOperatorAnalyzer(BiFunction<ExpressionTreeNode, ExpressionTreeNode, ExpressionTreeNode> constructor) {
+		this.constructor = constructor;
+	}
+
 	@Override
-	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
-		Token topToken = tokens.pop(); 
-		Class<?> topTokenClass = topToken.getClass();
-		String topTokenName = topTokenClass.getCanonicalName();
-		String topExpressionName = topTokenName.replace("tokens.operations", "language.expressions").replace("Token", "");
-
-		ExpressionTreeNode paramETNRight = SemanticAnalyzer.getInstance().generateExpressionTree(
-			tokens);
-		ExpressionTreeNode paramETNLeft = SemanticAnalyzer.getInstance().generateExpressionTree(
-				tokens);
-
-		BinaryOperator topExpression = null;
-
-		try {
-			Class<?>[] paramTypes = {ExpressionTreeNode.class, ExpressionTreeNode.class};
-			topExpression = (BinaryOperator) Class.forName(topExpressionName).getConstructor(paramTypes).newInstance(paramETNLeft, paramETNRight);
-				
-		} catch (ClassNotFoundException e) {
-			throw new ParseException(topExpression + " not found " + e);
-		} catch (InstantiationException e) {
-			throw new ParseException(topExpression + " not instantiated " + e);
-		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-			throw new ParseException(topExpression + " not creatable " + e);
-		}
-
-		return topExpression;
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
+		tokens.pop(); 
+
+		ExpressionTreeNode paramETNRight = session.generateExpressionTree(tokens);
+		ExpressionTreeNode paramETNLeft = session.generateExpressionTree(tokens);
+
+		return constructor.apply(paramETNLeft, paramETNRight);
 	}
-}
\ No newline at end of file
+}
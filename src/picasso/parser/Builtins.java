@@ -0,0 +1,205 @@
+package picasso.parser;
+
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+import picasso.parser.tokens.Token;
+import picasso.parser.tokens.functions.*;
+import picasso.parser.tokens.operations.*;
+
+/**
+ * The functions and operators the language knows: for each, the token that
+ * stands for it, the analyzer that builds its node from postfix tokens, and how
+ * to build its node directly from its arguments (see ExpressionParser). The table is made once
+ * from constructor references, so neither starting up nor parsing looks classes
+ * up by name. conf/functions.conf and conf/operations.prop choose which entries
+ * are available.
+ */
+public final class Builtins {
+
+	/**
+	 * Makes the node of a function or operator from its arguments
+	 */
+	public interface NodeMaker {
+		/**
+		 * @param arguments the arguments, in the order they are written
+		 * @return the node
+		 */
+		ExpressionTreeNode make(ExpressionTreeNode[] arguments);
+	}
+
+	/**
+	 * One function or operator
+	 */
+	public static final class Builtin {
+		private final Class<? extends Token> tokenClass;
+		private final Supplier<? extends Token> tokenMaker;
+		private final SemanticAnalyzerInterface analyzer;
+		private final int arity;
+		private final int maxArity;
+		private final NodeMaker nodeMaker;
+
+		Builtin(Class<? extends Token> tokenClass, Supplier<? extends Token> tokenMaker,
+				SemanticAnalyzerInterface analyzer, int arity, int maxArity, NodeMaker nodeMaker) {
+			this.tokenClass = tokenClass;
+			this.tokenMaker = tokenMaker;
+			this.analyzer = analyzer;
+			this.arity = arity;
+			this.maxArity = maxArity;
+			this.nodeMaker = nodeMaker;
+		}
+
+		/**
+		 * Returns the class of the token that stands for this function or operator
+		 *
+		 * @return the token class
+		 */
+		public Class<? extends Token> getTokenClass() {
+			return tokenClass;
+		}
+
+		/**
+		 * Create the token that stands for this function or operator
+		 *
+		 * @return a new token
+		 */
+		public Token createToken() {
+			return tokenMaker.get();
+		}
+
+		/**
+		 * Returns the analyzer that builds the node for this function or operator
+		 *
+		 * @return the analyzer
+		 */
+		public SemanticAnalyzerInterface getAnalyzer() {
+			return analyzer;
+		}
+
+		/**
+		 * Returns the number of arguments (or operands) this function or operator
+		 * takes
+		 *
+		 * @return the arity
+		 */
+		public int getArity() {
+			return arity;
+		}
+
+		/**
+		 * Returns the number of arguments this function takes when its optional
+		 * arguments are given too. Optional arguments are read only by
+		 * ExpressionParser, since postfix tokens do not say how many arguments a
+		 * call has.
+		 *
+		 * @return the largest arity
+		 */
+		public int getMaxArity() {
+			return maxArity;
+		}
+
+		/**
+		 * Make the node of this function or operator
+		 *
+		 * @param arguments the arguments, in the order they are written
+		 * @return the node
+		 */
+		public ExpressionTreeNode makeNode(ExpressionTreeNode... arguments) {
+			return nodeMaker.make(arguments);
+		}
+	}
+
+	// function name (as written in expressions) -> function
+	private static final Map<String, Builtin> FUNCTIONS = Map.ofEntries(
+			unary("abs", AbsToken.class, AbsToken::new, Abs::new),
+			unary("atan", AtanToken.class, AtanToken::new, Atan::new),
+			unary("ceil", CeilToken.class, CeilToken::new, Ceil::new),
+			unary("clamp", ClampToken.class, ClampToken::new, Clamp::new),
+			unary("cos", CosToken.class, CosToken::new, Cos::new),
+			unary("exp", ExpToken.class, ExpToken::new, Exp::new),
+			unary("floor", FloorToken.class, FloorToken::new, Floor::new),
+			unary("log", LogToken.class, LogToken::new, Log::new),
+			unary("rgbToYCrCb", RgbToYCrCbToken.class, RgbToYCrCbToken::new, RgbToYCrCb::new),
+			unary("sin", SinToken.class, SinToken::new, Sin::new),
+			unary("tan", TanToken.class, TanToken::new, Tan::new),
+			unary("wrap", WrapToken.class, WrapToken::new, Wrap::new),
+			unary("yCrCbToRGB", YCrCbToRGBToken.class, YCrCbToRGBToken::new, YCrCbToRGB::new),
+			special("fbm", FbmToken.class, FbmToken::new, new FbmAnalyzer(), 2, args -> new Fbm(args[0], args[1])),
+			// the optional fourth argument names the filter, e.g., "bilinear"
+			special("imageClip", ImageClipToken.class, ImageClipToken::new, new ImageClipAnalyzer(), 3, 4,
+					ImageClipAnalyzer::makeNode),
+			special("imageWrap", ImageWrapToken.class, ImageWrapToken::new, new ImageWrapAnalyzer(), 3, 4,
+					ImageWrapAnalyzer::makeNode),
+			special("mandelbrot", MandelbrotToken.class, MandelbrotToken::new, new MandelbrotAnalyzer(), 2,
+					args -> new Mandelbrot(args[0], args[1])),
+			special("perlinBW", PerlinBWToken.class, PerlinBWToken::new, new PerlinBWAnalyzer(), 2,
+					args -> new PerlinBW(args[0], args[1])),
+			special("perlinColor", PerlinColorToken.class, PerlinColorToken::new, new PerlinColorAnalyzer(), 2,
+					args -> new PerlinColor(args[0], args[1])),
+			special("turbulence", TurbulenceToken.class, TurbulenceToken::new, new TurbulenceAnalyzer(), 2,
+					args -> new Turbulence(args[0], args[1])),
+			special("random", RandomToken.class, RandomToken::new, new RandomAnalyzer(), 0, args -> new Random()));
+
+	// operation name (as in conf/operations.prop) -> operation
+	private static final Map<String, Builtin> OPERATIONS = Map.ofEntries(
+			binary("Plus", PlusToken.class, PlusToken::new, Plus::new),
+			binary("Minus", MinusToken.class, MinusToken::new, Minus::new),
+			binary("Multiply", MultiplyToken.class, MultiplyToken::new, Multiply::new),
+			binary("Divide", DivideToken.class, DivideToken::new, Divide::new),
+			binary("Modulo", ModuloToken.class, ModuloToken::new, Modulo::new),
+			binary("Exponent", ExponentToken.class, ExponentToken::new, Exponent::new),
+			special("Negate", NegateToken.class, NegateToken::new, new NegateAnalyzer(), 1, args -> new Negate(args[0])),
+			// assignments are made by the parser, which defines the variable
+			special("Equal", EqualToken.class, EqualToken::new, new EqualAnalyzer(), 2, args -> args[1]));
+
+	private Builtins() {
+	}
+
+	/**
+	 * Returns the function with the given name, or null if there is none
+	 *
+	 * @param name the name of the function, as written in expressions
+	 * @return the function
+	 */
+	public static Builtin getFunction(String name) {
+		return FUNCTIONS.get(name);
+	}
+
+	/**
+	 * Returns the operation with the given name, or null if there is none
+	 *
+	 * @param name the name of the operation, e.g., Plus
+	 * @return the operation
+	 */
+	public static Builtin getOperation(String name) {
+		return OPERATIONS.get(name);
+	}
+
+	private static Map.Entry<String, Builtin> unary(String name, Class<? extends Token> tokenClass,
+			Supplier<? extends Token> tokenMaker, Function<ExpressionTreeNode, ExpressionTreeNode> constructor) {
+		return special(name, tokenClass, tokenMaker, new UnaryFunctionAnalyzer(constructor), 1,
+				args -> constructor.apply(args[0]));
+	}
+
+	private static Map.Entry<String, Builtin> binary(String name, Class<? extends Token> tokenClass,
+			Supplier<? extends Token> tokenMaker,
+			BiFunction<ExpressionTreeNode, ExpressionTreeNode, ExpressionTreeNode> constructor) {
+		return special(name, tokenClass, tokenMaker, new BinaryOperatorAnalyzer(constructor), 2,
+				args -> constructor.apply(args[0], args[1]));
+	}
+
+	private static Map.Entry<String, Builtin> special(String name, Class<? extends Token> tokenClass,
+			Supplier<? extends Token> tokenMaker, SemanticAnalyzerInterface analyzer, int arity, NodeMaker nodeMaker) {
+		return special(name, tokenClass, tokenMaker, analyzer, arity, arity, nodeMaker);
+	}
+
+	private static Map.Entry<String, Builtin> special(String name, Class<? extends Token> tokenClass,
+			Supplier<? extends Token> tokenMaker, SemanticAnalyzerInterface analyzer, int arity, int maxArity,
+			NodeMaker nodeMaker) {
+		return Map.entry(name, new Builtin(tokenClass, tokenMaker, analyzer, arity, maxArity, nodeMaker));
+	}
+}
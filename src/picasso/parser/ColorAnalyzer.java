@@ -19,7 +19,7 @@ import picasso.parser.tokens.Token;
 public class ColorAnalyzer implements SemanticAnalyzerInterface {
 
 	@Override
-	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
 		Token t = tokens.pop();
 		if( ! ( t instanceof ColorToken )) {
 			// XXX: Look into this more.  Is this even possible?
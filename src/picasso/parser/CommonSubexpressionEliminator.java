@@ -0,0 +1,205 @@
+package picasso.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Turns an expression tree into a DAG in which equal subexpressions are a
+ * single node, and arranges for every node used in more than one place to be
+ * evaluated only once per point.
+ *
+ * Subexpressions are equal if they have the same type, their equals method says
+ * so, and (for colors and constants) their components are exactly the same.
+ * Subexpressions that are already shared, such as variables that are used more
+ * than once, are recognized the same way. Constants, colors, and x, y, and t
+ * are cheaper to evaluate than to look up, so they are never memoized.
+ */
+public class CommonSubexpressionEliminator {
+
+	private Map<ExpressionTreeNode, ExpressionTreeNode> canonical;
+	private Map<Shape, ExpressionTreeNode> shapes;
+	private int sharedCount;
+
+	/**
+	 * Returns an expression that evaluates to the same colors as the given one, in
+	 * which each distinct subexpression is evaluated at most once per point. The
+	 * result is a MemoizedExpression if any subexpression is shared. The given
+	 * expression is not changed.
+	 *
+	 * @param expr the expression to share subexpressions of
+	 * @return the equivalent expression
+	 */
+	public ExpressionTreeNode eliminate(ExpressionTreeNode expr) {
+		canonical = new IdentityHashMap<ExpressionTreeNode, ExpressionTreeNode>();
+		shapes = new HashMap<Shape, ExpressionTreeNode>();
+		ExpressionTreeNode dag = canonicalize(expr);
+		canonical = null;
+		shapes = null;
+
+		Map<ExpressionTreeNode, Integer> uses = new IdentityHashMap<ExpressionTreeNode, Integer>();
+		countUses(dag, uses);
+
+		EvaluationCache cache = new EvaluationCache();
+		Map<ExpressionTreeNode, ExpressionTreeNode> done = new IdentityHashMap<ExpressionTreeNode, ExpressionTreeNode>();
+		ExpressionTreeNode result = share(dag, uses, cache, done);
+		sharedCount = cache.getSlotCount();
+		if (sharedCount == 0) {
+			return result;
+		}
+		return new MemoizedExpression(result, cache);
+	}
+
+	/**
+	 * Returns how many subexpressions the last call to eliminate shares
+	 *
+	 * @return the number of subexpressions evaluated once and reused
+	 */
+	public int getSharedCount() {
+		return sharedCount;
+	}
+
+	/**
+	 * Returns the one node that represents all subexpressions equal to expr
+	 */
+	private ExpressionTreeNode canonicalize(ExpressionTreeNode expr) {
+		ExpressionTreeNode result = canonical.get(expr);
+		if (result != null) {
+			return result;
+		}
+
+		List<ExpressionTreeNode> children = expr.getChildren();
+		List<ExpressionTreeNode> canonicalChildren = new ArrayList<ExpressionTreeNode>(children.size());
+		boolean changed = false;
+		for (ExpressionTreeNode child : children) {
+			ExpressionTreeNode canonicalChild = canonicalize(child);
+			canonicalChildren.add(canonicalChild);
+			changed |= canonicalChild != child;
+		}
+
+		result = expr;
+		if (changed) {
+			try {
+				result = expr.withChildren(canonicalChildren);
+			} catch (UnsupportedOperationException e) {
+				canonicalChildren = children;
+			}
+		}
+
+		Shape shape = new Shape(result, canonicalChildren);
+		ExpressionTreeNode existing = shapes.putIfAbsent(shape, result);
+		if (existing != null) {
+			result = existing;
+		}
+		canonical.put(expr, result);
+		return result;
+	}
+
+	/**
+	 * Counts, for each node of the DAG, the number of places it is used
+	 */
+	private void countUses(ExpressionTreeNode expr, Map<ExpressionTreeNode, Integer> uses) {
+		Integer count = uses.get(expr);
+		uses.put(expr, count == null ? 1 : count + 1);
+		if (count == null) {
+			for (ExpressionTreeNode child : expr.getChildren()) {
+				countUses(child, uses);
+			}
+		}
+	}
+
+	/**
+	 * Wraps the nodes of the DAG that are used more than once in SharedExpressions
+	 */
+	private ExpressionTreeNode share(ExpressionTreeNode expr, Map<ExpressionTreeNode, Integer> uses,
+			EvaluationCache cache, Map<ExpressionTreeNode, ExpressionTreeNode> done) {
+		ExpressionTreeNode result = done.get(expr);
+		if (result != null) {
+			return result;
+		}
+
+		List<ExpressionTreeNode> children = expr.getChildren();
+		List<ExpressionTreeNode> sharedChildren = new ArrayList<ExpressionTreeNode>(children.size());
+		boolean changed = false;
+		for (ExpressionTreeNode child : children) {
+			ExpressionTreeNode sharedChild = share(child, uses, cache, done);
+			sharedChildren.add(sharedChild);
+			changed |= sharedChild != child;
+		}
+
+		result = expr;
+		if (changed) {
+			try {
+				result = expr.withChildren(sharedChildren);
+			} catch (UnsupportedOperationException e) {
+				// evaluated without memoizing its children
+			}
+		}
+		if (uses.getOrDefault(expr, 1) > 1 && !children.isEmpty()) {
+			result = new SharedExpression(result, cache);
+		}
+		done.put(expr, result);
+		return result;
+	}
+
+	/**
+	 * The identity of a node for hash-consing: its type, its children (which are
+	 * already canonical, so they are compared by identity), and its own equals.
+	 */
+	private static class Shape {
+		private final ExpressionTreeNode node;
+		private final List<ExpressionTreeNode> children;
+		private final int hash;
+
+		Shape(ExpressionTreeNode node, List<ExpressionTreeNode> children) {
+			this.node = node;
+			this.children = children;
+			int h = node.getClass().hashCode();
+			for (ExpressionTreeNode child : children) {
+				h = 31 * h + System.identityHashCode(child);
+			}
+			if (node instanceof RGBColor color) {
+				h = 31 * h + Double.hashCode(color.getRed());
+				h = 31 * h + Double.hashCode(color.getGreen());
+				h = 31 * h + Double.hashCode(color.getBlue());
+			} else if (children.isEmpty()) {
+				h = 31 * h + node.hashCode();
+			}
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Shape)) {
+				return false;
+			}
+			Shape other = (Shape) obj;
+			if (node.getClass() != other.node.getClass() || children.size() != other.children.size()) {
+				return false;
+			}
+			for (int i = 0; i < children.size(); i++) {
+				if (children.get(i) != other.children.get(i)) {
+					return false;
+				}
+			}
+			if (node instanceof RGBColor color) {
+				// RGBColor's equals allows for rounding error; sharing needs the exact color
+				RGBColor otherColor = (RGBColor) other.node;
+				return Double.compare(color.getRed(), otherColor.getRed()) == 0
+						&& Double.compare(color.getGreen(), otherColor.getGreen()) == 0
+						&& Double.compare(color.getBlue(), otherColor.getBlue()) == 0;
+			}
+			return node.equals(other.node);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package picasso.parser;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import picasso.parser.compiler.ExpressionCompiler;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.ImageClip;
+import picasso.parser.language.expressions.ImageWrap;
+import picasso.parser.language.expressions.Random;
+import picasso.parser.language.expressions.StringValue;
+import picasso.parser.language.expressions.T;
+import picasso.parser.vector.VectorBackend;
+
+/**
+ * A parsed expression together with the tree the renderers evaluate:
+ * optimized, with shared subexpressions, compiled, and vectorized. Neither tree
+ * is changed once made, so one compiled expression can be rendered any number
+ * of times, on any number of threads.
+ *
+ * Each compiled expression has a key that identifies what it draws: a digest
+ * of the parsed tree and of the modification times of the images it reads.
+ * Expressions that draw the same image have the same key, however they were
+ * written, in any run of the program; expressions that use random() have none.
+ */
+public final class CompiledExpression {
+
+	private final ExpressionTreeNode parsed;
+	private final ExpressionTreeNode compiled;
+	private final boolean animated;
+	// image file name -> modification time when the expression was compiled
+	private final Map<String, Long> images = new HashMap<String, Long>();
+	private final String key;
+
+	private CompiledExpression(ExpressionTreeNode parsed, ExpressionTreeNode compiled) {
+		this.parsed = parsed;
+		this.compiled = compiled;
+		this.animated = T.appearsIn(parsed);
+		this.key = digest(parsed);
+	}
+
+	/**
+	 * Prepare a parsed expression for rendering
+	 *
+	 * @param parsed the root of the parsed expression tree
+	 * @return the compiled expression
+	 */
+	public static CompiledExpression of(ExpressionTreeNode parsed) {
+		ExpressionTreeNode shared = new CommonSubexpressionEliminator()
+				.eliminate(new ExpressionOptimizer().optimize(parsed));
+		return new CompiledExpression(parsed,
+				new VectorBackend().vectorize(shared, new ExpressionCompiler().compile(shared)));
+	}
+
+	/**
+	 * Returns the tree the parser built
+	 *
+	 * @return the parsed expression
+	 */
+	public ExpressionTreeNode getParsed() {
+		return parsed;
+	}
+
+	/**
+	 * Returns the tree to render
+	 *
+	 * @return the optimized, compiled, and vectorized expression
+	 */
+	public ExpressionTreeNode getCompiled() {
+		return compiled;
+	}
+
+	/**
+	 * Returns true if the expression uses t, so it is rendered as an animation
+	 *
+	 * @return true if the expression is animated
+	 */
+	public boolean isAnimated() {
+		return animated;
+	}
+
+	/**
+	 * Returns the image files the expression reads, with their modification times
+	 * when it was compiled
+	 *
+	 * @return the modification times, by file name
+	 */
+	public Map<String, Long> getImages() {
+		return Collections.unmodifiableMap(images);
+	}
+
+	/**
+	 * Returns the key that identifies what the expression draws, or null if it
+	 * uses random(), so it draws something different each time it is compiled
+	 *
+	 * @return the key, in hexadecimal
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Digests the tree and records the images it reads. Shared subtrees (e.g.,
+	 * variables used more than once) are digested once.
+	 */
+	private String digest(ExpressionTreeNode root) {
+		Map<ExpressionTreeNode, byte[]> digests = new IdentityHashMap<ExpressionTreeNode, byte[]>();
+		byte[] digest = digest(root, digests);
+		return digest == null ? null : HexFormat.of().formatHex(digest);
+	}
+
+	private byte[] digest(ExpressionTreeNode node, Map<ExpressionTreeNode, byte[]> digests) {
+		byte[] digest = digests.get(node);
+		if (digest != null) {
+			return digest;
+		}
+		if (node instanceof Random) {
+			return null;
+		}
+
+		// the node's own parameters; its children are digested separately
+		String label = node.getClass().getSimpleName();
+		String image = null;
+		if (node instanceof StringValue) {
+			image = ((StringValue) node).getValue();
+		} else if (node instanceof ImageClip) {
+			image = ((ImageClip) node).getFilename();
+			label += " " + ((ImageClip) node).getFilter();
+		} else if (node instanceof ImageWrap) {
+			image = ((ImageWrap) node).getFilename();
+			label += " " + ((ImageWrap) node).getFilter();
+		} else if (node.getChildren().isEmpty()) {
+			label = node.toString();
+		}
+		if (image != null) {
+			long lastModified = new File(image).lastModified();
+			images.put(image, lastModified);
+			label += "(" + image + "@" + lastModified + ")";
+		}
+
+		MessageDigest sha = newDigest();
+		sha.update(label.getBytes(StandardCharsets.UTF_8));
+		for (ExpressionTreeNode child : node.getChildren()) {
+			byte[] childDigest = digest(child, digests);
+			if (childDigest == null) {
+				return null;
+			}
+			sha.update(childDigest);
+		}
+		digest = sha.digest();
+		digests.put(node, digest);
+		return digest;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -15,22 +15,25 @@ import picasso.parser.tokens.Token;
  */
 public class ConstantAnalyzer implements SemanticAnalyzerInterface {
 
-	private static ConstantAnalyzer singleton;
+	private static final ConstantAnalyzer singleton = new ConstantAnalyzer();
 
 	public static ConstantAnalyzer getInstance() {
-		if (singleton == null) {
-			singleton = new ConstantAnalyzer();
-		}
 		return singleton;
 	}
 
 	@Override
-	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
 		NumberToken token = (NumberToken) tokens.pop();
+		return makeNode(token.value());
+	}
 
-		// Check that the number is a valid number
-		double value = token.value();
-
+	/**
+	 * Make the node for a number, which must be between [-1, 1]
+	 * 
+	 * @param value the number
+	 * @return the node
+	 */
+	static ExpressionTreeNode makeNode(double value) {
 		// Would violate the preconditions of the constant
 		if (value < -1 || value > 1) {
 			throw new ParseException("Constant is out of range  [-1, 1]");
@@ -19,12 +19,12 @@ public class EqualAnalyzer implements SemanticAnalyzerInterface {
 	 * @return the expression tree for the right-hand side
 	 */
     @Override
-    public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) { 
+    public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) { 
         // Remove the "=" token from the stack
         tokens.pop();
 
         ExpressionTreeNode rhs =
-                SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+                session.generateExpressionTree(tokens);
 
         Token leftToken = tokens.pop();
 
@@ -39,8 +39,7 @@ public class EqualAnalyzer implements SemanticAnalyzerInterface {
             throw new ParseException("Cannot assign to built-in variable '" + variableName + "'.");
         }
 
-        SemanticAnalyzer sem = SemanticAnalyzer.getInstance();
-        sem.defineVariable(variableName, rhs);
+        session.defineVariable(variableName, rhs);
 
         return rhs;
     }
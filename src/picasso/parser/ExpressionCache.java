@@ -0,0 +1,216 @@
+package picasso.parser;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * A process-wide cache of compiled expressions, so that evaluating an
+ * expression again (from the history, an expression file, or the same
+ * animation) neither parses nor compiles it again.
+ *
+ * Expressions are identified by their normalized text (see
+ * ExpressionParser.normalize), so they may differ in whitespace and comments.
+ * A cached expression is used only while it would still parse to the same
+ * tree: the variables it reads must still be bound to the very trees it was
+ * parsed with, and the image files it reads must not have been modified since.
+ * An expression that defines a variable defines it again each time it is used,
+ * binding the same tree if it was cached. Expressions that use random() are
+ * not cached, so that each evaluation picks new colors.
+ *
+ * The cache holds up to 64 expressions unless the picasso.expressionCache.size
+ * system property sets the number, and evicts the least recently used.
+ */
+public class ExpressionCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 64;
+
+	private static ExpressionCache ourInstance;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private int maxEntries;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * A compiled expression and what its tree depends on
+	 */
+	private static class Entry {
+		final CompiledExpression expression;
+		final Map<String, ExpressionTreeNode> variablesRead;
+		final Map<String, ExpressionTreeNode> variablesDefined;
+
+		Entry(CompiledExpression expression, ExpressionParser parser) {
+			this.expression = expression;
+			this.variablesRead = parser.getVariablesRead();
+			this.variablesDefined = parser.getVariablesDefined();
+		}
+
+		/**
+		 * Returns true if parsing the expression in the session would give the
+		 * same tree
+		 */
+		boolean isCurrent(ParseSession session) {
+			for (Map.Entry<String, ExpressionTreeNode> variable : variablesRead.entrySet()) {
+				// by identity: equal trees may still draw differently, as colors are
+				// equal within a tolerance
+				if (variable.getValue() != session.getVariable(variable.getKey())) {
+					return false;
+				}
+			}
+			for (Map.Entry<String, Long> image : expression.getImages().entrySet()) {
+				if (new File(image.getKey()).lastModified() != image.getValue()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Create a cache that holds up to the given number of expressions
+	 *
+	 * @param maxEntries the capacity of the cache
+	 */
+	public ExpressionCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Returns the cache shared by the whole application
+	 *
+	 * @return the expression cache
+	 */
+	public static synchronized ExpressionCache getInstance() {
+		if (ourInstance == null) {
+			ourInstance = new ExpressionCache(Integer.getInteger("picasso.expressionCache.size", DEFAULT_MAX_ENTRIES));
+		}
+		return ourInstance;
+	}
+
+	/**
+	 * Returns the compiled expression, parsing and compiling it only if it is not
+	 * cached or what it depends on has changed. Either way, the variables the
+	 * expression defines are defined in the session.
+	 *
+	 * @param infix   the expression, as we would typically write it
+	 * @param session holds the variables defined so far
+	 * @return the compiled expression, or null if the expression is empty
+	 * @throws ParseException if the expression cannot be parsed
+	 */
+	public CompiledExpression get(String infix, ParseSession session) {
+		String key = ExpressionParser.normalize(infix);
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry != null && entry.isCurrent(session)) {
+				hits++;
+			} else {
+				misses++;
+				entry = null;
+			}
+		}
+		if (entry != null) {
+			for (Map.Entry<String, ExpressionTreeNode> variable : entry.variablesDefined.entrySet()) {
+				session.defineVariable(variable.getKey(), variable.getValue());
+			}
+			return entry.expression;
+		}
+
+		// parse and compile outside the lock; both can take a while
+		ExpressionParser parser = new ExpressionParser(infix, session);
+		ExpressionTreeNode parsed = parser.parse();
+		if (parsed == null) {
+			return null;
+		}
+		CompiledExpression expression = CompiledExpression.of(parsed);
+
+		if (expression.getKey() != null) {
+			put(key, new Entry(expression, parser));
+		}
+		return expression;
+	}
+
+	/**
+	 * Changes the capacity of the cache, evicting expressions if it is now over
+	 * it
+	 *
+	 * @param maxEntries the new capacity
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		evict();
+	}
+
+	/**
+	 * Removes every expression from the cache and resets its counters
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	public synchronized int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Returns the number of expressions in the cache
+	 *
+	 * @return the number of cached expressions
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of requests answered from the cache
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests that parsed and compiled the expression
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of expressions removed to stay within the capacity
+	 *
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	private synchronized void put(String key, Entry entry) {
+		entries.put(key, entry);
+		evict();
+	}
+
+	/**
+	 * Removes least recently used expressions until the cache is within its
+	 * capacity
+	 */
+	private void evict() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (entries.size() > maxEntries && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+			evictions++;
+		}
+	}
+}
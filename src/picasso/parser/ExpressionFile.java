@@ -0,0 +1,47 @@
+package picasso.parser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the expressions in an expression (.exp) file: one expression per line,
+ * with everything after // on a line a comment.
+ */
+public class ExpressionFile {
+
+	/**
+	 * Returns the expressions in the given file, in order, without comments or
+	 * blank lines
+	 *
+	 * @param file the expression file to read
+	 * @return the expressions in the file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static List<String> readExpressions(Path file) throws IOException {
+		List<String> expressions = new ArrayList<String>();
+		for (String line : Files.readAllLines(file)) {
+			String expression = stripComment(line).trim();
+			if (!expression.isEmpty()) {
+				expressions.add(expression);
+			}
+		}
+		return expressions;
+	}
+
+	/**
+	 * Removes the comment, if any, from a line of an expression file
+	 *
+	 * @param line the line to remove the comment from
+	 * @return the line up to the first //
+	 */
+	public static String stripComment(String line) {
+		if (line == null) {
+			return "";
+		}
+		int commentStart = line.indexOf("//");
+		return (commentStart >= 0) ? line.substring(0, commentStart) : line;
+	}
+}
@@ -0,0 +1,182 @@
+package picasso.parser;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Simplifies an expression tree before it is evaluated for every pixel.
+ *
+ * Subexpressions that do not depend on x, y, or t (e.g.,
+ * wrap(ceil([-0.37, 0.73, -0.78]))) are evaluated once and replaced by their
+ * color. Identities that hold exactly in floating point are then removed:
+ * e * 1, 1 * e, e / 1, e ^ 1, e - 0, and !!e. e + 0 is not removed, because
+ * adding 0 turns -0 into 0, which a later division can tell apart; only adding
+ * -0 is. The optimized expression evaluates to exactly the same colors as the
+ * original.
+ *
+ * Subexpressions shared by several parents (e.g., through variables) stay
+ * shared in the optimized expression.
+ */
+public class ExpressionOptimizer {
+
+	private Map<ExpressionTreeNode, ExpressionTreeNode> optimized;
+	private int nodesRemoved;
+
+	/**
+	 * Returns an expression that evaluates to the same colors as the given one and
+	 * has at most as many nodes. The given expression is not changed.
+	 *
+	 * @param expr the expression to simplify
+	 * @return the simplified expression
+	 */
+	public ExpressionTreeNode optimize(ExpressionTreeNode expr) {
+		optimized = new IdentityHashMap<ExpressionTreeNode, ExpressionTreeNode>();
+		ExpressionTreeNode result = simplify(expr);
+		nodesRemoved = countNodes(expr) - countNodes(result);
+		optimized = null;
+		return result;
+	}
+
+	/**
+	 * Returns how many nodes the last call to optimize removed from its expression
+	 *
+	 * @return the number of nodes removed
+	 */
+	public int getNodesRemoved() {
+		return nodesRemoved;
+	}
+
+	/**
+	 * Returns the number of nodes in the expression, counting a subexpression once
+	 * for each place it is used
+	 *
+	 * @param expr the expression to measure
+	 * @return the number of nodes in the expression
+	 */
+	public static int countNodes(ExpressionTreeNode expr) {
+		return countNodes(expr, new IdentityHashMap<ExpressionTreeNode, Integer>());
+	}
+
+	/**
+	 * Counts each shared subexpression's nodes only once, so that deeply nested
+	 * variables do not take exponential time to measure
+	 */
+	private static int countNodes(ExpressionTreeNode expr, Map<ExpressionTreeNode, Integer> counted) {
+		Integer known = counted.get(expr);
+		if (known != null) {
+			return known;
+		}
+		int count = 1;
+		for (ExpressionTreeNode child : expr.getChildren()) {
+			count += countNodes(child, counted);
+		}
+		counted.put(expr, count);
+		return count;
+	}
+
+	private ExpressionTreeNode simplify(ExpressionTreeNode expr) {
+		ExpressionTreeNode result = optimized.get(expr);
+		if (result == null) {
+			result = simplifyNode(expr);
+			optimized.put(expr, result);
+		}
+		return result;
+	}
+
+	private ExpressionTreeNode simplifyNode(ExpressionTreeNode expr) {
+		List<ExpressionTreeNode> children = expr.getChildren();
+		List<ExpressionTreeNode> simplified = new ArrayList<ExpressionTreeNode>(children.size());
+		boolean constantChildren = true;
+		boolean changed = false;
+		for (ExpressionTreeNode child : children) {
+			ExpressionTreeNode simple = simplify(child);
+			simplified.add(simple);
+			constantChildren &= isLiteral(simple);
+			changed |= simple != child;
+		}
+
+		if (expr.dependsOnlyOnChildren() && constantChildren && !isLiteral(expr)) {
+			RGBColor folded = fold(expr);
+			if (folded != null) {
+				return folded;
+			}
+		}
+
+		ExpressionTreeNode rebuilt = expr;
+		if (changed) {
+			try {
+				rebuilt = expr.withChildren(simplified);
+			} catch (UnsupportedOperationException e) {
+				return expr;
+			}
+		}
+		return applyIdentities(rebuilt, simplified);
+	}
+
+	/**
+	 * Evaluates a constant expression, or returns null if it cannot be evaluated
+	 * ahead of time (it is then left for the renderer to report).
+	 */
+	private RGBColor fold(ExpressionTreeNode expr) {
+		try {
+			double[] rgb = new double[expr.getScratchSize()];
+			expr.evaluate(0, 0, rgb, 0);
+			return new RGBColor(rgb[0], rgb[1], rgb[2]);
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	private ExpressionTreeNode applyIdentities(ExpressionTreeNode expr, List<ExpressionTreeNode> children) {
+		if (expr instanceof Multiply) {
+			if (isEverywhere(children.get(1), 1)) {
+				return children.get(0);
+			}
+			if (isEverywhere(children.get(0), 1)) {
+				return children.get(1);
+			}
+		} else if (expr instanceof Divide || expr instanceof Exponent) {
+			if (isEverywhere(children.get(1), 1)) {
+				return children.get(0);
+			}
+		} else if (expr instanceof Minus) {
+			if (isEverywhere(children.get(1), 0.0)) {
+				return children.get(0);
+			}
+		} else if (expr instanceof Plus) {
+			if (isEverywhere(children.get(1), -0.0)) {
+				return children.get(0);
+			}
+			if (isEverywhere(children.get(0), -0.0)) {
+				return children.get(1);
+			}
+		} else if (expr instanceof Negate && children.get(0) instanceof Negate) {
+			return children.get(0).getChildren().get(0);
+		}
+		return expr;
+	}
+
+	private static boolean isLiteral(ExpressionTreeNode expr) {
+		return expr instanceof RGBColor || expr instanceof Constant;
+	}
+
+	/**
+	 * Returns true if the expression is a literal whose components are all
+	 * exactly the given value (distinguishing 0 from -0)
+	 */
+	private static boolean isEverywhere(ExpressionTreeNode expr, double value) {
+		if (expr instanceof Constant constant) {
+			return Double.compare(constant.getValue(), value) == 0;
+		}
+		if (expr instanceof RGBColor color) {
+			return Double.compare(color.getRed(), value) == 0 && Double.compare(color.getGreen(), value) == 0
+					&& Double.compare(color.getBlue(), value) == 0;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,540 @@
+package picasso.parser;
+
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import picasso.parser.language.BuiltinFunctionsReader;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+import picasso.parser.tokens.ColorToken;
+import picasso.parser.tokens.operations.OperationInterface;
+
+/**
+ * Parses an expression straight into an expression tree in one pass over its
+ * characters: a precedence-climbing (Pratt) parser over a scanner that reads
+ * the same tokens the Tokenizer does. It accepts the language the Tokenizer,
+ * the shunting-yard conversion to postfix, and the SemanticAnalyzer accept
+ * together, and builds the same trees, without making tokens or a postfix stack
+ * first.
+ *
+ * Errors give the column where the problem was found.
+ */
+public class ExpressionParser {
+
+	private static final String OPS_FILE = "conf/operations.prop";
+
+	// kinds of token
+	private static final int EOF = 0;
+	private static final int NUMBER = 1;
+	private static final int WORD = 2;
+	private static final int CHAR = 3;
+	private static final int QUOTED = 4;
+
+	private static final char QUOTE = '"';
+	private static final char SINGLE_QUOTE = '\'';
+
+	/** the functions in conf/functions.conf, by name */
+	private static final Map<String, Builtins.Builtin> FUNCTIONS;
+	/** the operations in conf/operations.prop, by symbol */
+	private static final Builtins.Builtin[] OPERATIONS = new Builtins.Builtin[128];
+	private static final int[] PRECEDENCE = new int[128];
+
+	static {
+		Map<String, Builtins.Builtin> functions = new HashMap<String, Builtins.Builtin>();
+		for (String function : BuiltinFunctionsReader.getFunctionsList()) {
+			Builtins.Builtin builtin = Builtins.getFunction(function);
+			if (builtin == null) {
+				throw new ParseException(function + " is not a built-in function");
+			}
+			functions.put(function, builtin);
+		}
+		FUNCTIONS = Collections.unmodifiableMap(functions);
+
+		Properties opProps = new Properties();
+		try (FileReader reader = new FileReader(OPS_FILE)) {
+			opProps.load(reader);
+		} catch (FileNotFoundException e1) {
+			e1.printStackTrace();
+		} catch (IOException e1) {
+			e1.printStackTrace();
+		}
+		for (String symbol : opProps.stringPropertyNames()) {
+			addOperation(symbol.charAt(0), opProps.getProperty(symbol));
+		}
+		// negation and assignment are always available
+		addOperation('!', "Negate");
+		addOperation('=', "Equal");
+	}
+
+	private static void addOperation(char symbol, String name) {
+		Builtins.Builtin builtin = Builtins.getOperation(name);
+		if (builtin == null) {
+			throw new ParseException(name + " is not a built-in operation");
+		}
+		OPERATIONS[symbol] = builtin;
+		PRECEDENCE[symbol] = ((OperationInterface) builtin.createToken()).orderOfOperation();
+	}
+
+	private final char[] source;
+	private final ParseSession session;
+
+	// the variables the expression read and defined, in the order it did
+	private Map<String, ExpressionTreeNode> variablesRead = Collections.emptyMap();
+	private Map<String, ExpressionTreeNode> variablesDefined = Collections.emptyMap();
+
+	// the scanner's position and the token it read last
+	private int position;
+	private int kind;
+	private int start;
+	private double number;
+	private String word;
+	private char symbol;
+
+	/**
+	 * Create a parser for one expression
+	 *
+	 * @param infix   the expression, as we would typically write it
+	 * @param session holds the variables defined so far
+	 */
+	public ExpressionParser(String infix, ParseSession session) {
+		this.source = infix.toCharArray();
+		this.session = session;
+		next();
+	}
+
+	/**
+	 * Parse the whole expression
+	 *
+	 * @return the root of the expression tree, or null if the expression is empty
+	 */
+	public ExpressionTreeNode parse() {
+		if (kind == EOF) {
+			return null;
+		}
+		ExpressionTreeNode root = parseExpression(OperatorPrecedence.ASSIGNMENT);
+		if (kind != EOF) {
+			throw new ParseException("Extra operands without operators or functions: unexpected " + describe(),
+					start);
+		}
+		return root;
+	}
+
+	/**
+	 * Returns the variables the expression read from the session, with the
+	 * expressions they stood for at the time
+	 *
+	 * @return the variables read, by name
+	 */
+	public Map<String, ExpressionTreeNode> getVariablesRead() {
+		return Collections.unmodifiableMap(variablesRead);
+	}
+
+	/**
+	 * Returns the variables the expression defined in the session
+	 *
+	 * @return the variables defined, by name
+	 */
+	public Map<String, ExpressionTreeNode> getVariablesDefined() {
+		return Collections.unmodifiableMap(variablesDefined);
+	}
+
+	/**
+	 * Returns the expression with its comments removed and its tokens separated by
+	 * single spaces, so that expressions that differ only in layout are written
+	 * the same way. Expressions normalized to the same text parse to the same
+	 * tree.
+	 *
+	 * @param infix the expression, as we would typically write it
+	 * @return the normalized expression
+	 */
+	public static String normalize(String infix) {
+		ExpressionParser scanner = new ExpressionParser(infix, null);
+		StringBuilder normalized = new StringBuilder(scanner.source.length);
+		while (scanner.kind != EOF) {
+			if (normalized.length() > 0) {
+				normalized.append(' ');
+			}
+			normalized.append(scanner.source, scanner.start, scanner.position - scanner.start);
+			scanner.next();
+		}
+		return normalized.toString();
+	}
+
+	/**
+	 * Parse an expression whose operators all bind at least as tightly as the
+	 * given precedence
+	 */
+	private ExpressionTreeNode parseExpression(int minPrecedence) {
+		String target = null;
+		int targetStart = start;
+		ExpressionTreeNode left = null;
+		if (minPrecedence <= OperatorPrecedence.ASSIGNMENT && kind == WORD && !FUNCTIONS.containsKey(word)
+				&& nextIsSymbol('=')) {
+			// the variable an assignment defines, which need not be defined yet
+			target = word;
+			next();
+		} else {
+			left = parsePrefix();
+		}
+
+		while (kind == CHAR && symbol < OPERATIONS.length && OPERATIONS[symbol] != null && symbol != '!') {
+			char operator = symbol;
+			int precedence = PRECEDENCE[operator];
+			if (precedence < minPrecedence) {
+				break;
+			}
+			int operatorStart = start;
+			next();
+
+			if (operator == '=') {
+				ExpressionTreeNode value = parseExpression(OperatorPrecedence.ASSIGNMENT + 1);
+				if (target == null) {
+					throw new ParseException("Left side of '=' must be an identifier.", operatorStart);
+				}
+				if ("x".equals(target) || "y".equals(target)) {
+					throw new ParseException("Cannot assign to built-in variable '" + target + "'.", targetStart);
+				}
+				session.defineVariable(target, value);
+				if (variablesDefined.isEmpty()) {
+					variablesDefined = new LinkedHashMap<String, ExpressionTreeNode>();
+				}
+				variablesDefined.put(target, value);
+				target = null;
+				left = value;
+				continue;
+			}
+
+			// ^ is right-associative; the rest are left-associative
+			int rightPrecedence = precedence == OperatorPrecedence.EXPONENTIATION ? precedence : precedence + 1;
+			ExpressionTreeNode right = parseExpression(rightPrecedence);
+			left = OPERATIONS[operator].makeNode(left, right);
+		}
+		return left;
+	}
+
+	/**
+	 * Parse a number, color, string, identifier, function call, negation, or
+	 * parenthesized expression
+	 */
+	private ExpressionTreeNode parsePrefix() {
+		int tokenStart = start;
+		switch (kind) {
+		case NUMBER: {
+			double value = number;
+			next();
+			try {
+				return ConstantAnalyzer.makeNode(value);
+			} catch (ParseException e) {
+				throw e.at(tokenStart);
+			}
+		}
+		case WORD: {
+			String name = word;
+			next();
+			Builtins.Builtin function = FUNCTIONS.get(name);
+			if (function != null) {
+				return parseCall(name, function, tokenStart);
+			}
+			ExpressionTreeNode resolved;
+			try {
+				resolved = IdentifierAnalyzer.resolve(name, session);
+			} catch (ParseException e) {
+				throw e.at(tokenStart);
+			}
+			if (resolved == session.getVariable(name) && !variablesRead.containsKey(name)) {
+				if (variablesRead.isEmpty()) {
+					variablesRead = new LinkedHashMap<String, ExpressionTreeNode>();
+				}
+				variablesRead.put(name, resolved);
+			}
+			return resolved;
+		}
+		case CHAR:
+			switch (symbol) {
+			case '(': {
+				next();
+				ExpressionTreeNode inner = parseExpression(OperatorPrecedence.ASSIGNMENT);
+				expect(')', tokenStart);
+				return inner;
+			}
+			case '!':
+				next();
+				return OPERATIONS['!'].makeNode(parseExpression(OperatorPrecedence.NEGATION));
+			case '[':
+				next();
+				return parseColor(tokenStart);
+			case QUOTE:
+				next();
+				return StringAnalyzer.makeNode(parseString());
+			default:
+				break;
+			}
+			break;
+		default:
+			break;
+		}
+		if (kind == EOF) {
+			throw new ParseException("Expected another argument.", source.length);
+		}
+		throw new ParseException("Unexpected " + describe(), tokenStart);
+	}
+
+	/**
+	 * Parse the arguments of a function, after its name, and make its node
+	 */
+	private ExpressionTreeNode parseCall(String name, Builtins.Builtin function, int nameStart) {
+		if (kind != CHAR || symbol != '(') {
+			throw new ParseException("Expected ( after " + name, start);
+		}
+		int open = start;
+		next();
+		List<ExpressionTreeNode> arguments = new ArrayList<ExpressionTreeNode>(function.getArity());
+		if (kind != CHAR || symbol != ')') {
+			arguments.add(parseExpression(OperatorPrecedence.ASSIGNMENT));
+			while (kind == CHAR && symbol == ',') {
+				next();
+				arguments.add(parseExpression(OperatorPrecedence.ASSIGNMENT));
+			}
+		}
+		expect(')', open);
+		if (arguments.size() < function.getArity() || arguments.size() > function.getMaxArity()) {
+			String count = function.getArity() == function.getMaxArity() ? String.valueOf(function.getArity())
+					: function.getArity() + " or " + function.getMaxArity();
+			throw new ParseException(name + " takes " + count + " argument"
+					+ (function.getMaxArity() == 1 ? "" : "s") + " but was given " + arguments.size(), nameStart);
+		}
+		try {
+			return function.makeNode(arguments.toArray(new ExpressionTreeNode[arguments.size()]));
+		} catch (ParseException e) {
+			throw e.at(nameStart);
+		}
+	}
+
+	/**
+	 * Parse a color, [red, green, blue], after its [
+	 */
+	private ExpressionTreeNode parseColor(int open) {
+		double red = colorComponent();
+		colorSeparator(',');
+		double green = colorComponent();
+		colorSeparator(',');
+		double blue = colorComponent();
+		colorSeparator(']');
+
+		String errorMsg = "";
+		if (!ColorToken.isValidValue(red)) {
+			errorMsg += "Red must be within range [-1,1]. ";
+		}
+		if (!ColorToken.isValidValue(green)) {
+			errorMsg += "Green must be within range [-1,1]. ";
+		}
+		if (!ColorToken.isValidValue(blue)) {
+			errorMsg += "Blue must be within range [-1,1].";
+		}
+		if (!errorMsg.isEmpty()) {
+			throw new ParseException(errorMsg, open);
+		}
+		return new RGBColor(red, green, blue);
+	}
+
+	private double colorComponent() {
+		if (kind != NUMBER) {
+			throw new ParseException("Error parsing color, expected number", start);
+		}
+		double value = number;
+		next();
+		return value;
+	}
+
+	private void colorSeparator(char separator) {
+		if (kind != CHAR || symbol != separator) {
+			String message = "Error parsing color, expected " + separator;
+			if (separator == ']') {
+				message += " got " + describe();
+			}
+			throw new ParseException(message, start);
+		}
+		next();
+	}
+
+	/**
+	 * Parse a string after its opening quote. As with the Tokenizer, the string
+	 * is made of the words and symbols up to the closing quote, without spaces or
+	 * numbers.
+	 */
+	private String parseString() {
+		StringBuilder value = new StringBuilder();
+		while (kind != EOF && !(kind == CHAR && symbol == QUOTE)) {
+			if (kind == WORD) {
+				value.append(word);
+			} else if (kind == CHAR) {
+				value.append(symbol);
+			} else if (kind == QUOTED) {
+				value.append(SINGLE_QUOTE);
+			}
+			next();
+		}
+		next();
+		return value.toString();
+	}
+
+	private void expect(char closing, int open) {
+		if (kind != CHAR || symbol != closing) {
+			throw new ParseException("Expected " + closing + " to match the one at column " + (open + 1) + " but got "
+					+ describe(), kind == EOF ? source.length : start);
+		}
+		next();
+	}
+
+	/**
+	 * Returns true if the token after the current one is the given symbol
+	 */
+	private boolean nextIsSymbol(char expected) {
+		int savedPosition = position;
+		int savedKind = kind;
+		int savedStart = start;
+		double savedNumber = number;
+		String savedWord = word;
+		char savedSymbol = symbol;
+
+		next();
+		boolean matches = kind == CHAR && symbol == expected;
+
+		position = savedPosition;
+		kind = savedKind;
+		start = savedStart;
+		number = savedNumber;
+		word = savedWord;
+		symbol = savedSymbol;
+		return matches;
+	}
+
+	private String describe() {
+		switch (kind) {
+		case EOF:
+			return "end of expression";
+		case NUMBER:
+			return "number " + number;
+		case WORD:
+			return "'" + word + "'";
+		default:
+			return "'" + symbol + "'";
+		}
+	}
+
+	/**
+	 * Scan the next token. Words, numbers, comments, and whitespace are read as
+	 * the Tokenizer's StreamTokenizer reads them, so both see the same tokens.
+	 */
+	private void next() {
+		char[] s = source;
+		int n = s.length;
+		int i = position;
+		while (true) {
+			if (i >= n) {
+				position = n;
+				start = n;
+				kind = EOF;
+				return;
+			}
+			char c = s[i];
+			if (c <= ' ') {
+				i++;
+			} else if (c == '/' && i + 1 < n && s[i + 1] == '*') {
+				// block comment: it ends at a */ after the /*, and an unfinished one
+				// runs to the end
+				int open = i;
+				i += 2;
+				while (i < n && !(s[i] == '/' && i - 1 > open + 1 && s[i - 1] == '*')) {
+					i++;
+				}
+				i++;
+			} else if (c == '/' && i + 1 < n && s[i + 1] == '/') {
+				// line comment
+				i += 2;
+				while (i < n && s[i] != '\n' && s[i] != '\r') {
+					i++;
+				}
+			} else {
+				break;
+			}
+		}
+
+		start = i;
+		char c = s[i];
+		if (isDigit(c) || c == '.' || (c == '-' && i + 1 < n && (isDigit(s[i + 1]) || s[i + 1] == '.'))) {
+			boolean negative = c == '-';
+			if (negative) {
+				i++;
+			}
+			double value = 0;
+			int decimals = 0;
+			int seenDot = 0;
+			while (i < n) {
+				c = s[i];
+				if (c == '.' && seenDot == 0) {
+					seenDot = 1;
+				} else if (isDigit(c)) {
+					value = value * 10 + (c - '0');
+					decimals += seenDot;
+				} else {
+					break;
+				}
+				i++;
+			}
+			if (decimals != 0) {
+				double denominator = 10;
+				decimals--;
+				while (decimals > 0) {
+					denominator *= 10;
+					decimals--;
+				}
+				value = value / denominator;
+			}
+			number = negative ? -value : value;
+			kind = NUMBER;
+		} else if (isWordStart(c)) {
+			i++;
+			while (i < n && (isWordStart(s[i]) || isDigit(s[i]) || s[i] == '.')) {
+				i++;
+			}
+			word = new String(s, start, i - start);
+			kind = WORD;
+		} else if (c == SINGLE_QUOTE) {
+			// a quoted run of characters, as StreamTokenizer reads one
+			i++;
+			while (i < n && s[i] != SINGLE_QUOTE && s[i] != '\n' && s[i] != '\r') {
+				if (s[i] == '\\') {
+					i++;
+				}
+				i++;
+			}
+			if (i < n && s[i] == SINGLE_QUOTE) {
+				i++;
+			}
+			kind = QUOTED;
+			symbol = SINGLE_QUOTE;
+		} else {
+			i++;
+			symbol = c;
+			kind = CHAR;
+		}
+		position = i;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isWordStart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c >= 160;
+	}
+}
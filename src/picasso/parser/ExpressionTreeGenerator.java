@@ -5,7 +5,6 @@ import java.util.List;
 import java.util.Stack;
 
 import picasso.parser.language.ExpressionTreeNode;
-import picasso.parser.language.expressions.T;
 import picasso.parser.tokens.*;
 import picasso.parser.tokens.chars.*;
 import picasso.parser.tokens.functions.*;
@@ -14,6 +13,8 @@ import picasso.parser.OperatorPrecedence;
 
 /**
  * Parses a string into an expression tree based on rules for arithmetic.
+ * Expressions are parsed in one pass by an ExpressionParser; the conversion to
+ * postfix is kept for the Tokenizer's tests and to check the parser against.
  * 
  * @author former student solution
  * @author Robert C. Duvall (added comments, exceptions)
@@ -22,6 +23,35 @@ import picasso.parser.OperatorPrecedence;
  */
 public class ExpressionTreeGenerator {
 
+	private final ParseSession session;
+
+	/**
+	 * Create a generator with its own session, so variables defined in the
+	 * expressions it parses are seen only by its later expressions.
+	 */
+	public ExpressionTreeGenerator() {
+		this(new ParseSession());
+	}
+
+	/**
+	 * Create a generator that defines and looks up variables in the given
+	 * session (e.g., one shared by every expression a user types)
+	 * 
+	 * @param session holds the variables defined so far
+	 */
+	public ExpressionTreeGenerator(ParseSession session) {
+		this.session = session;
+	}
+
+	/**
+	 * Returns the session this generator parses in
+	 * 
+	 * @return the generator's session
+	 */
+	public ParseSession getSession() {
+		return session;
+	}
+
 	/**
 	 * Converts the given string into expression tree for easier manipulation.
 	 * 
@@ -31,6 +61,37 @@ public class ExpressionTreeGenerator {
 	 *         formula.
 	 */
 	public ExpressionTreeNode makeExpression(String infix) {
+		return makeExpression(infix, session);
+	}
+
+	/**
+	 * Converts the given string into expression tree in the given session. The
+	 * generator itself keeps no state from the parse, so one generator can parse
+	 * in many sessions on different threads at once.
+	 * 
+	 * @param infix   - a non-empty expression to parse.
+	 * @param session holds the variables defined so far
+	 * 
+	 * @return ExpressionTreeNode representing the root node of the given infix
+	 *         formula.
+	 */
+	public ExpressionTreeNode makeExpression(String infix, ParseSession session) {
+		return new ExpressionParser(infix, session).parse();
+	}
+
+	/**
+	 * Converts the given string into expression tree the way the Tokenizer, the
+	 * conversion to postfix, and the SemanticAnalyzer do it. makeExpression
+	 * builds the same trees in one pass with an ExpressionParser; this is kept to
+	 * check it against.
+	 * 
+	 * @param infix   - a non-empty expression to parse.
+	 * @param session holds the variables defined so far
+	 * 
+	 * @return ExpressionTreeNode representing the root node of the given infix
+	 *         formula.
+	 */
+	public ExpressionTreeNode makeExpressionFromPostfix(String infix, ParseSession session) {
 
 		Stack<Token> postfix = infixToPostfix(infix);
 
@@ -38,8 +99,7 @@ public class ExpressionTreeGenerator {
 			return null;
 		}
 
-		SemanticAnalyzer semAnalyzer = SemanticAnalyzer.getInstance();
-		ExpressionTreeNode root = semAnalyzer.generateExpressionTree(postfix);
+		ExpressionTreeNode root = session.generateExpressionTree(postfix);
 
 		if (!postfix.isEmpty()) {
 			throw new ParseException("Extra operands without operators or functions");
@@ -90,12 +150,8 @@ public class ExpressionTreeGenerator {
 				postfixResult.push(token);
 			} else if (token instanceof ColorToken) {
 				postfixResult.push(token);
-			} else if (token instanceof IdentifierToken idTok) {
+			} else if (token instanceof IdentifierToken) {
 				postfixResult.push(token);
-				String indentifierTokenName = idTok.getName();
-				if (indentifierTokenName.equals("t")) {
-					T.setHasTime(true);
-				}
 			} else if (token instanceof StringToken) { // adds the string token.
 				postfixResult.push(token);
 			} else if (token instanceof FunctionToken) {
@@ -0,0 +1,26 @@
+package picasso.parser;
+
+import java.util.Stack;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.Fbm;
+import picasso.parser.tokens.Token;
+
+/**
+ * Handles parsing the fbm function
+ */
+public class FbmAnalyzer implements SemanticAnalyzerInterface {
+
+	@Override
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
+		tokens.pop(); // Remove the function token
+
+		// the arguments are on the stack in reverse order
+		ExpressionTreeNode yExpr = session.generateExpressionTree(tokens);
+		if (tokens.isEmpty()) {
+			throw new ParseException("fbm requires 2 arguments");
+		}
+		ExpressionTreeNode xExpr = session.generateExpressionTree(tokens);
+		return new Fbm(xExpr, yExpr);
+	}
+}
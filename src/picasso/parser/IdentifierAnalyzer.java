@@ -1,6 +1,5 @@
 package picasso.parser;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
 
@@ -20,29 +19,33 @@ import picasso.parser.tokens.Token;
  */
 public class IdentifierAnalyzer implements SemanticAnalyzerInterface {
 
-	static Map<String, ExpressionTreeNode> idToExpression = new HashMap<String, ExpressionTreeNode>();
-
-	static {
-		// We always have x and y defined.
-		idToExpression.put("x", new X());
-		idToExpression.put("y", new Y());
-		idToExpression.put("t", new T());
-
-	}
+	// We always have x, y, and t defined.
+	private static final Map<String, ExpressionTreeNode> idToExpression = Map.of("x", new X(), "y", new Y(), "t",
+			new T());
 
 	@Override
-	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
 		
 		IdentifierToken t = (IdentifierToken) tokens.pop();
-		String id = t.getName();
+		return resolve(t.getName(), session);
+	}
+
+	/**
+	 * Returns the expression the identifier stands for: x, y, t, or a variable
+	 * defined in the session
+	 * 
+	 * @param id      the identifier
+	 * @param session holds the variables defined so far
+	 * @return the identifier's expression
+	 */
+	static ExpressionTreeNode resolve(String id, ParseSession session) {
 		ExpressionTreeNode mapped = idToExpression.get(id);
 		if (mapped != null) {
 			return mapped;
 		}
 
-	    SemanticAnalyzer sem = SemanticAnalyzer.getInstance();
-	    if (sem.isVariableDefined(id)) {
-	    	return sem.getVariable(id);
+	    if (session.isVariableDefined(id)) {
+	    	return session.getVariable(id);
 	    }
 		
 	    throw new ParseException("'" + id + "' is not a defined variable or image");
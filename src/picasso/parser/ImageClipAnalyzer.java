@@ -2,6 +2,7 @@ package picasso.parser;
 
 import java.util.Stack;
 
+import picasso.model.SampledImage.Filter;
 import picasso.parser.language.ExpressionTreeNode;
 import picasso.parser.language.expressions.ImageClip;
 import picasso.parser.language.expressions.StringValue;
@@ -14,28 +15,54 @@ import picasso.parser.tokens.Token;
  */
 public class ImageClipAnalyzer implements SemanticAnalyzerInterface {
     @Override
-    public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+    public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
         tokens.pop(); // Remove function token
         
-        ExpressionTreeNode yCoord = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+        ExpressionTreeNode yCoord = session.generateExpressionTree(tokens);
         
         if (tokens.isEmpty()) {
             throw new ParseException("imageClip requires 3 arguments but only received 1. Required: filename (string), x coordinate, and y coordinate");
         }
         
-        ExpressionTreeNode xCoord = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+        ExpressionTreeNode xCoord = session.generateExpressionTree(tokens);
         
         if (tokens.isEmpty()) {
             throw new ParseException("imageClip requires 3 arguments but only received 2. Required: filename (string), x coordinate, and y coordinate");
         }
         
-        ExpressionTreeNode filenameExpr = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+        ExpressionTreeNode filenameExpr = session.generateExpressionTree(tokens);
         
-        if (!(filenameExpr instanceof StringValue)) {
+        return makeNode(filenameExpr, xCoord, yCoord, Filter.NEAREST);
+    }
+
+    /**
+     * Make the node that reads the named image at the given coordinates, with the
+     * filter named by the optional fourth argument
+     * 
+     * @param arguments the filename, coordinates, and filter, as written
+     * @return the node
+     */
+    static ExpressionTreeNode makeNode(ExpressionTreeNode... arguments) {
+        Filter filter = arguments.length < 4 ? Filter.NEAREST
+                : StringAnalyzer.resolveFilter(arguments[3], "imageClip");
+        return makeNode(arguments[0], arguments[1], arguments[2], filter);
+    }
+
+    /**
+     * Make the node that reads the named image at the given coordinates
+     * 
+     * @param filename the image's name, which must be a string
+     * @param xCoord   the x coordinate to read at
+     * @param yCoord   the y coordinate to read at
+     * @param filter   how to read the image between pixels
+     * @return the node
+     */
+    static ExpressionTreeNode makeNode(ExpressionTreeNode filename, ExpressionTreeNode xCoord,
+            ExpressionTreeNode yCoord, Filter filter) {
+        if (!(filename instanceof StringValue)) {
             throw new ParseException("imageClip requires 3 arguments: filename (string), x coordinate, and y coordinate");
         }
         
-        String filename = ((StringValue) filenameExpr).getValue();
-        return new ImageClip(filename, xCoord, yCoord);
+        return new ImageClip(((StringValue) filename).getValue(), xCoord, yCoord, filter);
     }
 }
\ No newline at end of file
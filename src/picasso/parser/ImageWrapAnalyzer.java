@@ -2,6 +2,7 @@ package picasso.parser;
 
 import java.util.Stack;
 
+import picasso.model.SampledImage.Filter;
 import picasso.parser.language.ExpressionTreeNode;
 import picasso.parser.language.expressions.ImageWrap;
 import picasso.parser.language.expressions.StringValue;
@@ -15,28 +16,54 @@ import picasso.parser.tokens.Token;
 public class ImageWrapAnalyzer implements SemanticAnalyzerInterface {
 
     @Override
-    public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+    public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
         tokens.pop();
         
-        ExpressionTreeNode yCoord = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+        ExpressionTreeNode yCoord = session.generateExpressionTree(tokens);
         
         if (tokens.isEmpty()) {
             throw new ParseException("imageWrap requires 3 arguments but only received 1. Required: filename (string), x coordinate, and y coordinate");
         }
         
-        ExpressionTreeNode xCoord = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+        ExpressionTreeNode xCoord = session.generateExpressionTree(tokens);
         
         if (tokens.isEmpty()) {
             throw new ParseException("imageWrap requires 3 arguments but only received 2. Required: filename (string), x coordinate, and y coordinate");
         }
         
-        ExpressionTreeNode filenameToken = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+        ExpressionTreeNode filenameToken = session.generateExpressionTree(tokens);
         
-        if (!(filenameToken instanceof StringValue)) {
+        return makeNode(filenameToken, xCoord, yCoord);
+    }
+
+    /**
+     * Make the node that reads the named image at the given coordinates, with the
+     * filter named by the optional fourth argument
+     * 
+     * @param arguments the filename, coordinates, and filter, as written
+     * @return the node
+     */
+    static ExpressionTreeNode makeNode(ExpressionTreeNode... arguments) {
+        Filter filter = arguments.length < 4 ? Filter.NEAREST
+                : StringAnalyzer.resolveFilter(arguments[3], "imageWrap");
+        return makeNode(arguments[0], arguments[1], arguments[2], filter);
+    }
+
+    /**
+     * Make the node that reads the named image at the given coordinates
+     * 
+     * @param filename the image's name, which must be a string
+     * @param xCoord   the x coordinate to read at
+     * @param yCoord   the y coordinate to read at
+     * @param filter   how to read the image between pixels
+     * @return the node
+     */
+    static ExpressionTreeNode makeNode(ExpressionTreeNode filename, ExpressionTreeNode xCoord,
+            ExpressionTreeNode yCoord, Filter filter) {
+        if (!(filename instanceof StringValue)) {
             throw new ParseException("imageWrap requires 3 arguments: filename (string), x coordinate, and y coordinate");
         }
         
-        String filename = ((StringValue) filenameToken).getValue();
-        return new ImageWrap(filename, xCoord, yCoord);
+        return new ImageWrap(((StringValue) filename).getValue(), xCoord, yCoord, filter);
     }
 }
\ No newline at end of file
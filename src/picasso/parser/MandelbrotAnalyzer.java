@@ -14,11 +14,11 @@ import picasso.parser.tokens.Token;
 public class MandelbrotAnalyzer implements SemanticAnalyzerInterface {
 
     @Override
-    public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+    public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
         tokens.pop();
         
-        ExpressionTreeNode paramImag = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
-        ExpressionTreeNode paramReal = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+        ExpressionTreeNode paramImag = session.generateExpressionTree(tokens);
+        ExpressionTreeNode paramReal = session.generateExpressionTree(tokens);
 
         return new Mandelbrot(paramReal, paramImag);
     }
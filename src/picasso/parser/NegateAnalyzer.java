@@ -13,11 +13,10 @@ import picasso.parser.tokens.Token;
 public class NegateAnalyzer extends UnaryOperatorAnalyzer {
 	
 	@Override
-	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
 		tokens.pop(); 
 
-		ExpressionTreeNode param = SemanticAnalyzer.getInstance().generateExpressionTree(
-			tokens);
+		ExpressionTreeNode param = session.generateExpressionTree(tokens);
 		
 				
 		return new Negate(param);
@@ -9,8 +9,47 @@ package picasso.parser;
 @SuppressWarnings("serial")
 public class ParseException extends RuntimeException {
 
+	private final String reason;
+	private final int position;
+
 	public ParseException(String message) {
 		super("ParseException: " + message);
+		reason = message;
+		position = -1;
+	}
+
+	/**
+	 * Describe a problem at a place in the expression
+	 * 
+	 * @param message  what is wrong
+	 * @param position the index of the character where the problem was found
+	 */
+	public ParseException(String message, int position) {
+		super("ParseException: " + message + " at column " + (position + 1));
+		reason = message;
+		this.position = position;
+	}
+
+	/**
+	 * Returns this problem placed at the given place in the expression, unless
+	 * its place is already known
+	 * 
+	 * @param position the index of the character where the problem was found
+	 * @return the placed exception
+	 */
+	public ParseException at(int position) {
+		if (this.position >= 0) {
+			return this;
+		}
+		return new ParseException(reason, position);
+	}
+
+	/**
+	 * @return the index of the character where the problem was found, or -1 if
+	 *         it is not known
+	 */
+	public int getPosition() {
+		return position;
 	}
 
 }
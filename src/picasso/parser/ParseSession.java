@@ -0,0 +1,98 @@
+package picasso.parser;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Stack;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.tokens.Token;
+
+/**
+ * The state of a series of related parses (e.g., the lines of one expression
+ * file or the expressions one user types): the variables they have defined.
+ *
+ * The analyzers themselves are stateless and shared by every session, so
+ * parses in different sessions can run on different threads at once. A session
+ * is not synchronized; it belongs to one thread at a time.
+ */
+public class ParseSession {
+
+	private final SemanticAnalyzer analyzers;
+	private final Map<String, ExpressionTreeNode> variables = new HashMap<String, ExpressionTreeNode>();
+
+	/**
+	 * Create a session with no variables defined
+	 */
+	public ParseSession() {
+		this(SemanticAnalyzer.getInstance());
+	}
+
+	/**
+	 * Create a session with no variables defined that parses with the given
+	 * analyzers
+	 *
+	 * @param analyzers maps each token to the analyzer that handles it
+	 */
+	public ParseSession(SemanticAnalyzer analyzers) {
+		this.analyzers = analyzers;
+	}
+
+	/**
+	 * From a stack of tokens in postfix order, creates an expression tree using
+	 * the variables of this session
+	 *
+	 * @param tokens in postfix order
+	 * @return the root node of the expression tree
+	 */
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+		return analyzers.generateExpressionTree(tokens, this);
+	}
+
+	/**
+	 * Define (or redefine) a variable for the rest of the session
+	 *
+	 * @param name the name of the variable
+	 * @param expr the expression the variable stands for
+	 */
+	public void defineVariable(String name, ExpressionTreeNode expr) {
+		variables.put(name, expr);
+	}
+
+	/**
+	 * Returns true if the variable has been defined in this session
+	 *
+	 * @param name the name of the variable
+	 * @return true if the variable is defined
+	 */
+	public boolean isVariableDefined(String name) {
+		return variables.containsKey(name);
+	}
+
+	/**
+	 * Returns the expression the variable stands for, or null if it is not
+	 * defined
+	 *
+	 * @param name the name of the variable
+	 * @return the variable's expression
+	 */
+	public ExpressionTreeNode getVariable(String name) {
+		return variables.get(name);
+	}
+
+	/**
+	 * Returns the variables defined in this session
+	 *
+	 * @return an unmodifiable view of the variables, by name
+	 */
+	public Map<String, ExpressionTreeNode> getVariables() {
+		return Collections.unmodifiableMap(variables);
+	}
+
+	/**
+	 * Forget every variable defined in this session
+	 */
+	public void clear() {
+		variables.clear();
+	}
+}
@@ -14,18 +14,18 @@ import picasso.parser.tokens.Token;
 public class PerlinColorAnalyzer implements SemanticAnalyzerInterface {
 
     @Override
-    public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+    public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
         tokens.pop(); // Remove the function token
         
         // again, the reverse order
 
-        ExpressionTreeNode yExpr = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+        ExpressionTreeNode yExpr = session.generateExpressionTree(tokens);
         
         if (tokens.isEmpty()) {
             throw new ParseException("perlinColor requires 2 arguments");
         }
         
-        ExpressionTreeNode xExpr = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+        ExpressionTreeNode xExpr = session.generateExpressionTree(tokens);
         
         return new PerlinColor(xExpr, yExpr);
     }
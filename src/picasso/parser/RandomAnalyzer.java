@@ -18,7 +18,7 @@ import picasso.parser.tokens.functions.RandomToken;
 public class RandomAnalyzer implements SemanticAnalyzerInterface {
 
 	@Override
-	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
 		RandomToken token = (RandomToken) tokens.pop();
 		return new Random();
 	}
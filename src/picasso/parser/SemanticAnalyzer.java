@@ -3,19 +3,24 @@ package picasso.parser;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import picasso.parser.language.BuiltinFunctionsReader;
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.tokens.ColorToken;
+import picasso.parser.tokens.IdentifierToken;
+import picasso.parser.tokens.NumberToken;
+import picasso.parser.tokens.StringToken;
 import picasso.parser.tokens.Token;
-import picasso.parser.tokens.TokenFactory;
 
 /**
  * SemanticAnalyzer calls appropriate SemanticAnalyzer for the given token. 
  * It does so by creating mappings between each token and an analyzer. 
- * The unary functions (sin, cos, tan, etc) are mapped to the unaryFunctionAnalyzer, 
- * the binary operators (+, -, *, etc) are mapped to the binaryOperatorAnalyzer.
+ * The unary functions (sin, cos, tan, etc) are mapped to a unaryFunctionAnalyzer, 
+ * the binary operators (+, -, *, etc) are mapped to a binaryOperatorAnalyzer,
+ * each made with the constructor of its node (see Builtins).
  * The rest of the tokens are mapped to the analyzer that matches their name.
+ * The mappings never change once made, and variables are kept in the
+ * ParseSession of each parse, so one analyzer serves every thread.
  * 
  * @author Robert C. Duvall
  * @author Sara Sprenkle
@@ -24,182 +29,117 @@ import picasso.parser.tokens.TokenFactory;
  */
 public class SemanticAnalyzer implements SemanticAnalyzerInterface {
 
-    private Map<Class<?>, SemanticAnalyzerInterface> tokenToSemAnalyzer;
-    private static SemanticAnalyzer ourInstance;
-	
-    // Map to store variable definitions: variable name -> expression tree
-	private Map<String, ExpressionTreeNode> variables = new HashMap<>();
+    private final Map<Class<?>, SemanticAnalyzerInterface> tokenToSemAnalyzer;
 
-    private static final String PARSER_PACKAGE = "picasso.parser.";
-    private static final String OPERATIONS_TOKENS_PACKAGE = PARSER_PACKAGE + "tokens.operations.";
-    private static final String TOKENS_PACKAGE_NAME = PARSER_PACKAGE + "tokens.";
     private static final String OPS_FILE = "conf/operations.prop";
-    private static final List<String> NON_UNARY_FUNCTIONS = 
-                                    List.of("ImageClip", "ImageWrap", "PerlinBW", "PerlinColor", "Random", "Mandelbrot");
-	
 
-
-    public void setVariables(Map<String, ExpressionTreeNode> variables) {
-        this.variables = variables;
-    }
-
-    public Map<String, ExpressionTreeNode> getVariables() {
-        return variables;
-    }
-    
-    public void defineVariable(String name, ExpressionTreeNode expr) {
-        if (variables == null) {
-            variables = new HashMap<>();
-        }
-        variables.put(name, expr);
-    }
-
-    public boolean isVariableDefined(String name) {
-        return variables != null && variables.containsKey(name);
-    }
-
-    public ExpressionTreeNode getVariable(String name) {
-        if (variables == null) {
-            return null;
-        }
-        return variables.get(name);
+    /**
+     * Holds the one semantic analyzer, which is created (safely, even if several
+     * threads ask at once) the first time it is needed
+     */
+    private static class Holder {
+        static final SemanticAnalyzer INSTANCE = new SemanticAnalyzer();
     }
 
     /**
      * Make sure that there is only one semantic analyzer for the application.
+     * The analyzer holds no state from any parse (variables belong to a
+     * ParseSession), so every thread can share it.
      * 
      * @return the semantic analyzer
      */
     public static SemanticAnalyzer getInstance() {
-        if (ourInstance == null) {
-            ourInstance = new SemanticAnalyzer();
-        }
-        return ourInstance;
+        return Holder.INSTANCE;
     }
 
     /**
      * 
      */
     private SemanticAnalyzer() {
-        tokenToSemAnalyzer = new HashMap<Class<?>, SemanticAnalyzerInterface>();
-        createFunctionParserMappings();
-        createOperationMappings();
-
-        // add for constants
-        String tokenName = TOKENS_PACKAGE_NAME + "NumberToken";
-        String parserName = PARSER_PACKAGE + "ConstantAnalyzer";
-        addSemanticAnalyzerMapping(tokenName, parserName);
-
-        // IdentifierToken --> IdentifierAnalyzer
-        tokenName = TOKENS_PACKAGE_NAME + "IdentifierToken";
-        parserName = PARSER_PACKAGE + "IdentifierAnalyzer";
-        addSemanticAnalyzerMapping(tokenName, parserName);
-
-        // Color mapping
-        tokenName = TOKENS_PACKAGE_NAME + "ColorToken";
-        parserName = PARSER_PACKAGE + "ColorAnalyzer";
-        addSemanticAnalyzerMapping(tokenName, parserName);
-        
-        // String mapping
-        tokenName = TOKENS_PACKAGE_NAME + "StringToken";
-        parserName = PARSER_PACKAGE + "StringAnalyzer";
-        addSemanticAnalyzerMapping(tokenName, parserName);
-      
-      	addSemanticAnalyzerMapping(
-			        "picasso.parser.tokens.operations.NegateToken",
-			        "picasso.parser.NegateAnalyzer"
-			    );
+        Map<Class<?>, SemanticAnalyzerInterface> mappings = new HashMap<Class<?>, SemanticAnalyzerInterface>();
+        createFunctionParserMappings(mappings);
+        createOperationMappings(mappings);
+
+        mappings.put(NumberToken.class, new ConstantAnalyzer());
+        mappings.put(IdentifierToken.class, new IdentifierAnalyzer());
+        mappings.put(ColorToken.class, new ColorAnalyzer());
+        mappings.put(StringToken.class, new StringAnalyzer());
+        tokenToSemAnalyzer = mappings;
     }
 
     /**
-     * Adds the mapping between the Token class and the SemanticAnalyzer class
+     * Adds the mapping between the token of a built-in function or operator and
+     * its semantic analyzer
      * 
-     * @param tokenName            the name of the token class
-     * @param semanticAnalyzerName the name of the semantic analyzer class that
-     *                             handles the token
+     * @param mappings the mappings being made
+     * @param builtin  the function or operator
      */
-    private void addSemanticAnalyzerMapping(String tokenName, String semanticAnalyzerName) {
-        Class<?> tokenClass = null;
-        try {
-            tokenClass = Class.forName(tokenName);
-        } catch (ClassNotFoundException e) {
-            throw new ParseException(tokenName + " not found " + e);
-        }
-
-        SemanticAnalyzerInterface p = null;
-        try {
-            p = (SemanticAnalyzerInterface) Class.forName(semanticAnalyzerName).getDeclaredConstructor().newInstance();
-        } catch (ClassNotFoundException e) {
-            throw new ParseException(semanticAnalyzerName + " not found " + e);
-        } catch (InstantiationException e) {
-            throw new ParseException(semanticAnalyzerName + " not instantiated " + e);
-        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-            throw new ParseException(semanticAnalyzerName + " not creatable " + e);
-        }
-
-        // if we got to here, we're good to go
-        tokenToSemAnalyzer.put(tokenClass, p);
+    private static void addSemanticAnalyzerMapping(Map<Class<?>, SemanticAnalyzerInterface> mappings,
+            Builtins.Builtin builtin) {
+        mappings.put(builtin.getTokenClass(), builtin.getAnalyzer());
     }
 
     /**
      * Map each function tokens to its semantic analyzer
      */
-    private void createFunctionParserMappings() {
-        List<String> functionsList = BuiltinFunctionsReader.getFunctionsList();
-
-		String unarySemanticAnalyzer = PARSER_PACKAGE + "UnaryFunctionAnalyzer";
-
-
-        for (String function : functionsList) {
-            String functionClass = TokenFactory.capitalize(function);
-            String tokenName = TOKENS_PACKAGE_NAME + "functions." + functionClass + "Token";
-
-            if (NON_UNARY_FUNCTIONS.contains(functionClass)) {
-                String semanticAnalyzer = PARSER_PACKAGE + functionClass + "Analyzer";
-                addSemanticAnalyzerMapping(tokenName, semanticAnalyzer);
-            }
-            else{
-                addSemanticAnalyzerMapping(tokenName, unarySemanticAnalyzer);
+    private static void createFunctionParserMappings(Map<Class<?>, SemanticAnalyzerInterface> mappings) {
+        for (String function : BuiltinFunctionsReader.getFunctionsList()) {
+            Builtins.Builtin builtin = Builtins.getFunction(function);
+            if (builtin == null) {
+                throw new ParseException(function + " is not a built-in function");
             }
+            addSemanticAnalyzerMapping(mappings, builtin);
         }
     }
 
     /**
      * Map each operation token to its semantic analyzer
      */
-    private void createOperationMappings() {
+    private static void createOperationMappings(Map<Class<?>, SemanticAnalyzerInterface> mappings) {
 
         Properties opProps = new Properties();
-        try {
-            opProps.load(new FileReader(OPS_FILE));
+        try (FileReader reader = new FileReader(OPS_FILE)) {
+            opProps.load(reader);
         } catch (FileNotFoundException e1) {
             e1.printStackTrace();
         } catch (IOException e1) {
             e1.printStackTrace();
         }
 
-		String parserName = PARSER_PACKAGE + "BinaryOperatorAnalyzer";
-
         for (Object op : opProps.keySet()) {
             String opName = (String) opProps.get(op);
-            String tokenName = OPERATIONS_TOKENS_PACKAGE + opName + "Token";
-            addSemanticAnalyzerMapping(tokenName, parserName);
+            Builtins.Builtin builtin = Builtins.getOperation(opName);
+            if (builtin == null) {
+                throw new ParseException(opName + " is not a built-in operation");
+            }
+            addSemanticAnalyzerMapping(mappings, builtin);
         }
-        
-        String equalTokenName = OPERATIONS_TOKENS_PACKAGE + "EqualToken";
-        String equalAnalyzerName = PARSER_PACKAGE + "EqualAnalyzer";
-        addSemanticAnalyzerMapping(equalTokenName, equalAnalyzerName);
 
-       
+        // negation and assignment are always available
+        addSemanticAnalyzerMapping(mappings, Builtins.getOperation("Negate"));
+        addSemanticAnalyzerMapping(mappings, Builtins.getOperation("Equal"));
     }
 
     /**
-     * From a stack of tokens in postfix order, creates an expression tree
+     * From a stack of tokens in postfix order, creates an expression tree in a
+     * new session, with no variables defined
      * 
      * @param tokens in postfix order
      * @return the root node of the expression tree.
      */
     public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+        return generateExpressionTree(tokens, new ParseSession(this));
+    }
+
+    /**
+     * From a stack of tokens in postfix order, creates an expression tree
+     * 
+     * @param tokens  in postfix order
+     * @param session holds the variables defined so far
+     * @return the root node of the expression tree.
+     */
+    @Override
+    public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
 
         if (tokens.isEmpty()) {
             throw new ParseException("Expected another argument.");
@@ -211,7 +151,7 @@ public class SemanticAnalyzer implements SemanticAnalyzerInterface {
         if (analyzer == null) {
             throw new ParseException("No semantic analyzer for " + t.getClass());
         }
-        return analyzer.generateExpressionTree(tokens);
+        return analyzer.generateExpressionTree(tokens, session);
     }
 
 }
@@ -15,8 +15,9 @@ public interface SemanticAnalyzerInterface {
 
 	/**
 	 * 
-	 * @param tokens in postfix order
+	 * @param tokens  in postfix order
+	 * @param session the parse's variables; parses the operands of the top token
 	 * @return the root node for the expression represented by the top token
 	 */
-	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens);
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session);
 }
@@ -2,6 +2,7 @@ package picasso.parser;
 
 import java.util.Stack;
 
+import picasso.model.SampledImage.Filter;
 import picasso.parser.language.ExpressionTreeNode;
 import picasso.parser.language.expressions.StringValue;
 import picasso.parser.tokens.StringToken;
@@ -15,14 +16,43 @@ import picasso.parser.tokens.Token;
 public class StringAnalyzer implements SemanticAnalyzerInterface {
 
 	@Override
-	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
 		StringToken token = (StringToken) tokens.pop();
-		String value = token.getValue();
-		
+		return makeNode(token.getValue());
+	}
+
+	/**
+	 * Make the node for a string, which names an image in the images directory
+	 * unless it is an absolute path
+	 * 
+	 * @param value the string, as written
+	 * @return the node
+	 */
+	static ExpressionTreeNode makeNode(String value) {
 		if (!value.startsWith("images/") && !value.startsWith("/")) {
 			value = "images/" + value;
 		}
 		return new StringValue(value);
-		
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns the filter a string argument names, e.g., "bilinear"
+	 * 
+	 * @param argument the argument, which must be a string
+	 * @param function the name of the function, for the error message
+	 * @return the filter
+	 * @throws ParseException if the argument does not name a filter
+	 */
+	static Filter resolveFilter(ExpressionTreeNode argument, String function) {
+		Filter filter = null;
+		if (argument instanceof StringValue) {
+			// strings are taken for image names, so "bilinear" was read as images/bilinear
+			String value = ((StringValue) argument).getValue();
+			filter = Filter.forName(value.substring(value.lastIndexOf('/') + 1));
+		}
+		if (filter == null) {
+			throw new ParseException(function + "'s filter must be \"nearest\", \"bilinear\", or \"bicubic\"");
+		}
+		return filter;
+	}
+}
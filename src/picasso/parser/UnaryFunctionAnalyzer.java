@@ -1,10 +1,9 @@
 package picasso.parser;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Stack;
+import java.util.function.Function;
 
 import picasso.parser.language.ExpressionTreeNode;
-import picasso.parser.language.expressions.UnaryFunction;
 import picasso.parser.tokens.Token;
 
 /**
@@ -14,32 +13,25 @@ import picasso.parser.tokens.Token;
  * 
  */
 public class UnaryFunctionAnalyzer implements SemanticAnalyzerInterface {
+
+	private final Function<ExpressionTreeNode, ExpressionTreeNode> constructor;
+
+	/**
+	 * Create an analyzer for one function
+	 * 
+	 * @param constructor makes the function's node from its parameter
+	 */
+	public UnaryFunctionAnalyzer(Function<ExpressionTreeNode, ExpressionTreeNode> constructor) {
+		this.constructor = constructor;
+	}
 	 
 	@Override
-	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
-		Token topToken = tokens.pop(); 
-		Class<?> topTokenClass = topToken.getClass();
-		String topTokenName = topTokenClass.getCanonicalName();
-		String topExpressionName = topTokenName.replace("tokens.functions", "language.expressions").replace("Token", "");
-
-		ExpressionTreeNode paramETN = SemanticAnalyzer.getInstance().generateExpressionTree(
-				tokens);
-
-		UnaryFunction topExpression = null;
-
-		try {
-			Class<?>[] paramTypes = {ExpressionTreeNode.class};
-			topExpression = (UnaryFunction) Class.forName(topExpressionName).getConstructor(paramTypes).newInstance(paramETN);
-			
-		} catch (ClassNotFoundException e) {
-			throw new ParseException(topExpression + " not found " + e);
-		} catch (InstantiationException e) {
-			throw new ParseException(topExpression + " not instantiated " + e);
-		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-			throw new ParseException(topExpression + " not creatable " + e);
-		}
-
-		return topExpression;
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session) {
+		tokens.pop(); 
+
+		ExpressionTreeNode paramETN = session.generateExpressionTree(tokens);
+
+		return constructor.apply(paramETN);
 	}
 
 }
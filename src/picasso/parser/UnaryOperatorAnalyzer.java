@@ -12,5 +12,5 @@ import picasso.parser.tokens.Token;
 public abstract class UnaryOperatorAnalyzer implements SemanticAnalyzerInterface{
 	
 	@Override
-	public abstract ExpressionTreeNode generateExpressionTree(Stack<Token> tokens);
+	public abstract ExpressionTreeNode generateExpressionTree(Stack<Token> tokens, ParseSession session);
 }
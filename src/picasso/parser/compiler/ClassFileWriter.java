@@ -0,0 +1,458 @@
+package picasso.parser.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a class file with just the features the expression compiler needs:
+ * fields, methods, and straight-line code. Because the generated code never
+ * branches, its methods need no stack map frames.
+ *
+ * Names are internal names (e.g., "java/lang/Math") and types are descriptors
+ * (e.g., "(DD)D"), as in the class file format.
+ */
+class ClassFileWriter {
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_PRIVATE = 0x0002;
+	static final int ACC_STATIC = 0x0008;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	/** Java 17 */
+	private static final int VERSION = 61;
+
+	private final ConstantPool pool = new ConstantPool();
+	private final int thisClass;
+	private final int superClass;
+	private final List<Integer> interfaces = new ArrayList<Integer>();
+	private final List<byte[]> fields = new ArrayList<byte[]>();
+	private final List<byte[]> methods = new ArrayList<byte[]>();
+
+	/**
+	 * Start a public final class
+	 *
+	 * @param name           the internal name of the class
+	 * @param superName      the internal name of its superclass
+	 * @param interfaceNames the internal names of the interfaces it implements
+	 */
+	ClassFileWriter(String name, String superName, String... interfaceNames) {
+		thisClass = pool.classRef(name);
+		superClass = pool.classRef(superName);
+		for (String interfaceName : interfaceNames) {
+			interfaces.add(pool.classRef(interfaceName));
+		}
+	}
+
+	ConstantPool pool() {
+		return pool;
+	}
+
+	void addField(int access, String name, String descriptor) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(pool.utf8(name));
+			out.writeShort(pool.utf8(descriptor));
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		fields.add(bytes.toByteArray());
+	}
+
+	/**
+	 * Add a method with the given code
+	 */
+	void addMethod(int access, String name, String descriptor, Code code) {
+		byte[] instructions = code.toByteArray();
+		if (instructions.length > 0xFFFF) {
+			throw new IllegalStateException("Method " + name + " is too large");
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(pool.utf8(name));
+			out.writeShort(pool.utf8(descriptor));
+			out.writeShort(1);
+			out.writeShort(pool.utf8("Code"));
+			out.writeInt(12 + instructions.length);
+			out.writeShort(code.maxStack);
+			out.writeShort(code.maxLocals);
+			out.writeInt(instructions.length);
+			out.write(instructions);
+			out.writeShort(0); // exception table
+			out.writeShort(0); // attributes
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		methods.add(bytes.toByteArray());
+	}
+
+	/**
+	 * Returns the class file
+	 */
+	byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			pool.write(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaces.size());
+			for (int index : interfaces) {
+				out.writeShort(index);
+			}
+			out.writeShort(fields.size());
+			for (byte[] field : fields) {
+				out.write(field);
+			}
+			out.writeShort(methods.size());
+			for (byte[] method : methods) {
+				out.write(method);
+			}
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * The constant pool of the class. Equal entries are only added once.
+	 */
+	static class ConstantPool {
+		private static final int UTF8 = 1;
+		private static final int INTEGER = 3;
+		private static final int DOUBLE = 6;
+		private static final int CLASS = 7;
+		private static final int FIELD_REF = 9;
+		private static final int METHOD_REF = 10;
+		private static final int NAME_AND_TYPE = 12;
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<String, Integer> entries = new HashMap<String, Integer>();
+		private int count = 1;
+
+		int utf8(String value) {
+			String key = "U" + value;
+			Integer index = entries.get(key);
+			if (index == null) {
+				index = add(key, 1);
+				try {
+					out.writeByte(UTF8);
+					out.writeUTF(value);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return index;
+		}
+
+		int integer(int value) {
+			String key = "I" + value;
+			Integer index = entries.get(key);
+			if (index == null) {
+				index = add(key, 1);
+				writeEntry(INTEGER, value);
+			}
+			return index;
+		}
+
+		/**
+		 * Doubles are keyed by their bits, so 0.0 and -0.0 are different constants
+		 */
+		int doubleValue(double value) {
+			long bits = Double.doubleToRawLongBits(value);
+			String key = "D" + bits;
+			Integer index = entries.get(key);
+			if (index == null) {
+				index = add(key, 2);
+				try {
+					out.writeByte(DOUBLE);
+					out.writeLong(bits);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return index;
+		}
+
+		int classRef(String name) {
+			String key = "C" + name;
+			Integer index = entries.get(key);
+			if (index == null) {
+				int nameIndex = utf8(name);
+				index = add(key, 1);
+				writeEntry(CLASS, nameIndex);
+			}
+			return index;
+		}
+
+		int fieldRef(String owner, String name, String descriptor) {
+			return memberRef(FIELD_REF, owner, name, descriptor);
+		}
+
+		int methodRef(String owner, String name, String descriptor) {
+			return memberRef(METHOD_REF, owner, name, descriptor);
+		}
+
+		private int memberRef(int tag, String owner, String name, String descriptor) {
+			String key = "M" + tag + owner + "." + name + descriptor;
+			Integer index = entries.get(key);
+			if (index == null) {
+				int ownerIndex = classRef(owner);
+				int nameAndType = nameAndType(name, descriptor);
+				index = add(key, 1);
+				try {
+					out.writeByte(tag);
+					out.writeShort(ownerIndex);
+					out.writeShort(nameAndType);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return index;
+		}
+
+		private int nameAndType(String name, String descriptor) {
+			String key = "N" + name + ":" + descriptor;
+			Integer index = entries.get(key);
+			if (index == null) {
+				int nameIndex = utf8(name);
+				int descriptorIndex = utf8(descriptor);
+				index = add(key, 1);
+				try {
+					out.writeByte(NAME_AND_TYPE);
+					out.writeShort(nameIndex);
+					out.writeShort(descriptorIndex);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return index;
+		}
+
+		private void writeEntry(int tag, int value) {
+			try {
+				out.writeByte(tag);
+				if (tag == INTEGER) {
+					out.writeInt(value);
+				} else {
+					out.writeShort(value);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Reserve the next index (two for doubles) for the entry with the given key
+		 */
+		private int add(String key, int size) {
+			int index = count;
+			count += size;
+			if (count > 0xFFFF) {
+				throw new IllegalStateException("Too many constants");
+			}
+			entries.put(key, index);
+			return index;
+		}
+
+		void write(DataOutputStream stream) throws IOException {
+			stream.writeShort(count);
+			stream.write(bytes.toByteArray());
+		}
+	}
+
+	/**
+	 * The instructions of one method. Only the instructions the compiler uses are
+	 * supported; each keeps track of the stack depth, so maxStack is exact.
+	 */
+	static class Code {
+		static final int ICONST_0 = 0x03;
+		static final int DCONST_0 = 0x0e;
+		static final int DCONST_1 = 0x0f;
+		static final int BIPUSH = 0x10;
+		static final int SIPUSH = 0x11;
+		static final int LDC = 0x12;
+		static final int LDC_W = 0x13;
+		static final int LDC2_W = 0x14;
+		static final int ILOAD = 0x15;
+		static final int DLOAD = 0x18;
+		static final int ALOAD = 0x19;
+		static final int DALOAD = 0x31;
+		static final int AALOAD = 0x32;
+		static final int DSTORE = 0x39;
+		static final int ASTORE = 0x3a;
+		static final int DASTORE = 0x52;
+		static final int IADD = 0x60;
+		static final int DADD = 0x63;
+		static final int DSUB = 0x67;
+		static final int DMUL = 0x6b;
+		static final int DDIV = 0x6f;
+		static final int DREM = 0x73;
+		static final int DNEG = 0x77;
+		static final int RETURN = 0xb1;
+		static final int GETSTATIC = 0xb2;
+		static final int GETFIELD = 0xb4;
+		static final int PUTFIELD = 0xb5;
+		static final int INVOKEVIRTUAL = 0xb6;
+		static final int INVOKESPECIAL = 0xb7;
+		static final int INVOKESTATIC = 0xb8;
+		static final int CHECKCAST = 0xc0;
+		static final int WIDE = 0xc4;
+
+		private final ConstantPool pool;
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private int stack;
+		int maxStack;
+		int maxLocals;
+
+		Code(ConstantPool pool, int maxLocals) {
+			this.pool = pool;
+			this.maxLocals = maxLocals;
+		}
+
+		int size() {
+			return bytes.size();
+		}
+
+		byte[] toByteArray() {
+			return bytes.toByteArray();
+		}
+
+		/**
+		 * Record that an instruction pushes (or, if negative, pops) the given number
+		 * of stack slots
+		 */
+		private void push(int slots) {
+			stack += slots;
+			maxStack = Math.max(maxStack, stack);
+		}
+
+		private void u1(int value) {
+			bytes.write(value);
+		}
+
+		private void u2(int value) {
+			bytes.write(value >>> 8);
+			bytes.write(value);
+		}
+
+		/**
+		 * An instruction with no operands that pushes (or pops) the given number of
+		 * slots
+		 */
+		void op(int opcode, int slots) {
+			u1(opcode);
+			push(slots);
+		}
+
+		void intConstant(int value) {
+			if (value >= -1 && value <= 5) {
+				u1(ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				u1(BIPUSH);
+				u1(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				u1(SIPUSH);
+				u2(value);
+			} else {
+				int index = pool.integer(value);
+				if (index < 256) {
+					u1(LDC);
+					u1(index);
+				} else {
+					u1(LDC_W);
+					u2(index);
+				}
+			}
+			push(1);
+		}
+
+		void doubleConstant(double value) {
+			long bits = Double.doubleToRawLongBits(value);
+			if (bits == 0L) {
+				u1(DCONST_0);
+			} else if (bits == Double.doubleToRawLongBits(1.0)) {
+				u1(DCONST_1);
+			} else {
+				u1(LDC2_W);
+				u2(pool.doubleValue(value));
+			}
+			push(2);
+		}
+
+		void iload(int local) {
+			local(ILOAD, local);
+			push(1);
+		}
+
+		void aload(int local) {
+			local(ALOAD, local);
+			push(1);
+		}
+
+		void astore(int local) {
+			local(ASTORE, local);
+			push(-1);
+		}
+
+		void dload(int local) {
+			local(DLOAD, local);
+			push(2);
+		}
+
+		void dstore(int local) {
+			local(DSTORE, local);
+			push(-2);
+			maxLocals = Math.max(maxLocals, local + 2);
+		}
+
+		private void local(int opcode, int local) {
+			if (local < 256) {
+				u1(opcode);
+				u1(local);
+			} else {
+				u1(WIDE);
+				u1(opcode);
+				u2(local);
+			}
+		}
+
+		void field(int opcode, String owner, String name, String descriptor, int slots) {
+			u1(opcode);
+			u2(pool.fieldRef(owner, name, descriptor));
+			push(slots);
+		}
+
+		/**
+		 * Call a method; slots is the change in stack depth (the size of the result
+		 * minus the size of the receiver and arguments)
+		 */
+		void invoke(int opcode, String owner, String name, String descriptor, int slots) {
+			u1(opcode);
+			u2(pool.methodRef(owner, name, descriptor));
+			push(slots);
+		}
+
+		void checkcast(String type) {
+			u1(CHECKCAST);
+			u2(pool.classRef(type));
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package picasso.parser.compiler;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * An expression whose every evaluation is one call to a generated PixelProgram
+ * instead of a walk over the expression tree. It evaluates to exactly the same
+ * colors as the expression it was compiled from.
+ */
+public class CompiledExpression extends ExpressionTreeNode {
+
+	private final ExpressionTreeNode source;
+	private final PixelProgram program;
+	private final int scratchSize;
+
+	/**
+	 * Create an expression that evaluates with the given program
+	 *
+	 * @param source      the expression the program was compiled from
+	 * @param program     the compiled program
+	 * @param scratchSize the number of values the program writes past its offset
+	 */
+	CompiledExpression(ExpressionTreeNode source, PixelProgram program, int scratchSize) {
+		this.source = source;
+		this.program = program;
+		this.scratchSize = scratchSize;
+	}
+
+	/**
+	 * Returns the expression this was compiled from
+	 *
+	 * @return the interpreted form of this expression
+	 */
+	public ExpressionTreeNode getSource() {
+		return source;
+	}
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		double[] rgb = new double[scratchSize];
+		program.evaluate(x, y, rgb, 0);
+		return new RGBColor(rgb[0], rgb[1], rgb[2]);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		program.evaluate(x, y, out, offset);
+	}
+
+	/**
+	 * Calls the program once per point
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		double[] rgb = new double[scratchSize];
+		double[] red = planes[offset];
+		double[] green = planes[offset + 1];
+		double[] blue = planes[offset + 2];
+		for (int i = 0; i < count; i++) {
+			program.evaluate(xs[i], ys[i], rgb, 0);
+			red[i] = rgb[0];
+			green[i] = rgb[1];
+			blue[i] = rgb[2];
+		}
+	}
+
+	@Override
+	public int getScratchSize() {
+		return scratchSize;
+	}
+
+	/**
+	 * Returns the representation of the source expression
+	 */
+	@Override
+	public String toString() {
+		return source.toString();
+	}
+}
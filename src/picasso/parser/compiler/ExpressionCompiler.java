@@ -0,0 +1,779 @@
+package picasso.parser.compiler;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import picasso.parser.compiler.ClassFileWriter.Code;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Compiles an expression into a hidden class whose one method computes all
+ * three channels of the expression's color in straight-line code, so that
+ * evaluating a pixel is a single call instead of a virtual call per node.
+ *
+ * Every node type in picasso.parser.language.expressions is compiled: the
+ * arithmetic directly into bytecode, and the functions into calls to the same
+ * static methods the interpreter uses, so compiled and interpreted expressions
+ * evaluate to exactly the same colors. A subexpression used in several places
+ * is computed once per pixel, and a function of values that are the same in
+ * all three channels is computed once rather than per channel. Any other kind of node is left to the
+ * interpreter: the compiled code calls its evaluate method.
+ *
+ * The generated code is split into methods of at most METHOD_SIZE_LIMIT bytes,
+ * so the JIT compiles even very large expressions; values one method passes to
+ * a later one are stored in the scratch space of the output array.
+ *
+ * Compilation can be turned off with -Dpicasso.compile=false, in which case
+ * compile returns expressions unchanged.
+ */
+public class ExpressionCompiler {
+
+	/**
+	 * The largest method the compiler generates, in bytes of bytecode. HotSpot
+	 * does not JIT-compile methods larger than 8000 bytes.
+	 */
+	public static final int METHOD_SIZE_LIMIT = 7000;
+
+	/** whether compile compiles expressions at all */
+	public static final boolean ENABLED = !"false".equals(System.getProperty("picasso.compile"));
+
+	private static final String NODE = "picasso/parser/language/ExpressionTreeNode";
+	private static final String NODES = "[L" + NODE + ";";
+	private static final String EXPRESSIONS = "picasso/parser/language/expressions/";
+	private static final String NOISE_ENGINE = "picasso/model/NoiseEngine";
+	private static final String PROGRAM = "picasso/parser/compiler/GeneratedProgram";
+	private static final String PART = "(DD[DI" + NODES + ")V";
+
+	// locals of the generated part methods
+	private static final int X = 0;
+	private static final int Y = 2;
+	private static final int OUT = 4;
+	private static final int OFFSET = 5;
+	private static final int NODES_LOCAL = 6;
+	private static final int FIRST_VALUE = 7;
+
+	private List<Instruction> instructions;
+	private Map<ExpressionTreeNode, Value[]> translated;
+	private List<ExpressionTreeNode> interpreted;
+	private int interpretedCount;
+	private int methodCount;
+
+	/**
+	 * Returns a CompiledExpression that evaluates to the same colors as the given
+	 * expression, or the expression itself if it cannot be compiled.
+	 *
+	 * @param expr the expression to compile
+	 * @return the compiled expression, or expr
+	 */
+	public ExpressionTreeNode compile(ExpressionTreeNode expr) {
+		if (!ENABLED) {
+			return expr;
+		}
+		try {
+			return compileProgram(expr);
+		} catch (RuntimeException | LinkageError e) {
+			System.err.println("Interpreting expression that could not be compiled: " + e);
+			return expr;
+		}
+	}
+
+	/**
+	 * Returns the number of subexpressions the last compiled expression leaves to
+	 * the interpreter
+	 *
+	 * @return the number of interpreted subexpressions
+	 */
+	public int getInterpretedCount() {
+		return interpretedCount;
+	}
+
+	/**
+	 * Returns the number of methods the code of the last compiled expression was
+	 * split into
+	 *
+	 * @return the number of generated methods
+	 */
+	public int getMethodCount() {
+		return methodCount;
+	}
+
+	/**
+	 * Compiles the expression, throwing an exception if that fails
+	 *
+	 * @param expr the expression to compile
+	 * @return the compiled expression
+	 */
+	public CompiledExpression compileProgram(ExpressionTreeNode expr) {
+		instructions = new ArrayList<Instruction>();
+		translated = new IdentityHashMap<ExpressionTreeNode, Value[]>();
+		interpreted = new ArrayList<ExpressionTreeNode>();
+		try {
+			Value[] result = translate(expr);
+			add(Kind.RESULT, null, result, 0);
+
+			int parts = assignParts();
+			int scratchSize = assignScratch();
+			byte[] classFile = generate(parts);
+			PixelProgram program = define(classFile, interpreted.toArray(new ExpressionTreeNode[0]));
+
+			interpretedCount = interpreted.size();
+			methodCount = parts;
+			return new CompiledExpression(expr, program, scratchSize);
+		} finally {
+			instructions = null;
+			translated = null;
+			interpreted = null;
+		}
+	}
+
+	/**
+	 * What an instruction computes
+	 */
+	private enum Kind {
+		ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER, POW, NEGATE, MATH, LOG, CLAMP, WRAP, CONVERT, PERLIN_BW,
+		PERLIN_COLOR, OCTAVE_NOISE, MANDELBROT, SAMPLE, INTERPRET, TIME, RESULT
+	}
+
+	/**
+	 * One channel of the value of a subexpression: x, y, a constant, or a value
+	 * computed by an instruction
+	 */
+	private static class Value {
+		final Instruction source;
+		final int channel;
+		final double constant;
+		final int local;
+
+		private Value(Instruction source, int channel, double constant, int local) {
+			this.source = source;
+			this.channel = channel;
+			this.constant = constant;
+			this.local = local;
+		}
+
+		static Value parameter(int local) {
+			return new Value(null, 0, 0, local);
+		}
+
+		static Value constant(double constant) {
+			return new Value(null, 0, constant, -1);
+		}
+
+		static Value computed(Instruction source, int channel) {
+			return new Value(source, channel, 0, -1);
+		}
+	}
+
+	/**
+	 * The computation of one node, with the inputs it reads and the channels it
+	 * produces
+	 */
+	private static class Instruction {
+		final Kind kind;
+		final ExpressionTreeNode node;
+		final Value[] inputs;
+		final int outputs;
+		final int index;
+		String method;
+		String owner;
+		int nodeIndex;
+
+		int part;
+		int spill = -1;
+		int lastLocalUse = -1;
+		int[] locals;
+
+		Instruction(Kind kind, ExpressionTreeNode node, Value[] inputs, int outputs, int index) {
+			this.kind = kind;
+			this.node = node;
+			this.inputs = inputs;
+			this.outputs = outputs;
+			this.index = index;
+			this.locals = new int[outputs];
+		}
+
+		/**
+		 * An upper bound on the number of bytes of code this instruction generates
+		 */
+		int maxSize() {
+			int loads = kind == Kind.PERLIN_COLOR ? 3 * inputs.length : inputs.length;
+			return 8 * loads + 20 * outputs + 64;
+		}
+	}
+
+	private Instruction add(Kind kind, ExpressionTreeNode node, Value[] inputs, int outputs) {
+		Instruction instruction = new Instruction(kind, node, inputs, outputs, instructions.size());
+		instructions.add(instruction);
+		return instruction;
+	}
+
+	private static Value[] channels(Instruction instruction) {
+		Value[] values = new Value[3];
+		for (int c = 0; c < 3; c++) {
+			values[c] = Value.computed(instruction, Math.min(c, instruction.outputs - 1));
+		}
+		return values;
+	}
+
+	private static Value[] concat(Value[] first, Value[] second) {
+		Value[] values = new Value[first.length + second.length];
+		System.arraycopy(first, 0, values, 0, first.length);
+		System.arraycopy(second, 0, values, first.length, second.length);
+		return values;
+	}
+
+	/**
+	 * Returns the three channels of the expression, adding the instructions that
+	 * compute them. Each node is translated once, however often it is used.
+	 */
+	private Value[] translate(ExpressionTreeNode expr) {
+		Value[] values = translated.get(expr);
+		if (values == null) {
+			values = translateNode(expr);
+			translated.put(expr, values);
+		}
+		return values;
+	}
+
+	private Value[] translateNode(ExpressionTreeNode expr) {
+		Class<?> type = expr.getClass();
+		List<ExpressionTreeNode> children = expr.getChildren();
+
+		if (type == X.class) {
+			Value x = Value.parameter(X);
+			return new Value[] { x, x, x };
+		}
+		if (type == Y.class) {
+			Value y = Value.parameter(Y);
+			return new Value[] { y, y, y };
+		}
+		if (type == Constant.class || type == RGBColor.class || type == Random.class) {
+			RGBColor color = expr.evaluate(0, 0);
+			return new Value[] { Value.constant(color.getRed()), Value.constant(color.getGreen()),
+					Value.constant(color.getBlue()) };
+		}
+		if (type == T.class) {
+			return channels(add(Kind.TIME, expr, new Value[0], 1));
+		}
+		if (type == SharedExpression.class) {
+			return translate(((SharedExpression) expr).getExpression());
+		}
+		if (type == MemoizedExpression.class) {
+			return translate(children.get(0));
+		}
+		if (type == CompiledExpression.class) {
+			return translate(((CompiledExpression) expr).getSource());
+		}
+
+		Kind binary = binaryKind(type);
+		if (binary != null) {
+			Value[] inputs = concat(translate(children.get(0)), translate(children.get(1)));
+			return channels(add(binary, expr, inputs, channelCount(inputs)));
+		}
+
+		String math = mathMethod(type);
+		if (math != null) {
+			Value[] inputs = translate(children.get(0));
+			Instruction instruction = add(Kind.MATH, expr, inputs, channelCount(inputs));
+			instruction.method = math;
+			return channels(instruction);
+		}
+		if (type == Negate.class || type == Log.class || type == Clamp.class || type == Wrap.class) {
+			Kind kind = type == Negate.class ? Kind.NEGATE
+					: type == Log.class ? Kind.LOG : type == Clamp.class ? Kind.CLAMP : Kind.WRAP;
+			Value[] inputs = translate(children.get(0));
+			return channels(add(kind, expr, inputs, channelCount(inputs)));
+		}
+		if (type == RgbToYCrCb.class || type == YCrCbToRGB.class) {
+			Instruction instruction = add(Kind.CONVERT, expr, translate(children.get(0)), 3);
+			instruction.owner = EXPRESSIONS + type.getSimpleName();
+			return channels(instruction);
+		}
+		if (type == PerlinBW.class) {
+			Value[] inputs = concat(translate(children.get(0)), translate(children.get(1)));
+			return channels(add(Kind.PERLIN_BW, expr, inputs, 1));
+		}
+		if (expr instanceof OctaveNoise noise) {
+			Value[] inputs = { translate(children.get(0))[0], translate(children.get(1))[0] };
+			Instruction instruction = add(Kind.OCTAVE_NOISE, expr, inputs, 1);
+			instruction.method = noise.getName();
+			return channels(instruction);
+		}
+		if (type == PerlinColor.class || type == Mandelbrot.class) {
+			Value[] inputs = { translate(children.get(0))[0], translate(children.get(1))[0] };
+			Kind kind = type == PerlinColor.class ? Kind.PERLIN_COLOR : Kind.MANDELBROT;
+			return channels(add(kind, expr, inputs, kind == Kind.PERLIN_COLOR ? 3 : 1));
+		}
+		if (type == ImageClip.class || type == ImageWrap.class) {
+			// the point on the screen chooses the image's mip level
+			Value[] inputs = { Value.parameter(X), Value.parameter(Y), translate(children.get(0))[0],
+					translate(children.get(1))[0] };
+			return channels(sample(expr, inputs));
+		}
+		if (type == StringValue.class) {
+			return channels(sample(expr, new Value[] { Value.parameter(X), Value.parameter(Y) }));
+		}
+
+		Instruction instruction = add(Kind.INTERPRET, expr, new Value[0], 3);
+		instruction.nodeIndex = interpreted.size();
+		interpreted.add(expr);
+		return channels(instruction);
+	}
+
+	/**
+	 * Adds a call to the node's sample method at the given coordinates (for
+	 * images, preceded by the point on the screen)
+	 */
+	private Instruction sample(ExpressionTreeNode expr, Value[] coordinates) {
+		Instruction instruction = add(Kind.SAMPLE, expr, coordinates, 3);
+		instruction.owner = EXPRESSIONS + expr.getClass().getSimpleName();
+		instruction.nodeIndex = interpreted.size();
+		interpreted.add(expr);
+		return instruction;
+	}
+
+	/**
+	 * Returns 1 if every operand has the same value in all three channels (as x,
+	 * y, gray constants, and perlinBW do), so a function of them need only be
+	 * computed once, and 3 otherwise
+	 */
+	private static int channelCount(Value[] inputs) {
+		for (int operand = 0; operand < inputs.length; operand += 3) {
+			for (int c = 1; c < 3; c++) {
+				if (!sameValue(inputs[operand], inputs[operand + c])) {
+					return 3;
+				}
+			}
+		}
+		return 1;
+	}
+
+	private static boolean sameValue(Value a, Value b) {
+		if (a.source != null || b.source != null) {
+			return a.source == b.source && a.channel == b.channel;
+		}
+		return a.local == b.local && Double.doubleToRawLongBits(a.constant) == Double.doubleToRawLongBits(b.constant);
+	}
+
+	private static Kind binaryKind(Class<?> type) {
+		if (type == Plus.class) {
+			return Kind.ADD;
+		} else if (type == Minus.class) {
+			return Kind.SUBTRACT;
+		} else if (type == Multiply.class) {
+			return Kind.MULTIPLY;
+		} else if (type == Divide.class) {
+			return Kind.DIVIDE;
+		} else if (type == Modulo.class) {
+			return Kind.REMAINDER;
+		} else if (type == Exponent.class) {
+			return Kind.POW;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the name of the java.lang.Math method the function applies to each
+	 * channel
+	 */
+	private static String mathMethod(Class<?> type) {
+		if (type == Abs.class || type == Atan.class || type == Ceil.class || type == Cos.class || type == Exp.class
+				|| type == Floor.class || type == Sin.class || type == Tan.class) {
+			return type.getSimpleName().toLowerCase();
+		}
+		return null;
+	}
+
+	/**
+	 * Splits the instructions into methods that each stay under the size limit
+	 *
+	 * @return the number of methods
+	 */
+	private int assignParts() {
+		int part = 0;
+		int size = 0;
+		for (Instruction instruction : instructions) {
+			int instructionSize = instruction.maxSize();
+			if (size > 0 && size + instructionSize > METHOD_SIZE_LIMIT) {
+				part++;
+				size = 0;
+			}
+			instruction.part = part;
+			size += instructionSize;
+		}
+
+		for (Instruction instruction : instructions) {
+			for (Value input : instruction.inputs) {
+				Instruction source = input.source;
+				if (source == null) {
+					continue;
+				}
+				if (source.part == instruction.part) {
+					source.lastLocalUse = Math.max(source.lastLocalUse, instruction.index);
+				} else if (source.spill < 0) {
+					source.spill = 0;
+				}
+			}
+		}
+		return part + 1;
+	}
+
+	private int spillEnd;
+	private int temporary;
+
+	/**
+	 * Lays out the scratch space: the result, then the values passed between
+	 * methods, then the space for helper calls and interpreted nodes
+	 *
+	 * @return the scratch size of the compiled expression
+	 */
+	private int assignScratch() {
+		int next = 3;
+		for (Instruction instruction : instructions) {
+			if (instruction.spill >= 0) {
+				instruction.spill = next;
+				next += instruction.outputs;
+			}
+		}
+		spillEnd = next;
+		temporary = next;
+		int temporarySize = 3;
+		for (ExpressionTreeNode expr : interpreted) {
+			temporarySize = Math.max(temporarySize, expr.getScratchSize());
+		}
+		return temporary + temporarySize;
+	}
+
+	/**
+	 * Returns the class file of the program
+	 */
+	private byte[] generate(int parts) {
+		ClassFileWriter writer = new ClassFileWriter(PROGRAM, "java/lang/Object",
+				"picasso/parser/compiler/PixelProgram");
+		writer.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, "nodes", NODES);
+
+		Code constructor = new Code(writer.pool(), 2);
+		constructor.aload(0);
+		constructor.invoke(Code.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", -1);
+		constructor.aload(0);
+		constructor.aload(1);
+		constructor.field(Code.PUTFIELD, PROGRAM, "nodes", NODES, -2);
+		constructor.op(Code.RETURN, 0);
+		writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "(" + NODES + ")V", constructor);
+
+		// evaluate(x, y, out, offset) calls each part in order
+		Code evaluate = new Code(writer.pool(), 7);
+		for (int part = 0; part < parts; part++) {
+			evaluate.dload(1);
+			evaluate.dload(3);
+			evaluate.aload(5);
+			evaluate.iload(6);
+			evaluate.aload(0);
+			evaluate.field(Code.GETFIELD, PROGRAM, "nodes", NODES, 0);
+			evaluate.invoke(Code.INVOKESTATIC, PROGRAM, "part" + part, PART, -7);
+		}
+		evaluate.op(Code.RETURN, 0);
+		writer.addMethod(ClassFileWriter.ACC_PUBLIC, "evaluate", "(DD[DI)V", evaluate);
+
+		int next = 0;
+		for (int part = 0; part < parts; part++) {
+			Code code = new Code(writer.pool(), FIRST_VALUE);
+			PartWriter partWriter = new PartWriter(code, part);
+			while (next < instructions.size() && instructions.get(next).part == part) {
+				partWriter.emit(instructions.get(next));
+				next++;
+			}
+			code.op(Code.RETURN, 0);
+			writer.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, "part" + part, PART, code);
+		}
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Writes the code of one part method, keeping the values it computes in
+	 * locals that are reused once their last use has been emitted
+	 */
+	private class PartWriter {
+		private final Code code;
+		private final int part;
+		private final Deque<Integer> freeLocals = new ArrayDeque<Integer>();
+		private int nextLocal = FIRST_VALUE;
+
+		PartWriter(Code code, int part) {
+			this.code = code;
+			this.part = part;
+		}
+
+		void emit(Instruction instruction) {
+			Value[] in = instruction.inputs;
+			switch (instruction.kind) {
+			case ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER, POW:
+				for (int c = 0; c < instruction.outputs; c++) {
+					load(in[c]);
+					load(in[3 + c]);
+					arithmetic(instruction.kind);
+					store(instruction, c);
+				}
+				break;
+			case NEGATE:
+				for (int c = 0; c < instruction.outputs; c++) {
+					load(in[c]);
+					code.op(Code.DNEG, 0);
+					store(instruction, c);
+				}
+				break;
+			case MATH:
+				for (int c = 0; c < instruction.outputs; c++) {
+					load(in[c]);
+					code.invoke(Code.INVOKESTATIC, "java/lang/Math", instruction.method, "(D)D", 0);
+					store(instruction, c);
+				}
+				break;
+			case LOG:
+				for (int c = 0; c < instruction.outputs; c++) {
+					load(in[c]);
+					code.invoke(Code.INVOKESTATIC, "java/lang/Math", "abs", "(D)D", 0);
+					code.invoke(Code.INVOKESTATIC, "java/lang/Math", "log", "(D)D", 0);
+					store(instruction, c);
+				}
+				break;
+			case CLAMP:
+				for (int c = 0; c < instruction.outputs; c++) {
+					load(in[c]);
+					code.doubleConstant(-1);
+					code.doubleConstant(1);
+					code.invoke(Code.INVOKESTATIC, "java/lang/Math", "clamp", "(DDD)D", -4);
+					store(instruction, c);
+				}
+				break;
+			case WRAP:
+				for (int c = 0; c < instruction.outputs; c++) {
+					load(in[c]);
+					code.invoke(Code.INVOKESTATIC, EXPRESSIONS + "Wrap", "wrapHelper", "(D)D", 0);
+					store(instruction, c);
+				}
+				break;
+			case CONVERT:
+				for (int c = 0; c < 3; c++) {
+					load(in[c]);
+				}
+				code.aload(OUT);
+				index(temporary);
+				code.invoke(Code.INVOKESTATIC, instruction.owner, "convert", "(DDD[DI)V", -8);
+				storeTemporary(instruction);
+				break;
+			case PERLIN_BW:
+				noiseEngine();
+				for (int c = 0; c < 3; c++) {
+					load(in[c]);
+					load(in[3 + c]);
+					code.op(Code.DADD, -2);
+				}
+				code.invoke(Code.INVOKEVIRTUAL, NOISE_ENGINE, "noise", "(DDD)D", -5);
+				store(instruction, 0);
+				break;
+			case PERLIN_COLOR:
+				// the same offsets as PerlinColor.evaluate
+				double[] offsets = { 0.3, 0.8, 0.1 };
+				int[] operations = { Code.DADD, Code.DSUB, Code.DADD };
+				for (int c = 0; c < 3; c++) {
+					noiseEngine();
+					load(in[0]);
+					code.doubleConstant(offsets[c]);
+					code.op(operations[c], -2);
+					load(in[1]);
+					code.doubleConstant(offsets[c]);
+					code.op(operations[c], -2);
+					code.invoke(Code.INVOKEVIRTUAL, NOISE_ENGINE, "noise", "(DD)D", -3);
+					store(instruction, c);
+				}
+				break;
+			case OCTAVE_NOISE:
+				noiseEngine();
+				load(in[0]);
+				load(in[1]);
+				code.intConstant(OctaveNoise.OCTAVES);
+				code.invoke(Code.INVOKEVIRTUAL, NOISE_ENGINE, instruction.method, "(DDI)D", -4);
+				store(instruction, 0);
+				break;
+			case MANDELBROT:
+				load(in[0]);
+				load(in[1]);
+				code.invoke(Code.INVOKESTATIC, EXPRESSIONS + "Mandelbrot", "escapeValue", "(DD)D", -2);
+				store(instruction, 0);
+				break;
+			case SAMPLE:
+				code.aload(NODES_LOCAL);
+				code.intConstant(instruction.nodeIndex);
+				code.op(Code.AALOAD, -1);
+				code.checkcast(instruction.owner);
+				for (Value coordinate : in) {
+					load(coordinate);
+				}
+				code.aload(OUT);
+				index(temporary);
+				if (in.length == 4) {
+					code.invoke(Code.INVOKEVIRTUAL, instruction.owner, "sample", "(DDDD[DI)V", -11);
+				} else {
+					code.invoke(Code.INVOKEVIRTUAL, instruction.owner, "sample", "(DD[DI)V", -7);
+				}
+				storeTemporary(instruction);
+				break;
+			case INTERPRET:
+				code.aload(NODES_LOCAL);
+				code.intConstant(instruction.nodeIndex);
+				code.op(Code.AALOAD, -1);
+				code.dload(X);
+				code.dload(Y);
+				code.aload(OUT);
+				index(temporary);
+				code.invoke(Code.INVOKEVIRTUAL, NODE, "evaluate", "(DD[DI)V", -7);
+				storeTemporary(instruction);
+				break;
+			case TIME:
+				code.invoke(Code.INVOKESTATIC, EXPRESSIONS + "T", "getTime", "()D", 2);
+				store(instruction, 0);
+				break;
+			case RESULT:
+				for (int c = 0; c < 3; c++) {
+					code.aload(OUT);
+					index(c);
+					load(in[c]);
+					code.op(Code.DASTORE, -4);
+				}
+				break;
+			}
+			release(instruction);
+		}
+
+		private void arithmetic(Kind kind) {
+			switch (kind) {
+			case ADD -> code.op(Code.DADD, -2);
+			case SUBTRACT -> code.op(Code.DSUB, -2);
+			case MULTIPLY -> code.op(Code.DMUL, -2);
+			case DIVIDE -> code.op(Code.DDIV, -2);
+			case REMAINDER -> code.op(Code.DREM, -2);
+			default -> code.invoke(Code.INVOKESTATIC, "java/lang/Math", "pow", "(DD)D", -2);
+			}
+		}
+
+		/**
+		 * Push out's index offset + delta
+		 */
+		private void index(int delta) {
+			code.iload(OFFSET);
+			if (delta != 0) {
+				code.intConstant(delta);
+				code.op(Code.IADD, -1);
+			}
+		}
+
+		/**
+		 * Push the engine the noise functions use
+		 */
+		private void noiseEngine() {
+			code.field(Code.GETSTATIC, NOISE_ENGINE, "REFERENCE", "L" + NOISE_ENGINE + ";", 1);
+		}
+
+		private void load(Value value) {
+			Instruction source = value.source;
+			if (source == null) {
+				if (value.local >= 0) {
+					code.dload(value.local);
+				} else {
+					code.doubleConstant(value.constant);
+				}
+			} else if (source.part == part) {
+				code.dload(source.locals[value.channel]);
+			} else {
+				code.aload(OUT);
+				index(source.spill + value.channel);
+				code.op(Code.DALOAD, 0);
+			}
+		}
+
+		/**
+		 * Store the channel on top of the stack in a local, and also in the scratch
+		 * space if a later method uses it
+		 */
+		private void store(Instruction instruction, int channel) {
+			int local = freeLocals.isEmpty() ? allocate() : freeLocals.pop();
+			code.dstore(local);
+			instruction.locals[channel] = local;
+			if (instruction.spill >= 0) {
+				code.aload(OUT);
+				index(instruction.spill + channel);
+				code.dload(local);
+				code.op(Code.DASTORE, -4);
+			}
+		}
+
+		/**
+		 * Store the three channels a helper wrote into the temporary space
+		 */
+		private void storeTemporary(Instruction instruction) {
+			for (int c = 0; c < 3; c++) {
+				code.aload(OUT);
+				index(temporary + c);
+				code.op(Code.DALOAD, 0);
+				store(instruction, c);
+			}
+		}
+
+		private int allocate() {
+			int local = nextLocal;
+			nextLocal += 2;
+			return local;
+		}
+
+		/**
+		 * Free the locals of values whose last use in this method was the given
+		 * instruction, and of the instruction's own values if this method does not
+		 * use them again
+		 */
+		private void release(Instruction instruction) {
+			for (Value input : instruction.inputs) {
+				Instruction source = input.source;
+				if (source != null && source.part == part && source.lastLocalUse == instruction.index) {
+					free(source);
+				}
+			}
+			if (instruction.lastLocalUse < 0) {
+				free(instruction);
+			}
+		}
+
+		private void free(Instruction instruction) {
+			for (int c = 0; c < instruction.outputs; c++) {
+				if (instruction.locals[c] != 0) {
+					freeLocals.push(instruction.locals[c]);
+					instruction.locals[c] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads the class file as a hidden class and creates the program
+	 */
+	private static PixelProgram define(byte[] classFile, ExpressionTreeNode[] nodes) {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+			MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(),
+					MethodType.methodType(void.class, ExpressionTreeNode[].class));
+			return (PixelProgram) constructor.invoke(nodes);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException("Could not load compiled expression", e);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package picasso.parser.compiler;
+
+/**
+ * An expression compiled into straight-line code. Implementations are generated
+ * by the ExpressionCompiler.
+ */
+public interface PixelProgram {
+
+	/**
+	 * Evaluate the expression at the point (x, y), writing the red, green, and
+	 * blue components of its color into out[offset], out[offset + 1], and
+	 * out[offset + 2]. The values after those are used as scratch space, so out
+	 * must have the compiled expression's scratch size starting at offset.
+	 *
+	 * @param x      the x coordinate of the point
+	 * @param y      the y coordinate of the point
+	 * @param out    where to write the color
+	 * @param offset the index of the red component in out
+	 */
+	void evaluate(double x, double y, double[] out, int offset);
+}
@@ -3,6 +3,7 @@ package picasso.parser.language;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
 
@@ -15,8 +16,15 @@ import java.util.Scanner;
  */
 public class BuiltinFunctionsReader {
 
-	private static List<String> functionsList;
-	private static String FUNCTIONS_CONF_FILE = "conf/functions.conf";
+	private static final String FUNCTIONS_CONF_FILE = "conf/functions.conf";
+
+	/**
+	 * Holds the function names, which are read (once, even if several threads
+	 * ask at once) the first time they are needed
+	 */
+	private static class Holder {
+		static final List<String> FUNCTIONS = readFunctionsFromFile();
+	}
 
 	/**
 	 * Get the list of built-in function names
@@ -24,23 +32,20 @@ public class BuiltinFunctionsReader {
 	 * @return the list of built-in function names
 	 */
 	public static List<String> getFunctionsList() {
-		if (functionsList == null) {
-			readFunctionsFromFile();
-		}
-		return functionsList;
+		return Holder.FUNCTIONS;
 	}
 
 	/**
 	 * Read the functions from the functions config file
 	 */
-	private static void readFunctionsFromFile() {
-		functionsList = new ArrayList<String>();
+	private static List<String> readFunctionsFromFile() {
+		List<String> functionsList = new ArrayList<String>();
 		Scanner reader;
 		try {
 			reader = new Scanner(new File(FUNCTIONS_CONF_FILE));
 		} catch (FileNotFoundException e1) {
 			e1.printStackTrace();
-			return;
+			return Collections.unmodifiableList(functionsList);
 		}
 		while (reader.hasNextLine()) {
 			String function = reader.nextLine();
@@ -50,6 +55,8 @@ public class BuiltinFunctionsReader {
 				functionsList.add(function);
 			}
 		}
+		reader.close();
+		return Collections.unmodifiableList(functionsList);
 	}
 
 }
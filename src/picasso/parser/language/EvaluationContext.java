@@ -0,0 +1,208 @@
+package picasso.parser.language;
+
+import java.util.function.Supplier;
+
+/**
+ * The parameters of the frame an expression is evaluated for: the value of t,
+ * which frame of how many it is, and, once a renderer has chosen it, the size
+ * of the image drawn. Contexts are immutable, so any number of renders, each
+ * with its own context, can run at once.
+ *
+ * A render binds its context to the threads evaluating it (see run and call),
+ * and expressions that depend on the frame (e.g., t) or on the size of a pixel
+ * (e.g., imageWrap, to choose a mip level) read it from current(). Renderers
+ * that spread a render over several threads bind the context they were given,
+ * with the size of their target, on each of them.
+ */
+public final class EvaluationContext {
+
+	/** the context of a still image: t = 0, the only frame */
+	public static final EvaluationContext DEFAULT = new EvaluationContext(0, 0, 1);
+
+	private static final ThreadLocal<EvaluationContext> bound = new ThreadLocal<EvaluationContext>();
+
+	private final double time;
+	private final int frame;
+	private final int frameCount;
+	// the size of the image drawn, or 0 if it is not known
+	private final int imageWidth;
+	private final int imageHeight;
+
+	/**
+	 * Create a context
+	 *
+	 * @param time       the value of t
+	 * @param frame      the number of the frame, starting at 0
+	 * @param frameCount the number of frames in the animation
+	 */
+	public EvaluationContext(double time, int frame, int frameCount) {
+		this(time, frame, frameCount, 0, 0);
+	}
+
+	private EvaluationContext(double time, int frame, int frameCount, int imageWidth, int imageHeight) {
+		if (frameCount <= 0 || frame < 0 || frame >= frameCount) {
+			throw new IllegalArgumentException("Frame " + frame + " is not one of " + frameCount + " frames");
+		}
+		this.time = time;
+		this.frame = frame;
+		this.frameCount = frameCount;
+		this.imageWidth = imageWidth;
+		this.imageHeight = imageHeight;
+	}
+
+	/**
+	 * Returns this context for drawing an image of the given size
+	 *
+	 * @param width  the width of the image, in pixels
+	 * @param height the height of the image, in pixels
+	 * @return the context, with the image size set
+	 */
+	public EvaluationContext withImageSize(int width, int height) {
+		if (width == imageWidth && height == imageHeight) {
+			return this;
+		}
+		return new EvaluationContext(time, frame, frameCount, width, height);
+	}
+
+	/**
+	 * Returns the context of a frame of an animation, drawn at t = frame /
+	 * frameCount, so that t goes from 0 toward 1 over the animation
+	 *
+	 * @param frame      the number of the frame, starting at 0
+	 * @param frameCount the number of frames in the animation
+	 * @return the frame's context
+	 */
+	public static EvaluationContext forFrame(int frame, int frameCount) {
+		return new EvaluationContext((double) frame / frameCount, frame, frameCount);
+	}
+
+	/**
+	 * Returns the context bound to the current thread, or DEFAULT if there is
+	 * none
+	 *
+	 * @return the context expressions on this thread are evaluated in
+	 */
+	public static EvaluationContext current() {
+		EvaluationContext context = bound.get();
+		return context != null ? context : DEFAULT;
+	}
+
+	/**
+	 * Returns the context bound to the current thread, or null if there is none
+	 *
+	 * @return the bound context
+	 */
+	public static EvaluationContext getBound() {
+		return bound.get();
+	}
+
+	/**
+	 * Run the work with this context bound to the current thread, then restore
+	 * the context that was bound before
+	 *
+	 * @param work what to run in this context
+	 */
+	public void run(Runnable work) {
+		EvaluationContext previous = bound.get();
+		bound.set(this);
+		try {
+			work.run();
+		} finally {
+			restore(previous);
+		}
+	}
+
+	/**
+	 * Compute a value with this context bound to the current thread, then restore
+	 * the context that was bound before
+	 *
+	 * @param work what to compute in this context
+	 * @return the value computed
+	 */
+	public <V> V call(Supplier<V> work) {
+		EvaluationContext previous = bound.get();
+		bound.set(this);
+		try {
+			return work.get();
+		} finally {
+			restore(previous);
+		}
+	}
+
+	private static void restore(EvaluationContext previous) {
+		if (previous == null) {
+			bound.remove();
+		} else {
+			bound.set(previous);
+		}
+	}
+
+	/**
+	 * Returns the value of t
+	 *
+	 * @return the time of the frame
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * Returns the number of the frame, starting at 0
+	 *
+	 * @return the frame number
+	 */
+	public int getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Returns the number of frames in the animation
+	 *
+	 * @return the frame count
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Returns the width of the image drawn, or 0 if it is not known
+	 *
+	 * @return the width, in pixels
+	 */
+	public int getImageWidth() {
+		return imageWidth;
+	}
+
+	/**
+	 * Returns the height of the image drawn, or 0 if it is not known
+	 *
+	 * @return the height, in pixels
+	 */
+	public int getImageHeight() {
+		return imageHeight;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof EvaluationContext)) {
+			return false;
+		}
+		EvaluationContext other = (EvaluationContext) obj;
+		return Double.compare(time, other.time) == 0 && frame == other.frame && frameCount == other.frameCount
+				&& imageWidth == other.imageWidth && imageHeight == other.imageHeight;
+	}
+
+	@Override
+	public int hashCode() {
+		return (((Double.hashCode(time) * 31 + frame) * 31 + frameCount) * 31 + imageWidth) * 31 + imageHeight;
+	}
+
+	@Override
+	public String toString() {
+		String size = imageWidth == 0 ? "" : ", " + imageWidth + "x" + imageHeight;
+		return "t = " + time + " (frame " + (frame + 1) + " of " + frameCount + size + ")";
+	}
+}
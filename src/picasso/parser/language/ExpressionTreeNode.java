@@ -1,5 +1,6 @@
 package picasso.parser.language;
 
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -25,5 +26,153 @@ public abstract class ExpressionTreeNode implements EvaluatableExpression {
 	 */
 	public abstract RGBColor evaluate(double x, double y);
 
+	/**
+	 * Evaluate this expression, given x and y, without creating an RGBColor. The
+	 * red, green, and blue components of the result are written to out[offset],
+	 * out[offset + 1], and out[offset + 2]. Subexpressions use the slots after
+	 * those as scratch space, so out must have room for getScratchSize() values
+	 * starting at offset.
+	 * 
+	 * The default implementation copies the result of evaluate(x, y); built-in
+	 * expressions override it so that evaluating a pixel allocates nothing.
+	 * 
+	 * @param x      the value of x
+	 * @param y      the value of y
+	 * @param out    where to write the result and scratch values
+	 * @param offset the index of the red component of the result
+	 */
+	public void evaluate(double x, double y, double[] out, int offset) {
+		RGBColor result = evaluate(x, y);
+		out[offset] = result.getRed();
+		out[offset + 1] = result.getGreen();
+		out[offset + 2] = result.getBlue();
+	}
+
+	/**
+	 * Evaluate this expression at count points at once. The points' x and y values
+	 * are read from xs and ys, and the red, green, and blue components of the
+	 * results are written to planes[offset], planes[offset + 1], and
+	 * planes[offset + 2]. Subexpressions use the planes after those as scratch
+	 * space, so planes must hold getScratchSize() arrays of at least count values
+	 * starting at offset.
+	 * 
+	 * Built-in expressions override this with one tight loop over the arrays per
+	 * channel, so a whole row costs one call per node instead of one call per node
+	 * per pixel. The default implementation evaluates one point at a time.
+	 * 
+	 * @param xs     the x value of each point
+	 * @param ys     the y value of each point
+	 * @param count  the number of points to evaluate
+	 * @param planes where to write the results and scratch values
+	 * @param offset the index of the plane that receives the red components
+	 */
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		double[] rgb = new double[getScratchSize()];
+		double[] red = planes[offset];
+		double[] green = planes[offset + 1];
+		double[] blue = planes[offset + 2];
+		for (int i = 0; i < count; i++) {
+			evaluate(xs[i], ys[i], rgb, 0);
+			red[i] = rgb[0];
+			green[i] = rgb[1];
+			blue[i] = rgb[2];
+		}
+	}
+
+	/**
+	 * Evaluate this expression at count points at once, writing the components of
+	 * the results into the given arrays. Allocates the scratch planes the
+	 * expression needs; callers evaluating many batches should allocate them once
+	 * and use evaluate(xs, ys, count, planes, offset) instead.
+	 * 
+	 * @param xs    the x value of each point
+	 * @param ys    the y value of each point
+	 * @param count the number of points to evaluate
+	 * @param red   receives the red component of each result
+	 * @param green receives the green component of each result
+	 * @param blue  receives the blue component of each result
+	 */
+	public void evaluate(double[] xs, double[] ys, int count, double[] red, double[] green, double[] blue) {
+		double[][] planes = new double[getScratchSize()][];
+		planes[0] = red;
+		planes[1] = green;
+		planes[2] = blue;
+		for (int i = 3; i < planes.length; i++) {
+			planes[i] = new double[count];
+		}
+		evaluate(xs, ys, count, planes, 0);
+	}
+
+	/**
+	 * Returns the expressions this expression is applied to, in order. Constants
+	 * and variables have no children.
+	 * 
+	 * @return the child expressions of this expression
+	 */
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of();
+	}
+
+	/**
+	 * Returns an expression that applies the same function as this one to the
+	 * given children, in the order getChildren() returns them. Expressions that
+	 * cannot be rebuilt only accept their own children.
+	 *
+	 * @param children the child expressions of the new expression
+	 * @return this expression, if the children are unchanged; otherwise, a new
+	 *         expression of the same type
+	 * @throws UnsupportedOperationException if this expression cannot be rebuilt
+	 *                                       with different children
+	 */
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		List<ExpressionTreeNode> current = getChildren();
+		if (children.size() == current.size()) {
+			boolean same = true;
+			for (int i = 0; i < children.size(); i++) {
+				same &= children.get(i) == current.get(i);
+			}
+			if (same) {
+				return this;
+			}
+		}
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot be rebuilt");
+	}
+
+	/**
+	 * Returns true if the color of this expression depends only on the colors of
+	 * its children, and not directly on the point being evaluated or the time.
+	 * Constants return true; x, y, and t return false. Expressions that return
+	 * true may be evaluated once and replaced by their color when all of their
+	 * children are constant.
+	 *
+	 * @return true if this expression is a pure function of its children
+	 */
+	public boolean dependsOnlyOnChildren() {
+		return false;
+	}
+
+	/**
+	 * Returns the number of nodes on the longest path from this expression down
+	 * to a constant or variable
+	 * 
+	 * @return the depth of this expression tree
+	 */
+	public int getDepth() {
+		int deepest = 0;
+		for (ExpressionTreeNode child : getChildren()) {
+			deepest = Math.max(deepest, child.getDepth());
+		}
+		return deepest + 1;
+	}
+
+	/**
+	 * Returns how many values evaluate(x, y, out, offset) may write past offset
+	 * 
+	 * @return the size of the buffer needed to evaluate this expression
+	 */
+	public int getScratchSize() {
+		return 3 * getDepth();
+	}
+
 	static protected Map<ExpressionTreeNode, Object> gelementsToValue = new TreeMap<ExpressionTreeNode, Object>();
 }
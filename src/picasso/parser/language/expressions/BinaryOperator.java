@@ -1,5 +1,8 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+import java.util.Objects;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -60,7 +63,25 @@ public abstract class BinaryOperator extends ExpressionTreeNode {
 		return true;
 	}
 
-	
-	
-}
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), left, right);
+	}
+
+	/**
+	 * Returns the left and right expressions
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(left, right);
+	}
+
+	/**
+	 * Operators only combine the colors of their operands
+	 */
+	@Override
+	public boolean dependsOnlyOnChildren() {
+		return true;
+	}
 
+}
@@ -1,5 +1,7 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -35,4 +37,28 @@ public class Ceil extends UnaryFunction {
 		return new RGBColor(red, green, blue);
 	}
 
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		param.evaluate(x, y, out, offset);
+		out[offset] = Math.ceil(out[offset]);
+		out[offset + 1] = Math.ceil(out[offset + 1]);
+		out[offset + 2] = Math.ceil(out[offset + 2]);
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		param.evaluate(xs, ys, count, planes, offset);
+		for (int c = offset; c < offset + 3; c++) {
+			double[] values = planes[c];
+			for (int i = 0; i < count; i++) {
+				values[i] = Math.ceil(values[i]);
+			}
+		}
+	}
+
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new Ceil(children.get(0));
+	}
+
 }
@@ -1,5 +1,7 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -22,4 +24,28 @@ public class Clamp extends UnaryFunction {
 		return new RGBColor(red, green, blue);
 	}
 
-}
\ No newline at end of file
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		param.evaluate(x, y, out, offset);
+		out[offset] = Math.clamp(out[offset], -1, 1);
+		out[offset + 1] = Math.clamp(out[offset + 1], -1, 1);
+		out[offset + 2] = Math.clamp(out[offset + 2], -1, 1);
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		param.evaluate(xs, ys, count, planes, offset);
+		for (int c = offset; c < offset + 3; c++) {
+			double[] values = planes[c];
+			for (int i = 0; i < count; i++) {
+				values[i] = Math.clamp(values[i], -1, 1);
+			}
+		}
+	}
+
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new Clamp(children.get(0));
+	}
+
+}
@@ -1,5 +1,7 @@
 package picasso.parser.language.expressions;
 
+import java.util.Arrays;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -66,4 +68,32 @@ public class Constant extends ExpressionTreeNode {
 		Constant other = (Constant) obj;
 		return Double.compare(other.value, value) == 0;
 	}
+
+	@Override
+	public int hashCode() {
+		return Double.hashCode(value);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		out[offset] = value;
+		out[offset + 1] = value;
+		out[offset + 2] = value;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		Arrays.fill(planes[offset], 0, count, value);
+		Arrays.fill(planes[offset + 1], 0, count, value);
+		Arrays.fill(planes[offset + 2], 0, count, value);
+	}
+
+	/**
+	 * A constant is the same everywhere
+	 */
+	@Override
+	public boolean dependsOnlyOnChildren() {
+		return true;
+	}
+
 }
@@ -1,5 +1,7 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -35,4 +37,35 @@ public class Divide extends BinaryOperator {
 		return new RGBColor(red, green, blue);
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Divides the left parameter by the right at the given x,y point, writing
+	 * the quotient into out.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		left.evaluate(x, y, out, offset);
+		right.evaluate(x, y, out, offset + 3);
+		out[offset] = out[offset] / out[offset + 3];
+		out[offset + 1] = out[offset + 1] / out[offset + 4];
+		out[offset + 2] = out[offset + 2] / out[offset + 5];
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		left.evaluate(xs, ys, count, planes, offset);
+		right.evaluate(xs, ys, count, planes, offset + 3);
+		for (int c = 0; c < 3; c++) {
+			double[] result = planes[offset + c];
+			double[] other = planes[offset + 3 + c];
+			for (int i = 0; i < count; i++) {
+				result[i] = result[i] / other[i];
+			}
+		}
+	}
+
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new Divide(children.get(0), children.get(1));
+	}
+
+}
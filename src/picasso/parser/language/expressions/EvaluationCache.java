@@ -0,0 +1,85 @@
+package picasso.parser.language.expressions;
+
+/**
+ * Remembers the colors of shared subexpressions while a MemoizedExpression is
+ * evaluated at one point (or one batch of points), so that each shared
+ * subexpression is evaluated only once per point.
+ *
+ * Each thread evaluating the expression gets its own frame of cached values, so
+ * an expression can be rendered by several threads at once.
+ */
+public class EvaluationCache {
+
+	private int slots;
+
+	private final ThreadLocal<Frame> frames = ThreadLocal.withInitial(() -> new Frame(slots));
+
+	/**
+	 * Reserve space for the color of one more shared subexpression
+	 *
+	 * @return the slot the subexpression stores its color in
+	 */
+	int addSlot() {
+		return slots++;
+	}
+
+	/**
+	 * Returns the number of shared subexpressions this cache holds colors for
+	 *
+	 * @return the number of slots
+	 */
+	public int getSlotCount() {
+		return slots;
+	}
+
+	/**
+	 * Returns the calling thread's cached values
+	 */
+	Frame frame() {
+		return frames.get();
+	}
+
+	/**
+	 * The cached colors of one thread. A slot's values are valid only if its stamp
+	 * matches the current generation, which changes every time the root
+	 * expression is evaluated.
+	 */
+	static class Frame {
+		boolean active;
+		long generation;
+		final long[] stamps;
+		final double[][] colors;
+		final double[][][] planes;
+
+		Frame(int slots) {
+			stamps = new long[slots];
+			colors = new double[slots][3];
+			planes = new double[slots][3][0];
+		}
+
+		/**
+		 * Start evaluating the root expression at a new point
+		 */
+		void begin() {
+			active = true;
+			generation++;
+		}
+
+		void end() {
+			active = false;
+		}
+
+		/**
+		 * Returns the planes of the given slot, growing them to hold count values
+		 */
+		double[][] planes(int slot, int count) {
+			double[][] cached = planes[slot];
+			if (cached[0].length < count) {
+				for (int c = 0; c < 3; c++) {
+					cached[c] = new double[count];
+				}
+			}
+			return cached;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package picasso.parser.language.expressions;
+
+import java.util.List;
+
+import picasso.model.NoiseEngine;
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Represents the fbm function - grayscale fractional Brownian motion: octaves
+ * of noise, each at twice the frequency and half the amplitude of the last
+ */
+public class Fbm extends OctaveNoise {
+
+	public Fbm(ExpressionTreeNode xExpr, ExpressionTreeNode yExpr) {
+		super(xExpr, yExpr);
+	}
+
+	@Override
+	public double noise(double x, double y) {
+		return NoiseEngine.REFERENCE.fbm(x, y, OCTAVES);
+	}
+
+	@Override
+	public void noise(double[] xs, double[] ys, double[] out, int count) {
+		NoiseEngine.REFERENCE.fbm(xs, ys, out, count, OCTAVES);
+	}
+
+	@Override
+	public String getName() {
+		return "fbm";
+	}
+
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new Fbm(children.get(0), children.get(1));
+	}
+}
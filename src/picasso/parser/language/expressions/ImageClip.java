@@ -1,6 +1,12 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+import java.util.Objects;
+
+import picasso.model.ImageCache;
 import picasso.model.Pixmap;
+import picasso.model.SampledImage;
+import picasso.model.SampledImage.Filter;
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -13,21 +19,59 @@ public class ImageClip extends ExpressionTreeNode {
 	private String filename;
 	private ExpressionTreeNode xCoord;
 	private ExpressionTreeNode yCoord;
-	private Pixmap image;
+	private Filter filter;
+	private SampledImage image;
+	private LevelOfDetail levels;
 
 	public ImageClip(String filename, ExpressionTreeNode xCoord, ExpressionTreeNode yCoord) {
+		this(filename, xCoord, yCoord, Filter.NEAREST);
+	}
+
+	/**
+	 * Creates an ImageClip that reads the image with the given filter
+	 */
+	public ImageClip(String filename, ExpressionTreeNode xCoord, ExpressionTreeNode yCoord, Filter filter) {
 		this.filename = filename;
 		this.xCoord = xCoord;
 		this.yCoord = yCoord;
+		this.filter = filter;
 
 		try {
-			this.image = new Pixmap(filename);
+			this.image = ImageCache.getInstance().getSamples(filename);
 		} catch (Exception e) {
 			System.err.println("Error loading image: " + filename);
 			e.printStackTrace();
 			// Create default image
-			this.image = new Pixmap(100, 100);
+			this.image = new SampledImage(new Pixmap(100, 100));
 		}
+		this.levels = new LevelOfDetail(image, xCoord, yCoord, true);
+	}
+
+	/**
+	 * Returns the name of the image file
+	 */
+	public String getFilename() {
+		return filename;
+	}
+
+	/**
+	 * Returns how the image is read between pixels
+	 */
+	public Filter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Creates an ImageClip of an image that has already been loaded
+	 */
+	private ImageClip(String filename, SampledImage image, Filter filter, ExpressionTreeNode xCoord,
+			ExpressionTreeNode yCoord) {
+		this.filename = filename;
+		this.image = image;
+		this.filter = filter;
+		this.xCoord = xCoord;
+		this.yCoord = yCoord;
+		this.levels = new LevelOfDetail(image, xCoord, yCoord, true);
 	}
 
 	@Override
@@ -37,28 +81,54 @@ public class ImageClip extends ExpressionTreeNode {
 		RGBColor yResult = yCoord.evaluate(x, y);
 
 		// Use red component as coordinate value
-		double xVal = xResult.getRed();
-		double yVal = yResult.getRed();
-
-		// Clamp to [-1, 1]
-		xVal = Math.max(-1.0, Math.min(1.0, xVal));
-		yVal = Math.max(-1.0, Math.min(1.0, yVal));
-		
-		int imageWidth = image.getSize().width;
-		int imageHeight = image.getSize().height;
+		double[] color = new double[3];
+		sample(x, y, xResult.getRed(), yResult.getRed(), color, 0);
+		return new RGBColor(color[0], color[1], color[2]);
+	}
 
-		int imageX = (int) Math.round(((xVal + 1.0) / 2.0) * (imageWidth - 1));
-		int imageY = (int) Math.round(((yVal + 1.0) / 2.0) * (imageHeight - 1));
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		xCoord.evaluate(x, y, out, offset);
+		yCoord.evaluate(x, y, out, offset + 3);
+		sample(x, y, out[offset], out[offset + 3], out, offset);
+	}
 
-		// Get color from image
-		java.awt.Color pixelColor = image.getColor(imageX, imageY);
+	/**
+	 * Clamps the given coordinates into [-1, 1] and writes the color of the image
+	 * at that point into out[offset], out[offset + 1], and out[offset + 2]. The
+	 * point of the screen being drawn chooses the image's mip level.
+	 *
+	 * @param x      the x coordinate of the point on the screen
+	 * @param y      the y coordinate of the point on the screen
+	 * @param xVal   the x coordinate, usually the red component of xCoord
+	 * @param yVal   the y coordinate, usually the red component of yCoord
+	 * @param out    where to write the color
+	 * @param offset the index of the red component in out
+	 */
+	public void sample(double x, double y, double xVal, double yVal, double[] out, int offset) {
+		levels.current().imageAt(x, y).sample(Math.max(-1.0, Math.min(1.0, xVal)), Math.max(-1.0, Math.min(1.0, yVal)), filter, out, offset);
+	}
 
-		// Convert [0,255] to [-1,1]
-		double red = (pixelColor.getRed() / 255.0) * 2.0 - 1.0;
-		double green = (pixelColor.getGreen() / 255.0) * 2.0 - 1.0;
-		double blue = (pixelColor.getBlue() / 255.0) * 2.0 - 1.0;
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		xCoord.evaluate(xs, ys, count, planes, offset);
+		yCoord.evaluate(xs, ys, count, planes, offset + 3);
+		double[] red = planes[offset];
+		double[] green = planes[offset + 1];
+		double[] blue = planes[offset + 2];
+		double[] yVals = planes[offset + 3];
+		LevelOfDetail.Levels render = levels.current();
+		for (int i = 0; i < count; i++) {
+			render.imageAt(xs[i], ys[i]).sample(Math.max(-1.0, Math.min(1.0, red[i])), Math.max(-1.0, Math.min(1.0, yVals[i])), filter, red, green, blue, i);
+		}
+	}
 
-		return new RGBColor(red, green, blue);
+	/**
+	 * Returns the x and y coordinate expressions
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(xCoord, yCoord);
 	}
 
 	@Override
@@ -68,11 +138,38 @@ public class ImageClip extends ExpressionTreeNode {
 		ImageClip other = (ImageClip) obj;
 		return filename.equals(other.filename) &&
 		       xCoord.equals(other.xCoord) &&
-		       yCoord.equals(other.yCoord);
+		       yCoord.equals(other.yCoord) &&
+		       filter == other.filter;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), filename, xCoord, yCoord, filter);
 	}
 
 	@Override
 	public String toString() {
-		return "ImageClip(\"" + filename + "\", " + xCoord + ", " + yCoord + ")";
+		String call = "ImageClip(\"" + filename + "\", " + xCoord + ", " + yCoord;
+		return call + (filter == Filter.NEAREST ? ")" : ", \"" + filter + "\")");
+	}
+
+	/**
+	 * The sample depends on the evaluated coordinates and on the level read at
+	 * the point, which depends on how fast the coordinates change across the
+	 * screen. Constant coordinates do not change, so they read the full image
+	 * everywhere, as evaluating the expression once outside a render does.
+	 */
+	@Override
+	public boolean dependsOnlyOnChildren() {
+		return true;
+	}
+
+	/**
+	 * Returns an ImageClip of the same image at the given coordinates, without
+	 * loading the image again
+	 */
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new ImageClip(filename, image, filter, children.get(0), children.get(1));
 	}
 }
\ No newline at end of file
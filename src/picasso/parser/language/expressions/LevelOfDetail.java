@@ -0,0 +1,245 @@
+package picasso.parser.language.expressions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import picasso.model.SampledImage;
+import picasso.parser.language.EvaluationContext;
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Chooses the mip level (see SampledImage.getLevel) an imageClip or imageWrap
+ * reads at each point of the screen, from how fast its coordinates move across
+ * the image as the point moves by one pixel. imageWrap("vortex.jpg", x / 0.125,
+ * y / 0.125), for instance, moves eight times as far across the image per pixel as
+ * imageWrap("vortex.jpg", x, y) does, so it reads a level three smaller.
+ *
+ * The derivatives are found by evaluating the coordinate expressions one pixel
+ * right and one pixel below each corner of a grid over the screen, once per
+ * render (the size of a pixel comes from the render's EvaluationContext), and
+ * the level of each of 64 x 64 cells of the screen is interpolated between
+ * the corners around it, so finding a point's level is one lookup. Every way
+ * of evaluating an expression, point by point or a row at a time, reads the
+ * same level at the same point. Expressions evaluated outside a render, with no
+ * image size, read the full image.
+ *
+ * The levels are found on the render's first point, which may be in the middle
+ * of evaluating a MemoizedExpression. Shared subexpressions of the coordinates
+ * are evaluated afresh at each corner then, rather than giving the color they
+ * remembered for that point.
+ */
+final class LevelOfDetail {
+
+	// corners of the grid across and down the screen
+	private static final int GRID = 17;
+	// cells across and down the screen, each of which reads a single level
+	private static final int CELLS = 64;
+	// the renders remembered at once; an animation has one per frame
+	private static final int MAX_RENDERS = 32;
+	private static final double LN_2 = Math.log(2);
+
+	private final SampledImage image;
+	private final ExpressionTreeNode xCoord;
+	private final ExpressionTreeNode yCoord;
+	private final boolean clamped;
+	private final Levels fullImage;
+	// the caches of the shared subexpressions in the coordinates
+	private final List<EvaluationCache> caches = new ArrayList<EvaluationCache>();
+	private final Map<EvaluationContext, Levels> renders = new ConcurrentHashMap<EvaluationContext, Levels>();
+	private volatile Levels last;
+
+	/**
+	 * The image to read in each cell of the screen, for one render
+	 */
+	final class Levels {
+		private final EvaluationContext context;
+		// the image read everywhere, if every cell reads the same one
+		private final SampledImage uniform;
+		// CELLS x CELLS images, row by row, or null if uniform is read everywhere
+		private final SampledImage[] cells;
+
+		private Levels(EvaluationContext context, float[] levels) {
+			this.context = context;
+			if (levels == null) {
+				this.uniform = image;
+				this.cells = null;
+				return;
+			}
+			SampledImage[] cells = new SampledImage[CELLS * CELLS];
+			boolean same = true;
+			for (int row = 0; row < CELLS; row++) {
+				for (int column = 0; column < CELLS; column++) {
+					SampledImage level = levelAt(levels, column, row);
+					cells[row * CELLS + column] = level;
+					same &= level == cells[0];
+				}
+			}
+			this.uniform = cells[0];
+			this.cells = same ? null : cells;
+		}
+
+		/**
+		 * Returns the level of the image to read at the given point of the screen
+		 *
+		 * @param x the x coordinate of the point on the screen
+		 * @param y the y coordinate of the point on the screen
+		 * @return the image at that level
+		 */
+		SampledImage imageAt(double x, double y) {
+			if (cells == null) {
+				return uniform;
+			}
+			return cells[toCell(y) * CELLS + toCell(x)];
+		}
+	}
+
+	/**
+	 * Create the chooser for an image read at the given coordinates
+	 *
+	 * @param image   the image
+	 * @param xCoord  the x coordinate expression
+	 * @param yCoord  the y coordinate expression
+	 * @param clamped true if the coordinates are clamped to [-1, 1], as
+	 *                imageClip's are, so the image does not move where they are
+	 *                past the edge
+	 */
+	LevelOfDetail(SampledImage image, ExpressionTreeNode xCoord, ExpressionTreeNode yCoord, boolean clamped) {
+		this.image = image;
+		this.xCoord = xCoord;
+		this.yCoord = yCoord;
+		this.clamped = clamped;
+		this.fullImage = new Levels(null, null);
+		Set<ExpressionTreeNode> visited = Collections.newSetFromMap(new IdentityHashMap<ExpressionTreeNode, Boolean>());
+		findCaches(xCoord, visited);
+		findCaches(yCoord, visited);
+	}
+
+	private void findCaches(ExpressionTreeNode expr, Set<ExpressionTreeNode> visited) {
+		if (!visited.add(expr)) {
+			return;
+		}
+		if (expr instanceof SharedExpression shared && !caches.contains(shared.getCache())) {
+			caches.add(shared.getCache());
+		}
+		for (ExpressionTreeNode child : expr.getChildren()) {
+			findCaches(child, visited);
+		}
+	}
+
+	/**
+	 * Returns the levels of the render on the current thread, finding them if
+	 * this is the render's first point
+	 *
+	 * @return the levels of the current render
+	 */
+	Levels current() {
+		EvaluationContext context = EvaluationContext.current();
+		if (context.getImageWidth() <= 0 || context.getImageHeight() <= 0) {
+			return fullImage;
+		}
+		Levels levels = last;
+		if (levels != null && (levels.context == context || levels.context.equals(context))) {
+			return levels;
+		}
+		levels = renders.get(context);
+		if (levels == null) {
+			if (renders.size() >= MAX_RENDERS) {
+				renders.clear();
+			}
+			levels = new Levels(context, findOutsideFrames(context));
+			renders.put(context, levels);
+		}
+		last = levels;
+		return levels;
+	}
+
+	/**
+	 * Finds the levels with the calling thread's frames of the coordinates'
+	 * caches inactive, so that their shared subexpressions are evaluated at each
+	 * corner
+	 */
+	private float[] findOutsideFrames(EvaluationContext context) {
+		EvaluationCache.Frame[] frames = new EvaluationCache.Frame[caches.size()];
+		boolean[] active = new boolean[frames.length];
+		for (int i = 0; i < frames.length; i++) {
+			frames[i] = caches.get(i).frame();
+			active[i] = frames[i].active;
+			frames[i].active = false;
+		}
+		try {
+			return find(context);
+		} finally {
+			for (int i = 0; i < frames.length; i++) {
+				frames[i].active = active[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the level of detail at each corner of the grid, or null if it is
+	 * nowhere past half a level
+	 */
+	private float[] find(EvaluationContext context) {
+		double pixelWidth = 2.0 / context.getImageWidth();
+		double pixelHeight = 2.0 / context.getImageHeight();
+		// image pixels per unit of the coordinates
+		double scaleX = (image.getWidth() - 1) / 2.0;
+		double scaleY = (image.getHeight() - 1) / 2.0;
+
+		float[] levels = new float[GRID * GRID];
+		boolean shrunk = false;
+		for (int row = 0; row < GRID; row++) {
+			double y = -1 + 2.0 * row / (GRID - 1);
+			for (int column = 0; column < GRID; column++) {
+				double x = -1 + 2.0 * column / (GRID - 1);
+				double u = coordinate(xCoord, x, y);
+				double v = coordinate(yCoord, x, y);
+				double right = Math.hypot((coordinate(xCoord, x + pixelWidth, y) - u) * scaleX,
+						(coordinate(yCoord, x + pixelWidth, y) - v) * scaleY);
+				double below = Math.hypot((coordinate(xCoord, x, y + pixelHeight) - u) * scaleX,
+						(coordinate(yCoord, x, y + pixelHeight) - v) * scaleY);
+				// image pixels crossed per screen pixel
+				double footprint = Math.max(right, below);
+				double level = Math.log(footprint) / LN_2;
+				if (Double.isFinite(level) && level > 0) {
+					levels[row * GRID + column] = (float) level;
+					shrunk |= level >= 0.5;
+				}
+			}
+		}
+		return shrunk ? levels : null;
+	}
+
+	/**
+	 * Returns the level of the image at the center of a cell, interpolated
+	 * between the corners of the grid around it
+	 */
+	private SampledImage levelAt(float[] levels, int column, int row) {
+		double gridX = (column + 0.5) / CELLS * (GRID - 1);
+		double gridY = (row + 0.5) / CELLS * (GRID - 1);
+		int left = (int) gridX;
+		int top = (int) gridY;
+		double fx = gridX - left;
+		double fy = gridY - top;
+		int corner = top * GRID + left;
+		double upper = levels[corner] + fx * (levels[corner + 1] - levels[corner]);
+		double lower = levels[corner + GRID] + fx * (levels[corner + GRID + 1] - levels[corner + GRID]);
+		double level = upper + fy * (lower - upper);
+		return level < 0.5 ? image : image.getLevel((int) (level + 0.5));
+	}
+
+	private double coordinate(ExpressionTreeNode coord, double x, double y) {
+		double value = coord.evaluate(x, y).getRed();
+		return clamped ? Math.max(-1.0, Math.min(1.0, value)) : value;
+	}
+
+	private static int toCell(double coordinate) {
+		// NaN, from a NaN point, falls in the first cell
+		return Math.clamp((int) ((coordinate + 1.0) * (CELLS / 2.0)), 0, CELLS - 1);
+	}
+}
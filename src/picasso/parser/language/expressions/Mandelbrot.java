@@ -1,5 +1,8 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+import java.util.Objects;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -56,6 +59,65 @@ public class Mandelbrot extends ExpressionTreeNode {
 		
 		return new RGBColor(value, value, value);
 	}
+
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		real.evaluate(x, y, out, offset);
+		imag.evaluate(x, y, out, offset + 3);
+		double value = escapeValue(out[offset], out[offset + 3]);
+		out[offset] = value;
+		out[offset + 1] = value;
+		out[offset + 2] = value;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		real.evaluate(xs, ys, count, planes, offset);
+		imag.evaluate(xs, ys, count, planes, offset + 3);
+		double[] red = planes[offset];
+		double[] green = planes[offset + 1];
+		double[] blue = planes[offset + 2];
+		double[] cImag = planes[offset + 3];
+		for (int i = 0; i < count; i++) {
+			double value = escapeValue(red[i], cImag[i]);
+			red[i] = value;
+			green[i] = value;
+			blue[i] = value;
+		}
+	}
+
+	/**
+	 * Maps the number of iterations c takes to escape to a value between -1 and 1
+	 *
+	 * @param cReal the real part of c
+	 * @param cImag the imaginary part of c
+	 * @return the grey value of c
+	 */
+	public static double escapeValue(double cReal, double cImag) {
+		double zReal = 0;
+		double zImag = 0;
+		double zMod = Math.sqrt(zReal*zReal + zImag*zImag);
+		int n = 0;
+
+		while(zMod <= 2 && n < MAX_ITER) {
+			double newZReal = zReal*zReal - zImag*zImag + cReal;
+			double newZImag = 2*zReal*zImag + cImag;
+			zReal = newZReal;
+			zImag = newZImag;
+			zMod = Math.sqrt(zReal*zReal + zImag*zImag);
+			n++;
+		}
+
+		return 1.0 - (2.0 * n / MAX_ITER);
+	}
+
+	/**
+	 * Returns the real and imaginary part expressions
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(real, imag);
+	}
 	
 	@Override
 	public boolean equals(Object obj) {
@@ -65,8 +127,26 @@ public class Mandelbrot extends ExpressionTreeNode {
 		return real.equals(other.real) && imag.equals(other.imag);
 	}
 
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), real, imag);
+	}
+
 	@Override
 	public String toString() {
 		return "Mandelbrot(" + real + ", " + imag + ")";
 	}
+
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new Mandelbrot(children.get(0), children.get(1));
+	}
+
+	/**
+	 * The iteration count depends only on the real and imaginary parts
+	 */
+	@Override
+	public boolean dependsOnlyOnChildren() {
+		return true;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package picasso.parser.language.expressions;
+
+import java.util.List;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * The root of an expression whose shared subexpressions (see SharedExpression)
+ * are evaluated only once per point. Every evaluation of this expression starts
+ * a new point for its cache.
+ */
+public class MemoizedExpression extends ExpressionTreeNode {
+
+	private final ExpressionTreeNode expr;
+	private final EvaluationCache cache;
+
+	/**
+	 * Create the root of an expression whose shared subexpressions remember their
+	 * colors in the given cache
+	 *
+	 * @param expr  the expression to evaluate
+	 * @param cache the cache its shared subexpressions were created with
+	 */
+	public MemoizedExpression(ExpressionTreeNode expr, EvaluationCache cache) {
+		this.expr = expr;
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the number of subexpressions that are evaluated once and reused
+	 *
+	 * @return the number of shared subexpressions
+	 */
+	public int getSharedCount() {
+		return cache.getSlotCount();
+	}
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		double[] rgb = new double[getScratchSize()];
+		evaluate(x, y, rgb, 0);
+		return new RGBColor(rgb[0], rgb[1], rgb[2]);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		EvaluationCache.Frame frame = cache.frame();
+		frame.begin();
+		try {
+			expr.evaluate(x, y, out, offset);
+		} finally {
+			frame.end();
+		}
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		EvaluationCache.Frame frame = cache.frame();
+		frame.begin();
+		try {
+			expr.evaluate(xs, ys, count, planes, offset);
+		} finally {
+			frame.end();
+		}
+	}
+
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(expr);
+	}
+
+	/**
+	 * Returns the representation of the whole expression
+	 */
+	@Override
+	public String toString() {
+		return expr.toString();
+	}
+}
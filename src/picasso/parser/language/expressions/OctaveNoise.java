@@ -0,0 +1,119 @@
+package picasso.parser.language.expressions;
+
+import java.util.List;
+import java.util.Objects;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Represents a grayscale function that sums octaves of Perlin noise at the
+ * point given by the red components of its two arguments (see NoiseEngine).
+ */
+public abstract class OctaveNoise extends ExpressionTreeNode {
+
+	/** the number of octaves summed */
+	public static final int OCTAVES = 5;
+
+	ExpressionTreeNode xExpr;
+	ExpressionTreeNode yExpr;
+
+	/**
+	 * @param xExpr the x coordinate of the noise
+	 * @param yExpr the y coordinate of the noise
+	 */
+	public OctaveNoise(ExpressionTreeNode xExpr, ExpressionTreeNode yExpr) {
+		this.xExpr = xExpr;
+		this.yExpr = yExpr;
+	}
+
+	/**
+	 * Returns the sum of the octaves at the given point
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the gray value, in [-1, 1]
+	 */
+	public abstract double noise(double x, double y);
+
+	/**
+	 * Writes noise(xs[i], ys[i]) into out[i] for count points; out may be xs or
+	 * ys
+	 *
+	 * @param xs    the x coordinates
+	 * @param ys    the y coordinates
+	 * @param out   where to write the gray values
+	 * @param count the number of points
+	 */
+	public abstract void noise(double[] xs, double[] ys, double[] out, int count);
+
+	/**
+	 * Returns the name of the function, as written in expressions
+	 *
+	 * @return the name
+	 */
+	public abstract String getName();
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		double grey = noise(xExpr.evaluate(x, y).getRed(), yExpr.evaluate(x, y).getRed());
+		return new RGBColor(grey, grey, grey);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		xExpr.evaluate(x, y, out, offset);
+		yExpr.evaluate(x, y, out, offset + 3);
+		double grey = noise(out[offset], out[offset + 3]);
+		out[offset] = grey;
+		out[offset + 1] = grey;
+		out[offset + 2] = grey;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		xExpr.evaluate(xs, ys, count, planes, offset);
+		yExpr.evaluate(xs, ys, count, planes, offset + 3);
+		double[] red = planes[offset];
+		noise(red, planes[offset + 3], red, count);
+		System.arraycopy(red, 0, planes[offset + 1], 0, count);
+		System.arraycopy(red, 0, planes[offset + 2], 0, count);
+	}
+
+	/**
+	 * Returns the x and y expressions
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(xExpr, yExpr);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (obj == null || obj.getClass() != getClass()) {
+			return false;
+		}
+		OctaveNoise other = (OctaveNoise) obj;
+		return xExpr.equals(other.xExpr) && yExpr.equals(other.yExpr);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), xExpr, yExpr);
+	}
+
+	@Override
+	public String toString() {
+		return getName() + "(" + xExpr + ", " + yExpr + ")";
+	}
+
+	/**
+	 * The noise depends only on the evaluated coordinates
+	 */
+	@Override
+	public boolean dependsOnlyOnChildren() {
+		return true;
+	}
+}
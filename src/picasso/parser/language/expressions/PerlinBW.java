@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
-import picasso.model.ImprovedNoise;
+import java.util.List;
+import java.util.Objects;
+
+import picasso.model.NoiseEngine;
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -23,7 +26,7 @@ public class PerlinBW extends ExpressionTreeNode {
 		RGBColor left = xExpr.evaluate(x, y);
 		RGBColor right = yExpr.evaluate(x, y);
 
-		double grey = ImprovedNoise.noise(
+		double grey = NoiseEngine.REFERENCE.noise(
 			left.getRed() + right.getRed(), 
 			left.getGreen() + right.getGreen(),
 			left.getBlue() + right.getBlue()
@@ -33,6 +36,47 @@ public class PerlinBW extends ExpressionTreeNode {
 		return new RGBColor(grey, grey, grey);
 	}
 
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		xExpr.evaluate(x, y, out, offset);
+		yExpr.evaluate(x, y, out, offset + 3);
+		double grey = NoiseEngine.REFERENCE.noise(
+			out[offset] + out[offset + 3],
+			out[offset + 1] + out[offset + 4],
+			out[offset + 2] + out[offset + 5]
+		);
+		out[offset] = grey;
+		out[offset + 1] = grey;
+		out[offset + 2] = grey;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		xExpr.evaluate(xs, ys, count, planes, offset);
+		yExpr.evaluate(xs, ys, count, planes, offset + 3);
+		double[] red = planes[offset];
+		double[] green = planes[offset + 1];
+		double[] blue = planes[offset + 2];
+		for (int i = 0; i < count; i++) {
+			double grey = NoiseEngine.REFERENCE.noise(
+				red[i] + planes[offset + 3][i],
+				green[i] + planes[offset + 4][i],
+				blue[i] + planes[offset + 5][i]
+			);
+			red[i] = grey;
+			green[i] = grey;
+			blue[i] = grey;
+		}
+	}
+
+	/**
+	 * Returns the x and y expressions
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(xExpr, yExpr);
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (obj == this) return true;
@@ -41,8 +85,26 @@ public class PerlinBW extends ExpressionTreeNode {
 		return xExpr.equals(other.xExpr) && yExpr.equals(other.yExpr);
 	}
 
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), xExpr, yExpr);
+	}
+
 	@Override
 	public String toString() {
 		return "perlinBW(" + xExpr + ", " + yExpr + ")";
 	}
+
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new PerlinBW(children.get(0), children.get(1));
+	}
+
+	/**
+	 * The noise depends only on the evaluated coordinates
+	 */
+	@Override
+	public boolean dependsOnlyOnChildren() {
+		return true;
+	}
 }
\ No newline at end of file
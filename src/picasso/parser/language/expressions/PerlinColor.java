@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
-import picasso.model.ImprovedNoise;
+import java.util.List;
+import java.util.Objects;
+
+import picasso.model.NoiseEngine;
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -26,14 +29,51 @@ public class PerlinColor extends ExpressionTreeNode {
 		double xVal = xResult.getRed();
 		double yVal = yResult.getRed();
 
-		// Generate Perlin noise gathered from References
-		double red = ImprovedNoise.noise(xVal + 0.3, yVal + 0.3, 0);
-		double green = ImprovedNoise.noise(xVal - 0.8, yVal - 0.8, 0);
-		double blue = ImprovedNoise.noise(xVal + 0.1, yVal + 0.1, 0);
+		// Perlin noise in the plane, offset for each component
+		double red = NoiseEngine.REFERENCE.noise(xVal + 0.3, yVal + 0.3);
+		double green = NoiseEngine.REFERENCE.noise(xVal - 0.8, yVal - 0.8);
+		double blue = NoiseEngine.REFERENCE.noise(xVal + 0.1, yVal + 0.1);
 
 		return new RGBColor(red, green, blue);
 	}
 
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		xExpr.evaluate(x, y, out, offset);
+		yExpr.evaluate(x, y, out, offset + 3);
+		double xVal = out[offset];
+		double yVal = out[offset + 3];
+
+		out[offset] = NoiseEngine.REFERENCE.noise(xVal + 0.3, yVal + 0.3);
+		out[offset + 1] = NoiseEngine.REFERENCE.noise(xVal - 0.8, yVal - 0.8);
+		out[offset + 2] = NoiseEngine.REFERENCE.noise(xVal + 0.1, yVal + 0.1);
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		xExpr.evaluate(xs, ys, count, planes, offset);
+		yExpr.evaluate(xs, ys, count, planes, offset + 3);
+		double[] red = planes[offset];
+		double[] green = planes[offset + 1];
+		double[] blue = planes[offset + 2];
+		double[] yVals = planes[offset + 3];
+		for (int i = 0; i < count; i++) {
+			double xVal = red[i];
+			double yVal = yVals[i];
+			red[i] = NoiseEngine.REFERENCE.noise(xVal + 0.3, yVal + 0.3);
+			green[i] = NoiseEngine.REFERENCE.noise(xVal - 0.8, yVal - 0.8);
+			blue[i] = NoiseEngine.REFERENCE.noise(xVal + 0.1, yVal + 0.1);
+		}
+	}
+
+	/**
+	 * Returns the x and y expressions
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(xExpr, yExpr);
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (obj == this) return true;
@@ -42,8 +82,26 @@ public class PerlinColor extends ExpressionTreeNode {
 		return xExpr.equals(other.xExpr) && yExpr.equals(other.yExpr);
 	}
 
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), xExpr, yExpr);
+	}
+
 	@Override
 	public String toString() {
 		return "perlinColor(" + xExpr + ", " + yExpr + ")";
 	}
+
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new PerlinColor(children.get(0), children.get(1));
+	}
+
+	/**
+	 * The noise depends only on the evaluated coordinates
+	 */
+	@Override
+	public boolean dependsOnlyOnChildren() {
+		return true;
+	}
 }
\ No newline at end of file
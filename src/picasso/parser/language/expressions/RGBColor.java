@@ -1,6 +1,7 @@
 package picasso.parser.language.expressions;
 
 import java.awt.Color;
+import java.util.Arrays;
 
 import picasso.parser.language.ExpressionTreeNode;
 
@@ -92,6 +93,20 @@ public class RGBColor extends ExpressionTreeNode {
 		return new Color(toInt(myRed), toInt(myGreen), toInt(myBlue));
 	}
 
+	/**
+	 * Converts the given components to a Java color packed as an ARGB int, the
+	 * same value toJavaColor().getRGB() would produce, without creating any
+	 * objects
+	 * 
+	 * @param red   the amount of red, on a scale of [-1, 1]
+	 * @param green the amount of green, on a scale of [-1, 1]
+	 * @param blue  the amount of blue, on a scale of [-1, 1]
+	 * @return the color packed as an ARGB int
+	 */
+	public static int toRGB(double red, double green, double blue) {
+		return 0xFF000000 | (toInt(clamp(red)) << 16) | (toInt(clamp(green)) << 8) | toInt(clamp(blue));
+	}
+
 	/**
 	 * 
 	 * @param o the other object
@@ -112,6 +127,15 @@ public class RGBColor extends ExpressionTreeNode {
 		return false;
 	}
 
+	/**
+	 * Colors whose components differ by less than ERROR_TOLERANCE are equal, so
+	 * all colors share one hash code.
+	 */
+	@Override
+	public int hashCode() {
+		return RGBColor.class.hashCode();
+	}
+
 	/**
 	 * Returns the RGBColor as a String in the form "Color: &lt;red&gt;
 	 * &lt;green&gt; &lt;blue&gt;"
@@ -169,4 +193,27 @@ public class RGBColor extends ExpressionTreeNode {
 	public RGBColor evaluate(double x, double y) {
 		return this;
 	}
+
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		out[offset] = myRed;
+		out[offset + 1] = myGreen;
+		out[offset + 2] = myBlue;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		Arrays.fill(planes[offset], 0, count, myRed);
+		Arrays.fill(planes[offset + 1], 0, count, myGreen);
+		Arrays.fill(planes[offset + 2], 0, count, myBlue);
+	}
+
+	/**
+	 * A color is the same everywhere
+	 */
+	@Override
+	public boolean dependsOnlyOnChildren() {
+		return true;
+	}
+
 }
@@ -1,5 +1,7 @@
 package picasso.parser.language.expressions;
 
+import java.util.Arrays;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -25,4 +27,26 @@ public class Random extends ExpressionTreeNode {
 		return new RGBColor(red, green, blue);
 	}
 
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		out[offset] = red;
+		out[offset + 1] = green;
+		out[offset + 2] = blue;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		Arrays.fill(planes[offset], 0, count, red);
+		Arrays.fill(planes[offset + 1], 0, count, green);
+		Arrays.fill(planes[offset + 2], 0, count, blue);
+	}
+
+	/**
+	 * The color is chosen once, when the expression is created
+	 */
+	@Override
+	public boolean dependsOnlyOnChildren() {
+		return true;
+	}
+
 }
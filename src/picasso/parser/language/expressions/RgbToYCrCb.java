@@ -1,5 +1,7 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -71,4 +73,60 @@ public class RgbToYCrCb extends UnaryFunction{
 				return new RGBColor(y_picasso, cb_picasso, cr_picasso);
 	}
 
-}
\ No newline at end of file
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		param.evaluate(x, y, out, offset);
+		convert(out[offset], out[offset + 1], out[offset + 2], out, offset);
+	}
+
+	/**
+	 * Converts the color from RGB to YCrCb, writing Y', Cb, and Cr into
+	 * out[offset], out[offset + 1], and out[offset + 2]
+	 *
+	 * @param red    the red component, in [-1, 1]
+	 * @param green  the green component, in [-1, 1]
+	 * @param blue   the blue component, in [-1, 1]
+	 * @param out    where to write the converted color
+	 * @param offset the index of Y' in out
+	 */
+	public static void convert(double red, double green, double blue, double[] out, int offset) {
+		double red_prime = (red + 1) / 2.0;
+		double green_prime = (green + 1) / 2.0;
+		double blue_prime = (blue + 1) / 2.0;
+
+		double Y_prime = 0.299 * red_prime + 0.587 * green_prime + 0.114 * blue_prime;
+		double cb_val = 0.492 * (blue_prime - Y_prime);
+		double cr_val = 0.877 * (red_prime - Y_prime);
+
+		out[offset] = (Y_prime * 2.0) - 1.0;
+		out[offset + 1] = cb_val / 0.492;
+		out[offset + 2] = cr_val / 0.877;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		param.evaluate(xs, ys, count, planes, offset);
+		double[] red = planes[offset];
+		double[] green = planes[offset + 1];
+		double[] blue = planes[offset + 2];
+		for (int i = 0; i < count; i++) {
+			double red_prime = (red[i] + 1) / 2.0;
+			double green_prime = (green[i] + 1) / 2.0;
+			double blue_prime = (blue[i] + 1) / 2.0;
+
+			double Y_prime = 0.299 * red_prime + 0.587 * green_prime + 0.114 * blue_prime;
+			double cb_val = 0.492 * (blue_prime - Y_prime);
+			double cr_val = 0.877 * (red_prime - Y_prime);
+
+			red[i] = (Y_prime * 2.0) - 1.0;
+			green[i] = cb_val / 0.492;
+			blue[i] = cr_val / 0.877;
+		}
+	}
+
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new RgbToYCrCb(children.get(0));
+	}
+
+}
@@ -0,0 +1,118 @@
+package picasso.parser.language.expressions;
+
+import java.util.List;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * A subexpression used in several places of a MemoizedExpression. The first
+ * time it is evaluated at a point, its color is computed and remembered; the
+ * other places that use it at the same point copy the remembered color.
+ *
+ * Evaluated outside of its MemoizedExpression, it simply evaluates its
+ * subexpression.
+ */
+public class SharedExpression extends ExpressionTreeNode {
+
+	private final ExpressionTreeNode expr;
+	private final EvaluationCache cache;
+	private final int slot;
+	private final int depth;
+
+	/**
+	 * Create a shared use of the given expression whose color is remembered in the
+	 * given cache
+	 *
+	 * @param expr  the expression that is used in several places
+	 * @param cache the cache of the MemoizedExpression this expression is part of
+	 */
+	public SharedExpression(ExpressionTreeNode expr, EvaluationCache cache) {
+		this.expr = expr;
+		this.cache = cache;
+		this.slot = cache.addSlot();
+		this.depth = expr.getDepth() + 1;
+	}
+
+	/**
+	 * Returns the expression that is shared
+	 *
+	 * @return the shared expression
+	 */
+	public ExpressionTreeNode getExpression() {
+		return expr;
+	}
+
+	/**
+	 * Returns the cache this expression remembers its color in
+	 */
+	EvaluationCache getCache() {
+		return cache;
+	}
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		double[] rgb = new double[getScratchSize()];
+		evaluate(x, y, rgb, 0);
+		return new RGBColor(rgb[0], rgb[1], rgb[2]);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		EvaluationCache.Frame frame = cache.frame();
+		if (!frame.active) {
+			expr.evaluate(x, y, out, offset);
+			return;
+		}
+		double[] color = frame.colors[slot];
+		if (frame.stamps[slot] == frame.generation) {
+			System.arraycopy(color, 0, out, offset, 3);
+			return;
+		}
+		expr.evaluate(x, y, out, offset);
+		System.arraycopy(out, offset, color, 0, 3);
+		frame.stamps[slot] = frame.generation;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		EvaluationCache.Frame frame = cache.frame();
+		if (!frame.active) {
+			expr.evaluate(xs, ys, count, planes, offset);
+			return;
+		}
+		double[][] cached = frame.planes(slot, count);
+		if (frame.stamps[slot] == frame.generation) {
+			for (int c = 0; c < 3; c++) {
+				System.arraycopy(cached[c], 0, planes[offset + c], 0, count);
+			}
+			return;
+		}
+		expr.evaluate(xs, ys, count, planes, offset);
+		for (int c = 0; c < 3; c++) {
+			System.arraycopy(planes[offset + c], 0, cached[c], 0, count);
+		}
+		frame.stamps[slot] = frame.generation;
+	}
+
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(expr);
+	}
+
+	/**
+	 * Remembered when the expression is shared, so that measuring an expression
+	 * with many shared parts does not visit them once per use
+	 */
+	@Override
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the representation of the shared expression
+	 */
+	@Override
+	public String toString() {
+		return expr.toString();
+	}
+}
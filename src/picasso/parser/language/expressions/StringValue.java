@@ -1,53 +1,75 @@
 package picasso.parser.language.expressions;
 
-import picasso.model.Pixmap;
+import picasso.model.ImageCache;
+import picasso.model.SampledImage;
+import picasso.model.SampledImage.Filter;
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
- * Represents a string valuee
+ * Represents a string value. As an expression, it stands for the image it
+ * names, which is loaded the first time it is evaluated (strings that only name
+ * an image or a filter for imageClip or imageWrap are never evaluated).
  * 
  * @author Luis Coronel
  */
 public class StringValue extends ExpressionTreeNode {
 	
 	private String value;
-	private Pixmap image;
+	// loaded on first use; every thread gets the same samples from the cache
+	private volatile SampledImage image;
 	
 	public StringValue(String value) {
 		this.value = value;
-		
-		// Load the image when string is created
-			this.image = new Pixmap(value);
-		
 	}
 	
 	public String getValue() {
 		return value;
 	}
+
+	private SampledImage image() {
+		SampledImage samples = image;
+		if (samples == null) {
+			samples = ImageCache.getInstance().getSamples(value);
+			image = samples;
+		}
+		return samples;
+	}
 	
 	@Override
 	public RGBColor evaluate(double x, double y) {
-		// Map domain coordinates [-1,1] to image coordinates
-		int imageWidth = image.getSize().width;
-		int imageHeight = image.getSize().height;
-		
-		// Clamp to [-1, 1]
-		x = Math.clamp(x, -1.0, 1.0);
-		y = Math.clamp(y, -1.0, 1.0);
-		
-		// Convert to image coordinates
-		int imageX = (int) Math.round(((x + 1.0) / 2.0) * (imageWidth - 1));
-		int imageY = (int) Math.round(((y + 1.0) / 2.0) * (imageHeight - 1));
-		
-		// Get color from image
-		java.awt.Color pixelColor = image.getColor(imageX, imageY);
-		
-		// Convert [0,255] to [-1,1]
-		double red = (pixelColor.getRed() / 255.0) * 2.0 - 1.0;
-		double green = (pixelColor.getGreen() / 255.0) * 2.0 - 1.0;
-		double blue = (pixelColor.getBlue() / 255.0) * 2.0 - 1.0;
-		
-		return new RGBColor(red, green, blue);
+		double[] color = new double[3];
+		sample(x, y, color, 0);
+		return new RGBColor(color[0], color[1], color[2]);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		sample(x, y, out, offset);
+	}
+
+	/**
+	 * Clamps the given coordinates into [-1, 1] and writes the color of the image
+	 * at that point into out[offset], out[offset + 1], and out[offset + 2]
+	 *
+	 * @param x      the x coordinate
+	 * @param y      the y coordinate
+	 * @param out    where to write the color
+	 * @param offset the index of the red component in out
+	 */
+	public void sample(double x, double y, double[] out, int offset) {
+		image().sample(Math.clamp(x, -1.0, 1.0), Math.clamp(y, -1.0, 1.0), Filter.NEAREST, out, offset);
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		SampledImage samples = image();
+		double[] red = planes[offset];
+		double[] green = planes[offset + 1];
+		double[] blue = planes[offset + 2];
+		for (int i = 0; i < count; i++) {
+			samples.sample(Math.clamp(xs[i], -1.0, 1.0), Math.clamp(ys[i], -1.0, 1.0), Filter.NEAREST, red, green,
+					blue, i);
+		}
 	}
 	
 	@Override
@@ -56,6 +78,11 @@ public class StringValue extends ExpressionTreeNode {
 		if (!(obj instanceof StringValue)) return false;
 		return value.equals(((StringValue) obj).value);
 	}
+
+	@Override
+	public int hashCode() {
+		return value.hashCode();
+	}
 	
 	@Override
 	public String toString() {
@@ -1,9 +1,16 @@
 package picasso.parser.language.expressions;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import picasso.parser.language.EvaluationContext;
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
- * Represents t in a Picasso expression
+ * Represents t in a Picasso expression. Its value is the time of the
+ * EvaluationContext the expression is evaluated in.
  * 
  * @author Asya Yurkovskaya
  * @author Luis Coronel
@@ -11,6 +18,7 @@ import picasso.parser.language.ExpressionTreeNode;
  */
 public class T extends ExpressionTreeNode {
 
+    /** the time used when no evaluation context is bound (see increaseTime) */
     private static double tTime = 0;
     private static boolean hasTime = false;
 
@@ -19,21 +27,81 @@ public class T extends ExpressionTreeNode {
 	 */
 	@Override
 	public RGBColor evaluate(double x, double y) {
-		return new RGBColor(tTime, tTime, tTime);
+		double time = getTime();
+		return new RGBColor(time, time, time);
 	}
 
+    /**
+     * Returns the current value of t: the time of the evaluation context bound
+     * to this thread
+     *
+     * @return the time of the frame being drawn
+     */
+    public static double getTime() {
+        EvaluationContext context = EvaluationContext.getBound();
+        return context != null ? context.getTime() : tTime;
+    }
+
+    /**
+     * Returns true if t appears anywhere in the expression, i.e., if it needs to
+     * be drawn as an animation
+     *
+     * @param expr the expression to search
+     * @return whether the expression uses t
+     */
+    public static boolean appearsIn(ExpressionTreeNode expr) {
+        return appearsIn(expr, Collections.newSetFromMap(new IdentityHashMap<ExpressionTreeNode, Boolean>()));
+    }
+
+    private static boolean appearsIn(ExpressionTreeNode expr, Set<ExpressionTreeNode> visited) {
+        if (expr instanceof T) {
+            return true;
+        }
+        if (!visited.add(expr)) {
+            return false;
+        }
+        for (ExpressionTreeNode child : expr.getChildren()) {
+            if (appearsIn(child, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advances the time used when no evaluation context is bound
+     *
+     * @deprecated bind an EvaluationContext for each frame instead
+     */
+    @Deprecated
     public static void increaseTime() {
         tTime += 0.02;
     }
 
+    /**
+     * Resets the time used when no evaluation context is bound
+     *
+     * @deprecated bind an EvaluationContext for each frame instead
+     */
+    @Deprecated
     public static void resetTime() {
         tTime = 0;
     }
 
+    /**
+     * @deprecated the parser no longer records whether an expression uses t; use
+     *             appearsIn
+     */
+    @Deprecated
     public static void setHasTime(boolean timeBoolean) {
         hasTime = timeBoolean;
     }
 
+    /**
+     * @deprecated the parser no longer records whether an expression uses t; use
+     *             appearsIn
+     */
+    @Deprecated
     public static boolean getHasTime() {
         return hasTime;
     }
@@ -54,6 +122,11 @@ public class T extends ExpressionTreeNode {
 		return true;
 	}
 
+	@Override
+	public int hashCode() {
+		return T.class.hashCode();
+	}
+
 	/**
 	 * Returns "t", the representation of this variable in Picasso expressions
 	 * 
@@ -64,4 +137,20 @@ public class T extends ExpressionTreeNode {
 		return "t";
 	}
 
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		double time = getTime();
+		out[offset] = time;
+		out[offset + 1] = time;
+		out[offset + 2] = time;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		double time = getTime();
+		Arrays.fill(planes[offset], 0, count, time);
+		Arrays.fill(planes[offset + 1], 0, count, time);
+		Arrays.fill(planes[offset + 2], 0, count, time);
+	}
+
 }
@@ -0,0 +1,37 @@
+package picasso.parser.language.expressions;
+
+import java.util.List;
+
+import picasso.model.NoiseEngine;
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Represents the turbulence function - grayscale octaves of the absolute value
+ * of noise, which crease where the noise crosses zero, like smoke or marble
+ */
+public class Turbulence extends OctaveNoise {
+
+	public Turbulence(ExpressionTreeNode xExpr, ExpressionTreeNode yExpr) {
+		super(xExpr, yExpr);
+	}
+
+	@Override
+	public double noise(double x, double y) {
+		return NoiseEngine.REFERENCE.turbulence(x, y, OCTAVES);
+	}
+
+	@Override
+	public void noise(double[] xs, double[] ys, double[] out, int count) {
+		NoiseEngine.REFERENCE.turbulence(xs, ys, out, count, OCTAVES);
+	}
+
+	@Override
+	public String getName() {
+		return "turbulence";
+	}
+
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new Turbulence(children.get(0), children.get(1));
+	}
+}
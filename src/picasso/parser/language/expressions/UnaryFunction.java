@@ -1,5 +1,8 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+import java.util.Objects;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -58,4 +61,25 @@ public abstract class UnaryFunction extends ExpressionTreeNode {
 		return true;
 	}
 
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), param);
+	}
+
+	/**
+	 * Returns the parameter of this function
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(param);
+	}
+
+	/**
+	 * Functions only transform the color of their parameter
+	 */
+	@Override
+	public boolean dependsOnlyOnChildren() {
+		return true;
+	}
+
 }
@@ -1,4 +1,8 @@
 package picasso.parser.language.expressions;
+
+import java.util.List;
+import java.util.Objects;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -55,4 +59,25 @@ public abstract class UnaryOperator  extends ExpressionTreeNode{
 		return true;
 	}
 
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), param);
+	}
+
+	/**
+	 * Returns the parameter of this operator
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(param);
+	}
+
+	/**
+	 * Operators only transform the color of their operand
+	 */
+	@Override
+	public boolean dependsOnlyOnChildren() {
+		return true;
+	}
+
 }
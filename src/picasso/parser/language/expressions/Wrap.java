@@ -1,5 +1,7 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -22,7 +24,13 @@ public class Wrap extends UnaryFunction {
 		return new RGBColor(red, green, blue);
 	}
 	
-	private static double wrapHelper(double val) {
+	/**
+	 * Wraps the value into [-1, 1]
+	 *
+	 * @param val the value to wrap
+	 * @return the wrapped value
+	 */
+	public static double wrapHelper(double val) {
 		double range = 2.0;
 		double shifted = val + 1;
 		
@@ -44,4 +52,28 @@ public class Wrap extends UnaryFunction {
 		
 	}
 
-}
\ No newline at end of file
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		param.evaluate(x, y, out, offset);
+		out[offset] = wrapHelper(out[offset]);
+		out[offset + 1] = wrapHelper(out[offset + 1]);
+		out[offset + 2] = wrapHelper(out[offset + 2]);
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		param.evaluate(xs, ys, count, planes, offset);
+		for (int c = offset; c < offset + 3; c++) {
+			double[] values = planes[c];
+			for (int i = 0; i < count; i++) {
+				values[i] = wrapHelper(values[i]);
+			}
+		}
+	}
+
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new Wrap(children.get(0));
+	}
+
+}
@@ -35,6 +35,11 @@ public class X extends ExpressionTreeNode {
 		return true;
 	}
 
+	@Override
+	public int hashCode() {
+		return X.class.hashCode();
+	}
+
 	/**
 	 * Returns "x", the representation of this variable in Picasso expressions
 	 * 
@@ -45,4 +50,18 @@ public class X extends ExpressionTreeNode {
 		return "x";
 	}
 
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		out[offset] = x;
+		out[offset + 1] = x;
+		out[offset + 2] = x;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		System.arraycopy(xs, 0, planes[offset], 0, count);
+		System.arraycopy(xs, 0, planes[offset + 1], 0, count);
+		System.arraycopy(xs, 0, planes[offset + 2], 0, count);
+	}
+
 }
@@ -35,6 +35,11 @@ public class Y extends ExpressionTreeNode {
 		return true;
 	}
 
+	@Override
+	public int hashCode() {
+		return Y.class.hashCode();
+	}
+
 	/**
 	 * Returns "y", the representation of this variable in Picasso expressions
 	 * 
@@ -44,4 +49,19 @@ public class Y extends ExpressionTreeNode {
 	public String toString() {
 		return "y";
 	}
+
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		out[offset] = y;
+		out[offset + 1] = y;
+		out[offset + 2] = y;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		System.arraycopy(ys, 0, planes[offset], 0, count);
+		System.arraycopy(ys, 0, planes[offset + 1], 0, count);
+		System.arraycopy(ys, 0, planes[offset + 2], 0, count);
+	}
+
 }
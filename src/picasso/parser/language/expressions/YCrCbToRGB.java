@@ -1,5 +1,7 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -51,4 +53,60 @@ public class YCrCbToRGB extends UnaryFunction{
 				return new RGBColor(rPicasso, gPicasso, bPicasso);
 	}
 
-}
\ No newline at end of file
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		param.evaluate(x, y, out, offset);
+		convert(out[offset], out[offset + 1], out[offset + 2], out, offset);
+	}
+
+	/**
+	 * Converts the color from YCrCb to RGB, writing the red, green, and blue
+	 * components into out[offset], out[offset + 1], and out[offset + 2]
+	 *
+	 * @param luma           Y', in [-1, 1]
+	 * @param blueDifference Cb, in [-1, 1]
+	 * @param redDifference  Cr, in [-1, 1]
+	 * @param out            where to write the converted color
+	 * @param offset         the index of the red component in out
+	 */
+	public static void convert(double luma, double blueDifference, double redDifference, double[] out, int offset) {
+		double yPrime = (luma + 1.0) / 2.0;
+		double cb = blueDifference * 0.492;
+		double cr = redDifference * 0.877;
+
+		double rPrime = yPrime + 1.402 * cr;
+		double gPrime = yPrime - 0.344136 * cb - 0.714136 * cr;
+		double bPrime = yPrime + 1.772 * cb;
+
+		out[offset] = (rPrime * 2.0) - 1.0;
+		out[offset + 1] = (gPrime * 2.0) - 1.0;
+		out[offset + 2] = (bPrime * 2.0) - 1.0;
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		param.evaluate(xs, ys, count, planes, offset);
+		double[] red = planes[offset];
+		double[] green = planes[offset + 1];
+		double[] blue = planes[offset + 2];
+		for (int i = 0; i < count; i++) {
+			double yPrime = (red[i] + 1.0) / 2.0;
+			double cb = green[i] * 0.492;
+			double cr = blue[i] * 0.877;
+
+			double rPrime = yPrime + 1.402 * cr;
+			double gPrime = yPrime - 0.344136 * cb - 0.714136 * cr;
+			double bPrime = yPrime + 1.772 * cb;
+
+			red[i] = (rPrime * 2.0) - 1.0;
+			green[i] = (gPrime * 2.0) - 1.0;
+			blue[i] = (bPrime * 2.0) - 1.0;
+		}
+	}
+
+	@Override
+	public ExpressionTreeNode withChildren(List<ExpressionTreeNode> children) {
+		return new YCrCbToRGB(children.get(0));
+	}
+
+}
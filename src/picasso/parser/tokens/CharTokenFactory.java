@@ -15,7 +15,7 @@ import picasso.parser.tokens.operations.*;
  */
 public class CharTokenFactory {
 
-	private static CharToken[] tokenList = new CharToken[256];
+	private static final CharToken[] tokenList = new CharToken[256];
 
 	/**
 	 * 
@@ -23,9 +23,6 @@ public class CharTokenFactory {
 	 * @return the token represented by this character
 	 */
 	public static CharToken getToken(int ch) {
-		if (tokenList[ch] == null) {
-			tokenList[ch] = new CharToken(ch);
-		}
 		return tokenList[ch];
 	}
 
@@ -43,5 +40,12 @@ public class CharTokenFactory {
 		tokenList[CharConstants.CARET] = new ExponentToken();
 		tokenList[CharConstants.MOD] = new ModuloToken();
 		tokenList[CharConstants.EQUAL] = new EqualToken();
+
+		// create the rest up front so that threads parsing at once never write the list
+		for (int ch = 0; ch < tokenList.length; ch++) {
+			if (tokenList[ch] == null) {
+				tokenList[ch] = new CharToken(ch);
+			}
+		}
 	}
 }
@@ -10,15 +10,12 @@ package picasso.parser.tokens;
  */
 public class EOFToken extends Token {
 
-	private static EOFToken ourInstance;
+	private static final EOFToken ourInstance = new EOFToken();
 
 	/**
 	 * @return an EOFToken (singleton)
 	 */
 	public static EOFToken getInstance() {
-		if (ourInstance == null) {
-			ourInstance = new EOFToken();
-		}
 		return ourInstance;
 	}
 
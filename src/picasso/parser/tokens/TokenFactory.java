@@ -2,11 +2,11 @@ package picasso.parser.tokens;
 
 import java.io.IOException;
 import java.io.StreamTokenizer;
-import java.lang.reflect.InvocationTargetException;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
+import picasso.parser.Builtins;
 import picasso.parser.ParseException;
 import picasso.parser.language.BuiltinFunctionsReader;
 import picasso.parser.tokens.chars.CommaToken;
@@ -17,7 +17,7 @@ import picasso.parser.tokens.chars.RightBracketToken;
  * Looks at a generic token and creates the appropriate token type
  */
 public class TokenFactory {
-	private static Map<String, Token> tokenNameToToken = new HashMap<String, Token>();
+	private static final Map<String, Token> tokenNameToToken = new HashMap<String, Token>();
 
 	static {
 		initBuiltinFunctionTokenMappings();
@@ -124,38 +124,14 @@ public class TokenFactory {
 	 * Add the built-in functions as tokens
 	 */
 	private static void initBuiltinFunctionTokenMappings() {
-		String functionTokenPackage = "picasso.parser.tokens.functions.";
-
-		// Maybe not necessary. Maybe the function is just an identifier
-
 		List<String> functionsList = BuiltinFunctionsReader.getFunctionsList();
 
 		for (String function : functionsList) {
-			// System.out.println("Function: " + function);
-			String functionForToken = capitalize(function);
-			String tokenName = functionTokenPackage + functionForToken + "Token";
-			Class<?> tokenClass = null;
-			Token t = null;
-			// System.out.println(tokenName);
-			try {
-				tokenClass = Class.forName(tokenName);
-				t = (Token) tokenClass.getDeclaredConstructor().newInstance();
-				tokenNameToToken.put(function, t);
-			} catch (ClassNotFoundException e) {
-				throw new ParseException(tokenName + " not found " + e);
-			} catch (InstantiationException e) {
-				throw new ParseException(tokenName + " not instantiated " + e);
-			} catch (IllegalAccessException e) {
-				throw new ParseException(tokenName + " not createable " + e);
-			} catch (IllegalArgumentException e) {
-				throw new ParseException(tokenName + " not createable " + e);
-			} catch (InvocationTargetException e) {
-				throw new ParseException(tokenName + " not createable " + e);
-			} catch (NoSuchMethodException e) {
-				throw new ParseException(tokenName + " not createable " + e);
-			} catch (SecurityException e) {
-				throw new ParseException(tokenName + " not createable " + e);
+			Builtins.Builtin builtin = Builtins.getFunction(function);
+			if (builtin == null) {
+				throw new ParseException(function + " is not a built-in function");
 			}
+			tokenNameToToken.put(function, builtin.createToken());
 		}
 
 	}
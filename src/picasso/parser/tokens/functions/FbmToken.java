@@ -0,0 +1,11 @@
+package picasso.parser.tokens.functions;
+
+/**
+ * Represents the fbm function token
+ */
+public class FbmToken extends FunctionToken {
+
+	public FbmToken() {
+		super("Fbm Function Token");
+	}
+}
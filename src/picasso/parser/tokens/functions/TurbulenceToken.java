@@ -0,0 +1,11 @@
+package picasso.parser.tokens.functions;
+
+/**
+ * Represents the turbulence function token
+ */
+public class TurbulenceToken extends FunctionToken {
+
+	public TurbulenceToken() {
+		super("Turbulence Function Token");
+	}
+}
@@ -0,0 +1,55 @@
+package picasso.parser.vector;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Evaluates expressions a row at a time with the incubating Vector API
+ * (jdk.incubator.vector), processing as many pixels per instruction as the
+ * processor's vectors hold.
+ *
+ * The backend is used automatically when the JVM is started with
+ * --add-modules jdk.incubator.vector, and can be turned off with
+ * -Dpicasso.vector=false. Without the module, vectorize returns its pointwise
+ * expression and none of the classes that use the Vector API are loaded.
+ *
+ * Colors computed with the vector sin, cos, tan, atan, exp, and log may differ
+ * from interpreted ones in the last bit; everything else is exactly the same.
+ */
+public class VectorBackend {
+
+	/** whether the backend may be used at all */
+	public static final boolean ENABLED = !"false".equals(System.getProperty("picasso.vector"));
+
+	private static final String MODULE = "jdk.incubator.vector";
+
+	/**
+	 * Returns true if the Vector API is available and the backend is enabled
+	 *
+	 * @return whether vectorize vectorizes expressions
+	 */
+	public static boolean isAvailable() {
+		return ENABLED && ModuleLayer.boot().findModule(MODULE).isPresent();
+	}
+
+	/**
+	 * Returns an expression that evaluates rows of points of expr with the Vector
+	 * API and single points with pointwise, or pointwise itself if the Vector API
+	 * is not available.
+	 *
+	 * @param expr      the expression to vectorize
+	 * @param pointwise an expression that evaluates to the same colors as expr,
+	 *                  used to evaluate single points
+	 * @return the vectorized expression, or pointwise
+	 */
+	public ExpressionTreeNode vectorize(ExpressionTreeNode expr, ExpressionTreeNode pointwise) {
+		if (!isAvailable()) {
+			return pointwise;
+		}
+		try {
+			return new VectorizedExpression(expr, pointwise, VectorProgram.create(expr));
+		} catch (RuntimeException | LinkageError e) {
+			System.err.println("Not vectorizing expression: " + e);
+			return pointwise;
+		}
+	}
+}
@@ -0,0 +1,575 @@
+package picasso.parser.vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import picasso.model.NoiseEngine;
+import picasso.parser.language.expressions.RgbToYCrCb;
+import picasso.parser.language.expressions.YCrCbToRGB;
+
+/**
+ * The loops a VectorProgram runs over the arrays of a row. Each processes as
+ * many points per step as the preferred vector species has lanes and finishes
+ * the last few points one at a time.
+ *
+ * Every operator is written out in its own loop rather than passed in as a
+ * parameter, because the JIT only turns vector operations whose operator is a
+ * constant into SIMD instructions.
+ *
+ * Arithmetic, abs, clamp, floor, ceil, the color space conversions, and Perlin
+ * noise give exactly the same values as the interpreter. The vector sin, cos, tan, atan,
+ * exp, and log may differ from java.lang.Math in the last bit.
+ */
+final class VectorKernels {
+
+	static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private static final int LANES = SPECIES.length();
+	private static final double TWO_52 = 0x1p52;
+
+	// the hashes of the corners of the lattice cells of a row, as longs so that
+	// they fill the lanes of a vector of doubles
+	private static final VectorSpecies<Long> HASHES = SPECIES.withLanes(long.class);
+	private static final int[] PERMUTATION = NoiseEngine.REFERENCE.getPermutation();
+	// noise at coordinates this large is left to the engine, which truncates them to ints
+	private static final double LATTICE_LIMIT = 0x1p30;
+	private static final long ONE_BITS = Double.doubleToLongBits(1.0);
+	private static final LongVector ZERO_BITS = LongVector.zero(HASHES);
+
+	private VectorKernels() {
+	}
+
+	private static DoubleVector load(double[] values, int i) {
+		return DoubleVector.fromArray(SPECIES, values, i);
+	}
+
+	static void add(double[] a, double[] b, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).add(load(b, i)).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = a[i] + b[i];
+		}
+	}
+
+	static void subtract(double[] a, double[] b, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).sub(load(b, i)).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = a[i] - b[i];
+		}
+	}
+
+	static void multiply(double[] a, double[] b, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).mul(load(b, i)).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = a[i] * b[i];
+		}
+	}
+
+	static void divide(double[] a, double[] b, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).div(load(b, i)).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = a[i] / b[i];
+		}
+	}
+
+	static void negate(double[] a, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).neg().intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = -a[i];
+		}
+	}
+
+	static void abs(double[] a, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).abs().intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = Math.abs(a[i]);
+		}
+	}
+
+	static void clamp(double[] a, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).max(-1.0).min(1.0).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = Math.clamp(a[i], -1.0, 1.0);
+		}
+	}
+
+	static void floor(double[] a, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			floor(load(a, i)).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = Math.floor(a[i]);
+		}
+	}
+
+	static void ceil(double[] a, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			// ceil(v) is exactly -floor(-v), including the sign of zero
+			floor(load(a, i).neg()).neg().intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = Math.ceil(a[i]);
+		}
+	}
+
+	/**
+	 * Math.floor of each lane. Adding and subtracting 2^52 rounds a magnitude below
+	 * 2^52 to an integer; that is one too large if it rounded up. Larger
+	 * magnitudes, infinities, NaN, and zeros are their own floors.
+	 */
+	private static DoubleVector floor(DoubleVector v) {
+		DoubleVector magnitude = v.abs();
+		DoubleVector rounded = magnitude.add(TWO_52).sub(TWO_52);
+		rounded = rounded.blend(rounded.neg(), v.compare(VectorOperators.LT, 0));
+		rounded = rounded.sub(1.0, rounded.compare(VectorOperators.GT, v));
+		VectorMask<Double> fractional = magnitude.compare(VectorOperators.LT, TWO_52)
+				.and(v.compare(VectorOperators.NE, 0));
+		return v.blend(rounded, fractional);
+	}
+
+	static void sin(double[] a, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).lanewise(VectorOperators.SIN).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = Math.sin(a[i]);
+		}
+	}
+
+	static void cos(double[] a, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).lanewise(VectorOperators.COS).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = Math.cos(a[i]);
+		}
+	}
+
+	static void tan(double[] a, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).lanewise(VectorOperators.TAN).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = Math.tan(a[i]);
+		}
+	}
+
+	static void atan(double[] a, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).lanewise(VectorOperators.ATAN).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = Math.atan(a[i]);
+		}
+	}
+
+	static void exp(double[] a, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).lanewise(VectorOperators.EXP).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = Math.exp(a[i]);
+		}
+	}
+
+	/**
+	 * The log of the absolute value of each element, as Log computes it
+	 */
+	static void log(double[] a, double[] result, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(a, i).abs().lanewise(VectorOperators.LOG).intoArray(result, i);
+		}
+		for (; i < count; i++) {
+			result[i] = Math.log(Math.abs(a[i]));
+		}
+	}
+
+	/**
+	 * RgbToYCrCb.convert of each point, with the operations in the same order
+	 */
+	static void rgbToYCrCb(double[] red, double[] green, double[] blue, double[] luma, double[] blueDifference,
+			double[] redDifference, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			DoubleVector redPrime = load(red, i).add(1).div(2.0);
+			DoubleVector greenPrime = load(green, i).add(1).div(2.0);
+			DoubleVector bluePrime = load(blue, i).add(1).div(2.0);
+			DoubleVector yPrime = redPrime.mul(0.299).add(greenPrime.mul(0.587)).add(bluePrime.mul(0.114));
+			DoubleVector cb = bluePrime.sub(yPrime).mul(0.492);
+			DoubleVector cr = redPrime.sub(yPrime).mul(0.877);
+			yPrime.mul(2.0).sub(1.0).intoArray(luma, i);
+			cb.div(0.492).intoArray(blueDifference, i);
+			cr.div(0.877).intoArray(redDifference, i);
+		}
+		double[] rgb = new double[3];
+		for (; i < count; i++) {
+			RgbToYCrCb.convert(red[i], green[i], blue[i], rgb, 0);
+			luma[i] = rgb[0];
+			blueDifference[i] = rgb[1];
+			redDifference[i] = rgb[2];
+		}
+	}
+
+	/**
+	 * YCrCbToRGB.convert of each point, with the operations in the same order
+	 */
+	static void yCrCbToRGB(double[] luma, double[] blueDifference, double[] redDifference, double[] red,
+			double[] green, double[] blue, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			DoubleVector yPrime = load(luma, i).add(1.0).div(2.0);
+			DoubleVector cb = load(blueDifference, i).mul(0.492);
+			DoubleVector cr = load(redDifference, i).mul(0.877);
+			DoubleVector redPrime = yPrime.add(cr.mul(1.402));
+			DoubleVector greenPrime = yPrime.sub(cb.mul(0.344136)).sub(cr.mul(0.714136));
+			DoubleVector bluePrime = yPrime.add(cb.mul(1.772));
+			redPrime.mul(2.0).sub(1.0).intoArray(red, i);
+			greenPrime.mul(2.0).sub(1.0).intoArray(green, i);
+			bluePrime.mul(2.0).sub(1.0).intoArray(blue, i);
+		}
+		double[] rgb = new double[3];
+		for (; i < count; i++) {
+			YCrCbToRGB.convert(luma[i], blueDifference[i], redDifference[i], rgb, 0);
+			red[i] = rgb[0];
+			green[i] = rgb[1];
+			blue[i] = rgb[2];
+		}
+	}
+
+	/**
+	 * The rows a thread's noise kernels keep their intermediate values in: the
+	 * coordinates of the points, their offsets within their lattice cells, the
+	 * hashes of the corners of the cells, and the dot products of the corners'
+	 * gradients with the points' offsets from them
+	 */
+	static final class NoiseRows {
+		final double[] x;
+		final double[] y;
+		final double[] z;
+		final double[] fx;
+		final double[] fy;
+		final double[] fz;
+		final double[][] dots;
+		final long[][] hashes;
+
+		NoiseRows(int capacity) {
+			x = new double[capacity];
+			y = new double[capacity];
+			z = new double[capacity];
+			fx = new double[capacity];
+			fy = new double[capacity];
+			fz = new double[capacity];
+			dots = new double[8][capacity];
+			hashes = new long[8][capacity];
+		}
+	}
+
+	/**
+	 * PerlinBW of each point: noise in space at the sum of the left and right
+	 * colors, as NoiseEngine.REFERENCE computes it. result may not be one of the
+	 * colors.
+	 */
+	static void perlinBW(double[] leftRed, double[] leftGreen, double[] leftBlue, double[] rightRed,
+			double[] rightGreen, double[] rightBlue, double[] result, int count, NoiseRows rows) {
+		add(leftRed, rightRed, rows.x, count);
+		add(leftGreen, rightGreen, rows.y, count);
+		add(leftBlue, rightBlue, rows.z, count);
+		noise(rows.x, rows.y, rows.z, result, count, rows);
+	}
+
+	/**
+	 * PerlinColor of each point: noise in the plane at the offsets PerlinColor
+	 * gives each component, as NoiseEngine.REFERENCE computes it. The results may
+	 * not be x or y.
+	 */
+	static void perlinColor(double[] x, double[] y, double[] red, double[] green, double[] blue, int count,
+			NoiseRows rows) {
+		offset(x, y, 0.3, rows, count);
+		noise(rows.x, rows.y, red, count, rows);
+		offset(x, y, -0.8, rows, count);
+		noise(rows.x, rows.y, green, count, rows);
+		offset(x, y, 0.1, rows, count);
+		noise(rows.x, rows.y, blue, count, rows);
+	}
+
+	/**
+	 * Writes x + offset and y + offset into the coordinate rows
+	 */
+	private static void offset(double[] x, double[] y, double offset, NoiseRows rows, int count) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+			load(x, i).add(offset).intoArray(rows.x, i);
+			load(y, i).add(offset).intoArray(rows.y, i);
+		}
+		for (; i < count; i++) {
+			rows.x[i] = x[i] + offset;
+			rows.y[i] = y[i] + offset;
+		}
+	}
+
+	/*
+	 * Noise is computed in passes over the row, each its own small loop so that
+	 * the JIT keeps all of its vectors in registers: the hashes of the corners of
+	 * each point's lattice cell are looked up a point at a time, then the offsets
+	 * within the cells, the gradients at the corners, and their blends are
+	 * computed a vector at a time. The operations are those of NoiseEngine, in
+	 * the same order, so the results are the same. Points beyond LATTICE_LIMIT
+	 * (or NaN), and the last few points, are left to the engine.
+	 */
+
+	/**
+	 * NoiseEngine.noise(x, y) of each point
+	 */
+	private static void noise(double[] x, double[] y, double[] result, int count, NoiseRows rows) {
+		int bound = SPECIES.loopBound(count);
+		long[][] hashes = rows.hashes;
+		boolean inLattice = hash(x, y, hashes, bound);
+		fraction(x, rows.fx, bound);
+		fraction(y, rows.fy, bound);
+		double[][] dots = rows.dots;
+		corner(hashes[0], rows.fx, 0, rows.fy, 0, dots[0], bound);
+		corner(hashes[1], rows.fx, 1, rows.fy, 0, dots[1], bound);
+		corner(hashes[2], rows.fx, 0, rows.fy, 1, dots[2], bound);
+		corner(hashes[3], rows.fx, 1, rows.fy, 1, dots[3], bound);
+		blend(dots, rows.fx, rows.fy, result, bound);
+		for (int i = inLattice ? bound : 0; i < count; i++) {
+			if (i >= bound || !(Math.abs(x[i]) < LATTICE_LIMIT && Math.abs(y[i]) < LATTICE_LIMIT)) {
+				result[i] = NoiseEngine.REFERENCE.noise(x[i], y[i]);
+			}
+		}
+	}
+
+	/**
+	 * NoiseEngine.noise(x, y, z) of each point
+	 */
+	private static void noise(double[] x, double[] y, double[] z, double[] result, int count, NoiseRows rows) {
+		int bound = SPECIES.loopBound(count);
+		long[][] hashes = rows.hashes;
+		boolean inLattice = hash(x, y, z, hashes, bound);
+		fraction(x, rows.fx, bound);
+		fraction(y, rows.fy, bound);
+		fraction(z, rows.fz, bound);
+		double[][] dots = rows.dots;
+		corner(hashes[0], rows.fx, 0, rows.fy, 0, rows.fz, 0, dots[0], bound);
+		corner(hashes[1], rows.fx, 1, rows.fy, 0, rows.fz, 0, dots[1], bound);
+		corner(hashes[2], rows.fx, 0, rows.fy, 1, rows.fz, 0, dots[2], bound);
+		corner(hashes[3], rows.fx, 1, rows.fy, 1, rows.fz, 0, dots[3], bound);
+		corner(hashes[4], rows.fx, 0, rows.fy, 0, rows.fz, 1, dots[4], bound);
+		corner(hashes[5], rows.fx, 1, rows.fy, 0, rows.fz, 1, dots[5], bound);
+		corner(hashes[6], rows.fx, 0, rows.fy, 1, rows.fz, 1, dots[6], bound);
+		corner(hashes[7], rows.fx, 1, rows.fy, 1, rows.fz, 1, dots[7], bound);
+		blend(dots, rows.fx, rows.fy, rows.fz, result, bound);
+		for (int i = inLattice ? bound : 0; i < count; i++) {
+			if (i >= bound || !(Math.abs(x[i]) < LATTICE_LIMIT && Math.abs(y[i]) < LATTICE_LIMIT
+					&& Math.abs(z[i]) < LATTICE_LIMIT)) {
+				result[i] = NoiseEngine.REFERENCE.noise(x[i], y[i], z[i]);
+			}
+		}
+	}
+
+	/**
+	 * Writes the hashes of the four corners of each point's lattice square, masked
+	 * to the four bits that choose a gradient, into the first four rows of hashes
+	 *
+	 * @return whether every point is within LATTICE_LIMIT
+	 */
+	private static boolean hash(double[] x, double[] y, long[][] hashes, int bound) {
+		int[] p = PERMUTATION;
+		long[] h0 = hashes[0], h1 = hashes[1], h2 = hashes[2], h3 = hashes[3];
+		boolean inLattice = true;
+		for (int i = 0; i < bound; i++) {
+			double xVal = x[i];
+			double yVal = y[i];
+			inLattice &= Math.abs(xVal) < LATTICE_LIMIT && Math.abs(yVal) < LATTICE_LIMIT;
+			int X = floor(xVal) & 255;
+			int Y = floor(yVal) & 255;
+			int A = p[X] + Y, B = p[X + 1] + Y;
+			h0[i] = p[p[A]] & 15;
+			h1[i] = p[p[B]] & 15;
+			h2[i] = p[p[A + 1]] & 15;
+			h3[i] = p[p[B + 1]] & 15;
+		}
+		return inLattice;
+	}
+
+	/**
+	 * Writes the hashes of the eight corners of each point's lattice cube into the
+	 * rows of hashes
+	 *
+	 * @return whether every point is within LATTICE_LIMIT
+	 */
+	private static boolean hash(double[] x, double[] y, double[] z, long[][] hashes, int bound) {
+		int[] p = PERMUTATION;
+		boolean inLattice = true;
+		for (int i = 0; i < bound; i++) {
+			double xVal = x[i];
+			double yVal = y[i];
+			double zVal = z[i];
+			inLattice &= Math.abs(xVal) < LATTICE_LIMIT && Math.abs(yVal) < LATTICE_LIMIT
+					&& Math.abs(zVal) < LATTICE_LIMIT;
+			int X = floor(xVal) & 255;
+			int Y = floor(yVal) & 255;
+			int Z = floor(zVal) & 255;
+			int A = p[X] + Y, AA = p[A] + Z, AB = p[A + 1] + Z;
+			int B = p[X + 1] + Y, BA = p[B] + Z, BB = p[B + 1] + Z;
+			hashes[0][i] = p[AA] & 15;
+			hashes[1][i] = p[BA] & 15;
+			hashes[2][i] = p[AB] & 15;
+			hashes[3][i] = p[BB] & 15;
+			hashes[4][i] = p[AA + 1] & 15;
+			hashes[5][i] = p[BA + 1] & 15;
+			hashes[6][i] = p[AB + 1] & 15;
+			hashes[7][i] = p[BB + 1] & 15;
+		}
+		return inLattice;
+	}
+
+	/**
+	 * The largest int not greater than value, as NoiseEngine finds it
+	 */
+	private static int floor(double value) {
+		int truncated = (int) value;
+		return value < truncated ? truncated - 1 : truncated;
+	}
+
+	/**
+	 * Writes the offset of each coordinate from its lattice line
+	 */
+	private static void fraction(double[] coordinates, double[] result, int bound) {
+		for (int i = 0; i < bound; i += LANES) {
+			DoubleVector v = load(coordinates, i);
+			// adding zero makes the floor of -0.0 +0.0, as the engine's int is
+			v.sub(floor(v).add(0.0)).intoArray(result, i);
+		}
+	}
+
+	/**
+	 * Writes the dot product of each point's offset from a corner of its lattice
+	 * square, (fx - dx, fy - dy), with the corner's gradient
+	 */
+	private static void corner(long[] hashes, double[] fx, double dx, double[] fy, double dy, double[] result,
+			int bound) {
+		for (int i = 0; i < bound; i += LANES) {
+			grad(hashes, i, load(fx, i).sub(dx), load(fy, i).sub(dy)).intoArray(result, i);
+		}
+	}
+
+	/**
+	 * Writes the dot product of each point's offset from a corner of its lattice
+	 * cube with the corner's gradient
+	 */
+	private static void corner(long[] hashes, double[] fx, double dx, double[] fy, double dy, double[] fz, double dz,
+			double[] result, int bound) {
+		for (int i = 0; i < bound; i += LANES) {
+			grad(hashes, i, load(fx, i).sub(dx), load(fy, i).sub(dy), load(fz, i).sub(dz)).intoArray(result, i);
+		}
+	}
+
+	/**
+	 * Blends the dot products at the corners of each point's lattice square,
+	 * across x and then across y
+	 */
+	private static void blend(double[][] dots, double[] fx, double[] fy, double[] result, int bound) {
+		double[] d0 = dots[0], d1 = dots[1], d2 = dots[2], d3 = dots[3];
+		for (int i = 0; i < bound; i += LANES) {
+			DoubleVector u = fade(load(fx, i));
+			DoubleVector near = lerp(u, load(d0, i), load(d1, i));
+			DoubleVector far = lerp(u, load(d2, i), load(d3, i));
+			lerp(fade(load(fy, i)), near, far).intoArray(result, i);
+		}
+	}
+
+	/**
+	 * Blends the dot products at the corners of each point's lattice cube, across
+	 * x, then y, then z
+	 */
+	private static void blend(double[][] dots, double[] fx, double[] fy, double[] fz, double[] result, int bound) {
+		double[] d0 = dots[0], d1 = dots[1], d2 = dots[2], d3 = dots[3];
+		double[] d4 = dots[4], d5 = dots[5], d6 = dots[6], d7 = dots[7];
+		for (int i = 0; i < bound; i += LANES) {
+			DoubleVector u = fade(load(fx, i));
+			DoubleVector v = fade(load(fy, i));
+			DoubleVector near = lerp(v, lerp(u, load(d0, i), load(d1, i)), lerp(u, load(d2, i), load(d3, i)));
+			DoubleVector far = lerp(v, lerp(u, load(d4, i), load(d5, i)), lerp(u, load(d6, i), load(d7, i)));
+			lerp(fade(load(fz, i)), near, far).intoArray(result, i);
+		}
+	}
+
+	private static DoubleVector fade(DoubleVector t) {
+		return t.mul(t).mul(t).mul(t.mul(t.mul(6).sub(15)).add(10));
+	}
+
+	private static DoubleVector lerp(DoubleVector t, DoubleVector a, DoubleVector b) {
+		return a.add(t.mul(b.sub(a)));
+	}
+
+	/**
+	 * The dot product of (x, y) with the gradients of the hashes at i. Rather
+	 * than being looked up in a table, whose lanes would have to be gathered, each
+	 * component of a gradient is chosen from 1, -1, and 0 with masks of its
+	 * hash's bits, as ImprovedNoise.grad chooses between x, y, and z: bit 3 and
+	 * bit 2 choose the components, and bits 0 and 1 are shifted into the sign bit
+	 * of 1.0.
+	 */
+	private static DoubleVector grad(long[] hashes, int i, DoubleVector x, DoubleVector y) {
+		LongVector h = LongVector.fromArray(HASHES, hashes, i);
+		VectorMask<Long> first = h.compare(VectorOperators.LT, 8);
+		VectorMask<Long> second = h.compare(VectorOperators.LT, 4);
+		// hashes 12 and 14 take x as their second component
+		VectorMask<Long> crossed = h.or(2).compare(VectorOperators.EQ, 14);
+		LongVector firstSign = h.lanewise(VectorOperators.LSHL, 63).or(ONE_BITS);
+		LongVector secondSign = h.and(2).lanewise(VectorOperators.LSHL, 62).or(ONE_BITS);
+		LongVector gx = ZERO_BITS.blend(secondSign, crossed).blend(firstSign, first);
+		LongVector gy = firstSign.blend(ZERO_BITS.blend(secondSign, second), first);
+		return gx.reinterpretAsDoubles().mul(x).add(gy.reinterpretAsDoubles().mul(y));
+	}
+
+	/**
+	 * The dot product of (x, y, z) with the gradients of the hashes at i, chosen
+	 * as in grad(hashes, i, x, y)
+	 */
+	private static DoubleVector grad(long[] hashes, int i, DoubleVector x, DoubleVector y, DoubleVector z) {
+		LongVector h = LongVector.fromArray(HASHES, hashes, i);
+		VectorMask<Long> first = h.compare(VectorOperators.LT, 8);
+		VectorMask<Long> second = h.compare(VectorOperators.LT, 4);
+		VectorMask<Long> crossed = h.or(2).compare(VectorOperators.EQ, 14);
+		LongVector firstSign = h.lanewise(VectorOperators.LSHL, 63).or(ONE_BITS);
+		LongVector secondSign = h.and(2).lanewise(VectorOperators.LSHL, 62).or(ONE_BITS);
+		LongVector gx = ZERO_BITS.blend(secondSign, crossed).blend(firstSign, first);
+		LongVector gy = firstSign.blend(ZERO_BITS.blend(secondSign, second), first);
+		LongVector gz = secondSign.blend(ZERO_BITS, second.or(crossed));
+		return gx.reinterpretAsDoubles().mul(x).add(gy.reinterpretAsDoubles().mul(y))
+				.add(gz.reinterpretAsDoubles().mul(z));
+	}
+}
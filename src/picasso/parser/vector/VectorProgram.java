@@ -0,0 +1,555 @@
+package picasso.parser.vector;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import picasso.parser.compiler.CompiledExpression;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * An expression turned into a list of steps that each compute one node for a
+ * whole row of points, with the loops in VectorKernels.
+ *
+ * Each distinct node of the expression is one step, so shared subexpressions
+ * are computed once per row, and a function of values that are the same in all
+ * three channels is computed once rather than per channel. The values of a row
+ * are kept in arrays ("registers") that are reused once no later step needs
+ * them. Steps for functions without a vector form (octaves of noise, fractals,
+ * images) loop over the points; nodes this class does not know evaluate their whole
+ * row with their own batch evaluate.
+ */
+final class VectorProgram {
+
+	// operands that are the xs and ys of the row; constant k is operand CONSTANT - k
+	private static final int X = -1;
+	private static final int Y = -2;
+	private static final int CONSTANT = -3;
+
+	/**
+	 * What a step computes
+	 */
+	private enum Kind {
+		ADD, SUBTRACT, MULTIPLY, DIVIDE, REMAINDER, POW, NEGATE, ABS, SIN, COS, TAN, ATAN, EXP, LOG, FLOOR, CEIL,
+		CLAMP, WRAP, RGB_TO_YCRCB, YCRCB_TO_RGB, PERLIN_BW, PERLIN_COLOR, OCTAVE_NOISE, MANDELBROT, SAMPLE, INTERPRET,
+		TIME
+	}
+
+	/**
+	 * Evaluates an image or string at one point of the screen, at the given
+	 * coordinates
+	 */
+	private interface Sampler {
+		void sample(double x, double y, double xVal, double yVal, double[] out, int offset);
+	}
+
+	/**
+	 * One node of the expression. Inputs and outputs are value numbers until
+	 * registers are assigned, and register numbers (or X or Y) after.
+	 * Constants are kept in the first registers.
+	 */
+	private static class Step {
+		final Kind kind;
+		final int[] inputs;
+		final int[] outputs;
+		ExpressionTreeNode node;
+		Sampler sampler;
+
+		Step(Kind kind, int[] inputs, int[] outputs) {
+			this.kind = kind;
+			this.inputs = inputs;
+			this.outputs = outputs;
+		}
+	}
+
+	/**
+	 * The registers and scratch space of one thread
+	 */
+	private static class Frame {
+		final int capacity;
+		final double[][] registers;
+		final double[][] scratch;
+		final double[] point = new double[3];
+		private VectorKernels.NoiseRows noise;
+
+		Frame(int registerCount, int scratchSize, int capacity, double[] constants) {
+			this.capacity = capacity;
+			registers = new double[registerCount][capacity];
+			for (int i = 0; i < constants.length; i++) {
+				Arrays.fill(registers[i], constants[i]);
+			}
+			scratch = new double[scratchSize][capacity];
+		}
+
+		/**
+		 * Returns the rows the noise kernels use, made the first time one runs
+		 */
+		VectorKernels.NoiseRows noiseRows() {
+			if (noise == null) {
+				noise = new VectorKernels.NoiseRows(capacity);
+			}
+			return noise;
+		}
+	}
+
+	private final Step[] steps;
+	private final int[] result;
+	private final double[] constants;
+	private final int registerCount;
+	private final int scratchSize;
+	private final ThreadLocal<Frame> frames = new ThreadLocal<Frame>();
+
+	private VectorProgram(Step[] steps, int[] result, double[] constants, int registerCount, int scratchSize) {
+		this.steps = steps;
+		this.result = result;
+		this.constants = constants;
+		this.registerCount = registerCount;
+		this.scratchSize = scratchSize;
+	}
+
+	/**
+	 * Evaluate the expression at count points, writing the red, green, and blue
+	 * components of the results to planes[offset], planes[offset + 1], and
+	 * planes[offset + 2]
+	 */
+	void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		Frame frame = frames.get();
+		if (frame == null || frame.capacity < count) {
+			frame = new Frame(registerCount, scratchSize, Math.max(count, 64), constants);
+			frames.set(frame);
+		}
+		double[][] registers = frame.registers;
+		for (Step step : steps) {
+			run(step, xs, ys, count, frame);
+		}
+		for (int c = 0; c < 3; c++) {
+			System.arraycopy(operand(result[c], xs, ys, registers), 0, planes[offset + c], 0, count);
+		}
+	}
+
+	private static double[] operand(int operand, double[] xs, double[] ys, double[][] registers) {
+		return operand == X ? xs : operand == Y ? ys : registers[operand];
+	}
+
+	private void run(Step step, double[] xs, double[] ys, int count, Frame frame) {
+		double[][] registers = frame.registers;
+		int[] in = step.inputs;
+		double[][] a = new double[in.length][];
+		for (int i = 0; i < in.length; i++) {
+			a[i] = operand(in[i], xs, ys, registers);
+		}
+		double[][] out = new double[step.outputs.length][];
+		for (int i = 0; i < out.length; i++) {
+			out[i] = registers[step.outputs[i]];
+		}
+
+		switch (step.kind) {
+		case ADD:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.add(a[c], a[3 + c], out[c], count);
+			}
+			break;
+		case SUBTRACT:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.subtract(a[c], a[3 + c], out[c], count);
+			}
+			break;
+		case MULTIPLY:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.multiply(a[c], a[3 + c], out[c], count);
+			}
+			break;
+		case DIVIDE:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.divide(a[c], a[3 + c], out[c], count);
+			}
+			break;
+		case REMAINDER:
+			for (int c = 0; c < out.length; c++) {
+				for (int i = 0; i < count; i++) {
+					out[c][i] = a[c][i] % a[3 + c][i];
+				}
+			}
+			break;
+		case POW:
+			for (int c = 0; c < out.length; c++) {
+				for (int i = 0; i < count; i++) {
+					out[c][i] = Math.pow(a[c][i], a[3 + c][i]);
+				}
+			}
+			break;
+		case NEGATE:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.negate(a[c], out[c], count);
+			}
+			break;
+		case ABS:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.abs(a[c], out[c], count);
+			}
+			break;
+		case SIN:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.sin(a[c], out[c], count);
+			}
+			break;
+		case COS:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.cos(a[c], out[c], count);
+			}
+			break;
+		case TAN:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.tan(a[c], out[c], count);
+			}
+			break;
+		case ATAN:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.atan(a[c], out[c], count);
+			}
+			break;
+		case EXP:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.exp(a[c], out[c], count);
+			}
+			break;
+		case LOG:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.log(a[c], out[c], count);
+			}
+			break;
+		case FLOOR:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.floor(a[c], out[c], count);
+			}
+			break;
+		case CEIL:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.ceil(a[c], out[c], count);
+			}
+			break;
+		case CLAMP:
+			for (int c = 0; c < out.length; c++) {
+				VectorKernels.clamp(a[c], out[c], count);
+			}
+			break;
+		case WRAP:
+			for (int c = 0; c < out.length; c++) {
+				for (int i = 0; i < count; i++) {
+					out[c][i] = Wrap.wrapHelper(a[c][i]);
+				}
+			}
+			break;
+		case RGB_TO_YCRCB:
+			VectorKernels.rgbToYCrCb(a[0], a[1], a[2], out[0], out[1], out[2], count);
+			break;
+		case YCRCB_TO_RGB:
+			VectorKernels.yCrCbToRGB(a[0], a[1], a[2], out[0], out[1], out[2], count);
+			break;
+		case PERLIN_BW:
+			VectorKernels.perlinBW(a[0], a[1], a[2], a[3], a[4], a[5], out[0], count, frame.noiseRows());
+			break;
+		case PERLIN_COLOR:
+			VectorKernels.perlinColor(a[0], a[1], out[0], out[1], out[2], count, frame.noiseRows());
+			break;
+		case OCTAVE_NOISE:
+			((OctaveNoise) step.node).noise(a[0], a[1], out[0], count);
+			break;
+		case MANDELBROT:
+			for (int i = 0; i < count; i++) {
+				out[0][i] = Mandelbrot.escapeValue(a[0][i], a[1][i]);
+			}
+			break;
+		case SAMPLE:
+			double[] point = frame.point;
+			for (int i = 0; i < count; i++) {
+				step.sampler.sample(a[0][i], a[1][i], a[2][i], a[3][i], point, 0);
+				out[0][i] = point[0];
+				out[1][i] = point[1];
+				out[2][i] = point[2];
+			}
+			break;
+		case INTERPRET:
+			step.node.evaluate(xs, ys, count, frame.scratch, 0);
+			for (int c = 0; c < 3; c++) {
+				System.arraycopy(frame.scratch[c], 0, out[c], 0, count);
+			}
+			break;
+		case TIME:
+			Arrays.fill(out[0], 0, count, T.getTime());
+			break;
+		}
+	}
+
+	/**
+	 * Builds the program of an expression
+	 */
+	static VectorProgram create(ExpressionTreeNode expr) {
+		return new Builder().build(expr);
+	}
+
+	/**
+	 * Translates the nodes of an expression into steps and assigns registers
+	 */
+	private static class Builder {
+		private final List<Step> steps = new ArrayList<Step>();
+		private final Map<ExpressionTreeNode, int[]> translated = new IdentityHashMap<ExpressionTreeNode, int[]>();
+		private final Map<Long, Integer> constantValues = new HashMap<Long, Integer>();
+		private final List<Double> constants = new ArrayList<Double>();
+		private int valueCount;
+		private int scratchSize;
+
+		VectorProgram build(ExpressionTreeNode expr) {
+			int[] result = translate(expr);
+
+			int[] lastUse = new int[valueCount];
+			Arrays.fill(lastUse, -1);
+			for (int s = 0; s < steps.size(); s++) {
+				for (int input : steps.get(s).inputs) {
+					if (input >= 0) {
+						lastUse[input] = s;
+					}
+				}
+			}
+			for (int value : result) {
+				if (value >= 0) {
+					lastUse[value] = Integer.MAX_VALUE;
+				}
+			}
+
+			// registers 0 to constants.size() - 1 hold the constants
+			int[] register = new int[valueCount];
+			Deque<Integer> free = new ArrayDeque<Integer>();
+			int registerCount = constants.size();
+			for (int s = 0; s < steps.size(); s++) {
+				Step step = steps.get(s);
+				int[] outputValues = step.outputs.clone();
+				for (int i = 0; i < outputValues.length; i++) {
+					register[outputValues[i]] = free.isEmpty() ? registerCount++ : free.pop();
+					step.outputs[i] = register[outputValues[i]];
+				}
+				for (int i = 0; i < step.inputs.length; i++) {
+					int value = step.inputs[i];
+					step.inputs[i] = registerOf(value, register);
+					if (value >= 0 && lastUse[value] == s) {
+						free.push(register[value]);
+						lastUse[value] = Integer.MIN_VALUE;
+					}
+				}
+				for (int value : outputValues) {
+					if (lastUse[value] == -1) {
+						free.push(register[value]);
+					}
+				}
+			}
+			int[] resultRegisters = new int[3];
+			for (int c = 0; c < 3; c++) {
+				resultRegisters[c] = registerOf(result[c], register);
+			}
+
+			double[] constantArray = new double[constants.size()];
+			for (int i = 0; i < constantArray.length; i++) {
+				constantArray[i] = constants.get(i);
+			}
+			return new VectorProgram(steps.toArray(new Step[0]), resultRegisters, constantArray, registerCount,
+					scratchSize);
+		}
+
+		/**
+		 * Returns the operand that reads the given value when the program runs
+		 */
+		private static int registerOf(int value, int[] register) {
+			if (value >= 0) {
+				return register[value];
+			} else if (value <= CONSTANT) {
+				return CONSTANT - value;
+			}
+			return value;
+		}
+
+		private int[] translate(ExpressionTreeNode expr) {
+			int[] values = translated.get(expr);
+			if (values == null) {
+				values = translateNode(expr);
+				translated.put(expr, values);
+			}
+			return values;
+		}
+
+		private int[] translateNode(ExpressionTreeNode expr) {
+			Class<?> type = expr.getClass();
+			List<ExpressionTreeNode> children = expr.getChildren();
+
+			if (type == X.class) {
+				return new int[] { X, X, X };
+			}
+			if (type == Y.class) {
+				return new int[] { Y, Y, Y };
+			}
+			if (type == Constant.class || type == RGBColor.class || type == Random.class) {
+				RGBColor color = expr.evaluate(0, 0);
+				return new int[] { constant(color.getRed()), constant(color.getGreen()), constant(color.getBlue()) };
+			}
+			if (type == SharedExpression.class) {
+				return translate(((SharedExpression) expr).getExpression());
+			}
+			if (type == MemoizedExpression.class) {
+				return translate(children.get(0));
+			}
+			if (type == CompiledExpression.class) {
+				return translate(((CompiledExpression) expr).getSource());
+			}
+			if (type == T.class) {
+				return add(Kind.TIME, new int[0], 1);
+			}
+
+			Kind binary = binaryKind(type);
+			if (binary != null) {
+				int[] inputs = concat(translate(children.get(0)), translate(children.get(1)));
+				return add(binary, inputs, channelCount(inputs));
+			}
+			Kind unary = unaryKind(type);
+			if (unary != null) {
+				int[] inputs = translate(children.get(0));
+				return add(unary, inputs, channelCount(inputs));
+			}
+			if (type == RgbToYCrCb.class || type == YCrCbToRGB.class) {
+				Kind kind = type == RgbToYCrCb.class ? Kind.RGB_TO_YCRCB : Kind.YCRCB_TO_RGB;
+				return add(kind, translate(children.get(0)), 3);
+			}
+			if (type == PerlinBW.class) {
+				return add(Kind.PERLIN_BW, concat(translate(children.get(0)), translate(children.get(1))), 1);
+			}
+			if (expr instanceof OctaveNoise) {
+				int[] inputs = { translate(children.get(0))[0], translate(children.get(1))[0] };
+				int[] outputs = add(Kind.OCTAVE_NOISE, inputs, 1);
+				steps.get(steps.size() - 1).node = expr;
+				return outputs;
+			}
+			if (type == PerlinColor.class || type == Mandelbrot.class) {
+				int[] inputs = { translate(children.get(0))[0], translate(children.get(1))[0] };
+				return type == PerlinColor.class ? add(Kind.PERLIN_COLOR, inputs, 3) : add(Kind.MANDELBROT, inputs, 1);
+			}
+			if (type == ImageClip.class || type == ImageWrap.class || type == StringValue.class) {
+				int[] inputs = type == StringValue.class ? new int[] { X, Y, X, Y }
+						: new int[] { X, Y, translate(children.get(0))[0], translate(children.get(1))[0] };
+				int[] outputs = add(Kind.SAMPLE, inputs, 3);
+				Step step = steps.get(steps.size() - 1);
+				if (expr instanceof ImageClip image) {
+					step.sampler = image::sample;
+				} else if (expr instanceof ImageWrap image) {
+					step.sampler = image::sample;
+				} else {
+					StringValue string = (StringValue) expr;
+					step.sampler = (x, y, xVal, yVal, out, offset) -> string.sample(xVal, yVal, out, offset);
+				}
+				return outputs;
+			}
+
+			int[] outputs = add(Kind.INTERPRET, new int[0], 3);
+			steps.get(steps.size() - 1).node = expr;
+			scratchSize = Math.max(scratchSize, expr.getScratchSize());
+			return outputs;
+		}
+
+		/**
+		 * Adds a step that produces the given number of values, and returns its
+		 * three channels
+		 */
+		private int[] add(Kind kind, int[] inputs, int outputCount) {
+			int[] outputs = new int[outputCount];
+			for (int i = 0; i < outputCount; i++) {
+				outputs[i] = valueCount++;
+			}
+			int[] channels = new int[3];
+			for (int c = 0; c < 3; c++) {
+				channels[c] = outputs[Math.min(c, outputCount - 1)];
+			}
+			// the inputs are rewritten with registers, and may be another node's channels
+			steps.add(new Step(kind, inputs.clone(), outputs));
+			return channels;
+		}
+
+		private int constant(double value) {
+			Integer existing = constantValues.get(Double.doubleToRawLongBits(value));
+			if (existing != null) {
+				return existing;
+			}
+			int operand = CONSTANT - constants.size();
+			constants.add(value);
+			constantValues.put(Double.doubleToRawLongBits(value), operand);
+			return operand;
+		}
+
+		private static int[] concat(int[] first, int[] second) {
+			int[] values = Arrays.copyOf(first, first.length + second.length);
+			System.arraycopy(second, 0, values, first.length, second.length);
+			return values;
+		}
+
+		/**
+		 * Returns 1 if every operand has the same value in all three channels, so a
+		 * function of them need only be computed once, and 3 otherwise
+		 */
+		private static int channelCount(int[] inputs) {
+			for (int operand = 0; operand < inputs.length; operand += 3) {
+				if (inputs[operand] != inputs[operand + 1] || inputs[operand] != inputs[operand + 2]) {
+					return 3;
+				}
+			}
+			return 1;
+		}
+
+		private static Kind binaryKind(Class<?> type) {
+			if (type == Plus.class) {
+				return Kind.ADD;
+			} else if (type == Minus.class) {
+				return Kind.SUBTRACT;
+			} else if (type == Multiply.class) {
+				return Kind.MULTIPLY;
+			} else if (type == Divide.class) {
+				return Kind.DIVIDE;
+			} else if (type == Modulo.class) {
+				return Kind.REMAINDER;
+			} else if (type == Exponent.class) {
+				return Kind.POW;
+			}
+			return null;
+		}
+
+		private static Kind unaryKind(Class<?> type) {
+			if (type == Negate.class) {
+				return Kind.NEGATE;
+			} else if (type == Abs.class) {
+				return Kind.ABS;
+			} else if (type == Sin.class) {
+				return Kind.SIN;
+			} else if (type == Cos.class) {
+				return Kind.COS;
+			} else if (type == Tan.class) {
+				return Kind.TAN;
+			} else if (type == Atan.class) {
+				return Kind.ATAN;
+			} else if (type == Exp.class) {
+				return Kind.EXP;
+			} else if (type == Log.class) {
+				return Kind.LOG;
+			} else if (type == Floor.class) {
+				return Kind.FLOOR;
+			} else if (type == Ceil.class) {
+				return Kind.CEIL;
+			} else if (type == Clamp.class) {
+				return Kind.CLAMP;
+			} else if (type == Wrap.class) {
+				return Kind.WRAP;
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package picasso.parser.vector;
+
+import java.util.List;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * An expression whose rows are evaluated by a VectorProgram. Single points are
+ * evaluated by another form of the same expression, such as a compiled one.
+ */
+public class VectorizedExpression extends ExpressionTreeNode {
+
+	private final ExpressionTreeNode source;
+	private final ExpressionTreeNode pointwise;
+	private final VectorProgram program;
+
+	/**
+	 * Create an expression that evaluates rows with the given program
+	 *
+	 * @param source    the expression the program was built from
+	 * @param pointwise the expression that evaluates single points
+	 * @param program   the program that evaluates rows
+	 */
+	VectorizedExpression(ExpressionTreeNode source, ExpressionTreeNode pointwise, VectorProgram program) {
+		this.source = source;
+		this.pointwise = pointwise;
+		this.program = program;
+	}
+
+	/**
+	 * Returns the expression this was built from
+	 *
+	 * @return the interpreted form of this expression
+	 */
+	public ExpressionTreeNode getSource() {
+		return source;
+	}
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		return pointwise.evaluate(x, y);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] out, int offset) {
+		pointwise.evaluate(x, y, out, offset);
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int count, double[][] planes, int offset) {
+		program.evaluate(xs, ys, count, planes, offset);
+	}
+
+	@Override
+	public int getScratchSize() {
+		return pointwise.getScratchSize();
+	}
+
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(pointwise);
+	}
+
+	/**
+	 * Returns the representation of the whole expression
+	 */
+	@Override
+	public String toString() {
+		return source.toString();
+	}
+}
@@ -0,0 +1,19 @@
+package picasso.util;
+
+/**
+ * A command whose work can be stopped early through a cancellation token.
+ */
+public interface CancellableCommand<T> extends Command<T> {
+
+	/**
+	 * Update the given target, stopping early if the token is cancelled
+	 */
+	public void execute(T target, CancellationToken token);
+
+	/**
+	 * Update the given target without a way to cancel
+	 */
+	public default void execute(T target) {
+		execute(target, CancellationToken.NONE);
+	}
+}
@@ -0,0 +1,19 @@
+package picasso.util;
+
+/**
+ * Tells long running work (e.g., a render) whether it should stop early. Work
+ * checks the token between units of work and returns as soon as it is
+ * cancelled.
+ */
+public interface CancellationToken {
+
+	/** a token that is never cancelled */
+	CancellationToken NONE = () -> false;
+
+	/**
+	 * Returns true if the work should stop
+	 *
+	 * @return whether the work has been cancelled
+	 */
+	boolean isCancelled();
+}
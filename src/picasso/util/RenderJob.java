@@ -0,0 +1,113 @@
+package picasso.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A unit of work run by a RenderJobScheduler. The work is given the job as its
+ * cancellation token; cancelling the job also interrupts the thread running it,
+ * so work that is waiting or sleeping stops too. A job superseded before it
+ * starts is done without its work running, unless it was submitted in order.
+ */
+public class RenderJob implements CancellationToken, Runnable {
+
+	private final Consumer<CancellationToken> work;
+	private final Runnable whenDone;
+	private final boolean inOrder;
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	private volatile boolean cancelled;
+	private Thread runner;
+
+	/**
+	 * Create a job that does the given work and then runs whenDone, whether the
+	 * work finished, was cancelled, or failed.
+	 *
+	 * @param work     the work to do, given the job to check for cancellation
+	 * @param whenDone run once the work has returned
+	 * @param inOrder  whether the work runs even if the job is superseded
+	 */
+	RenderJob(Consumer<CancellationToken> work, Runnable whenDone, boolean inOrder) {
+		this.work = work;
+		this.whenDone = whenDone;
+		this.inOrder = inOrder;
+	}
+
+	/**
+	 * Does the work, which checks the token to stop early
+	 */
+	@Override
+	public void run() {
+		synchronized (this) {
+			runner = Thread.currentThread();
+		}
+		try {
+			work.accept(this);
+		} finally {
+			synchronized (this) {
+				runner = null;
+				// do not leave an interrupt for the next job on this thread
+				Thread.interrupted();
+			}
+			done.countDown();
+			whenDone.run();
+		}
+	}
+
+	/**
+	 * Finishes a job that was taken off the queue before it started, without
+	 * doing its work
+	 */
+	void skip() {
+		cancelled = true;
+		done.countDown();
+		whenDone.run();
+	}
+
+	/**
+	 * Returns true if the work runs even if the job is superseded before it
+	 * starts
+	 *
+	 * @return whether the job was submitted in order
+	 */
+	public boolean isInOrder() {
+		return inOrder;
+	}
+
+	/**
+	 * Asks the work to stop and interrupts the thread running it
+	 */
+	public synchronized void cancel() {
+		cancelled = true;
+		if (runner != null) {
+			runner.interrupt();
+		}
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns true once the work has returned
+	 *
+	 * @return whether the job is done
+	 */
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	/**
+	 * Waits for the work to return
+	 *
+	 * @param timeout the longest time to wait
+	 * @param unit    the unit of timeout
+	 * @return true if the work returned, false if the wait timed out
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+		return done.await(timeout, unit);
+	}
+}
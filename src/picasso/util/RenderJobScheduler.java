@@ -0,0 +1,128 @@
+package picasso.util;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.swing.JComponent;
+
+/**
+ * Runs the render jobs for one view, one at a time, on a single worker thread.
+ * Submitting a job cancels the job before it, so a stale render stops at its
+ * next check and never draws into the view at the same time as the new one.
+ * The renders themselves may still use many threads (e.g., a TileRenderer's
+ * pool); the scheduler only makes sure there is one active job.
+ *
+ * A job that has not started when the next one is submitted is superseded: it
+ * is taken off the queue and finished without running, so however fast jobs
+ * are submitted, at most one waits behind the running one. Only jobs submitted
+ * in order (see submitInOrder), whose work has effects later jobs depend on,
+ * such as defining variables, stay queued and run, cancelled, in turn.
+ */
+public class RenderJobScheduler {
+
+	private static final String PROPERTY = RenderJobScheduler.class.getName();
+
+	private final ThreadPoolExecutor executor;
+	private RenderJob current;
+
+	/**
+	 * Create a scheduler with its own worker thread
+	 */
+	public RenderJobScheduler() {
+		executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				work -> {
+					Thread worker = new Thread(work, "Render jobs");
+					worker.setDaemon(true);
+					return worker;
+				});
+	}
+
+	/**
+	 * Returns the scheduler for the given view, creating it the first time
+	 *
+	 * @param view the component the jobs draw into
+	 * @return the view's scheduler
+	 */
+	public static synchronized RenderJobScheduler forView(JComponent view) {
+		RenderJobScheduler scheduler = (RenderJobScheduler) view.getClientProperty(PROPERTY);
+		if (scheduler == null) {
+			scheduler = new RenderJobScheduler();
+			view.putClientProperty(PROPERTY, scheduler);
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Cancels the current job, or supersedes it if it has not started, and
+	 * queues the given work to run after it
+	 *
+	 * @param work     the work to do, given the job to check for cancellation
+	 * @param whenDone run once the work has returned, or once the job is
+	 *                 superseded
+	 * @return the new job
+	 */
+	public RenderJob submit(Consumer<CancellationToken> work, Runnable whenDone) {
+		return submit(new RenderJob(work, whenDone, false));
+	}
+
+	/**
+	 * Cancels the current job, or supersedes it if it has not started, and
+	 * queues the given work to run after it. The work runs even if it is
+	 * cancelled before it starts, so that what it does before checking the token
+	 * happens in the order the jobs were submitted.
+	 *
+	 * @param work     the work to do, given the job to check for cancellation
+	 * @param whenDone run once the work has returned
+	 * @return the new job
+	 */
+	public RenderJob submitInOrder(Consumer<CancellationToken> work, Runnable whenDone) {
+		return submit(new RenderJob(work, whenDone, true));
+	}
+
+	private RenderJob submit(RenderJob job) {
+		RenderJob superseded = null;
+		synchronized (this) {
+			if (current != null) {
+				current.cancel();
+				if (!current.isInOrder() && executor.remove(current)) {
+					superseded = current;
+				}
+			}
+			current = job;
+			executor.execute(job);
+		}
+		if (superseded != null) {
+			superseded.skip();
+		}
+		return job;
+	}
+
+	/**
+	 * Cancels the current job, if any
+	 */
+	public synchronized void cancel() {
+		if (current != null) {
+			current.cancel();
+		}
+	}
+
+	/**
+	 * Returns the most recently submitted job
+	 *
+	 * @return the current job, or null if none has been submitted
+	 */
+	public synchronized RenderJob getCurrentJob() {
+		return current;
+	}
+
+	/**
+	 * Cancels the current job and stops the worker thread once the queued jobs
+	 * have returned
+	 */
+	public synchronized void shutdown() {
+		cancel();
+		executor.shutdown();
+	}
+}
@@ -1,12 +1,24 @@
 package picasso.util;
 
+import java.util.function.Consumer;
+
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 
 /**
  * Execute a long running command in a separate thread and display the results
  * in a component while the command is running.
- * 
+ *
+ * The command runs as a job of the view's RenderJobScheduler, so executing a
+ * command cancels the one the view is already running, or supersedes it if it
+ * has not started. Commands that are CancellableCommands are given the job's
+ * token and stop at their next check; other commands run to the end before the
+ * next job starts. Commands run in order are never superseded, so a series of
+ * them (e.g., the expressions of a file, which may define variables for the
+ * later ones) all run in turn.
+ *
  * @author Robert C Duvall
  * @author Sara Sprenkle - fixed bug with initial isDone parameter
  */
@@ -15,52 +27,61 @@ public class ThreadedCommand<T> implements Command<T> {
 
 	private Command<T> myCommand;
 	private JComponent myView;
-	private boolean isDone;
+	private RenderJobScheduler myScheduler;
+	private boolean myInOrder;
 
 	/**
 	 * Create a command that runs the given command and updates the given view
 	 * over time.
 	 */
 	public ThreadedCommand(JComponent view, Command<T> command) {
+		this(view, RenderJobScheduler.forView(view), command);
+	}
+
+	/**
+	 * Create a command that runs the given command as a job of the given
+	 * scheduler and updates the given view over time.
+	 */
+	public ThreadedCommand(JComponent view, RenderJobScheduler scheduler, Command<T> command) {
+		this(view, scheduler, command, false);
+	}
+
+	/**
+	 * Create a command that runs the given command as a job of the given
+	 * scheduler, in order with the jobs before it if inOrder is true, and updates
+	 * the given view over time.
+	 */
+	public ThreadedCommand(JComponent view, RenderJobScheduler scheduler, Command<T> command, boolean inOrder) {
 		myCommand = command;
 		myView = view;
-		isDone = true;
+		myScheduler = scheduler;
+		myInOrder = inOrder;
 	}
 
 	/**
-	 * Run the command on the target or cancel it if is already running.
+	 * Run the command on the target, cancelling the job the view is running.
 	 */
+	@SuppressWarnings("unchecked")
 	public void execute(final T target) {
-		if (isDone) {
-			// just starting ...
-			isDone = false;
-
-			// start thread for long task that does visible work
-			Thread worker = new Thread() {
-				public void run() {
-					myCommand.execute(target);
-					isDone = true;
-				}
-			};
-			worker.start();
+		// repaint the view regularly to show the changes the job makes
+		final Timer painter = new Timer(DELAY, e -> myView.repaint());
+		painter.start();
 
-			// start thread to view changes worker does
-			Thread painter = new Thread() {
-				public void run() {
-					try {
-						while (!isDone) {
-							Thread.sleep(DELAY);
-							myView.repaint();
-						}
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				}
-			};
-			painter.start();
+		Consumer<CancellationToken> work = token -> {
+			if (myCommand instanceof CancellableCommand) {
+				((CancellableCommand<T>) myCommand).execute(target, token);
+			} else {
+				myCommand.execute(target);
+			}
+		};
+		Runnable whenDone = () -> SwingUtilities.invokeLater(() -> {
+			painter.stop();
+			myView.repaint();
+		});
+		if (myInOrder) {
+			myScheduler.submitInOrder(work, whenDone);
 		} else {
-			// allow action to be canceled
-			isDone = true;
+			myScheduler.submit(work, whenDone);
 		}
 	}
 }
@@ -12,6 +12,7 @@ package picasso.view;
 		import javax.swing.JPanel;
 		import javax.swing.JTextField;
 		import picasso.model.Pixmap;
+		import picasso.model.ProgressiveRenderer;
 		import picasso.util.ErrorReporter;
 		import picasso.util.ThreadedCommand;
 		import picasso.view.commands.*;
@@ -40,6 +41,9 @@ package picasso.view;
 				Canvas canvas = new Canvas(this);
 				canvas.setSize(size);
 
+				// draws still images coarse to fine, repainting after each pass
+				ProgressiveRenderer progressive = new ProgressiveRenderer(step -> canvas.repaint());
+
 				// Create status label for error reporting
 				statusLabel = new Label("Ready");
 				statusLabel.setPreferredSize(new Dimension(600, 22));
@@ -66,21 +70,21 @@ package picasso.view;
 					expression,
 					() -> new ThreadedCommand<Pixmap>(
 							canvas,
-							new Evaluator(expression, errorReporter, history))
+							new Evaluator(expression, errorReporter, history, progressive))
 							.execute(canvas.getPixmap())
 				);
 
 				// add commands to test here
 				ButtonPanel commands = new ButtonPanel(canvas);
 				commands.add("Open", new Reader(canvas, expression, errorReporter, history));
-				commands.add("Evaluate", new ThreadedCommand<Pixmap>(canvas, new Evaluator(expression, errorReporter, history)));
+				commands.add("Evaluate", new ThreadedCommand<Pixmap>(canvas, new Evaluator(expression, errorReporter, history, progressive)));
 				commands.add("Save", new Writer(expression));
 				commands.add("Generate Random Expression", new RandomExpressionLoader(canvas, expression, errorReporter, history));
 
 				// Add action listener so pressing Enter evaluates
 				expression.addActionListener(new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						new ThreadedCommand<Pixmap>(canvas, new Evaluator(expression, errorReporter, history))
+						new ThreadedCommand<Pixmap>(canvas, new Evaluator(expression, errorReporter, history, progressive))
 								.execute(canvas.getPixmap());
 						canvas.refresh();
 					}
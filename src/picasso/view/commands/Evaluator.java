@@ -1,17 +1,25 @@
 package picasso.view.commands;
 
-import java.awt.Color;
 import java.awt.Dimension;
+import java.util.concurrent.ForkJoinPool;
+
 import javax.swing.JTextField;
 
+import picasso.model.AnimationRenderer;
 import picasso.model.Pixmap;
-import picasso.parser.ExpressionTreeGenerator;
+import picasso.model.ProgressiveRenderer;
+import picasso.model.TileCache;
+import picasso.model.TileRenderer;
+import picasso.parser.CompiledExpression;
+import picasso.parser.ExpressionCache;
 import picasso.parser.ParseException;
+import picasso.parser.ParseSession;
+import picasso.parser.language.EvaluationContext;
 import picasso.parser.language.ExpressionTreeNode;
-import picasso.util.Command;
+import picasso.util.CancellableCommand;
+import picasso.util.CancellationToken;
 import picasso.util.ErrorReporter;
 import picasso.view.ExpressionHistory;
-import picasso.parser.language.expressions.T;
 
 /**
  * Evaluate an expression for each pixel in an image and optionally record
@@ -24,58 +32,123 @@ import picasso.parser.language.expressions.T;
  * @author Menilik Deneke
  * @author Asya Yurkovskaya
  */
-public class Evaluator implements Command<Pixmap> {
+public class Evaluator implements CancellableCommand<Pixmap> {
+
+	private static final String SESSION_PROPERTY = ParseSession.class.getName();
 
-	private final ExpressionTreeGenerator expTreeGen = new ExpressionTreeGenerator();
+	private final ParseSession session;
 
-	public static final double DOMAIN_MIN = -1;
-	public static final double DOMAIN_MAX = 1;
+	public static final double DOMAIN_MIN = TileRenderer.DOMAIN_MIN;
+	public static final double DOMAIN_MAX = TileRenderer.DOMAIN_MAX;
 
 	private JTextField expressionField;
 	private ErrorReporter errorReporter;
 	private ExpressionHistory history;
+	private TileRenderer renderer;
+	private ProgressiveRenderer progressive;
+	// the expression to evaluate, or null to read the field when executed
+	private String expressionText;
 
 	/**
 	 * Constructor for the expression.
 	 */
 	public Evaluator(JTextField expressionField, ErrorReporter errorReporter, ExpressionHistory history) {
+		this(expressionField, errorReporter, history,
+				new TileRenderer(ForkJoinPool.commonPool(), TileRenderer.DEFAULT_TILE_SIZE, TileCache.getInstance()));
+	}
+
+	/**
+	 * Constructor for the expression that draws each frame with the given
+	 * renderer (e.g., one with its own thread pool or tile size).
+	 */
+	public Evaluator(JTextField expressionField, ErrorReporter errorReporter, ExpressionHistory history,
+			TileRenderer renderer) {
+		this.session = sessionFor(expressionField);
 		this.expressionField = expressionField;
 		this.errorReporter = errorReporter;
 		this.history = history;
+		this.renderer = renderer;
+	}
+
+	/**
+	 * Constructor for the expression that draws still images coarse to fine with
+	 * the given progressive renderer. Evaluators that share the renderer cancel
+	 * each other, so only the most recently submitted expression keeps drawing.
+	 */
+	public Evaluator(JTextField expressionField, ErrorReporter errorReporter, ExpressionHistory history,
+			ProgressiveRenderer progressive) {
+		this(expressionField, errorReporter, history);
+		this.progressive = progressive;
+	}
+
+	/**
+	 * Constructor for an evaluator of the given expression, rather than of
+	 * whatever the field holds once it runs (e.g., for one of the expressions of
+	 * a file, which are put in the field one after another). It parses against
+	 * the field's variables.
+	 */
+	public Evaluator(JTextField expressionField, ErrorReporter errorReporter, ExpressionHistory history,
+			String expressionText) {
+		this(expressionField, errorReporter, history);
+		this.expressionText = expressionText;
+	}
+
+	/**
+	 * Returns the parse session of the given expression field, creating it the
+	 * first time, so that every evaluator reading the field sees the variables
+	 * defined in it (and only those).
+	 */
+	private static synchronized ParseSession sessionFor(JTextField expressionField) {
+		if (expressionField == null) {
+			return new ParseSession();
+		}
+		ParseSession session = (ParseSession) expressionField.getClientProperty(SESSION_PROPERTY);
+		if (session == null) {
+			session = new ParseSession();
+			expressionField.putClientProperty(SESSION_PROPERTY, session);
+		}
+		return session;
 	}
 
 	/**
-	 * Evaluate an expression for each point in the image.
+	 * Evaluate an expression for each point in the image, stopping between rows
+	 * (and between the frames of an animation) once the token is cancelled.
 	 */
-	public void execute(Pixmap target) {
+	public void execute(Pixmap target, CancellationToken token) {
 		try {
 			if (errorReporter != null) {
 				errorReporter.clearError();
 			}
 
-			ExpressionTreeNode expr = createExpression();
+			CompiledExpression compiled = createExpression();
+			ExpressionTreeNode expr = compiled.getCompiled();
 			rememberExpression();
+			boolean animated = compiled.isAnimated();
+
+			if (progressive != null) {
+				if (!animated) {
+					// a view drawn before is copied from the tile cache at once
+					EvaluationContext context = EvaluationContext.current();
+					progressive.cancel();
+					if (!renderer.renderFromCache(compiled.getKey(), target, context)) {
+						Dimension size = target.getSize();
+						progressive.render(expr, target, token,
+								colors -> renderer.cacheTiles(compiled.getKey(), colors, size, context));
+					}
+					return;
+				}
+				// animations are drawn a whole frame at a time
+				progressive.cancel();
+			}
 
 			int frames = 1;
 
-			if (T.getHasTime()) {
-				frames = 50;
+			if (animated) {
+				frames = AnimationRenderer.DEFAULT_FRAME_COUNT;
 			}
 
-			Dimension size = target.getSize();
-
-			for (int i = 0; i < frames; i++) {
-				
-				for (int imageY = 0; imageY < size.height; imageY++) {
-					double evalY = imageToDomainScale(imageY, size.height);
-					for (int imageX = 0; imageX < size.width; imageX++) {
-						double evalX = imageToDomainScale(imageX, size.width);
-						Color pixelColor = expr.evaluate(evalX, evalY).toJavaColor();
-						target.setColor(imageX, imageY, pixelColor);
-					}
-				}
-
-				T.increaseTime();
+			for (int i = 0; i < frames && !token.isCancelled(); i++) {
+				renderer.render(expr, compiled.getKey(), target, EvaluationContext.forFrame(i, frames), token);
 			}
 		} catch (ParseException e) {
 			e.printStackTrace();
@@ -91,7 +164,7 @@ public class Evaluator implements Command<Pixmap> {
 			reportError("Math error: division by zero or invalid calculation.");
 		} catch (NullPointerException e) {
 			e.printStackTrace();
-			String expressionText = expressionField.getText();
+			String expressionText = getExpressionText();
 			if (expressionText != null && !expressionText.trim().isEmpty()) {
 				reportError("Invalid expression. The input contains characters that cannot be processed.");
 			} else {
@@ -105,10 +178,6 @@ public class Evaluator implements Command<Pixmap> {
 		    e.printStackTrace();
 		    reportError("Unable to evaluate expression. Please try a different one.");
 
-		} finally {
-			T.resetTime();
-			T.setHasTime(false);
-
 		}
 	}
 
@@ -144,21 +213,25 @@ public class Evaluator implements Command<Pixmap> {
 	 * Convert from image space to domain space.
 	 */
 	protected double imageToDomainScale(int value, int bounds) {
-		double range = DOMAIN_MAX - DOMAIN_MIN;
-		return ((double) value / bounds) * range + DOMAIN_MIN;
+		return TileRenderer.imageToDomainScale(value, bounds);
 	}
 
 	/**
-	 * Create expression tree from text field.
+	 * Create expression tree from text field, or reuse the one made the last
+	 * time the same expression was evaluated.
 	 */
-	private ExpressionTreeNode createExpression() {
-	    String expressionText = expressionField.getText();
+	private CompiledExpression createExpression() {
+	    String expressionText = getExpressionText();
 	    
 	    if (expressionText == null || expressionText.trim().isEmpty()) {
 	        throw new NullPointerException("Empty expression");
 	    }
 	    
-	    return expTreeGen.makeExpression(expressionText);
+	    CompiledExpression compiled = ExpressionCache.getInstance().get(expressionText, session);
+	    if (compiled == null) {
+	        throw new NullPointerException("Empty expression");
+	    }
+	    return compiled;
 	}
 
 	/**
@@ -166,7 +239,11 @@ public class Evaluator implements Command<Pixmap> {
 	 */
 	private void rememberExpression() {
 		if (history != null) {
-			history.add(expressionField.getText());
+			history.add(getExpressionText());
 		}
 	}
+
+	private String getExpressionText() {
+		return expressionText != null ? expressionText : expressionField.getText();
+	}
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package picasso.view.commands;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
 
@@ -10,8 +9,10 @@ import javax.swing.JFileChooser;
 import javax.swing.JTextField;
 
 import picasso.model.Pixmap;
+import picasso.parser.ExpressionFile;
 import picasso.util.ErrorReporter;
 import picasso.util.FileCommand;
+import picasso.util.RenderJobScheduler;
 import picasso.util.ThreadedCommand;
 import picasso.view.ExpressionHistory;
 
@@ -63,17 +64,13 @@ public class Reader extends FileCommand<Pixmap> {
 		}
 
 		try {
-			List<String> lines = Files.readAllLines(Paths.get(fileName));
-		for (String line : lines) {
-				String expr = stripInlineComment(line).trim();
-				if (expr.isEmpty()) {
-					continue; // skip blank or comment-only lines
-				}
+			List<String> expressions = ExpressionFile.readExpressions(Paths.get(fileName));
+			for (String expr : expressions) {
 				expressionField.setText(expr);
-				Evaluator evaluator = (errorReporter != null)
-						? new Evaluator(expressionField, errorReporter, history)
-						: new Evaluator(expressionField, null, history);
-				new ThreadedCommand<Pixmap>(view, evaluator).execute(target);
+				// each evaluates its own line, after the lines before it have defined
+				// their variables
+				Evaluator evaluator = new Evaluator(expressionField, errorReporter, history, expr);
+				new ThreadedCommand<Pixmap>(view, RenderJobScheduler.forView(view), evaluator, true).execute(target);
 			}
 
 		} catch (IOException e) {
@@ -90,12 +87,4 @@ public class Reader extends FileCommand<Pixmap> {
 		return lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".png") || lower.endsWith(".gif")
 				|| lower.endsWith(".bmp");
 	}
-
-	private String stripInlineComment(String line) {
-		if (line == null) {
-			return "";
-		}
-		int commentStart = line.indexOf("//");
-		return (commentStart >= 0) ? line.substring(0, commentStart) : line;
-	}
 }
\ No newline at end of file
@@ -0,0 +1,158 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.PixmapAssertions.assertSameImage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import picasso.model.AnimationRenderer;
+import picasso.model.FrameEncoder;
+import picasso.model.GifEncoder;
+import picasso.model.Pixmap;
+import picasso.model.PngSequenceEncoder;
+import picasso.model.TileRenderer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.EvaluationContext;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.util.CancellationToken;
+
+/**
+ * Tests rendering the frames of an animation in parallel and encoding them in
+ * order.
+ */
+public class AnimationRendererTests {
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * An encoder that keeps the frames it is given
+	 */
+	private static class Collector implements FrameEncoder {
+		final List<Pixmap> frames = new ArrayList<Pixmap>();
+		boolean begun;
+		boolean finished;
+
+		@Override
+		public void begin(int width, int height, double framesPerSecond) {
+			begun = true;
+		}
+
+		@Override
+		public void encode(int index, Pixmap frame) {
+			assertEquals(frames.size(), index);
+			frames.add(frame);
+		}
+
+		@Override
+		public void finish() throws IOException {
+			finished = true;
+		}
+	}
+
+	@Test
+	public void testFramesAreDrawnAtTheirOwnTimes() throws IOException, InterruptedException {
+		ExpressionTreeNode expr = new ExpressionTreeGenerator().makeExpression("sin(x / 0.3 + t) * perlinColor(y, t)");
+		Collector collector = new Collector();
+
+		assertTrue(new AnimationRenderer(3, 4).render(expr, 31, 17, 10, 25, collector, CancellationToken.NONE));
+
+		assertTrue(collector.begun);
+		assertTrue(collector.finished);
+		assertEquals(10, collector.frames.size());
+		for (int i = 0; i < 10; i++) {
+			Pixmap expected = new Pixmap(31, 17);
+			new TileRenderer().renderOnCurrentThread(expr, expected, EvaluationContext.forFrame(i, 10),
+					CancellationToken.NONE);
+			assertSameImage(expected, collector.frames.get(i), "frame " + i);
+		}
+		assertNull(EvaluationContext.getBound());
+	}
+
+	@Test
+	public void testFrameTimes() {
+		assertEquals(0, AnimationRenderer.frameTime(0, 50));
+		assertEquals(0.02, AnimationRenderer.frameTime(1, 50), 1e-15);
+		assertEquals(0.75, AnimationRenderer.frameTime(3, 4));
+	}
+
+	@Test
+	public void testCancelledAnimationFinishesEncoder() throws IOException, InterruptedException {
+		Collector collector = new Collector();
+		assertFalse(new AnimationRenderer(2).render(new ExpressionTreeGenerator().makeExpression("x * t"), 8, 8, 20,
+				25, collector, () -> true));
+		assertTrue(collector.finished);
+		assertTrue(collector.frames.isEmpty());
+	}
+
+	@Test
+	public void testFailedFrameIsNotHiddenByFinish() {
+		IOException finishing = new IOException("finish");
+		Collector failing = new Collector() {
+			@Override
+			public void encode(int index, Pixmap frame) {
+				throw new IllegalStateException("encode");
+			}
+
+			@Override
+			public void finish() throws IOException {
+				super.finish();
+				throw finishing;
+			}
+		};
+
+		IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> new AnimationRenderer(2)
+				.render(new ExpressionTreeGenerator().makeExpression("x * t"), 8, 8, 5, 25, failing,
+						CancellationToken.NONE));
+		assertEquals("encode", thrown.getMessage());
+		assertArrayEquals(new Throwable[] { finishing }, thrown.getSuppressed());
+		assertTrue(failing.finished);
+	}
+
+	@Test
+	public void testRejectsBadArguments() {
+		assertThrows(IllegalArgumentException.class, () -> new AnimationRenderer(0));
+		assertThrows(IllegalArgumentException.class, () -> new AnimationRenderer(4, 2));
+		assertThrows(IllegalArgumentException.class, () -> new AnimationRenderer().render(
+				new ExpressionTreeGenerator().makeExpression("t"), 8, 8, 0, 25, new Collector(), CancellationToken.NONE));
+	}
+
+	@Test
+	public void testWritesAnimatedGif() throws IOException, InterruptedException {
+		Path file = directory.resolve("out").resolve("moving.gif");
+		new AnimationRenderer(2).render(new ExpressionTreeGenerator().makeExpression("x * t + y"), 20, 10, 6, 10,
+				new GifEncoder(file), CancellationToken.NONE);
+
+		try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+			ImageReader reader = ImageIO.getImageReaders(input).next();
+			reader.setInput(input);
+			assertEquals(6, reader.getNumImages(true));
+			assertEquals(20, reader.getWidth(0));
+			assertEquals(10, reader.getHeight(0));
+			reader.dispose();
+		}
+	}
+
+	@Test
+	public void testWritesNumberedPngs() throws IOException, InterruptedException {
+		PngSequenceEncoder encoder = new PngSequenceEncoder(directory, "frame");
+		new AnimationRenderer(2).render(new ExpressionTreeGenerator().makeExpression("t"), 5, 5, 3, 10, encoder,
+				CancellationToken.NONE);
+
+		assertEquals(directory.resolve("frame-0001.png"), encoder.getFile(0));
+		for (int i = 0; i < 3; i++) {
+			int gray = ImageIO.read(encoder.getFile(i).toFile()).getRGB(2, 2) & 0xFF;
+			assertEquals(Math.round((AnimationRenderer.frameTime(i, 3) + 1) / 2 * 255), gray, 1);
+		}
+	}
+}
@@ -5,7 +5,6 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.junit.jupiter.api.BeforeAll;
@@ -13,7 +12,6 @@ import org.junit.jupiter.api.BeforeEach;
 
 import picasso.parser.ExpressionTreeGenerator;
 import picasso.parser.ParseException;
-import picasso.parser.SemanticAnalyzer;
 import picasso.parser.language.ExpressionTreeNode;
 import picasso.parser.language.expressions.RGBColor;
 
@@ -35,7 +33,7 @@ public class AssignmentTests {
 	
 	@BeforeEach
 	void resetVariables() {
-		SemanticAnalyzer.getInstance().setVariables(new HashMap<>());
+		parser.getSession().clear();
 	}
 	
 	@Test
@@ -45,9 +43,9 @@ public class AssignmentTests {
 	    parser.makeExpression("a = x");
 	    ExpressionTreeNode rhs = parser.makeExpression("x");
 
-	    ExpressionTreeNode stored = SemanticAnalyzer.getInstance().getVariable("a");
+	    ExpressionTreeNode stored = parser.getSession().getVariable("a");
 
-	    assertNotNull(stored, "Variable 'a' should be stored in the SemanticAnalyzer");
+	    assertNotNull(stored, "Variable 'a' should be stored in the parser's session");
 	    assertEquals(rhs, stored, "Assignment 'a = x' should store the RHS expression for 'a'");
 	}
 
@@ -151,13 +149,12 @@ public class AssignmentTests {
 	
 	@Test
 	public void testMultipleVariablesStored() {
-		SemanticAnalyzer analyzer = SemanticAnalyzer.getInstance();
 
 		parser.makeExpression("a = x");
 		parser.makeExpression("b = y");
 		parser.makeExpression("c = x + y");
 
-		Map<String, ExpressionTreeNode> vars = analyzer.getVariables();
+		Map<String, ExpressionTreeNode> vars = parser.getSession().getVariables();
 		assertEquals(3, vars.size(), "There should be three variables stored (a, b, c).");
 		assertTrue(vars.containsKey("a"));
 		assertTrue(vars.containsKey("b"));
@@ -207,12 +204,12 @@ public class AssignmentTests {
 	public void testVariablesClearedBetweenUses() {
 
 		parser.makeExpression("a = x");
-		assertNotNull(SemanticAnalyzer.getInstance().getVariable("a"));
+		assertNotNull(parser.getSession().getVariable("a"));
 
 		//clears
-		SemanticAnalyzer.getInstance().setVariables(new HashMap<>());
+		parser.getSession().clear();
 
-		assertNull(SemanticAnalyzer.getInstance().getVariable("a"),
+		assertNull(parser.getSession().getVariable("a"),
 				"Variable 'a' should not exist after resetting variables.");
 	}
 	
@@ -0,0 +1,93 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that evaluating a row of points at once gives exactly the same
+ * components as evaluating each point on its own.
+ */
+public class BatchEvaluationTests {
+
+	private static ExpressionTreeGenerator parser;
+
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	private void assertSameComponents(ExpressionTreeNode expr, double[] xs, double[] ys, int count) {
+		double[] red = new double[count];
+		double[] green = new double[count];
+		double[] blue = new double[count];
+		expr.evaluate(xs, ys, count, red, green, blue);
+
+		for (int i = 0; i < count; i++) {
+			RGBColor expected = expr.evaluate(xs[i], ys[i]);
+			String at = expr + " at (" + xs[i] + ", " + ys[i] + ")";
+			assertEquals(expected.getRed(), red[i], 0, at);
+			assertEquals(expected.getGreen(), green[i], 0, at);
+			assertEquals(expected.getBlue(), blue[i], 0, at);
+		}
+	}
+
+	@Test
+	public void testMatchesEvaluate() {
+		int count = 33;
+		double[] xs = new double[count];
+		double[] ys = new double[count];
+		for (int i = 0; i < count; i++) {
+			xs[i] = -1 + i / 16.0;
+			ys[i] = 1 - i / 11.0;
+		}
+
+		for (String expression : BufferedEvaluationTests.EXPRESSIONS) {
+			assertSameComponents(parser.makeExpression(expression), xs, ys, count);
+		}
+	}
+
+	@Test
+	public void testOnlyFirstCountPointsAreEvaluated() {
+		double[] xs = { 0.5, -0.5, 0.25, 0.75 };
+		double[] ys = { 0.1, 0.2, 0.3, 0.4 };
+		double[][] planes = new double[9][4];
+		planes[0][3] = 42;
+
+		new Plus(new Sin(new X()), new Y()).evaluate(xs, ys, 3, planes, 0);
+
+		assertEquals(Math.sin(-0.5) + 0.2, planes[1][1], 0);
+		assertEquals(42, planes[0][3], 0);
+	}
+
+	@Test
+	public void testPlanesAfterOffsetAreUsed() {
+		double[] xs = { 0.5, -0.5 };
+		double[] ys = { 0.1, 0.2 };
+		double[][] planes = new double[8][2];
+
+		new Multiply(new X(), new Y()).evaluate(xs, ys, 2, planes, 2);
+
+		assertEquals(-0.1, planes[2][1], 0);
+		assertEquals(0.05, planes[4][0], 0);
+	}
+
+	@Test
+	public void testDefaultImplementationUsesEvaluate() {
+		ExpressionTreeNode custom = new ExpressionTreeNode() {
+			@Override
+			public RGBColor evaluate(double x, double y) {
+				return new RGBColor(x, y, -x);
+			}
+		};
+		double[] xs = { 0.5, -0.25, 1 };
+		double[] ys = { -0.25, 0.75, 0 };
+		assertSameComponents(custom, xs, ys, 3);
+		assertSameComponents(new Abs(new Minus(custom, new X())), xs, ys, 3);
+	}
+}
@@ -0,0 +1,86 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that evaluating into a caller-supplied buffer gives exactly the same
+ * components as evaluating to an RGBColor.
+ */
+public class BufferedEvaluationTests {
+
+	private static ExpressionTreeGenerator parser;
+
+	/** covers every built-in function and operator */
+	static final String[] EXPRESSIONS = { "x", "y", "0.25", "[0.1, -0.2, 0.3]", "x + y", "x - y", "x * y",
+			"x / y", "x % y", "x ^ y", "!x", "abs(x)", "atan(x)", "ceil(x)", "clamp(x / 0.25)", "cos(x)", "exp(x)",
+			"floor(x)", "log(x)", "sin(x)", "tan(x)", "wrap(x / 0.3)", "rgbToYCrCb([0.2, -0.3, 0.4] * x)",
+			"yCrCbToRGB(x + [0.1, 0.2, -0.5])", "perlinColor(x, y)", "perlinBW(x / 0.3, y)", "mandelbrot(x, y)",
+			"imageClip(\"images/vortex.jpg\", x, y)", "imageWrap(\"images/vortex.jpg\", x / 0.5, y / 0.4)",
+			"sin(x * [0.2, 0.9, 0.3] - wrap(ceil([-0.3, 0.7, -0.7])) - perlinBW(abs(x) * floor(ceil(x)), x)) + t" };
+
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	private void assertSameComponents(ExpressionTreeNode expr, double x, double y) {
+		RGBColor expected = expr.evaluate(x, y);
+		double[] out = new double[expr.getScratchSize() + 2];
+		expr.evaluate(x, y, out, 2);
+
+		String at = expr + " at (" + x + ", " + y + ")";
+		assertEquals(expected.getRed(), out[2], 0, at);
+		assertEquals(expected.getGreen(), out[3], 0, at);
+		assertEquals(expected.getBlue(), out[4], 0, at);
+	}
+
+	@Test
+	public void testMatchesEvaluate() {
+		for (String expression : EXPRESSIONS) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			for (double x = -1; x <= 1; x += 0.125) {
+				for (double y = -1; y <= 1; y += 0.25) {
+					assertSameComponents(expr, x, y);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testDepthAndScratchSize() {
+		assertEquals(1, new X().getDepth());
+		ExpressionTreeNode expr = new Plus(new Sin(new X()), new Y());
+		assertEquals(3, expr.getDepth());
+		assertEquals(9, expr.getScratchSize());
+	}
+
+	@Test
+	public void testDefaultImplementationUsesEvaluate() {
+		ExpressionTreeNode custom = new ExpressionTreeNode() {
+			@Override
+			public RGBColor evaluate(double x, double y) {
+				return new RGBColor(x, y, -x);
+			}
+		};
+		assertSameComponents(custom, 0.5, -0.25);
+		assertSameComponents(new Negate(custom), 0.5, -0.25);
+	}
+
+	@Test
+	public void testPackedColorMatchesJavaColor() {
+		double[] values = { -2, -1, -0.5, -0.001, 0, 0.3, 0.999, 1, 5, Double.NaN };
+		for (double red : values) {
+			for (double blue : values) {
+				RGBColor color = new RGBColor(red, 0.25, blue);
+				assertEquals(color.toJavaColor().getRGB(), RGBColor.toRGB(red, 0.25, blue));
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Stack;
+
+import org.junit.jupiter.api.Test;
+
+import picasso.parser.Builtins;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.ParseSession;
+import picasso.parser.language.BuiltinFunctionsReader;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+import picasso.parser.tokens.IdentifierToken;
+import picasso.parser.tokens.Token;
+import picasso.parser.tokens.functions.SinToken;
+import picasso.parser.tokens.operations.ExponentToken;
+
+/**
+ * Tests the table of built-in functions and operators that the tokenizer and
+ * the semantic analyzer are made from.
+ */
+public class BuiltinsTests {
+
+	private final ExpressionTreeGenerator parser = new ExpressionTreeGenerator();
+
+	@Test
+	public void testEveryConfiguredFunctionIsBuiltIn() {
+		for (String function : BuiltinFunctionsReader.getFunctionsList()) {
+			Builtins.Builtin builtin = Builtins.getFunction(function);
+			assertNotNull(builtin, function);
+			Token token = builtin.createToken();
+			assertSame(builtin.getTokenClass(), token.getClass(), function);
+			assertNotNull(builtin.getAnalyzer(), function);
+		}
+		assertNull(Builtins.getFunction("notAFunction"));
+	}
+
+	@Test
+	public void testEveryConfiguredOperationIsBuiltIn() throws IOException {
+		Properties operations = new Properties();
+		try (FileReader reader = new FileReader("conf/operations.prop")) {
+			operations.load(reader);
+		}
+		for (Object name : operations.values()) {
+			Builtins.Builtin builtin = Builtins.getOperation((String) name);
+			assertNotNull(builtin, (String) name);
+			assertSame(builtin.getTokenClass(), builtin.createToken().getClass());
+		}
+		assertNotNull(Builtins.getOperation("Equal"));
+	}
+
+	@Test
+	public void testUnaryFunctionsBuildTheirNodes() {
+		ExpressionTreeNode x = new X();
+		assertEquals(new Sin(x), parser.makeExpression("sin(x)"));
+		assertEquals(new Abs(x), parser.makeExpression("abs(x)"));
+		assertEquals(new Wrap(x), parser.makeExpression("wrap(x)"));
+		assertEquals(new YCrCbToRGB(x), parser.makeExpression("yCrCbToRGB(x)"));
+		assertEquals(new RgbToYCrCb(x), parser.makeExpression("rgbToYCrCb(x)"));
+	}
+
+	@Test
+	public void testOperatorsBuildTheirNodes() {
+		ExpressionTreeNode x = new X();
+		ExpressionTreeNode y = new Y();
+		assertEquals(new Plus(x, y), parser.makeExpression("x + y"));
+		assertEquals(new Minus(x, y), parser.makeExpression("x - y"));
+		assertEquals(new Multiply(x, y), parser.makeExpression("x * y"));
+		assertEquals(new Divide(x, y), parser.makeExpression("x / y"));
+		assertEquals(new Modulo(x, y), parser.makeExpression("x % y"));
+		assertEquals(new Exponent(x, y), parser.makeExpression("x ^ y"));
+		assertEquals(new Negate(x), parser.makeExpression("!x"));
+	}
+
+	@Test
+	public void testAnalyzersTakeOperandsFromTheStack() {
+		Stack<Token> tokens = new Stack<Token>();
+		tokens.push(new IdentifierToken("x"));
+		tokens.push(new IdentifierToken("y"));
+		tokens.push(new ExponentToken());
+		tokens.push(new SinToken());
+
+		ParseSession session = new ParseSession();
+		ExpressionTreeNode sin = Builtins.getFunction("sin").getAnalyzer().generateExpressionTree(tokens, session);
+
+		assertEquals(new Sin(new Exponent(new X(), new Y())), sin);
+		assertTrue(tokens.isEmpty());
+	}
+}
@@ -0,0 +1,163 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.PixmapAssertions.assertSameImage;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.model.Pixmap;
+import picasso.model.TileRenderer;
+import picasso.parser.CommonSubexpressionEliminator;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that equal subexpressions are shared and evaluated once per point
+ * without changing the colors of the expression.
+ */
+public class CommonSubexpressionTests {
+
+	private static ExpressionTreeGenerator parser;
+	private CommonSubexpressionEliminator sharer = new CommonSubexpressionEliminator();
+
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	@BeforeEach
+	void resetVariables() {
+		parser.getSession().clear();
+	}
+
+	/**
+	 * An expression of x that counts how many times it is evaluated
+	 */
+	private static class Counting extends ExpressionTreeNode {
+		final AtomicInteger evaluations = new AtomicInteger();
+		final ExpressionTreeNode param = new X();
+
+		@Override
+		public RGBColor evaluate(double x, double y) {
+			evaluations.incrementAndGet();
+			return new RGBColor(x, x * 0.5, -x);
+		}
+
+		@Override
+		public List<ExpressionTreeNode> getChildren() {
+			return List.of(param);
+		}
+	}
+
+	private Pixmap render(ExpressionTreeNode expr, int threads) {
+		Pixmap pixmap = new Pixmap(40, 30);
+		new TileRenderer(threads, 8).render(expr, pixmap);
+		return pixmap;
+	}
+
+	private void assertRendersSame(ExpressionTreeNode original, ExpressionTreeNode shared) {
+		assertSameImage(render(original, 1), render(shared, 4), original.toString());
+	}
+
+	@Test
+	public void testSharesEqualSubexpressions() {
+		ExpressionTreeNode expr = parser.makeExpression("perlinBW(x, y) + sin(perlinBW(x, y)) * perlinBW(x, y)");
+		ExpressionTreeNode shared = sharer.eliminate(expr);
+
+		assertTrue(shared instanceof MemoizedExpression);
+		assertEquals(1, sharer.getSharedCount());
+		assertEquals(expr.toString(), shared.toString());
+		assertRendersSame(expr, shared);
+	}
+
+	@Test
+	public void testNothingToShare() {
+		ExpressionTreeNode expr = parser.makeExpression("x + y * sin(x) + [0.5, 0.5, 0.5]");
+		assertSame(expr, sharer.eliminate(expr));
+		assertEquals(0, sharer.getSharedCount());
+	}
+
+	@Test
+	public void testDoesNotShareDifferentValues() {
+		String[] expressions = { "random() * x + random() * x", "[0.5, 0.5, 0.5] * x + [0.505, 0.5, 0.5] * x",
+				"cos(x) + sin(x)", "x - y + (y - x)" };
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			sharer.eliminate(expr);
+			assertEquals(0, sharer.getSharedCount(), expression);
+		}
+	}
+
+	@Test
+	public void testSharesVariables() {
+		parser.makeExpression("a = perlinColor(x, y) * cos(y)");
+		parser.makeExpression("b = a + sin(a)");
+		ExpressionTreeNode expr = parser.makeExpression("b * b - a");
+		ExpressionTreeNode shared = sharer.eliminate(expr);
+
+		assertEquals(2, sharer.getSharedCount());
+		assertRendersSame(expr, shared);
+	}
+
+	@Test
+	public void testEvaluatesSharedNodeOncePerPoint() {
+		Counting counting = new Counting();
+		ExpressionTreeNode expr = counting;
+		for (int i = 0; i < 10; i++) {
+			expr = new Plus(expr, new Multiply(expr, new Constant(0.5)));
+		}
+		ExpressionTreeNode shared = sharer.eliminate(expr);
+
+		expr.evaluate(0.25, 0.5);
+		assertEquals(1024, counting.evaluations.getAndSet(0));
+
+		RGBColor expected = expr.evaluate(0.25, 0.5);
+		counting.evaluations.set(0);
+		assertEquals(expected, shared.evaluate(0.25, 0.5));
+		assertEquals(1, counting.evaluations.getAndSet(0));
+
+		double[] rgb = new double[shared.getScratchSize()];
+		shared.evaluate(0.25, 0.5, rgb, 0);
+		shared.evaluate(-0.75, 0.5, rgb, 0);
+		assertEquals(2, counting.evaluations.getAndSet(0));
+		assertEquals(expr.evaluate(-0.75, 0.5).getRed(), rgb[0], 0);
+	}
+
+	@Test
+	public void testBatchEvaluatesSharedNodeOncePerPoint() {
+		Counting counting = new Counting();
+		ExpressionTreeNode expr = new Minus(new Sin(counting), new Cos(counting));
+		ExpressionTreeNode shared = sharer.eliminate(expr);
+
+		double[] xs = { -0.5, 0, 0.5 };
+		double[] ys = { 0.1, 0.2, 0.3 };
+		double[] red = new double[3];
+		double[] green = new double[3];
+		double[] blue = new double[3];
+		shared.evaluate(xs, ys, 3, red, green, blue);
+
+		assertEquals(3, counting.evaluations.get());
+		for (int i = 0; i < 3; i++) {
+			RGBColor expected = expr.evaluate(xs[i], ys[i]);
+			assertEquals(expected.getRed(), red[i], 0);
+			assertEquals(expected.getGreen(), green[i], 0);
+			assertEquals(expected.getBlue(), blue[i], 0);
+		}
+	}
+
+	@Test
+	public void testSharedNodeOutsideOfItsExpression() {
+		Counting counting = new Counting();
+		MemoizedExpression shared = (MemoizedExpression) sharer.eliminate(new Plus(new Abs(counting), counting));
+		SharedExpression part = (SharedExpression) shared.getChildren().get(0).getChildren().get(1);
+
+		assertEquals(new RGBColor(0.5, 0.25, -0.5), part.evaluate(0.5, 0));
+		assertEquals(new RGBColor(-0.5, -0.25, 0.5), part.evaluate(-0.5, 0));
+	}
+}
@@ -0,0 +1,189 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.parser.CommonSubexpressionEliminator;
+import picasso.parser.ExpressionOptimizer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.compiler.CompiledExpression;
+import picasso.parser.compiler.ExpressionCompiler;
+import picasso.parser.language.EvaluationContext;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that compiled expressions evaluate to exactly the same colors as the
+ * expressions they were compiled from.
+ */
+public class CompilerTests {
+
+	private static ExpressionTreeGenerator parser;
+	private ExpressionCompiler compiler = new ExpressionCompiler();
+
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	@BeforeEach
+	void resetVariables() {
+		parser.getSession().clear();
+	}
+
+	/**
+	 * An expression the compiler does not know
+	 */
+	private static class Swap extends ExpressionTreeNode {
+		final ExpressionTreeNode param;
+
+		Swap(ExpressionTreeNode param) {
+			this.param = param;
+		}
+
+		@Override
+		public RGBColor evaluate(double x, double y) {
+			RGBColor color = param.evaluate(x, y);
+			return new RGBColor(color.getBlue(), color.getRed(), color.getGreen());
+		}
+
+		@Override
+		public List<ExpressionTreeNode> getChildren() {
+			return List.of(param);
+		}
+	}
+
+	private void assertSameColors(ExpressionTreeNode expected, ExpressionTreeNode compiled) {
+		double[] out = new double[compiled.getScratchSize() + 1];
+		for (double x = -1; x <= 1; x += 0.125) {
+			for (double y = -1; y <= 1; y += 0.25) {
+				RGBColor color = expected.evaluate(x, y);
+				compiled.evaluate(x, y, out, 1);
+				String at = expected + " at (" + x + ", " + y + ")";
+				assertEquals(color.getRed(), out[1], 0, at);
+				assertEquals(color.getGreen(), out[2], 0, at);
+				assertEquals(color.getBlue(), out[3], 0, at);
+				assertEquals(color.getRed(), compiled.evaluate(x, y).getRed(), 0, at);
+			}
+		}
+	}
+
+	private CompiledExpression compile(ExpressionTreeNode expr) {
+		CompiledExpression compiled = compiler.compileProgram(expr);
+		assertSame(expr, compiled.getSource());
+		assertEquals(expr.toString(), compiled.toString());
+		return compiled;
+	}
+
+	@Test
+	public void testCompilesEveryExpression() {
+		for (String expression : BufferedEvaluationTests.EXPRESSIONS) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			assertSameColors(expr, compile(expr));
+			assertEquals(0, compiler.getInterpretedCount() - countImages(expr), expression);
+		}
+		ExpressionTreeNode string = parser.makeExpression("\"images/vortex.jpg\"");
+		assertSameColors(string, compile(string));
+	}
+
+	private int countImages(ExpressionTreeNode expr) {
+		int count = expr instanceof ImageClip || expr instanceof ImageWrap ? 1 : 0;
+		for (ExpressionTreeNode child : expr.getChildren()) {
+			count += countImages(child);
+		}
+		return count;
+	}
+
+	@Test
+	public void testCompilesSavedExpressions() throws IOException {
+		ExpressionOptimizer optimizer = new ExpressionOptimizer();
+		CommonSubexpressionEliminator sharer = new CommonSubexpressionEliminator();
+		try (Stream<Path> files = Files.list(Path.of("expressions"))) {
+			for (Path file : files.filter(f -> f.toString().endsWith(".exp")).toList()) {
+				resetVariables();
+				for (String line : Files.readAllLines(file)) {
+					if (!line.isBlank() && !line.trim().startsWith("//")) {
+						ExpressionTreeNode expr = parser.makeExpression(line);
+						try {
+							expr.evaluate(0, 0);
+						} catch (RuntimeException e) {
+							// refers to an image that is not in the repository
+							continue;
+						}
+						ExpressionTreeNode shared = sharer.eliminate(optimizer.optimize(expr));
+						assertSameColors(expr, compile(shared));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSplitsLargeExpressions() {
+		ExpressionTreeNode expr = new X();
+		for (int i = 0; i < 400; i++) {
+			ExpressionTreeNode term = new Sin(new Multiply(new Y(), new Constant(i / 400.0)));
+			expr = new Plus(new Cos(expr), i % 2 == 0 ? term : new Wrap(new Plus(term, new X())));
+		}
+		CompiledExpression compiled = compile(expr);
+
+		assertTrue(compiler.getMethodCount() > 1);
+		assertSameColors(expr, compiled);
+	}
+
+	@Test
+	public void testInterpretsUnknownExpressions() {
+		ExpressionTreeNode expr = parser.makeExpression("sin(x) * [0.5, -0.25, 1]");
+		expr = new Plus(new Swap(expr), new Swap(new Swap(new Y())));
+		CompiledExpression compiled = compile(expr);
+
+		assertEquals(2, compiler.getInterpretedCount());
+		assertSameColors(expr, compiled);
+	}
+
+	@Test
+	public void testSharedSubexpressionsComputedOnce() {
+		parser.makeExpression("a = perlinColor(x, y) * cos(y)");
+		ExpressionTreeNode expr = parser.makeExpression("a * a + sin(a)");
+		ExpressionTreeNode shared = new CommonSubexpressionEliminator().eliminate(expr);
+
+		assertSameColors(expr, compile(shared));
+	}
+
+	@Test
+	public void testFollowsTime() {
+		ExpressionTreeNode expr = parser.makeExpression("sin(x + t) * perlinBW(y, t)");
+		CompiledExpression compiled = compile(expr);
+		for (int frame = 0; frame < 5; frame++) {
+			EvaluationContext.forFrame(frame, 50).run(() -> assertSameColors(expr, compiled));
+		}
+	}
+
+	@Test
+	public void testCompiledBatchEvaluation() {
+		ExpressionTreeNode expr = parser.makeExpression("x ^ y + mandelbrot(y, x) % [0.3, 0.5, 0.7]");
+		CompiledExpression compiled = compile(expr);
+		double[] xs = { -0.5, 0, 0.5, 1 };
+		double[] ys = { 0.1, 0.2, -0.3, 0 };
+		double[] red = new double[4];
+		double[] green = new double[4];
+		double[] blue = new double[4];
+		compiled.evaluate(xs, ys, 4, red, green, blue);
+
+		for (int i = 0; i < 4; i++) {
+			RGBColor expected = expr.evaluate(xs[i], ys[i]);
+			assertEquals(expected.getRed(), red[i], 0);
+			assertEquals(expected.getGreen(), green[i], 0);
+			assertEquals(expected.getBlue(), blue[i], 0);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.PixmapAssertions.assertSameImage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import picasso.model.Pixmap;
+import picasso.model.ProgressiveRenderer;
+import picasso.model.TileRenderer;
+import picasso.parser.CommonSubexpressionEliminator;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.compiler.ExpressionCompiler;
+import picasso.parser.language.EvaluationContext;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.T;
+import picasso.parser.vector.VectorBackend;
+import picasso.util.CancellationToken;
+
+/**
+ * Tests that expressions read t from the context their render binds, so that
+ * renders at different times can run at once.
+ */
+public class EvaluationContextTests {
+
+	private final ExpressionTreeGenerator parser = new ExpressionTreeGenerator();
+
+	@Test
+	public void testFrameContexts() {
+		EvaluationContext context = EvaluationContext.forFrame(3, 4);
+		assertEquals(0.75, context.getTime());
+		assertEquals(3, context.getFrame());
+		assertEquals(4, context.getFrameCount());
+		assertEquals(context, EvaluationContext.forFrame(3, 4));
+		assertNotEquals(context, EvaluationContext.forFrame(2, 4));
+		assertEquals(0, EvaluationContext.DEFAULT.getTime());
+
+		assertThrows(IllegalArgumentException.class, () -> EvaluationContext.forFrame(4, 4));
+		assertThrows(IllegalArgumentException.class, () -> EvaluationContext.forFrame(-1, 4));
+		assertThrows(IllegalArgumentException.class, () -> new EvaluationContext(0, 0, 0));
+	}
+
+	@Test
+	public void testBindingNestsAndRestores() {
+		EvaluationContext outer = new EvaluationContext(0.5, 0, 1);
+		EvaluationContext inner = new EvaluationContext(-0.25, 0, 1);
+		assertSame(EvaluationContext.DEFAULT, EvaluationContext.current());
+
+		outer.run(() -> {
+			assertSame(outer, EvaluationContext.current());
+			assertEquals(-0.25, inner.call(() -> new T().evaluate(0, 0).getRed()));
+			assertSame(outer, EvaluationContext.current());
+			assertEquals(0.5, new T().evaluate(0, 0).getRed());
+		});
+		assertNull(EvaluationContext.getBound());
+	}
+
+	@Test
+	public void testBindingIsRestoredAfterFailure() {
+		assertThrows(IllegalStateException.class, () -> EvaluationContext.forFrame(1, 2).run(() -> {
+			throw new IllegalStateException();
+		}));
+		assertNull(EvaluationContext.getBound());
+	}
+
+	@Test
+	public void testEveryBackendReadsTheContext() {
+		ExpressionTreeNode shared = new CommonSubexpressionEliminator().eliminate(parser.makeExpression("t * x"));
+		ExpressionTreeNode compiled = new ExpressionCompiler().compile(shared);
+		ExpressionTreeNode vector = new VectorBackend().vectorize(shared, compiled);
+		EvaluationContext context = new EvaluationContext(0.5, 0, 1);
+
+		for (ExpressionTreeNode expr : new ExpressionTreeNode[] { shared, compiled, vector }) {
+			Pixmap expected = new Pixmap(16, 8);
+			Pixmap actual = new Pixmap(16, 8);
+			new TileRenderer(1, 8).renderOnCurrentThread(parser.makeExpression("0.5 * x"), expected,
+					EvaluationContext.DEFAULT, CancellationToken.NONE);
+			new TileRenderer(1, 8).render(expr, actual, context, CancellationToken.NONE);
+			assertSameImage(expected, actual);
+		}
+	}
+
+	@Test
+	public void testConcurrentRendersAtDifferentTimes() throws Exception {
+		ExpressionTreeNode expr = parser.makeExpression("t + x * 0");
+		TileRenderer renderer = new TileRenderer(2, 4);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			int frameCount = 8;
+			List<Future<Pixmap>> frames = new ArrayList<>();
+			for (int i = 0; i < frameCount; i++) {
+				EvaluationContext context = EvaluationContext.forFrame(i, frameCount);
+				frames.add(executor.submit(() -> {
+					Pixmap frame = new Pixmap(32, 32);
+					renderer.render(expr, frame, context, CancellationToken.NONE);
+					return frame;
+				}));
+			}
+			for (int i = 0; i < frameCount; i++) {
+				Pixmap frame = frames.get(i).get();
+				int gray = (int) Math.round((EvaluationContext.forFrame(i, frameCount).getTime() + 1) / 2 * 255);
+				for (int y = 0; y < 32; y++) {
+					for (int x = 0; x < 32; x++) {
+						assertEquals(gray, frame.getRGB(x, y) & 0xFF, 1, "frame " + i);
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testProgressiveRenderUsesCallersContext() {
+		ExpressionTreeNode expr = parser.makeExpression("t * y");
+		Pixmap expected = new Pixmap(20, 20);
+		Pixmap actual = new Pixmap(20, 20);
+		EvaluationContext context = EvaluationContext.forFrame(1, 4);
+
+		new TileRenderer().render(expr, expected, context, CancellationToken.NONE);
+		assertTrue(context.call(() -> new ProgressiveRenderer(step -> {
+		}).render(expr, actual)));
+		assertSameImage(expected, actual);
+	}
+
+	@Test
+	public void testAppearsIn() {
+		assertTrue(T.appearsIn(parser.makeExpression("t")));
+		assertTrue(T.appearsIn(parser.makeExpression("sin(x + perlinColor(y, t))")));
+		assertFalse(T.appearsIn(parser.makeExpression("sin(x + perlinColor(y, x))")));
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testParsingLeavesNoGlobalState() {
+		T.setHasTime(false);
+		parser.makeExpression("x * t");
+		assertFalse(T.getHasTime());
+	}
+}
@@ -0,0 +1,153 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import picasso.parser.CompiledExpression;
+import picasso.parser.ExpressionCache;
+import picasso.parser.ExpressionParser;
+import picasso.parser.ParseException;
+import picasso.parser.ParseSession;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that the expression cache reuses compiled expressions that differ only
+ * in layout, and parses again when the variables or images they read change.
+ */
+public class ExpressionCacheTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void testNormalizeIgnoresLayout() {
+		assertEquals("sin ( x + y )", ExpressionParser.normalize(" sin(x+y) // a comment"));
+		assertEquals(ExpressionParser.normalize("x*y"), ExpressionParser.normalize("x /* times */ *\ty"));
+		assertEquals("x - -0.5", ExpressionParser.normalize("x--0.5"));
+		assertNotEquals(ExpressionParser.normalize("a b"), ExpressionParser.normalize("ab"));
+		assertEquals("", ExpressionParser.normalize("  /* nothing */ "));
+	}
+
+	@Test
+	public void testRepeatedExpressionsAreNotParsedAgain() {
+		ExpressionCache cache = new ExpressionCache(ExpressionCache.DEFAULT_MAX_ENTRIES);
+		ParseSession session = new ParseSession();
+		CompiledExpression first = cache.get("sin(x * y) + t", session);
+		CompiledExpression second = cache.get("sin( x*y )+t  // again", session);
+
+		assertSame(first, second);
+		assertEquals(new Plus(new Sin(new Multiply(new X(), new Y())), new T()), first.getParsed());
+		assertTrue(first.isAnimated());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testSessionsShareExpressionsThatReadNoVariables() {
+		ExpressionCache cache = new ExpressionCache(ExpressionCache.DEFAULT_MAX_ENTRIES);
+		assertSame(cache.get("cos(x)", new ParseSession()), cache.get("cos(x)", new ParseSession()));
+	}
+
+	@Test
+	public void testChangedVariableIsParsedAgain() {
+		ExpressionCache cache = new ExpressionCache(ExpressionCache.DEFAULT_MAX_ENTRIES);
+		ParseSession session = new ParseSession();
+		cache.get("a = x", session);
+		CompiledExpression first = cache.get("sin(a)", session);
+		assertSame(first, cache.get("sin(a)", session));
+
+		cache.get("a = y", session);
+		CompiledExpression second = cache.get("sin(a)", session);
+		assertNotSame(first, second);
+		assertEquals(new Sin(new Y()), second.getParsed());
+
+		// a session without a is not given the cached tree
+		assertThrows(ParseException.class, () -> cache.get("sin(a)", new ParseSession()));
+	}
+
+	@Test
+	public void testNearlyEqualVariableIsParsedAgain() {
+		ExpressionCache cache = new ExpressionCache(ExpressionCache.DEFAULT_MAX_ENTRIES);
+		ParseSession session = new ParseSession();
+		cache.get("a = [0.5, 0.5, 0.5]", session);
+		CompiledExpression first = cache.get("a", session);
+
+		// colors equal within a tolerance are still different values
+		cache.get("a = [0.505, 0.5, 0.5]", session);
+		CompiledExpression second = cache.get("a", session);
+		assertNotSame(first, second);
+		assertEquals(0.505, second.getParsed().evaluate(0, 0).getRed());
+	}
+
+	@Test
+	public void testCachedAssignmentDefinesVariable() {
+		ExpressionCache cache = new ExpressionCache(ExpressionCache.DEFAULT_MAX_ENTRIES);
+		CompiledExpression first = cache.get("a = perlinBW(x, y)", new ParseSession());
+
+		ParseSession session = new ParseSession();
+		assertSame(first, cache.get("a = perlinBW(x, y)", session));
+		assertEquals(new PerlinBW(new X(), new Y()), session.getVariable("a"));
+	}
+
+	@Test
+	public void testChangedImageIsParsedAgain() throws IOException {
+		Path copy = directory.resolve("copy.jpg");
+		Files.copy(Path.of("images/vortex.jpg"), copy);
+		String expression = "imageWrap(\"" + copy + "\", x, y)";
+		ExpressionCache cache = new ExpressionCache(ExpressionCache.DEFAULT_MAX_ENTRIES);
+		ParseSession session = new ParseSession();
+		CompiledExpression first = cache.get(expression, session);
+		assertSame(first, cache.get(expression, session));
+
+		Files.setLastModifiedTime(copy, FileTime.fromMillis(Files.getLastModifiedTime(copy).toMillis() + 5000));
+		CompiledExpression second = cache.get(expression, session);
+
+		assertNotSame(first, second);
+		assertSame(second, cache.get(expression, session));
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testRandomExpressionsAreNotCached() {
+		ExpressionCache cache = new ExpressionCache(ExpressionCache.DEFAULT_MAX_ENTRIES);
+		ParseSession session = new ParseSession();
+		assertNotSame(cache.get("random() * x", session), cache.get("random() * x", session));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		ExpressionCache cache = new ExpressionCache(2);
+		ParseSession session = new ParseSession();
+		CompiledExpression sin = cache.get("sin(x)", session);
+		cache.get("cos(x)", session);
+		cache.get("sin(x)", session);
+		cache.get("tan(x)", session);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertSame(sin, cache.get("sin(x)", session));
+
+		cache.setMaxEntries(1);
+		assertEquals(1, cache.size());
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void testEmptyAndInvalidExpressions() {
+		ExpressionCache cache = new ExpressionCache(ExpressionCache.DEFAULT_MAX_ENTRIES);
+		assertNull(cache.get(" // nothing", new ParseSession()));
+		assertThrows(ParseException.class, () -> cache.get("sin(", new ParseSession()));
+		assertEquals(0, cache.size());
+	}
+}
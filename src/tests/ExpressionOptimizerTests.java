@@ -0,0 +1,136 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.PixmapAssertions.assertSameImage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import picasso.model.Pixmap;
+import picasso.model.TileRenderer;
+import picasso.parser.ExpressionOptimizer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that the optimizer folds constant subexpressions and removes
+ * identities without changing the rendered image.
+ */
+public class ExpressionOptimizerTests {
+
+	private static ExpressionTreeGenerator parser;
+	private ExpressionOptimizer optimizer = new ExpressionOptimizer();
+
+	private static final String[] SAVED_EXPRESSIONS = { "AmoebaMorris", "BlackStripeNock", "BlackWhiteTomlinson",
+			"BrightThompson", "ColorsNock", "DiscoMorris", "Mirror", "Oil", "PinkSmoke" };
+
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	/**
+	 * Returns the expression saved in the file, without its comments
+	 */
+	private String readExpression(String name) throws IOException {
+		Path path = Paths.get("expressions", name + ".exp");
+		return Files.readAllLines(path).stream().filter(line -> !line.trim().startsWith("//"))
+				.collect(Collectors.joining(" "));
+	}
+
+	private Pixmap render(ExpressionTreeNode expr) {
+		Pixmap pixmap = new Pixmap(64, 48);
+		new TileRenderer().render(expr, pixmap);
+		return pixmap;
+	}
+
+	private void assertRendersSame(ExpressionTreeNode original, ExpressionTreeNode optimized) {
+		assertSameImage(render(original), render(optimized), original.toString());
+	}
+
+	@Test
+	public void testFoldsConstantSubexpressions() {
+		ExpressionTreeNode expr = parser.makeExpression("x + wrap(ceil([-0.37, 0.73, -0.78]))");
+		ExpressionTreeNode optimized = optimizer.optimize(expr);
+
+		assertEquals(new Plus(new X(), new RGBColor(0, 1, 0)), optimized);
+		assertEquals(2, optimizer.getNodesRemoved());
+		assertEquals(3, ExpressionOptimizer.countNodes(optimized));
+	}
+
+	@Test
+	public void testFoldsWholeConstantExpression() {
+		ExpressionTreeNode optimized = optimizer.optimize(parser.makeExpression("sin([0.5, 0.25, -1]) * 0.5"));
+
+		assertEquals(new RGBColor(Math.sin(0.5) * 0.5, Math.sin(0.25) * 0.5, Math.sin(-1) * 0.5), optimized);
+		assertEquals(3, optimizer.getNodesRemoved());
+	}
+
+	@Test
+	public void testDoesNotFoldPositionOrTime() {
+		String[] expressions = { "x", "sin(y)", "t * 0.5", "perlinBW(x, 0.5)", "\"images/vortex.jpg\"" };
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			assertSame(expr, optimizer.optimize(expr), expression);
+			assertEquals(0, optimizer.getNodesRemoved());
+		}
+	}
+
+	@Test
+	public void testRemovesIdentities() {
+		assertEquals(new Sin(new X()), optimizer.optimize(parser.makeExpression("sin(x) * 1")));
+		assertEquals(new Sin(new X()), optimizer.optimize(parser.makeExpression("[1, 1, 1] * sin(x)")));
+		assertEquals(new Y(), optimizer.optimize(parser.makeExpression("y / (0.5 + 0.5)")));
+		assertEquals(new Y(), optimizer.optimize(parser.makeExpression("y ^ 1")));
+		assertEquals(new X(), optimizer.optimize(parser.makeExpression("x - 0")));
+		assertEquals(new X(), optimizer.optimize(parser.makeExpression("!(!x)")));
+		assertEquals(new Negate(new X()), optimizer.optimize(parser.makeExpression("!(!(!x))")));
+		assertEquals(2, optimizer.getNodesRemoved());
+	}
+
+	@Test
+	public void testKeepsNonIdentities() {
+		String[] expressions = { "x + 0", "0 - x", "x * [1, 1, 0.5]", "1 / x", "x % 1" };
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			assertEquals(expr, optimizer.optimize(expr), expression);
+			assertEquals(0, optimizer.getNodesRemoved(), expression);
+		}
+	}
+
+	@Test
+	public void testDoesNotChangeOriginal() {
+		ExpressionTreeNode expr = parser.makeExpression("x * cos(0.5 * 1)");
+		optimizer.optimize(expr);
+		assertEquals(new Multiply(new X(), new Cos(new Multiply(new Constant(0.5), new Constant(1)))), expr);
+	}
+
+	@Test
+	public void testSavedExpressionsRenderIdentically() throws IOException {
+		int removed = 0;
+		for (String name : SAVED_EXPRESSIONS) {
+			ExpressionTreeNode expr = parser.makeExpression(readExpression(name));
+			ExpressionTreeNode optimized = optimizer.optimize(expr);
+			removed += optimizer.getNodesRemoved();
+			assertRendersSame(expr, optimized);
+		}
+		assertTrue(removed > 0);
+	}
+
+	@Test
+	public void testEdgeCasesRenderIdentically() {
+		String[] expressions = { "1 / (x * 0 + 0)", "1 / (x * 0 - 0)", "1 / (-0.5 * (x - x) * 1)",
+				"log(0 * [1, 1, 1]) + x", "(x / 0) ^ 1", "!(!(x / (y - y)))" };
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			assertRendersSame(expr, optimizer.optimize(expr));
+		}
+	}
+}
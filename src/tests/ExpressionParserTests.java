@@ -0,0 +1,152 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import picasso.parser.ExpressionFile;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.ParseException;
+import picasso.parser.ParseSession;
+import picasso.parser.RandomExpressionGenerator;
+import picasso.parser.language.BuiltinFunctionsReader;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that the one-pass ExpressionParser builds the same trees as the
+ * Tokenizer, the conversion to postfix, and the SemanticAnalyzer, and that its
+ * errors say where the problem is.
+ */
+public class ExpressionParserTests {
+
+	private final ExpressionTreeGenerator parser = new ExpressionTreeGenerator();
+
+	/**
+	 * Parse the expression both ways, each in its own session, and check that
+	 * both give the same tree or both fail
+	 */
+	private void assertSameAsPostfix(String expression, ParseSession onePass, ParseSession postfix) {
+		ExpressionTreeNode expected;
+		try {
+			expected = parser.makeExpressionFromPostfix(expression, postfix);
+		} catch (ParseException e) {
+			assertThrows(ParseException.class, () -> parser.makeExpression(expression, onePass), expression);
+			return;
+		}
+		assertEquals(structure(expected), structure(parser.makeExpression(expression, onePass)), expression);
+	}
+
+	/**
+	 * Returns the tree (or map of trees) as a string, with every random() alike (each Random node
+	 * picks its own value, so they are never equal)
+	 */
+	private static String structure(Object tree) {
+		return String.valueOf(tree).replaceAll("Random@\\p{XDigit}+", "Random");
+	}
+
+	private void assertSameAsPostfix(String expression) {
+		assertSameAsPostfix(expression, new ParseSession(), new ParseSession());
+	}
+
+	@Test
+	public void testExpressionFiles() throws IOException {
+		int files = 0;
+		try (DirectoryStream<Path> dir = Files.newDirectoryStream(Paths.get("expressions"), "*.exp")) {
+			for (Path file : dir) {
+				ParseSession onePass = new ParseSession();
+				ParseSession postfix = new ParseSession();
+				for (String line : ExpressionFile.readExpressions(file)) {
+					assertSameAsPostfix(line, onePass, postfix);
+				}
+				assertEquals(structure(postfix.getVariables()), structure(onePass.getVariables()), file.toString());
+				files++;
+			}
+		}
+		assertTrue(files > 0);
+	}
+
+	@Test
+	public void testRandomExpressions() {
+		List<String> images = List.of("images/Mirror.png", "images/BlackStripeNock.png");
+		for (int seed = 0; seed < 300; seed++) {
+			RandomExpressionGenerator generator = new RandomExpressionGenerator(new Random(seed),
+					BuiltinFunctionsReader.getFunctionsList(), images);
+			assertSameAsPostfix(generator.generate());
+		}
+	}
+
+	@Test
+	public void testHandWrittenExpressions() {
+		String[] expressions = { "x", "  y  ", ".5", "-.25", "-1", "x - -0.5", "x-0.5", "x - y - x", "x / y / x",
+				"x ^ y ^ x", "(x ^ y) ^ x", "!x ^ y", "!x + y", "!(x * y)", "x * !y", "x + y * x % y ^ x",
+				"((x))", "[1, -1, .5]", "[-1,0,1] * x", "sin(x + y) * cos(x - y)", "perlinColor(x, y)",
+				"mandelbrot(x * y, y)", "random()", "random() + x", "imageWrap(\"Mirror.png\", x, y)",
+				"imageClip(\"images/Mirror.png\", x + y, y)", "x // a comment", "/* a comment */ x",
+				"x /* a comment */ + y", "x/y", "x /*/ still a comment */ + y", "// only a comment", "",
+				"a = x", "a = sin(x) + y", "x = y", "(x", "x)", "x y", "sin()", "perlinColor(x)",
+				"[1, 2, 3]", "[1 2 3]", "[1, 1, 1", "1.5", "x +", "+ x", "imageClip(x, x, y)", "undefined" };
+		for (String expression : expressions) {
+			assertSameAsPostfix(expression);
+		}
+	}
+
+	@Test
+	public void testVariablesAcrossLines() {
+		ParseSession onePass = new ParseSession();
+		ParseSession postfix = new ParseSession();
+		for (String line : new String[] { "a = x * y", "b = a + sin(a)", "b ^ a", "a = b", "a" }) {
+			assertSameAsPostfix(line, onePass, postfix);
+		}
+		assertEquals(structure(postfix.getVariables()), structure(onePass.getVariables()));
+	}
+
+	@Test
+	public void testEmptyExpressions() {
+		assertNull(parser.makeExpression(""));
+		assertNull(parser.makeExpression("   /* nothing */ // here"));
+	}
+
+	@Test
+	public void testExponentIsRightAssociative() {
+		assertEquals(new Exponent(new X(), new Exponent(new Y(), new X())), parser.makeExpression("x ^ y ^ x"));
+		assertEquals(new Minus(new Minus(new X(), new Y()), new X()), parser.makeExpression("x - y - x"));
+	}
+
+	@Test
+	public void testRepeatedNegation() {
+		assertEquals(new Negate(new Negate(new X())), parser.makeExpression("!!x"));
+	}
+
+	@Test
+	public void testErrorsGiveTheirPosition() {
+		assertPosition(4, "x + undefined");
+		assertPosition(4, "x + 2");
+		assertPosition(2, "x y");
+		assertPosition(6, "(x + y");
+		assertPosition(1, "x)");
+		assertPosition(0, "perlinColor(x)");
+		assertPosition(4, "x + ");
+		assertPosition(0, "x = y");
+		assertPosition(6, "x + y = x");
+		assertPosition(6, "[1, 2 3]");
+		assertPosition(0, "[2, 0, 0]");
+		assertPosition(4, "sin x");
+		assertPosition(2, "x # y");
+		assertPosition(4, "abs = x");
+	}
+
+	private void assertPosition(int position, String expression) {
+		ParseException e = assertThrows(ParseException.class, () -> parser.makeExpression(expression), expression);
+		assertEquals(position, e.getPosition(), expression + ": " + e.getMessage());
+		assertTrue(e.getMessage().endsWith("at column " + (position + 1)), e.getMessage());
+	}
+}
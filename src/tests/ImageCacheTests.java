@@ -0,0 +1,153 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import picasso.model.ImageCache;
+import picasso.model.Pixmap;
+
+/**
+ * Tests that the image cache reads each image once, notices changed files, and
+ * stays within its budget.
+ */
+public class ImageCacheTests {
+
+	private static final String VORTEX = "images/vortex.jpg";
+	private static final String BEHOLDER = "images/beholder.jpg";
+
+	@TempDir
+	Path directory;
+
+	private static long bytes(Pixmap image) {
+		return 4L * image.getWidth() * image.getHeight();
+	}
+
+	@Test
+	public void testRepeatedLoadsShareImage() {
+		ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+		Pixmap first = cache.get(VORTEX);
+		Pixmap second = cache.get("images/../" + VORTEX);
+
+		assertSame(first, second);
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.size());
+		assertEquals(bytes(first), cache.getCurrentBytes());
+	}
+
+	@Test
+	public void testConcurrentLoadsReadOnce() throws Exception {
+		ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+		int threads = 8;
+		CyclicBarrier start = new CyclicBarrier(threads);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Pixmap>> images = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				images.add(pool.submit(() -> {
+					start.await();
+					return cache.get(VORTEX);
+				}));
+			}
+			Pixmap first = images.get(0).get();
+			for (Future<Pixmap> image : images) {
+				assertSame(first, image.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(1, cache.getMisses());
+		assertEquals(threads - 1, cache.getHits());
+		assertEquals(bytes(cache.get(VORTEX)), cache.getCurrentBytes());
+	}
+
+	@Test
+	public void testChangedFileIsReadAgain() throws IOException {
+		Path copy = directory.resolve("copy.jpg");
+		Files.copy(Path.of(VORTEX), copy);
+		ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+		Pixmap first = cache.get(copy.toString());
+
+		Files.setLastModifiedTime(copy, FileTime.fromMillis(Files.getLastModifiedTime(copy).toMillis() + 5000));
+		Pixmap second = cache.get(copy.toString());
+
+		assertNotSame(first, second);
+		assertEquals(2, cache.getMisses());
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.size());
+		assertEquals(bytes(second), cache.getCurrentBytes());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		ImageCache measure = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+		long vortexBytes = bytes(measure.get(VORTEX));
+		long beholderBytes = bytes(measure.get(BEHOLDER));
+
+		ImageCache cache = new ImageCache(Math.max(vortexBytes, beholderBytes));
+		Pixmap vortex = cache.get(VORTEX);
+		cache.get(BEHOLDER);
+
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertEquals(beholderBytes, cache.getCurrentBytes());
+		assertNotSame(vortex, cache.get(VORTEX));
+		assertEquals(3, cache.getMisses());
+	}
+
+	@Test
+	public void testShrinkingBudgetEvicts() {
+		ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+		cache.get(VORTEX);
+		cache.get(BEHOLDER);
+		assertEquals(2, cache.size());
+
+		cache.setMaxBytes(0);
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getCurrentBytes());
+		assertEquals(2, cache.getEvictions());
+	}
+
+	@Test
+	public void testImagesOverBudgetAreNotCached() {
+		ImageCache cache = new ImageCache(1);
+		Pixmap first = cache.get(VORTEX);
+		assertNotSame(first, cache.get(VORTEX));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getEvictions());
+	}
+
+	@Test
+	public void testMissingFilesAreNotCached() {
+		ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+		cache.get(directory.resolve("missing.png").toString());
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testClearResetsCache() {
+		ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+		cache.get(VORTEX);
+		cache.get(VORTEX);
+		cache.clear();
+
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getCurrentBytes());
+		assertEquals(0, cache.getHits());
+		assertEquals(0, cache.getMisses());
+	}
+}
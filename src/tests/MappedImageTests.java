@@ -0,0 +1,139 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import picasso.model.ImageCache;
+import picasso.model.SampledImage;
+import picasso.model.SampledImage.Filter;
+
+/**
+ * Tests that images larger than the cache's mapping threshold are converted
+ * into memory-mapped files, and sample as they would from the heap.
+ */
+public class MappedImageTests {
+
+	private static final String VORTEX = "images/vortex.jpg";
+	private static final String LARGE = "images/Smear.png";
+
+	@TempDir
+	Path directory;
+
+	private ImageCache mappingCache() {
+		// maps every image with more than a thousand pixels
+		return new ImageCache(ImageCache.DEFAULT_MAX_BYTES, 1000, directory);
+	}
+
+	private List<Path> files() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.sorted().toList();
+		}
+	}
+
+	private static void assertSameSamples(SampledImage expected, SampledImage actual, double delta) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		double[] heap = new double[3];
+		double[] mapped = new double[3];
+		for (Filter filter : Filter.values()) {
+			for (double x = -1; x <= 1; x += 0.0173) {
+				for (double y = -1; y <= 1; y += 0.0311) {
+					expected.sample(x, y, filter, heap, 0);
+					actual.sample(x, y, filter, mapped, 0);
+					assertArrayEquals(heap, mapped, delta, filter + " at (" + x + ", " + y + ")");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMappedSamplesMatchTheHeap() throws IOException {
+		SampledImage heap = new ImageCache(ImageCache.DEFAULT_MAX_BYTES).getSamples(VORTEX);
+		ImageCache cache = mappingCache();
+		SampledImage mapped = cache.getSamples(VORTEX);
+		assertFalse(heap.isMapped());
+		assertTrue(mapped.isMapped());
+		assertSameSamples(heap, mapped, 0);
+
+		// none of the image is on the heap, or counted against the budget
+		assertEquals(0, mapped.getBytes());
+		assertEquals(0, cache.getCurrentBytes());
+		assertSame(mapped, cache.getSamples(VORTEX));
+		assertEquals(1, files().size());
+		// nor is it decoded onto the heap when the pixmap is asked for
+		assertThrows(IllegalStateException.class, () -> cache.get(VORTEX));
+		assertSame(mapped, cache.getSamples(VORTEX));
+	}
+
+	@Test
+	public void testImagesAreConvertedOnce() throws IOException {
+		mappingCache().getSamples(VORTEX);
+		Path file = files().get(0);
+		FileTime written = Files.getLastModifiedTime(file);
+
+		SampledImage again = mappingCache().getSamples(VORTEX);
+		assertTrue(again.isMapped());
+		assertEquals(List.of(file), files());
+		assertEquals(written, Files.getLastModifiedTime(file));
+
+		// a file that is not a conversion of the image is written again
+		Files.write(file, new byte[] { 1, 2, 3 });
+		assertSameSamples(new ImageCache(ImageCache.DEFAULT_MAX_BYTES).getSamples(VORTEX),
+				mappingCache().getSamples(VORTEX), 0);
+	}
+
+	@Test
+	public void testConcurrentRequestsConvertOnce() throws Exception {
+		ImageCache cache = mappingCache();
+		int threads = 6;
+		CyclicBarrier start = new CyclicBarrier(threads);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<SampledImage>> samples = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				samples.add(pool.submit(() -> {
+					start.await();
+					return cache.getSamples(VORTEX);
+				}));
+			}
+			SampledImage first = samples.get(0).get();
+			assertTrue(first.isMapped());
+			for (Future<SampledImage> sample : samples) {
+				assertSame(first, sample.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(1, files().size());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testLargeLevelsAreMappedToo() throws IOException {
+		SampledImage mapped = mappingCache().getSamples(LARGE);
+		SampledImage heap = new ImageCache(ImageCache.DEFAULT_MAX_BYTES).getSamples(LARGE);
+		assertEquals(3000, mapped.getWidth());
+		assertEquals(heap.getLevelCount(), mapped.getLevelCount());
+		// 1500 x 1200 is too large for the heap, 750 x 600 is not
+		assertTrue(mapped.getLevel(1).isMapped());
+		assertFalse(mapped.getLevel(2).isMapped());
+		assertEquals(2, files().size());
+		// mapped levels are averaged into the same bytes as levels on the heap
+		assertSameSamples(heap.getLevel(1), mapped.getLevel(1), 0);
+		assertSameSamples(heap.getLevel(4), mapped.getLevel(4), 0);
+	}
+}
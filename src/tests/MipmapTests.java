@@ -0,0 +1,177 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.PixmapAssertions.assertSameImage;
+
+import java.awt.Color;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import picasso.model.ImageCache;
+import picasso.model.Pixmap;
+import picasso.model.ProgressiveRenderer;
+import picasso.model.SampledImage;
+import picasso.model.SampledImage.Filter;
+import picasso.model.TileRenderer;
+import picasso.parser.CommonSubexpressionEliminator;
+import picasso.parser.CompiledExpression;
+import picasso.parser.ExpressionOptimizer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.compiler.ExpressionCompiler;
+import picasso.parser.language.EvaluationContext;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+import picasso.parser.vector.VectorBackend;
+
+/**
+ * Tests that images have mip pyramids, and that imageWrap and imageClip read
+ * the level that matches how much they are shrunk on screen.
+ */
+public class MipmapTests {
+
+	private static final String VORTEX = "images/vortex.jpg";
+	private static final double EPSILON = 1e-6;
+	// a render of 800 x 800 pixels, the size of vortex.jpg
+	private static final EvaluationContext RENDER = EvaluationContext.DEFAULT.withImageSize(800, 800);
+
+	private final ExpressionTreeGenerator parser = new ExpressionTreeGenerator();
+
+	private static double[] sample(SampledImage image, double x, double y) {
+		double[] out = new double[3];
+		image.sample(x, y, Filter.NEAREST, out, 0);
+		return out;
+	}
+
+	private static double[] toArray(RGBColor color) {
+		return new double[] { color.getRed(), color.getGreen(), color.getBlue() };
+	}
+
+	private static double wrap(double value) {
+		double shifted = value + 1.0;
+		return shifted - 2.0 * Math.floor(shifted * 0.5) - 1.0;
+	}
+
+	@Test
+	public void testPyramidHalvesAndAverages() {
+		SampledImage vortex = ImageCache.getInstance().getSamples(VORTEX);
+		// 800, 400, 200, 100, 50, 25, 13, 7, 4, 2, 1
+		assertEquals(11, vortex.getLevelCount());
+		assertSame(vortex, vortex.getLevel(0));
+		assertEquals(400, vortex.getLevel(1).getWidth());
+		assertEquals(13, vortex.getLevel(6).getHeight());
+		assertEquals(1, vortex.getLevel(10).getWidth());
+		assertSame(vortex.getLevel(10), vortex.getLevel(99));
+
+		// black, white, red, and blue average to a dark green, of the bytes
+		// (0 + 255 + 255 + 0) / 4 and (0 + 255 + 0 + 0) / 4, rounded
+		Pixmap pixmap = new Pixmap(2, 2, Color.BLACK);
+		pixmap.setColor(1, 0, Color.WHITE);
+		pixmap.setColor(0, 1, Color.RED);
+		pixmap.setColor(1, 1, Color.BLUE);
+		SampledImage top = new SampledImage(pixmap).getLevel(1);
+		double half = 128 / 255.0 * 2 - 1;
+		assertArrayEquals(new double[] { half, 64 / 255.0 * 2 - 1, half }, sample(top, 0.3, -0.8), EPSILON);
+	}
+
+	@Test
+	public void testTiledImageReadsASmallerLevel() {
+		ExpressionTreeNode wrap = parser.makeExpression("imageWrap(\"vortex.jpg\", x / 0.125, y / 0.125)");
+		SampledImage vortex = ImageCache.getInstance().getSamples(VORTEX);
+		for (double x = -0.9; x < 1; x += 0.17) {
+			for (double y = -0.95; y < 1; y += 0.21) {
+				double px = x, py = y;
+				// eight copies across the screen, so eight image pixels per screen pixel
+				assertArrayEquals(sample(vortex.getLevel(3), wrap(x / 0.125), wrap(y / 0.125)),
+						toArray(RENDER.call(() -> wrap.evaluate(px, py))), EPSILON);
+				// with no image size, the full image is read
+				assertArrayEquals(sample(vortex, wrap(x / 0.125), wrap(y / 0.125)), toArray(wrap.evaluate(x, y)),
+						EPSILON);
+			}
+		}
+		// an image no smaller than the screen is read in full
+		ExpressionTreeNode full = parser.makeExpression("imageWrap(\"vortex.jpg\", x, y)");
+		assertEquals(full.evaluate(0.3, -0.4), RENDER.call(() -> full.evaluate(0.3, -0.4)));
+	}
+
+	@Test
+	public void testClampedCoordinatesReadTheFullImage() {
+		ExpressionTreeNode clip = parser.makeExpression("imageClip(\"vortex.jpg\", x / 0.125, y)");
+		SampledImage vortex = ImageCache.getInstance().getSamples(VORTEX);
+		// past the edge the image does not move, so it is not shrunk there
+		for (double y = -1; y <= 1; y += 0.1) {
+			double py = y;
+			assertArrayEquals(sample(vortex, 1, y), toArray(RENDER.call(() -> clip.evaluate(0.9, py))), EPSILON);
+			assertArrayEquals(sample(vortex, -1, y), toArray(RENDER.call(() -> clip.evaluate(-0.95, py))), EPSILON);
+		}
+		// while in the middle it is squeezed eight times across
+		assertArrayEquals(sample(vortex.getLevel(3), 0.01 / 0.125, 0.2),
+				toArray(RENDER.call(() -> clip.evaluate(0.01, 0.2))), EPSILON);
+	}
+
+	@Test
+	public void testEveryBackendReadsTheSameLevel() {
+		String[] expressions = { "imageWrap(\"vortex.jpg\", x / 0.03125, y / 0.0625, \"bilinear\")",
+				"imageClip(\"vortex.jpg\", x / 0.25 * y, y / 0.5)", "imageWrap(\"vortex.jpg\", sin(x / 0.1), y)" };
+		for (String expression : expressions) {
+			ExpressionTreeNode parsed = parser.makeExpression(expression);
+			ExpressionTreeNode compiled = CompiledExpression.of(parsed).getCompiled();
+			ExpressionTreeNode vectorized = VectorBackend.isAvailable() ? new VectorBackend().vectorize(parsed, parsed)
+					: parsed;
+			int count = 41;
+			double[] xs = new double[count];
+			double[] ys = new double[count];
+			for (int i = 0; i < count; i++) {
+				xs[i] = -1 + 2.0 * i / (count - 1);
+				ys[i] = Math.sin(i);
+			}
+			RENDER.run(() -> {
+				double[] out = new double[compiled.getScratchSize()];
+				double[][] planes = new double[vectorized.getScratchSize()][count];
+				vectorized.evaluate(xs, ys, count, planes, 0);
+				for (int i = 0; i < count; i++) {
+					RGBColor expected = parsed.evaluate(xs[i], ys[i]);
+					compiled.evaluate(xs[i], ys[i], out, 0);
+					String at = expression + " at (" + xs[i] + ", " + ys[i] + ")";
+					assertArrayEquals(toArray(expected), new double[] { out[0], out[1], out[2] }, 0, at);
+					assertArrayEquals(toArray(expected), new double[] { planes[0][i], planes[1][i], planes[2][i] }, 0, at);
+				}
+			});
+		}
+	}
+
+	@Test
+	public void testSharedCoordinatesReadTheSameLevel() {
+		String expression = "imageWrap(\"vortex.jpg\", x / 0.125, x / 0.125)";
+		ExpressionTreeNode parsed = parser.makeExpression(expression);
+		Pixmap expected = new Pixmap(80, 80);
+		new TileRenderer(1, 32).render(parsed, expected);
+
+		// each path gets its own tree, so that each finds its own levels
+		ExpressionTreeNode interpreted = share(parsed);
+		assertNotSame(parsed, interpreted);
+		ExpressionTreeNode compiled = new ExpressionCompiler().compile(share(parsed));
+		ExpressionTreeNode vectorized = new VectorBackend().vectorize(share(parsed), share(parsed));
+		for (ExpressionTreeNode path : new ExpressionTreeNode[] { interpreted, compiled, vectorized }) {
+			Pixmap actual = new Pixmap(80, 80);
+			new TileRenderer(1, 32).render(path, actual);
+			assertSameImage(expected, actual, expression);
+		}
+	}
+
+	private static ExpressionTreeNode share(ExpressionTreeNode parsed) {
+		return new CommonSubexpressionEliminator().eliminate(new ExpressionOptimizer().optimize(parsed));
+	}
+
+	@Test
+	public void testProgressiveRenderEndsWithTheTiledImage() {
+		ExpressionTreeNode expression = CompiledExpression
+				.of(parser.makeExpression("imageWrap(\"vortex.jpg\", x / 0.0625, y / 0.125) * cos(y)")).getCompiled();
+		Pixmap tiled = new Pixmap(120, 90);
+		new TileRenderer(1, 32).render(expression, tiled);
+		Pixmap progressive = new Pixmap(120, 90);
+		assertTrue(new ProgressiveRenderer(new ForkJoinPool(1), step -> {
+		}).render(expression, progressive));
+		assertSameImage(tiled, progressive);
+	}
+}
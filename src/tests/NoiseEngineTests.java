@@ -0,0 +1,180 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import picasso.model.ImprovedNoise;
+import picasso.model.NoiseEngine;
+import picasso.parser.CompiledExpression;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.Fbm;
+import picasso.parser.language.expressions.RGBColor;
+import picasso.parser.language.expressions.Turbulence;
+import picasso.parser.vector.VectorBackend;
+
+/**
+ * Tests that the noise engine gives Perlin's noise, in the plane and in space,
+ * a point or a row at a time, and that fbm and turbulence sum its octaves.
+ */
+public class NoiseEngineTests {
+
+	private static final int COUNT = 97;
+
+	private final ExpressionTreeGenerator parser = new ExpressionTreeGenerator();
+
+	/**
+	 * Coordinates on both sides of zero, on and between lattice points
+	 */
+	private static double[] coordinates(double scale, double shift) {
+		double[] values = new double[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			values[i] = (i - COUNT / 2) * scale + shift;
+		}
+		return values;
+	}
+
+	@Test
+	public void testReferenceMatchesImprovedNoise() {
+		NoiseEngine engine = NoiseEngine.REFERENCE;
+		for (double x : coordinates(0.37, 0.013)) {
+			for (double y : coordinates(0.29, -0.5)) {
+				assertEquals(ImprovedNoise.noise(x, y, 0), engine.noise(x, y), 0, "(" + x + ", " + y + ")");
+				double z = x * 0.5 - y;
+				assertEquals(ImprovedNoise.noise(x, y, z), engine.noise(x, y, z), 0,
+						"(" + x + ", " + y + ", " + z + ")");
+			}
+		}
+		// lattice points, and coordinates past the 256 cells of the lattice
+		assertEquals(0, engine.noise(3, -7), 0);
+		assertEquals(ImprovedNoise.noise(300.25, -1000.5, 7.75), engine.noise(300.25, -1000.5, 7.75), 0);
+	}
+
+	@Test
+	public void testCoordinatesPastTheRangeOfAnInt() {
+		NoiseEngine engine = NoiseEngine.REFERENCE;
+		double[] coordinates = { 3e9, -3e9, 3e9 + 0.37, -3e9 - 0.61, 1e12 + 0.25, -1e12, 1e300, -1e300, 0x1p31,
+				-0x1p31 - 0.5, 0.3 };
+		for (double x : coordinates) {
+			for (double y : coordinates) {
+				assertEquals(ImprovedNoise.noise(x, y, 0), engine.noise(x, y), 0, "(" + x + ", " + y + ")");
+				assertEquals(ImprovedNoise.noise(x, y, -x), engine.noise(x, y, -x), 0,
+						"(" + x + ", " + y + ", " + -x + ")");
+				assertEquals(ImprovedNoise.noise(0.7, x, y), engine.noise(0.7, x, y), 0,
+						"(0.7, " + x + ", " + y + ")");
+			}
+		}
+		assertTrue(Double.isNaN(engine.noise(Double.NaN, 0.5)));
+		assertTrue(Double.isNaN(engine.noise(0.5, 0.5, Double.POSITIVE_INFINITY)));
+
+		// perlinBW of an exponential reaches past the range of an int within the
+		// image
+		ExpressionTreeNode far = parser.makeExpression("perlinBW(exp(x / 0.04), y)");
+		double sum = Math.exp(0.9 / 0.04) + 0.3;
+		double expected = ImprovedNoise.noise(sum, sum, sum);
+		assertTrue(Math.abs(expected) <= 1);
+		assertEquals(expected, far.evaluate(0.9, 0.3).getRed(), 0);
+	}
+
+	@Test
+	public void testSeedsChooseTheLattice() {
+		NoiseEngine first = new NoiseEngine(42);
+		NoiseEngine same = new NoiseEngine(42);
+		NoiseEngine other = new NoiseEngine(43);
+		boolean differs = false;
+		for (double x : coordinates(0.31, 0.1)) {
+			double noise = first.noise(x, x * 0.7 + 0.2);
+			assertEquals(noise, same.noise(x, x * 0.7 + 0.2), 0);
+			assertTrue(Math.abs(noise) <= 1, x + ": " + noise);
+			differs |= noise != other.noise(x, x * 0.7 + 0.2);
+			differs |= noise != NoiseEngine.REFERENCE.noise(x, x * 0.7 + 0.2);
+		}
+		assertTrue(differs);
+		// a shuffled lattice is still zero on its points
+		assertEquals(0, first.noise(5, 2, -1), 0);
+	}
+
+	@Test
+	public void testRowsMatchPoints() {
+		NoiseEngine engine = new NoiseEngine(7);
+		double[] xs = coordinates(0.21, 0.3);
+		double[] ys = coordinates(-0.13, 0.8);
+		double[] zs = coordinates(0.05, -2);
+		double[] plane = new double[COUNT];
+		double[] space = new double[COUNT];
+		double[] fbm = new double[COUNT];
+		double[] turbulence = new double[COUNT];
+		engine.noise(xs, ys, plane, COUNT);
+		engine.noise(xs, ys, zs, space, COUNT);
+		engine.fbm(xs, ys, fbm, COUNT, 4);
+		engine.turbulence(xs, ys, turbulence, COUNT, 3);
+		for (int i = 0; i < COUNT; i++) {
+			assertEquals(engine.noise(xs[i], ys[i]), plane[i], 0);
+			assertEquals(engine.noise(xs[i], ys[i], zs[i]), space[i], 0);
+			assertEquals(engine.fbm(xs[i], ys[i], 4), fbm[i], 0);
+			assertEquals(engine.turbulence(xs[i], ys[i], 3), turbulence[i], 0);
+		}
+		// the results may replace the coordinates
+		double[] copy = xs.clone();
+		engine.noise(copy, ys, copy, COUNT);
+		assertArrayEquals(plane, copy, 0);
+	}
+
+	@Test
+	public void testOctavesAreSummed() {
+		NoiseEngine engine = NoiseEngine.REFERENCE;
+		double x = 0.3;
+		double y = -1.7;
+		assertEquals(engine.noise(x, y), engine.fbm(x, y, 1), 0);
+		double two = (engine.noise(x, y) + 0.5 * engine.noise(2 * x, 2 * y)) / 1.5;
+		assertEquals(two, engine.fbm(x, y, 2), 1e-15);
+		double crease = (Math.abs(engine.noise(x, y)) + 0.5 * Math.abs(engine.noise(2 * x, 2 * y))) / 1.5;
+		assertEquals(2 * crease - 1, engine.turbulence(x, y, 2), 1e-15);
+		for (double v : coordinates(0.17, 0.05)) {
+			double t = engine.turbulence(v, v * 0.3, 5);
+			assertTrue(t >= -1 && t <= 1, v + ": " + t);
+		}
+	}
+
+	@Test
+	public void testLanguageFunctions() {
+		ExpressionTreeNode fbm = parser.makeExpression("fbm(x, y / 0.25)");
+		assertTrue(fbm instanceof Fbm);
+		ExpressionTreeNode plain = parser.makeExpression("fbm(y, x)");
+		assertEquals("fbm(y, x)", plain.toString());
+		assertEquals(plain, parser.makeExpression(plain.toString()));
+		ExpressionTreeNode turbulence = parser.makeExpression("turbulence(x + y, sin(x))");
+		assertTrue(turbulence instanceof Turbulence);
+		assertNotEquals(parser.makeExpression("fbm(x, y)"), parser.makeExpression("turbulence(x, y)"));
+
+		RGBColor color = fbm.evaluate(0.3, 0.2);
+		double expected = NoiseEngine.REFERENCE.fbm(0.3, 0.2 / 0.25, Fbm.OCTAVES);
+		assertEquals(expected, color.getRed(), 0);
+		assertEquals(expected, color.getBlue(), 0);
+	}
+
+	@Test
+	public void testEveryBackendAgrees() {
+		for (String expression : new String[] { "fbm(x / 0.1, y / 0.1) + turbulence(y, x / 0.2)",
+				"perlinColor(x / 0.3, y) * perlinBW(x, y / 0.3)", "turbulence(fbm(x, y), x)",
+				"perlinBW(exp(x / 0.04), y) + perlinColor(y, exp(x / 0.03))" }) {
+			ExpressionTreeNode parsed = parser.makeExpression(expression);
+			ExpressionTreeNode compiled = CompiledExpression.of(parsed).getCompiled();
+			ExpressionTreeNode vectorized = VectorBackend.isAvailable() ? new VectorBackend().vectorize(parsed, parsed)
+					: parsed;
+			double[] xs = coordinates(2.0 / COUNT, 0);
+			double[] ys = coordinates(-1.7 / COUNT, 0.1);
+			double[][] planes = new double[vectorized.getScratchSize()][COUNT];
+			vectorized.evaluate(xs, ys, COUNT, planes, 0);
+			double[] out = new double[compiled.getScratchSize()];
+			for (int i = 0; i < COUNT; i++) {
+				RGBColor color = parsed.evaluate(xs[i], ys[i]);
+				compiled.evaluate(xs[i], ys[i], out, 0);
+				double[] expected = { color.getRed(), color.getGreen(), color.getBlue() };
+				assertArrayEquals(expected, new double[] { out[0], out[1], out[2] }, 0, expression);
+				assertArrayEquals(expected, new double[] { planes[0][i], planes[1][i], planes[2][i] }, 0, expression);
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.ParseException;
+import picasso.parser.ParseSession;
+import picasso.parser.SemanticAnalyzer;
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Tests that variables belong to the session they were defined in, and that
+ * parses in different sessions can run on different threads at once.
+ */
+public class ParseSessionTests {
+
+	private final ExpressionTreeGenerator parser = new ExpressionTreeGenerator();
+
+	@Test
+	public void testVariablesStayInTheirSession() {
+		ParseSession first = new ParseSession();
+		ParseSession second = new ParseSession();
+
+		parser.makeExpression("a = x", first);
+		parser.makeExpression("a = y", second);
+
+		assertEquals(parser.makeExpression("x"), parser.makeExpression("a", first));
+		assertEquals(parser.makeExpression("y"), parser.makeExpression("a", second));
+		assertThrows(ParseException.class, () -> parser.makeExpression("a"));
+		assertTrue(parser.getSession().getVariables().isEmpty());
+	}
+
+	@Test
+	public void testGeneratorsHaveTheirOwnSessions() {
+		ExpressionTreeGenerator other = new ExpressionTreeGenerator();
+		parser.makeExpression("shared = sin(x)");
+
+		assertThrows(ParseException.class, () -> other.makeExpression("shared"));
+		assertEquals(parser.makeExpression("sin(x)"), parser.makeExpression("shared"));
+		assertEquals(parser.makeExpression("sin(x)"),
+				new ExpressionTreeGenerator(parser.getSession()).makeExpression("shared"));
+	}
+
+	@Test
+	public void testClearForgetsVariables() {
+		parser.makeExpression("a = x");
+		parser.getSession().clear();
+		assertFalse(parser.getSession().isVariableDefined("a"));
+		assertThrows(UnsupportedOperationException.class,
+				() -> parser.getSession().getVariables().put("a", null));
+	}
+
+	@Test
+	public void testConcurrentParsesInSeparateSessions() throws Exception {
+		String[] values = { "x", "y", "sin(x)", "cos(y)", "x * y", "perlinColor(x, y)", "abs(x)", "[0.5, -0.5, 0]" };
+		ExpressionTreeGenerator shared = new ExpressionTreeGenerator();
+		List<Callable<Boolean>> parses = new ArrayList<Callable<Boolean>>();
+		for (int i = 0; i < 2000; i++) {
+			String value = values[i % values.length];
+			parses.add(() -> {
+				ParseSession session = new ParseSession();
+				shared.makeExpression("a = " + value, session);
+				shared.makeExpression("b = a + " + value, session);
+				ExpressionTreeNode viaVariables = shared.makeExpression("b * a", session);
+				ExpressionTreeNode direct = shared.makeExpression("(" + value + " + " + value + ") * (" + value + ")",
+						session);
+				return viaVariables.equals(direct) && session.getVariables().size() == 2;
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (Future<Boolean> parse : executor.invokeAll(parses)) {
+				assertTrue(parse.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testAnalyzerIsSharedAndStateless() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<SemanticAnalyzer>> instances = new ArrayList<Future<SemanticAnalyzer>>();
+			for (int i = 0; i < 16; i++) {
+				instances.add(executor.submit(SemanticAnalyzer::getInstance));
+			}
+			for (Future<SemanticAnalyzer> instance : instances) {
+				assertSame(SemanticAnalyzer.getInstance(), instance.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import picasso.model.Pixmap;
+
+/**
+ * Assertions about rendered images, shared by the tests of the renderers and
+ * of the passes that must not change what an expression draws.
+ */
+final class PixmapAssertions {
+
+	private PixmapAssertions() {
+	}
+
+	/**
+	 * Asserts that two images are the same size and have the same color at every
+	 * pixel
+	 *
+	 * @param expected the image that should have been drawn
+	 * @param actual   the image that was drawn
+	 */
+	static void assertSameImage(Pixmap expected, Pixmap actual) {
+		assertSameImage(expected, actual, "");
+	}
+
+	/**
+	 * Asserts that two images are the same size and have the same color at every
+	 * pixel, naming what was drawn if they do not
+	 *
+	 * @param expected the image that should have been drawn
+	 * @param actual   the image that was drawn
+	 * @param message  what the images are of, such as an expression or a frame
+	 */
+	static void assertSameImage(Pixmap expected, Pixmap actual, String message) {
+		String prefix = message.isEmpty() ? "" : message + " ";
+		assertEquals(expected.getSize(), actual.getSize(), prefix + "size");
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), prefix + "at (" + x + ", " + y + ")");
+			}
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+
+import org.junit.jupiter.api.Test;
+
+import picasso.model.Pixmap;
+
+/**
+ * Tests writing rectangles of pixels into a Pixmap at once.
+ */
+public class PixmapTests {
+
+	private static int[] pattern(int width, int height) {
+		int[] argb = new int[width * height];
+		for (int i = 0; i < argb.length; i++) {
+			argb[i] = 0xFF000000 | ((i * 0x10307) & 0xFFFFFF);
+		}
+		return argb;
+	}
+
+	private void assertMatchesPixelWrites(Pixmap bulk, int x, int y, int width, int height) {
+		int[] argb = pattern(width + 3, height);
+		Pixmap expected = new Pixmap(bulk);
+		for (int j = 0; j < height; j++) {
+			for (int i = 0; i < width; i++) {
+				expected.setRGB(x + i, y + j, argb[2 + j * (width + 3) + i]);
+			}
+		}
+		bulk.setRGB(x, y, width, height, argb, 2, width + 3);
+
+		for (int j = 0; j < bulk.getHeight(); j++) {
+			for (int i = 0; i < bulk.getWidth(); i++) {
+				assertEquals(expected.getRGB(i, j), bulk.getRGB(i, j), "at (" + i + ", " + j + ")");
+			}
+		}
+	}
+
+	@Test
+	public void testBulkWrite() {
+		assertMatchesPixelWrites(new Pixmap(20, 10), 3, 2, 9, 5);
+		assertMatchesPixelWrites(new Pixmap(20, 10), 0, 0, 20, 10);
+	}
+
+	@Test
+	public void testBulkWriteIsClipped() {
+		assertMatchesPixelWrites(new Pixmap(20, 10), -4, -3, 12, 8);
+		assertMatchesPixelWrites(new Pixmap(20, 10), 15, 7, 12, 8);
+		assertMatchesPixelWrites(new Pixmap(20, 10), 25, 0, 3, 3);
+	}
+
+	@Test
+	public void testBulkWriteIntoShrunkImage() {
+		Pixmap pixmap = new Pixmap(20, 10, Color.RED);
+		pixmap.setSize(12, 7);
+		assertMatchesPixelWrites(pixmap, 1, 1, 10, 5);
+	}
+
+	@Test
+	public void testBulkWriteIntoImageFile() {
+		Pixmap pixmap = new Pixmap("images/vortex.jpg");
+		assertMatchesPixelWrites(pixmap, 10, 20, 30, 15);
+	}
+
+	@Test
+	public void testFillsWithColor() {
+		Pixmap pixmap = new Pixmap(7, 13, Color.BLUE);
+		for (int y = 0; y < 13; y++) {
+			for (int x = 0; x < 7; x++) {
+				assertEquals(Color.BLUE.getRGB(), pixmap.getRGB(x, y));
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.PixmapAssertions.assertSameImage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import picasso.model.Pixmap;
+import picasso.model.ProgressiveRenderer;
+import picasso.model.TileRenderer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Tests that the progressive renderer paints coarse passes as blocks, evaluates
+ * each pixel once, ends with the same image as the tile renderer, and stops
+ * when cancelled.
+ */
+public class ProgressiveRendererTests {
+
+	private static ExpressionTreeGenerator parser;
+
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	/**
+	 * An expression that counts the points it is evaluated at
+	 */
+	private static class Counting extends ExpressionTreeNode {
+		final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public RGBColor evaluate(double x, double y) {
+			count.incrementAndGet();
+			return new RGBColor(x, y, x * y);
+		}
+
+		@Override
+		public List<ExpressionTreeNode> getChildren() {
+			return List.of();
+		}
+	}
+
+	@Test
+	public void testMatchesTileRenderer() {
+		ExpressionTreeNode expr = parser.makeExpression("sin(x * [0.3, -0.7, 0.9]) + perlinColor(y, x) * y");
+		for (int[] size : new int[][] { { 150, 97 }, { 1, 1 }, { 17, 33 }, { 64, 64 } }) {
+			Pixmap expected = new Pixmap(size[0], size[1]);
+			new TileRenderer().render(expr, expected);
+
+			Pixmap actual = new Pixmap(size[0], size[1]);
+			assertTrue(new ProgressiveRenderer(step -> {
+			}).render(expr, actual));
+			assertSameImage(expected, actual);
+		}
+	}
+
+	@Test
+	public void testEvaluatesEachPixelOnce() {
+		Counting expr = new Counting();
+		new ProgressiveRenderer(step -> {
+		}).render(expr, new Pixmap(101, 67));
+		assertEquals(101 * 67, expr.count.get());
+	}
+
+	@Test
+	public void testPaintsCoarsePassAsBlocks() {
+		ExpressionTreeNode expr = parser.makeExpression("x * y");
+		Pixmap coarse = new Pixmap(70, 40);
+		ProgressiveRenderer[] renderer = new ProgressiveRenderer[1];
+		List<Integer> steps = new ArrayList<Integer>();
+		renderer[0] = new ProgressiveRenderer(step -> {
+			steps.add(step);
+			// stop after the first pass so that only the blocks are left
+			renderer[0].cancel();
+		});
+
+		assertFalse(renderer[0].render(expr, coarse));
+		assertEquals(List.of(16), steps);
+		for (int y = 0; y < 40; y++) {
+			for (int x = 0; x < 70; x++) {
+				int sampleX = x / 16 * 16;
+				int sampleY = y / 16 * 16;
+				int expected = expr.evaluate(TileRenderer.imageToDomainScale(sampleX, 70),
+						TileRenderer.imageToDomainScale(sampleY, 40)).toJavaColor().getRGB();
+				assertEquals(expected, coarse.getRGB(x, y), "Pixel (" + x + ", " + y + ")");
+			}
+		}
+	}
+
+	@Test
+	public void testReportsEveryPass() {
+		List<Integer> steps = new ArrayList<Integer>();
+		new ProgressiveRenderer(steps::add).render(parser.makeExpression("x"), new Pixmap(20, 20));
+		assertEquals(List.of(16, 4, 2, 1), steps);
+	}
+
+	@Test
+	public void testNewRenderCancelsRenderInProgress() throws InterruptedException {
+		ProgressiveRenderer renderer = new ProgressiveRenderer(step -> {
+		});
+		ExpressionTreeNode slow = new ExpressionTreeNode() {
+			@Override
+			public RGBColor evaluate(double x, double y) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return new RGBColor(x, y, 0);
+			}
+
+			@Override
+			public List<ExpressionTreeNode> getChildren() {
+				return List.of();
+			}
+		};
+		boolean[] completed = { true };
+		Thread first = new Thread(() -> completed[0] = renderer.render(slow, new Pixmap(400, 400)));
+		first.start();
+		Thread.sleep(50);
+
+		Pixmap second = new Pixmap(20, 20);
+		assertTrue(renderer.render(parser.makeExpression("x"), second));
+		first.join(10000);
+		assertFalse(first.isAlive());
+		assertFalse(completed[0]);
+	}
+}
@@ -0,0 +1,178 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.model.Pixmap;
+import picasso.model.TileRenderer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.util.RenderJob;
+import picasso.util.RenderJobScheduler;
+
+/**
+ * Tests that render jobs run one at a time, that a new job cancels the one
+ * before it or supersedes it if it has not started, and that cancelled renders
+ * stop quickly.
+ */
+public class RenderJobSchedulerTests {
+
+	private final RenderJobScheduler scheduler = new RenderJobScheduler();
+
+	@AfterEach
+	void tearDown() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testNewJobCancelsCurrentJob() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		RenderJob first = scheduler.submit(token -> {
+			started.countDown();
+			while (!token.isCancelled()) {
+				Thread.onSpinWait();
+			}
+		}, () -> {
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		RenderJob second = scheduler.submit(token -> {
+		}, () -> {
+		});
+		assertTrue(first.isCancelled());
+		assertTrue(first.await(5, TimeUnit.SECONDS));
+		assertTrue(second.await(5, TimeUnit.SECONDS));
+		assertFalse(second.isCancelled());
+		assertSame(second, scheduler.getCurrentJob());
+	}
+
+	@Test
+	public void testJobsNotStartedAreSuperseded() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		RenderJob first = scheduler.submit(token -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				// cancelled by the next job
+			}
+		}, () -> {
+		});
+		AtomicInteger ran = new AtomicInteger();
+		AtomicInteger finished = new AtomicInteger();
+		List<RenderJob> jobs = new ArrayList<RenderJob>();
+		for (int i = 0; i < 100; i++) {
+			jobs.add(scheduler.submit(token -> ran.incrementAndGet(), finished::incrementAndGet));
+		}
+		release.countDown();
+		assertTrue(first.await(5, TimeUnit.SECONDS));
+		RenderJob last = jobs.get(jobs.size() - 1);
+		assertTrue(last.await(5, TimeUnit.SECONDS));
+
+		// only the newest job ran; the others were finished without running
+		assertEquals(1, ran.get());
+		assertFalse(last.isCancelled());
+		for (RenderJob job : jobs.subList(0, jobs.size() - 1)) {
+			assertTrue(job.isDone());
+			assertTrue(job.isCancelled());
+		}
+		assertEquals(100, finished.get());
+	}
+
+	@Test
+	public void testJobsRunOneAtATimeInOrder() throws InterruptedException {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger mostRunning = new AtomicInteger();
+		List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		RenderJob last = null;
+		for (int i = 0; i < 20; i++) {
+			int index = i;
+			last = scheduler.submitInOrder(token -> {
+				mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				order.add(index);
+				running.decrementAndGet();
+			}, () -> {
+			});
+		}
+		assertTrue(last.await(5, TimeUnit.SECONDS));
+		assertEquals(1, mostRunning.get());
+		assertEquals(20, order.size());
+		for (int i = 0; i < 20; i++) {
+			assertEquals(i, order.get(i));
+		}
+	}
+
+	@Test
+	public void testCancelInterruptsWaitingJob() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		boolean[] interrupted = { false };
+		RenderJob job = scheduler.submit(token -> {
+			started.countDown();
+			try {
+				Thread.sleep(10000);
+			} catch (InterruptedException e) {
+				interrupted[0] = true;
+			}
+		}, () -> {
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		scheduler.cancel();
+		assertTrue(job.await(1, TimeUnit.SECONDS));
+		assertTrue(interrupted[0]);
+
+		// the next job on the worker thread is not interrupted
+		boolean[] nextInterrupted = { true };
+		RenderJob next = scheduler.submit(token -> nextInterrupted[0] = Thread.currentThread().isInterrupted(),
+				() -> {
+				});
+		assertTrue(next.await(5, TimeUnit.SECONDS));
+		assertFalse(nextInterrupted[0]);
+	}
+
+	@Test
+	public void testRunsWhenDoneAfterFailure() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		scheduler.submit(token -> {
+			throw new IllegalStateException("render failed");
+		}, done::countDown);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+
+		RenderJob next = scheduler.submit(token -> {
+		}, () -> {
+		});
+		assertTrue(next.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCancelledRenderStopsQuickly() throws InterruptedException {
+		ExpressionTreeNode expr = new ExpressionTreeGenerator()
+				.makeExpression("perlinColor(perlinColor(x, y) * x, mandelbrot(x, y)) + sin(perlinColor(y, x))");
+		Pixmap target = new Pixmap(2000, 2000);
+		TileRenderer renderer = new TileRenderer(2, TileRenderer.DEFAULT_TILE_SIZE);
+		boolean[] completed = { true };
+		CountDownLatch started = new CountDownLatch(1);
+
+		RenderJob job = scheduler.submit(token -> {
+			started.countDown();
+			completed[0] = renderer.render(expr, target, token);
+		}, () -> {
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		Thread.sleep(50);
+
+		long cancelled = System.nanoTime();
+		job.cancel();
+		assertTrue(job.await(5, TimeUnit.SECONDS));
+		long stopMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cancelled);
+		assertFalse(completed[0]);
+		assertTrue(stopMillis < 500, "took " + stopMillis + " ms to stop");
+	}
+}
@@ -0,0 +1,129 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import picasso.Render;
+import picasso.model.Pixmap;
+import picasso.model.TileRenderer;
+import picasso.parser.ExpressionTreeGenerator;
+
+/**
+ * Tests rendering expression files from the command line.
+ */
+public class RenderTests {
+
+	@TempDir
+	Path directory;
+
+	private ByteArrayOutputStream out;
+	private ByteArrayOutputStream err;
+	private Render render;
+
+	@BeforeEach
+	void setUp() {
+		out = new ByteArrayOutputStream();
+		err = new ByteArrayOutputStream();
+		render = new Render(new PrintStream(out), new PrintStream(err));
+	}
+
+	private Path expressionFile(String name, String contents) throws IOException {
+		return Files.writeString(directory.resolve(name), contents);
+	}
+
+	@Test
+	public void testRendersEachExpression() throws IOException {
+		Path file = expressionFile("two.exp", "// two images\nx + y // sum\n\na = sin(x)\na * y\n");
+		Path output = directory.resolve("images");
+
+		assertEquals(0, render.run(new String[] { "--size", "40x30", "--output", output.toString(), file.toString() }));
+
+		for (int i = 1; i <= 3; i++) {
+			BufferedImage image = ImageIO.read(output.resolve("two-" + i + ".png").toFile());
+			assertEquals(40, image.getWidth());
+			assertEquals(30, image.getHeight());
+		}
+		assertTrue(out.toString().contains("Rendered 3 expressions (3600 pixels)"), out.toString());
+		assertTrue(out.toString().contains("Mpixels/s"));
+	}
+
+	@Test
+	public void testMatchesRenderer() throws IOException {
+		Path file = expressionFile("single.exp", "perlinColor(x, y) * [0.5, -0.25, 1]\n");
+
+		assertEquals(0, render.run(new String[] { "-s", "33x17", file.toString() }));
+
+		BufferedImage image = ImageIO.read(directory.resolve("single.png").toFile());
+		Pixmap expected = new Pixmap(33, 17);
+		new TileRenderer().render(new ExpressionTreeGenerator().makeExpression("perlinColor(x, y) * [0.5, -0.25, 1]"),
+				expected);
+		for (int y = 0; y < 17; y++) {
+			for (int x = 0; x < 33; x++) {
+				assertEquals(expected.getRGB(x, y), image.getRGB(x, y), "at (" + x + ", " + y + ")");
+			}
+		}
+	}
+
+	@Test
+	public void testReportsBadExpressions() throws IOException {
+		Path file = expressionFile("bad.exp", "x +\nsin(x)\n");
+
+		assertEquals(1, render.run(new String[] { "--size", "8x8", file.toString() }));
+		assertTrue(err.toString().contains("bad.exp:1"));
+		assertTrue(Files.exists(directory.resolve("bad-2.png")));
+		assertFalse(Files.exists(directory.resolve("bad-1.png")));
+	}
+
+	@Test
+	public void testRejectsBadArguments() {
+		assertEquals(2, render.run(new String[0]));
+		assertEquals(2, render.run(new String[] { "--size", "40", "a.exp" }));
+		assertEquals(2, render.run(new String[] { "--size" }));
+		assertEquals(2, render.run(new String[] { "--frames", "a.exp" }));
+		assertTrue(err.toString().contains("Usage"));
+	}
+
+	@Test
+	public void testAnimatesExpressionsWithTime() throws IOException {
+		Path file = expressionFile("moving.exp", "sin(x + t)\nx\n");
+
+		assertEquals(0, render.run(new String[] { "-s", "12x10", "--frames", "4", "--animation", "png", file.toString() }));
+
+		for (int i = 1; i <= 4; i++) {
+			BufferedImage image = ImageIO.read(directory.resolve(String.format("moving-1-%04d.png", i)).toFile());
+			assertEquals(12, image.getWidth());
+		}
+		assertFalse(Files.exists(directory.resolve("moving-1-0005.png")));
+		assertTrue(Files.exists(directory.resolve("moving-2.png")));
+		assertTrue(out.toString().contains("Rendered 2 expressions (600 pixels)"), out.toString());
+
+		Render gif = new Render(new PrintStream(out), new PrintStream(err));
+		assertEquals(0, gif.run(new String[] { "-s", "12x10", "--frames", "3", "--fps", "10", file.toString() }));
+		assertTrue(Files.exists(directory.resolve("moving-1.gif")));
+	}
+
+	@Test
+	public void testRejectsBadAnimationArguments() {
+		assertEquals(2, render.run(new String[] { "--frames", "0", "a.exp" }));
+		assertEquals(2, render.run(new String[] { "--frames", "2.5", "a.exp" }));
+		assertEquals(2, render.run(new String[] { "--fps", "-1", "a.exp" }));
+		assertEquals(2, render.run(new String[] { "--animation", "mp4", "a.exp" }));
+	}
+
+	@Test
+	public void testReportsMissingFiles() {
+		assertEquals(1, render.run(new String[] { directory.resolve("missing.exp").toString() }));
+	}
+}
@@ -0,0 +1,189 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+
+import org.junit.jupiter.api.Test;
+
+import picasso.model.ImageCache;
+import picasso.model.Pixmap;
+import picasso.model.SampledImage;
+import picasso.model.SampledImage.Filter;
+import picasso.parser.CompiledExpression;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.ParseException;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.ImageClip;
+import picasso.parser.language.expressions.ImageWrap;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Tests that images are sampled from precomputed planes with the filter each
+ * imageClip or imageWrap names.
+ */
+public class SampledImageTests {
+
+	private static final String VORTEX = "images/vortex.jpg";
+	private static final double EPSILON = 1e-6;
+
+	private final ExpressionTreeGenerator parser = new ExpressionTreeGenerator();
+
+	/**
+	 * A 2x2 image: black and white on top, red and blue below
+	 */
+	private static SampledImage checker() {
+		Pixmap pixmap = new Pixmap(2, 2, Color.BLACK);
+		pixmap.setColor(1, 0, Color.WHITE);
+		pixmap.setColor(0, 1, Color.RED);
+		pixmap.setColor(1, 1, Color.BLUE);
+		return new SampledImage(pixmap);
+	}
+
+	private static double[] sample(SampledImage image, double x, double y, Filter filter) {
+		double[] out = new double[3];
+		image.sample(x, y, filter, out, 0);
+		return out;
+	}
+
+	@Test
+	public void testNearestReadsThePixmapsColors() {
+		Pixmap pixmap = ImageCache.getInstance().get(VORTEX);
+		SampledImage image = new SampledImage(pixmap);
+		for (double x = -1; x <= 1; x += 0.1) {
+			for (double y = -1; y <= 1; y += 0.15) {
+				int pixel = pixmap.getRGB((int) Math.round((x + 1) / 2 * (pixmap.getWidth() - 1)),
+						(int) Math.round((y + 1) / 2 * (pixmap.getHeight() - 1)));
+				double[] color = sample(image, x, y, Filter.NEAREST);
+				assertEquals(((pixel >> 16) & 0xFF) / 255.0 * 2 - 1, color[0], EPSILON);
+				assertEquals(((pixel >> 8) & 0xFF) / 255.0 * 2 - 1, color[1], EPSILON);
+				assertEquals((pixel & 0xFF) / 255.0 * 2 - 1, color[2], EPSILON);
+			}
+		}
+	}
+
+	/**
+	 * Returns a component of a color as imageClip and imageWrap have always read
+	 * it from the image
+	 */
+	private static double component(int pixel, int shift) {
+		return (((pixel >> shift) & 0xFF) / 255.0) * 2.0 - 1.0;
+	}
+
+	@Test
+	public void testImageClipReproducesTheImage() {
+		for (String name : new String[] { "Oil.png", "vortex.jpg" }) {
+			Pixmap pixmap = ImageCache.getInstance().get("images/" + name);
+			ExpressionTreeNode clip = parser.makeExpression("imageClip(\"" + name + "\", x, y)");
+			int width = pixmap.getWidth();
+			int height = pixmap.getHeight();
+			for (int row = 0; row < height; row++) {
+				double y = -1 + 2.0 * row / (height - 1);
+				for (int column = 0; column < width; column++) {
+					// the center of each pixel draws exactly as the pixel always has
+					int pixel = pixmap.getRGB(column, row);
+					int expected = RGBColor.toRGB(component(pixel, 16), component(pixel, 8), component(pixel, 0));
+					RGBColor color = clip.evaluate(-1 + 2.0 * column / (width - 1), y);
+					assertEquals(expected, RGBColor.toRGB(color.getRed(), color.getGreen(), color.getBlue()),
+							name + " at (" + column + ", " + row + ")");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFiltersAgreeAtPixelCenters() {
+		SampledImage image = checker();
+		for (Filter filter : Filter.values()) {
+			assertArrayEquals(new double[] { -1, -1, -1 }, sample(image, -1, -1, filter), EPSILON, filter.toString());
+			assertArrayEquals(new double[] { 1, 1, 1 }, sample(image, 1, -1, filter), EPSILON, filter.toString());
+			assertArrayEquals(new double[] { 1, -1, -1 }, sample(image, -1, 1, filter), EPSILON, filter.toString());
+			assertArrayEquals(new double[] { -1, -1, 1 }, sample(image, 1, 1, filter), EPSILON, filter.toString());
+		}
+	}
+
+	@Test
+	public void testBilinearBlendsNeighbors() {
+		SampledImage image = checker();
+		assertArrayEquals(new double[] { 0, 0, 0 }, sample(image, 0, -1, Filter.BILINEAR), EPSILON);
+		assertArrayEquals(new double[] { 0, -1, 0 }, sample(image, 0, 1, Filter.BILINEAR), EPSILON);
+		assertArrayEquals(new double[] { 0, -1, -1 }, sample(image, -1, 0, Filter.BILINEAR), EPSILON);
+		assertArrayEquals(new double[] { 1, 1, 1 }, sample(image, 0.5, -1, Filter.NEAREST), EPSILON);
+	}
+
+	@Test
+	public void testBicubicStaysInRange() {
+		SampledImage image = new SampledImage(ImageCache.getInstance().get(VORTEX));
+		double[] out = new double[3];
+		for (double x = -1; x <= 1; x += 0.013) {
+			image.sample(x, x * x - 0.5, Filter.BICUBIC, out, 0);
+			for (double component : out) {
+				assertTrue(component >= -1 && component <= 1, x + ": " + component);
+			}
+		}
+		// a constant image is interpolated exactly
+		SampledImage gray = new SampledImage(new Pixmap(5, 5, Color.GRAY));
+		double expected = Color.GRAY.getRed() / 255.0 * 2 - 1;
+		assertArrayEquals(new double[] { expected, expected, expected }, sample(gray, 0.3, -0.7, Filter.BICUBIC),
+				EPSILON);
+	}
+
+	@Test
+	public void testOutOfRangeAndNaNReadTheEdge() {
+		SampledImage image = checker();
+		assertArrayEquals(sample(image, 1, -1, Filter.BILINEAR), sample(image, 7, -3, Filter.BILINEAR), 0);
+		assertArrayEquals(sample(image, -1, -1, Filter.BICUBIC), sample(image, Double.NaN, Double.NaN, Filter.BICUBIC),
+				0);
+	}
+
+	@Test
+	public void testFilterIsChosenPerCall() {
+		ExpressionTreeNode clip = parser.makeExpression("imageClip(\"vortex.jpg\", x, y, \"bilinear\")");
+		assertEquals(Filter.BILINEAR, ((ImageClip) clip).getFilter());
+		assertEquals("ImageClip(\"images/vortex.jpg\", x, y, \"bilinear\")", clip.toString());
+		ExpressionTreeNode wrap = parser.makeExpression("imageWrap(\"vortex.jpg\", x, y, \"BICUBIC\")");
+		assertEquals(Filter.BICUBIC, ((ImageWrap) wrap).getFilter());
+		ExpressionTreeNode nearest = parser.makeExpression("imageClip(\"vortex.jpg\", x, y)");
+		assertEquals(Filter.NEAREST, ((ImageClip) nearest).getFilter());
+
+		assertNotEquals(nearest, clip);
+		assertNotEquals(CompiledExpression.of(nearest).getKey(), CompiledExpression.of(clip).getKey());
+		assertEquals(nearest, parser.makeExpression("imageClip(\"vortex.jpg\", x, y, \"nearest\")"));
+
+		assertThrows(ParseException.class, () -> parser.makeExpression("imageClip(\"vortex.jpg\", x, y, \"blurry\")"));
+		assertThrows(ParseException.class, () -> parser.makeExpression("imageWrap(\"vortex.jpg\", x, y, x)"));
+		assertThrows(ParseException.class,
+				() -> parser.makeExpression("imageWrap(\"vortex.jpg\", x, y, \"bilinear\", y)"));
+	}
+
+	@Test
+	public void testCompiledExpressionsSampleAlike() {
+		for (String expression : new String[] { "imageClip(\"vortex.jpg\", x + x + x, sin(y), \"bicubic\")",
+				"imageWrap(\"vortex.jpg\", x + x + x, y + 0.3, \"bilinear\")" }) {
+			ExpressionTreeNode parsed = parser.makeExpression(expression);
+			ExpressionTreeNode compiled = CompiledExpression.of(parsed).getCompiled();
+			double[] out = new double[compiled.getScratchSize()];
+			for (double x = -1; x <= 1; x += 0.125) {
+				for (double y = -1; y <= 1; y += 0.25) {
+					RGBColor color = parsed.evaluate(x, y);
+					compiled.evaluate(x, y, out, 0);
+					assertEquals(color.getRed(), out[0], 0, expression);
+					assertEquals(color.getGreen(), out[1], 0, expression);
+					assertEquals(color.getBlue(), out[2], 0, expression);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCacheSamplesEachImageOnce() {
+		ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+		SampledImage samples = cache.getSamples(VORTEX);
+		assertSame(samples, cache.getSamples(VORTEX));
+		long pixels = (long) samples.getWidth() * samples.getHeight();
+		assertEquals(7 * pixels, cache.getCurrentBytes());
+		assertEquals(3 * pixels, samples.getBytes());
+		assertSame(cache.get(VORTEX), cache.get(VORTEX));
+		assertEquals(1, cache.getMisses());
+	}
+}
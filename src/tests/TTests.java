@@ -3,10 +3,10 @@ package tests;
 import static org.junit.jupiter.api.Assertions.*;
 
 import org.junit.jupiter.api.BeforeAll;
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.EvaluationContext;
 import picasso.parser.language.ExpressionTreeNode;
 import picasso.parser.language.expressions.Plus;
 import picasso.parser.language.expressions.RGBColor;
@@ -31,12 +31,6 @@ public class TTests {
 		parser = new ExpressionTreeGenerator();
 	}
 
-	@BeforeEach
-	public void setUp() throws Exception {
-		T.resetTime();
-		T.setHasTime(false);
-	}
-
 	@Test
 	public void testTEvaluationInitialValue() {
 		T myTree = new T();
@@ -44,24 +38,19 @@ public class TTests {
 	}
 
 	@Test
-	public void testTEvaluationAfterIncrement() {
+	public void testTEvaluationInLaterFrames() {
 		T myTree = new T();
-		
-		T.increaseTime();
-		assertEquals(new RGBColor(0.02, 0.02, 0.02), myTree.evaluate(0, 0));
-		
-		T.increaseTime();
-		assertEquals(new RGBColor(0.04, 0.04, 0.04), myTree.evaluate(0.5, 0.5));
+
+		assertEquals(new RGBColor(0.02, 0.02, 0.02), EvaluationContext.forFrame(1, 50).call(() -> myTree.evaluate(0, 0)));
+		assertEquals(new RGBColor(0.04, 0.04, 0.04),
+				EvaluationContext.forFrame(2, 50).call(() -> myTree.evaluate(0.5, 0.5)));
 	}
 
 	@Test
-	public void testResetTime() {
+	public void testTimeOutsideAFrame() {
 		T myTree = new T();
-		
-		T.increaseTime();
-		T.increaseTime();
-		
-		T.resetTime();
+
+		EvaluationContext.forFrame(2, 50).run(() -> myTree.evaluate(0, 0));
 		assertEquals(new RGBColor(0, 0, 0), myTree.evaluate(0, 0));
 	}
 
@@ -70,7 +59,6 @@ public class TTests {
 		ExpressionTreeNode e = parser.makeExpression("t");
 		assertEquals(new T(), e);
 
-		T.setHasTime(false);
 		e = parser.makeExpression("x + t");
 		assertEquals(new Plus(new X(), new T()), e);
 	}
@@ -94,27 +82,25 @@ public class TTests {
 	}
 
 	@Test
-	public void testTimeIsStatic() {
+	public void testTimeIsSharedWithinAFrame() {
 		T t1 = new T();
 		T t2 = new T();
-		
-		T.increaseTime();
-		
-		RGBColor result1 = t1.evaluate(0, 0);
-		RGBColor result2 = t2.evaluate(0, 0);
-		
-		assertEquals(result1.getRed(), result2.getRed(), EPSILON);
+
+		EvaluationContext.forFrame(1, 50).run(() -> {
+			RGBColor result1 = t1.evaluate(0, 0);
+			RGBColor result2 = t2.evaluate(0, 0);
+
+			assertEquals(result1.getRed(), result2.getRed(), EPSILON);
+		});
 	}
 
 	@Test
-	public void testTReaches1After50Increments() {
+	public void testTReaches1After50Frames() {
 		T myTree = new T();
-		
-		for (int i = 0; i < 50; i++) {
-			T.increaseTime();
-		}
-		// from 0.2
-		RGBColor result = myTree.evaluate(0, 0);
+
+		// t steps by 0.02 a frame, so the 50th frame after the first is at 1
+		RGBColor result = new EvaluationContext(50 * 0.02, 0, 1).call(() -> myTree.evaluate(0, 0));
 		assertEquals(1.0, result.getRed(), EPSILON);
+		assertEquals(0.98, EvaluationContext.forFrame(49, 50).call(() -> myTree.evaluate(0, 0)).getRed(), EPSILON);
 	}
 }
\ No newline at end of file
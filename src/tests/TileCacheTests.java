@@ -0,0 +1,154 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.PixmapAssertions.assertSameImage;
+
+import java.awt.Dimension;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import picasso.model.Pixmap;
+import picasso.model.ProgressiveRenderer;
+import picasso.model.TileCache;
+import picasso.model.TileRenderer;
+import picasso.parser.CompiledExpression;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.EvaluationContext;
+import picasso.util.CancellationToken;
+
+/**
+ * Tests that rendered tiles are cached in memory and on disk, identified by
+ * what they draw, and that renderers only compute the tiles that are missing.
+ */
+public class TileCacheTests {
+
+	private static final int SIZE = 100;
+	private static final int TILE = 32;
+
+	@TempDir
+	Path directory;
+
+	private final ExpressionTreeGenerator parser = new ExpressionTreeGenerator();
+
+	private CompiledExpression compile(String expression) {
+		return CompiledExpression.of(parser.makeExpression(expression));
+	}
+
+	private static TileCache.Key key(String expression, int startX) {
+		return TileCache.Key.of(expression, SIZE, SIZE, startX, 0, TILE, TILE, EvaluationContext.DEFAULT);
+	}
+
+	@Test
+	public void testExpressionKeysIdentifyWhatIsDrawn() {
+		assertEquals(compile("sin(x * y)").getKey(), compile(" sin( x*y ) // same").getKey());
+		// a variable stands for the expression it was assigned
+		parser.makeExpression("b = x * y");
+		assertEquals(compile("sin(x * y)").getKey(), compile("sin(b)").getKey());
+		assertNotEquals(compile("sin(x * y)").getKey(), compile("sin(x * x)").getKey());
+		assertNotEquals(compile("x + 0.5").getKey(), compile("x + 0.25").getKey());
+		assertNull(compile("random() + x").getKey());
+	}
+
+	@Test
+	public void testTileKeys() {
+		assertEquals(key("e", 0), key("e", 0));
+		assertNotEquals(key("e", 0), key("e", TILE));
+		assertNotEquals(key("e", 0), key("f", 0));
+		assertNotEquals(key("e", 0),
+				TileCache.Key.of("e", SIZE, SIZE, 0, 0, TILE, TILE, EvaluationContext.forFrame(1, 50)));
+		assertNotEquals(key("e", 0), TileCache.Key.of("e", 2 * SIZE, SIZE, 0, 0, TILE, TILE, EvaluationContext.DEFAULT));
+	}
+
+	@Test
+	public void testMemoryTierEvictsLeastRecentlyUsed() {
+		TileCache cache = new TileCache(2 * 4L * TILE * TILE);
+		int[] first = new int[TILE * TILE];
+		cache.put(key("e", 0), first);
+		cache.put(key("e", TILE), new int[TILE * TILE]);
+		assertSame(first, cache.get(key("e", 0)));
+		cache.put(key("e", 2 * TILE), new int[TILE * TILE]);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertNull(cache.get(key("e", TILE)));
+		assertSame(first, cache.get(key("e", 0)));
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(2.0 / 3, cache.getHitRatio(), 1e-9);
+		assertThrows(IllegalArgumentException.class, () -> cache.put(key("e", 0), new int[1]));
+	}
+
+	@Test
+	public void testDiskTierOutlivesTheCache() {
+		int[] pixels = new int[TILE * TILE];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0xff000000 | i * 977;
+		}
+		TileCache first = new TileCache(TileCache.DEFAULT_MAX_BYTES, directory);
+		first.put(key("e", 0), pixels);
+
+		TileCache second = new TileCache(TileCache.DEFAULT_MAX_BYTES, directory);
+		assertArrayEquals(pixels, second.get(key("e", 0)));
+		assertArrayEquals(pixels, second.get(key("e", 0)));
+		assertEquals(1, second.getDiskHits());
+		assertEquals(1, second.getHits());
+		assertNull(second.get(key("e", TILE)));
+
+		second.clear();
+		assertNull(new TileCache(TileCache.DEFAULT_MAX_BYTES, directory).get(key("e", 0)));
+	}
+
+	@Test
+	public void testRendererComputesOnlyMissingTiles() {
+		CompiledExpression expression = compile("perlinColor(x, y) * sin(x)");
+		Pixmap expected = new Pixmap(SIZE, SIZE);
+		new TileRenderer(1, TILE).render(expression.getCompiled(), expected);
+
+		TileCache cache = new TileCache(TileCache.DEFAULT_MAX_BYTES);
+		TileRenderer renderer = new TileRenderer(new ForkJoinPool(1), TILE, cache);
+		// a tile already cached is copied, not computed
+		int[] white = new int[TILE * TILE];
+		Arrays.fill(white, 0xffffffff);
+		cache.put(key(expression.getKey(), 0), white);
+
+		Pixmap first = new Pixmap(SIZE, SIZE);
+		renderer.render(expression.getCompiled(), expression.getKey(), first, EvaluationContext.DEFAULT,
+				CancellationToken.NONE);
+		assertEquals(0xffffffff, first.getRGB(0, 0));
+		assertEquals(expected.getRGB(SIZE - 1, SIZE - 1), first.getRGB(SIZE - 1, SIZE - 1));
+		assertEquals(1, cache.getHits());
+		assertEquals(15, cache.getMisses());
+
+		cache.clear();
+		renderer.render(expression.getCompiled(), expression.getKey(), first, EvaluationContext.DEFAULT,
+				CancellationToken.NONE);
+		Pixmap second = new Pixmap(SIZE, SIZE);
+		assertTrue(renderer.renderFromCache(expression.getKey(), second, EvaluationContext.DEFAULT));
+		assertSameImage(expected, second);
+		assertEquals(16, cache.getHits());
+		assertFalse(renderer.renderFromCache(expression.getKey(), new Pixmap(SIZE + 1, SIZE),
+				EvaluationContext.DEFAULT));
+	}
+
+	@Test
+	public void testProgressiveRenderCachesTheSameTiles() {
+		CompiledExpression expression = compile("mandelbrot(x, y) + cos(y)");
+		Pixmap expected = new Pixmap(SIZE, SIZE);
+		new TileRenderer(1, TILE).render(expression.getCompiled(), expected);
+
+		TileRenderer renderer = new TileRenderer(new ForkJoinPool(1), TILE, new TileCache(TileCache.DEFAULT_MAX_BYTES));
+		Pixmap progressive = new Pixmap(SIZE, SIZE);
+		Dimension size = progressive.getSize();
+		assertTrue(new ProgressiveRenderer(step -> {
+		}).render(expression.getCompiled(), progressive, CancellationToken.NONE,
+				colors -> renderer.cacheTiles(expression.getKey(), colors, size, EvaluationContext.DEFAULT)));
+
+		Pixmap cached = new Pixmap(SIZE, SIZE);
+		assertTrue(renderer.renderFromCache(expression.getKey(), cached, EvaluationContext.DEFAULT));
+		assertSameImage(expected, cached);
+	}
+}
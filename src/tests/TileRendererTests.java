@@ -0,0 +1,74 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.PixmapAssertions.assertSameImage;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import picasso.model.Pixmap;
+import picasso.model.TileRenderer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Tests that the tiled, parallel renderer draws the same image as evaluating
+ * every pixel in order.
+ */
+public class TileRendererTests {
+
+	private static ExpressionTreeGenerator parser;
+
+	private static final String OIL = "sin ( x * [ -0.2893792055130451 , 0.9473939504887117 , 0.360770153559939 ] "
+			+ "- wrap ( ceil ( [ -0.3713802812842131 , 0.738139516286271 , -0.7862471418030399 ] ) "
+			+ "- perlinBW ( abs ( x ) * floor ( ceil ( x ) ) , x ) ) + y / perlinColor ( x , y ) )";
+
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	/**
+	 * Render the expression one pixel at a time, in order
+	 */
+	private Pixmap renderSerially(ExpressionTreeNode expr, int width, int height) {
+		Pixmap pixmap = new Pixmap(width, height);
+		for (int imageY = 0; imageY < height; imageY++) {
+			double evalY = TileRenderer.imageToDomainScale(imageY, height);
+			for (int imageX = 0; imageX < width; imageX++) {
+				double evalX = TileRenderer.imageToDomainScale(imageX, width);
+				pixmap.setColor(imageX, imageY, expr.evaluate(evalX, evalY).toJavaColor());
+			}
+		}
+		return pixmap;
+	}
+
+	@Test
+	public void testMatchesSerialRender() {
+		ExpressionTreeNode expr = parser.makeExpression(OIL);
+		Pixmap expected = renderSerially(expr, 150, 97);
+
+		Pixmap actual = new Pixmap(150, 97);
+		new TileRenderer().render(expr, actual);
+
+		assertSameImage(expected, actual);
+	}
+
+	@Test
+	public void testTileSizeAndThreadsDoNotChangeImage() {
+		ExpressionTreeNode expr = parser.makeExpression(OIL);
+		Pixmap expected = renderSerially(expr, 61, 45);
+
+		int[][] configurations = { { 1, 1 }, { 2, 7 }, { 4, 16 }, { 3, 100 } };
+		for (int[] config : configurations) {
+			Pixmap actual = new Pixmap(61, 45);
+			new TileRenderer(config[0], config[1]).render(expr, actual);
+			assertSameImage(expected, actual);
+		}
+	}
+
+	@Test
+	public void testRejectsEmptyTiles() {
+		assertThrows(IllegalArgumentException.class, () -> new TileRenderer(2, 0));
+	}
+}
@@ -0,0 +1,188 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.parser.CommonSubexpressionEliminator;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+import picasso.parser.vector.VectorBackend;
+import picasso.parser.vector.VectorizedExpression;
+
+/**
+ * Tests that evaluating rows with the Vector API gives the same colors as the
+ * interpreter: exactly, except for the vector transcendental functions. The
+ * tests are skipped when the JVM does not have the jdk.incubator.vector module.
+ */
+public class VectorBackendTests {
+
+	private static final int COUNT = 37;
+
+	/** expressions the backend evaluates exactly as the interpreter does */
+	private static final String[] EXACT = { "x", "[0.1, -0.2, 0.3]", "x + y", "x - y * [0.2, 0.3, -0.5]", "x / y",
+			"x % y", "x ^ y", "!x", "abs(x - 0.5)", "ceil(x / 0.3)", "floor(x / 0.3)", "clamp(x / 0.25)",
+			"wrap(x / 0.3)", "rgbToYCrCb([0.2, -0.3, 0.4] * x + y)", "yCrCbToRGB(x + [0.1, 0.2, -0.5] * y)",
+			"perlinColor(x, y)", "perlinBW(x / 0.3, y)", "mandelbrot(x, y)", "imageClip(\"images/vortex.jpg\", x, y)",
+			"imageWrap(\"images/vortex.jpg\", x / 0.5, y / 0.4)", "\"images/vortex.jpg\"", "x * t + y" };
+
+	private static ExpressionTreeGenerator parser;
+	private VectorBackend backend = new VectorBackend();
+
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	@BeforeEach
+	void setUp() {
+		assumeTrue(VectorBackend.isAvailable(), "jdk.incubator.vector is not available");
+		parser.getSession().clear();
+	}
+
+	/**
+	 * An expression the backend does not know
+	 */
+	private static class Swap extends ExpressionTreeNode {
+		final ExpressionTreeNode param;
+
+		Swap(ExpressionTreeNode param) {
+			this.param = param;
+		}
+
+		@Override
+		public RGBColor evaluate(double x, double y) {
+			RGBColor color = param.evaluate(x, y);
+			return new RGBColor(color.getBlue(), color.getRed(), color.getGreen());
+		}
+
+		@Override
+		public List<ExpressionTreeNode> getChildren() {
+			return List.of(param);
+		}
+	}
+
+	private VectorizedExpression vectorize(ExpressionTreeNode expr) {
+		ExpressionTreeNode vectorized = backend.vectorize(expr, expr);
+		assertTrue(vectorized instanceof VectorizedExpression);
+		assertEquals(expr.toString(), vectorized.toString());
+		return (VectorizedExpression) vectorized;
+	}
+
+	private void assertSameRow(ExpressionTreeNode expr, double[] xs, double[] ys, double delta) {
+		double[] red = new double[xs.length];
+		double[] green = new double[xs.length];
+		double[] blue = new double[xs.length];
+		vectorize(expr).evaluate(xs, ys, xs.length, red, green, blue);
+		for (int i = 0; i < xs.length; i++) {
+			RGBColor expected = expr.evaluate(xs[i], ys[i]);
+			String at = expr + " at (" + xs[i] + ", " + ys[i] + ")";
+			assertEquals(expected.getRed(), red[i], delta, at);
+			assertEquals(expected.getGreen(), green[i], delta, at);
+			assertEquals(expected.getBlue(), blue[i], delta, at);
+		}
+	}
+
+	private void assertSameColors(ExpressionTreeNode expr, double delta) {
+		double[] xs = new double[COUNT];
+		double[] ys = new double[COUNT];
+		for (double y = -1; y <= 1; y += 0.25) {
+			for (int i = 0; i < COUNT; i++) {
+				xs[i] = -1 + 2.0 * i / (COUNT - 1);
+				ys[i] = y;
+			}
+			assertSameRow(expr, xs, ys, delta);
+		}
+	}
+
+	@Test
+	public void testExactExpressions() {
+		for (String expression : EXACT) {
+			assertSameColors(parser.makeExpression(expression), 0);
+		}
+	}
+
+	@Test
+	public void testTranscendentalFunctions() {
+		for (String expression : BufferedEvaluationTests.EXPRESSIONS) {
+			assertSameColors(parser.makeExpression(expression), 1e-12);
+		}
+	}
+
+	@Test
+	public void testFloorAndCeilEdgeCases() {
+		double[] xs = { -0.0, 0.0, -0.5, 0.5, -1.5, 2.5, 0.49999999999999994, -0.49999999999999994, 1e300, -1e300,
+				0x1p52 - 0.5, -(0x1p52 - 0.5), 0x1p52, Double.MIN_VALUE, -Double.MIN_VALUE, Double.NaN,
+				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -3.0, 7.25, -7.25 };
+		double[] ys = new double[xs.length];
+		for (String expression : new String[] { "floor(x)", "ceil(x)" }) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			double[] red = new double[xs.length];
+			vectorize(expr).evaluate(xs, ys, xs.length, red, new double[xs.length], new double[xs.length]);
+			for (int i = 0; i < xs.length; i++) {
+				double expected = expr.evaluate(xs[i], 0).getRed();
+				assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(red[i]),
+						expression + " of " + xs[i] + " was " + red[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testNoiseIsExact() {
+		// lattice points, signed zeros, whole rows of lanes beyond the lattice, and
+		// rows in which only some lanes are
+		double[] xs = { -0.0, 0.0, 3.0, -7.0, 0.5, -0.5, 1e-300, -2.75, 255.5, 256.25, -1000.125, 0x1p30, -0x1p30,
+				0x1p31 + 0.5, 1e300, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.3, -0.3, 0.8,
+				-0.1, 0.7, 1e15, 12.5, -12.5, 0.125 };
+		double[] ys = new double[xs.length];
+		for (int i = 0; i < ys.length; i++) {
+			ys[i] = i % 3 == 0 ? xs[i] : 0.37 * i - 4;
+		}
+		for (String expression : new String[] { "perlinColor(x, y)", "perlinBW(x, y)",
+				"perlinBW([0.5, -0.25, 0.75] * x, [-0.8, 0.3, 0] * y)", "perlinColor(y, x) * perlinBW(y, x)" }) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			double[][] planes = { new double[xs.length], new double[xs.length], new double[xs.length] };
+			vectorize(expr).evaluate(xs, ys, xs.length, planes[0], planes[1], planes[2]);
+			for (int i = 0; i < xs.length; i++) {
+				RGBColor color = expr.evaluate(xs[i], ys[i]);
+				double[] expected = { color.getRed(), color.getGreen(), color.getBlue() };
+				for (int c = 0; c < 3; c++) {
+					assertEquals(Double.doubleToLongBits(expected[c]), Double.doubleToLongBits(planes[c][i]),
+							expression + " at (" + xs[i] + ", " + ys[i] + ") was " + planes[c][i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testInterpretsUnknownExpressions() {
+		ExpressionTreeNode expr = parser.makeExpression("floor(x / 0.3) * [0.5, -0.25, 1]");
+		assertSameColors(new Plus(new Swap(expr), new Swap(new Swap(new Y()))), 0);
+	}
+
+	@Test
+	public void testSharedSubexpressions() {
+		parser.makeExpression("a = perlinColor(x, y) * clamp(y / 0.5)");
+		ExpressionTreeNode expr = parser.makeExpression("a * a + floor(a) - abs(a)");
+		ExpressionTreeNode shared = new CommonSubexpressionEliminator().eliminate(expr);
+		assertSameColors(shared, 0);
+	}
+
+	@Test
+	public void testPointsUsePointwiseExpression() {
+		ExpressionTreeNode expr = parser.makeExpression("sin(x) * y");
+		ExpressionTreeNode pointwise = parser.makeExpression("x");
+		ExpressionTreeNode vectorized = backend.vectorize(expr, pointwise);
+
+		assertEquals(0.5, vectorized.evaluate(0.5, 0.25).getRed(), 0);
+		double[] out = new double[vectorized.getScratchSize()];
+		vectorized.evaluate(-0.5, 0.25, out, 0);
+		assertEquals(-0.5, out[0], 0);
+	}
+}